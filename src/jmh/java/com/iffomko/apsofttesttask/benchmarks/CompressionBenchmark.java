@@ -0,0 +1,129 @@
+package com.iffomko.apsofttesttask.benchmarks;
+
+import com.iffomko.apsofttesttask.services.compression.CompressedDocument;
+import com.iffomko.apsofttesttask.services.compression.ContentCoding;
+import com.iffomko.apsofttesttask.services.compression.DocumentEncoder;
+import com.iffomko.apsofttesttask.services.compression.ResponseCompression;
+import com.iffomko.apsofttesttask.services.lines.LineSource;
+import com.iffomko.apsofttesttask.services.lines.LineSplitter;
+import com.iffomko.apsofttesttask.services.parser.IntoHtmlFileParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Цена сжатия HTML документа на разных уровнях: сжатие во время записи ответа, отдача уже сжатого
+ * документа из кэша и распаковка документа из кэша для клиента, который сжатие не принимает.</p>
+ * <p>Размер документа в каждом кодировании печатается при подготовке, так что по одному запуску видно,
+ * сколько трафика экономит каждый уровень и сколько за это платит процессор.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+    private static final int WRITE_SIZE = 8192;
+
+    @Param({"NESTED_SECTIONS", "SECTION_HEAVY"})
+    public CorpusGenerator.Shape shape;
+
+    @Param({"1", "6", "9"})
+    public int level;
+
+    private ResponseCompression compression;
+    private byte[] document;
+    private CompressedDocument compressed;
+    /**
+     * Вместо сокета: запись в пустой поток ничего не стоит, и отдача готового документа превратилась бы в ноль
+     */
+    private ByteArrayOutputStream sink;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] bytes = CorpusGenerator.generate(shape, CorpusGenerator.MAX_FILE_SIZE);
+        List<String> lines = new ArrayList<>();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        LineSplitter.split(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8, lines::add);
+        new IntoHtmlFileParser('#').parse(LineSource.of(lines), outputStream);
+
+        compression = new ResponseCompression(true, level);
+        document = outputStream.toByteArray();
+        compressed = compression.compress(document);
+        sink = new ByteArrayOutputStream(document.length);
+
+        System.out.printf(
+                "%n%s, level %d: identity %d B, gzip %d B (%.1f%%)%n",
+                shape,
+                level,
+                document.length,
+                compressed.getEncodedLength(ContentCoding.GZIP),
+                100.0 * compressed.getEncodedLength(ContentCoding.GZIP) / document.length
+        );
+    }
+
+    /**
+     * Сжатие документа во время записи в ответ, как при промахе кэша; копия для кэша не собирается
+     */
+    @Benchmark
+    public void encodeGzip() throws IOException {
+        encode(0);
+    }
+
+    /**
+     * То же самое, но со сжатой копией для кэша, которая сжимается тем же проходом
+     */
+    @Benchmark
+    public void encodeGzipCapturing() throws IOException {
+        encode(Long.MAX_VALUE);
+    }
+
+    /**
+     * Отдача из кэша клиенту, который принимает gzip: документ пишется как есть
+     */
+    @Benchmark
+    public void servePrecompressed() throws IOException {
+        sink.reset();
+        compressed.writeTo(sink, ContentCoding.GZIP);
+    }
+
+    /**
+     * Отдача из кэша клиенту без сжатия: документ распаковывается
+     */
+    @Benchmark
+    public void serveInflated() throws IOException {
+        sink.reset();
+        compressed.writeTo(sink, ContentCoding.IDENTITY);
+    }
+
+    private void encode(long captureLimit) throws IOException {
+        sink.reset();
+
+        try (DocumentEncoder encoder = compression.encode(sink, ContentCoding.GZIP, captureLimit)) {
+            for (int offset = 0; offset < document.length; offset += WRITE_SIZE) {
+                encoder.write(document, offset, Math.min(WRITE_SIZE, document.length - offset));
+            }
+
+            encoder.finish();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.iffomko.apsofttesttask.benchmarks;
+
+import com.iffomko.apsofttesttask.ApSoftTestTaskApplication;
+import com.iffomko.apsofttesttask.controllers.reactive.ReactiveParserServer;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Нагрузочный бенчмарк, который показывает потолок одновременных медленных загрузок.</p>
+ * <p>Сервер поднимается в этом же процессе трижды: с обычным пулом Tomcat, с виртуальными потоками
+ * и с реактивным endpoint'ом на Reactor Netty (<code>parser.reactive.enabled</code>).
+ * Для каждого количества медленных клиентов открываются соединения, которые прислали заголовки
+ * и начало тела <code>multipart/form-data</code> и замолчали, то есть держат поток запроса на чтении тела
+ * (или, в реактивном режиме, только открытое соединение). После этого отправляются обычные быстрые запросы
+ * за HTML документом и замеряется, сколько из них успело выполниться и за какое время.</p>
+ * <p>Запуск: <code>mvn -Pbenchmarks test-compile exec:exec
+ * -Dbenchmarks.mainClass=com.iffomko.apsofttesttask.benchmarks.ConcurrencyCeilingBenchmark -Djmh.args="100,300,1000"</code>,
+ * где аргумент - это список количеств медленных клиентов.</p>
+ */
+public final class ConcurrencyCeilingBenchmark {
+    private static final String BOUNDARY = "benchmark-boundary";
+    private static final int PROBES = 20;
+    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(5);
+
+    private enum Mode {
+        PLATFORM_POOL("platform pool"),
+        VIRTUAL_THREADS("virtual threads"),
+        REACTIVE("reactive");
+
+        private final String title;
+
+        Mode(String title) {
+            this.title = title;
+        }
+    }
+
+    private ConcurrencyCeilingBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] stalledCounts = args.length > 0
+                ? Arrays.stream(args[0].split(",")).mapToInt(Integer::parseInt).toArray()
+                : new int[] {100, 250, 1000};
+
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        System.out.printf("%-16s %8s %10s %10s %10s%n", "mode", "stalled", "served", "p50, ms", "max, ms");
+
+        for (Mode mode : Mode.values()) {
+            for (int stalledCount : stalledCounts) {
+                run(mode, stalledCount);
+            }
+        }
+    }
+
+    private static void run(Mode mode, int stalledCount) throws Exception {
+        // аргументы командной строки, а не properties(), чтобы они были важнее application.properties
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(ApSoftTestTaskApplication.class).run(
+                "--server.port=0",
+                "--logging.level.root=WARN",
+                "--parser.virtualThreads.enabled=" + (mode == Mode.VIRTUAL_THREADS),
+                "--parser.reactive.enabled=" + (mode == Mode.REACTIVE),
+                "--parser.reactive.port=0",
+                // в бенчмарке перегрузка не должна отвечать 503, замеряется только ожидание
+                "--parser.queueCapacity=-1"
+        )) {
+            int port = mode == Mode.REACTIVE
+                    ? context.getBean(ReactiveParserServer.class).getPort()
+                    : Integer.parseInt(context.getEnvironment().getRequiredProperty("local.server.port"));
+            List<Socket> stalled = new ArrayList<>();
+
+            try {
+                for (int i = 0; i < stalledCount; i++) {
+                    stalled.add(openStalledUpload(port));
+                }
+
+                // даем серверу время раздать медленные соединения потокам запросов
+                Thread.sleep(1000);
+
+                List<Long> latencies = probe(port);
+
+                Collections.sort(latencies);
+                System.out.printf(
+                        "%-16s %8d %7d/%-2d %10s %10s%n",
+                        mode.title,
+                        stalledCount,
+                        latencies.size(),
+                        PROBES,
+                        latencies.isEmpty() ? "-" : latencies.get(latencies.size() / 2),
+                        latencies.isEmpty() ? "-" : latencies.get(latencies.size() - 1)
+                );
+            } finally {
+                for (Socket socket : stalled) {
+                    socket.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Открывает соединение, которое присылает заголовки и начало файла, а затем молчит
+     */
+    private static Socket openStalledUpload(int port) throws IOException {
+        Socket socket = new Socket("localhost", port);
+        OutputStream outputStream = socket.getOutputStream();
+        String bodyStart = "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"slow.txt\"\r\n"
+                + "Content-Type: text/plain\r\n\r\n"
+                + "#Chapter one\r\n";
+
+        outputStream.write((
+                "POST /api/v1/files/parser HTTP/1.1\r\n"
+                + "Host: localhost:" + port + "\r\n"
+                + "Content-Type: multipart/form-data; boundary=" + BOUNDARY + "\r\n"
+                + "Accept: text/html\r\n"
+                + "Content-Length: 1048576\r\n\r\n"
+                + bodyStart
+        ).getBytes(StandardCharsets.UTF_8));
+        outputStream.flush();
+
+        return socket;
+    }
+
+    /**
+     * Отправляет быстрые запросы одновременно и возвращает задержки тех, что успели выполниться
+     */
+    private static List<Long> probe(int port) throws Exception {
+        HttpClient client = HttpClient.newBuilder().connectTimeout(PROBE_TIMEOUT).build();
+        byte[] body = ("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"fast.txt\"\r\n"
+                + "Content-Type: text/plain\r\n\r\n"
+                + "#Chapter one\r\ntext\r\n"
+                + "--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8);
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/v1/files/parser"))
+                .timeout(PROBE_TIMEOUT)
+                .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                .header("Accept", "text/html")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        List<Long> latencies = new ArrayList<>();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Long>> futures = new ArrayList<>();
+
+            for (int i = 0; i < PROBES; i++) {
+                futures.add(executor.submit(() -> {
+                    long start = System.nanoTime();
+                    HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+
+                    return response.statusCode() == 200 ? (System.nanoTime() - start) / 1_000_000 : null;
+                }));
+            }
+
+            for (Future<Long> future : futures) {
+                try {
+                    Long latency = future.get();
+
+                    if (latency != null) {
+                        latencies.add(latency);
+                    }
+                } catch (Exception e) {
+                    // запрос не дождался ответа
+                }
+            }
+        }
+
+        return latencies;
+    }
+}
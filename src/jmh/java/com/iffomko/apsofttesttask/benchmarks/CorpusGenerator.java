@@ -0,0 +1,155 @@
+package com.iffomko.apsofttesttask.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * <p>Генератор текстовых файлов для бенчмарков.</p>
+ * <p>Файлы генерируются детерминированно (по фиксированному seed), поэтому замеры разных версий
+ * парсера можно сравнивать между собой. Размер задается в байтах UTF-8 и никогда не превышается.</p>
+ * <p>Если запустить класс как программу, то он запишет по файлу каждого вида в указанную директорию,
+ * чтобы те же файлы можно было отправить на запущенный сервер.</p>
+ */
+public final class CorpusGenerator {
+    /**
+     * Максимальный размер загружаемого файла, см. <code>spring.servlet.multipart.maxFileSize</code>
+     */
+    public static final int MAX_FILE_SIZE = 8 * 1024 * 1024;
+
+    private static final long SEED = 42;
+    private static final String[] WORDS = {
+            "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit",
+            "текст", "раздел", "глава", "абзац", "строчка", "документ", "парсер", "Jack"
+    };
+    private static final int MAX_DEPTH = 32;
+
+    /**
+     * Вид сгенерированного файла
+     */
+    public enum Shape {
+        /**
+         * Обычный текст без разделов, переводы строк LF
+         */
+        FLAT,
+        /**
+         * Разделы, вложенность которых растет до 32 символов '#' и снова падает, под каждым по паре абзацев
+         */
+        NESTED_SECTIONS,
+        /**
+         * Почти каждая строчка является разделом, поэтому содержание такое же большое, как и текст
+         */
+        SECTION_HEAVY,
+        /**
+         * Текст с разделами, где переводы строк случайно чередуются между CR, LF и CRLF
+         */
+        MIXED_LINE_BREAKS
+    }
+
+    private CorpusGenerator() {
+    }
+
+    /**
+     * Генерирует файл
+     * @param shape вид файла
+     * @param size размер файла в байтах
+     * @return байты файла в UTF-8
+     */
+    public static byte[] generate(Shape shape, int size) {
+        Random random = new Random(SEED);
+        ByteArrayOutputStream output = new ByteArrayOutputStream(size);
+        StringBuilder line = new StringBuilder();
+
+        for (int index = 0; ; index++) {
+            line.setLength(0);
+            appendLine(shape, random, index, line);
+            line.append(getSeparator(shape, random));
+
+            byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+
+            if (output.size() + bytes.length > size) {
+                break;
+            }
+
+            output.writeBytes(bytes);
+        }
+
+        return output.toByteArray();
+    }
+
+    private static void appendLine(Shape shape, Random random, int index, StringBuilder line) {
+        switch (shape) {
+            case FLAT -> appendWords(random, line, 4 + random.nextInt(16));
+            case NESTED_SECTIONS -> {
+                if (index % 3 == 0) {
+                    int step = (index / 3) % (2 * MAX_DEPTH - 2);
+                    int depth = step < MAX_DEPTH ? step + 1 : 2 * MAX_DEPTH - 1 - step;
+
+                    line.append("#".repeat(depth));
+                    appendWords(random, line, 1 + random.nextInt(4));
+                } else {
+                    appendWords(random, line, 4 + random.nextInt(16));
+                }
+            }
+            case SECTION_HEAVY -> {
+                if (random.nextInt(8) != 0) {
+                    line.append("#".repeat(1 + random.nextInt(3)));
+                }
+
+                appendWords(random, line, 1 + random.nextInt(4));
+            }
+            case MIXED_LINE_BREAKS -> {
+                int kind = random.nextInt(5);
+
+                if (kind == 0) {
+                    line.append("#".repeat(1 + random.nextInt(3)));
+                }
+
+                if (kind != 1) {
+                    appendWords(random, line, 2 + random.nextInt(12));
+                }
+            }
+        }
+    }
+
+    private static void appendWords(Random random, StringBuilder line, int count) {
+        for (int i = 0; i < count; i++) {
+            if (i != 0) {
+                line.append(' ');
+            }
+
+            line.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+    }
+
+    private static String getSeparator(Shape shape, Random random) {
+        if (shape != Shape.MIXED_LINE_BREAKS) {
+            return "\n";
+        }
+
+        return switch (random.nextInt(3)) {
+            case 0 -> "\r";
+            case 1 -> "\n";
+            default -> "\r\n";
+        };
+    }
+
+    /**
+     * Записывает по файлу каждого вида размером в максимальный загружаемый файл
+     * @param args директория, в которую пишутся файлы (по умолчанию <code>target/corpus</code>)
+     */
+    public static void main(String[] args) throws IOException {
+        Path directory = Path.of(args.length > 0 ? args[0] : "target/corpus");
+
+        Files.createDirectories(directory);
+
+        for (Shape shape : Shape.values()) {
+            Path file = directory.resolve(shape.name().toLowerCase() + ".txt");
+            Files.write(file, generate(shape, MAX_FILE_SIZE));
+            System.out.println(file.toAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.iffomko.apsofttesttask.benchmarks;
+
+import com.iffomko.apsofttesttask.services.lines.LineSplitter;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Сгенерированный файл, общий для всех бенчмарков: в виде байтов, загруженного файла и уже разбитых строчек
+ */
+@State(Scope.Benchmark)
+public class CorpusState {
+    @Param({"FLAT", "NESTED_SECTIONS", "SECTION_HEAVY", "MIXED_LINE_BREAKS"})
+    public CorpusGenerator.Shape shape;
+
+    /**
+     * Размер файла в байтах: небольшой файл и файл на пределе <code>spring.servlet.multipart.maxFileSize</code>
+     */
+    @Param({"65536", "8388608"})
+    public int size;
+
+    public byte[] bytes;
+    public MockMultipartFile file;
+    public List<String> lines;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        bytes = CorpusGenerator.generate(shape, size);
+        file = new MockMultipartFile("file", "file.txt", MediaType.TEXT_PLAIN_VALUE, bytes);
+        lines = new ArrayList<>();
+
+        LineSplitter.split(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8, lines::add);
+    }
+}
@@ -0,0 +1,116 @@
+package com.iffomko.apsofttesttask.benchmarks;
+
+import com.iffomko.apsofttesttask.services.lines.LineSplitter;
+import com.iffomko.apsofttesttask.services.parser.IntoHtmlFileParser;
+import com.iffomko.apsofttesttask.services.store.DocumentPatch;
+import com.iffomko.apsofttesttask.services.store.DocumentPatcher;
+import com.iffomko.apsofttesttask.services.store.DocumentStore;
+import com.iffomko.apsofttesttask.services.store.StoredDocumentWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Правка сохраненного документа в 8 Мб против повторной загрузки всего документа.</p>
+ * <p>Правка заменяет <code>editLines</code> строчек в середине документа на <code>editLines + 1</code> строчек,
+ * поэтому все разделы после правки получают новые номера строчек. Время правки должно расти
+ * с размером правки, а не с размером документа.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentPatchBenchmark {
+    @Param({"NESTED_SECTIONS", "SECTION_HEAVY"})
+    public CorpusGenerator.Shape shape;
+
+    @Param({"1", "100", "10000"})
+    public int editLines;
+
+    private final IntoHtmlFileParser fileParser = new IntoHtmlFileParser('#');
+    private Path directory;
+    private DocumentStore store;
+    private DocumentPatcher patcher;
+    private byte[] bytes;
+    private String documentId;
+    private DocumentPatch patch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("patch-benchmark-");
+        store = new DocumentStore(directory, Duration.ZERO);
+        patcher = new DocumentPatcher(store, fileParser);
+        bytes = CorpusGenerator.generate(shape, CorpusGenerator.MAX_FILE_SIZE);
+        documentId = store();
+
+        int linesCount = (int) new String(bytes, StandardCharsets.UTF_8).lines().count();
+        List<String> lines = new ArrayList<>();
+
+        for (int i = 0; i <= editLines; i++) {
+            lines.add(i % 3 == 0 ? "##Edited section " + i : "edited paragraph " + i);
+        }
+
+        patch = new DocumentPatch(linesCount / 2, linesCount / 2 + editLines, lines);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    /**
+     * Повторная загрузка всего документа, от размера правки не зависит
+     */
+    @Benchmark
+    public void storeDocument() throws IOException {
+        delete(store());
+    }
+
+    /**
+     * Правка сохраненного документа
+     */
+    @Benchmark
+    public void patchDocument() throws IOException {
+        delete(patcher.patch(documentId, patch).orElseThrow());
+    }
+
+    private String store() throws IOException {
+        try (StoredDocumentWriter writer = store.create()) {
+            fileParser.parse(
+                    consumer -> LineSplitter.split(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8, consumer),
+                    writer.getOutputStream(),
+                    writer
+            );
+
+            return writer.commit();
+        }
+    }
+
+    private void delete(String id) throws IOException {
+        Files.delete(directory.resolve(id + ".html"));
+        Files.delete(directory.resolve(id + ".idx"));
+    }
+}
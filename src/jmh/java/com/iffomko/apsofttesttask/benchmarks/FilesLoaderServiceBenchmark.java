@@ -0,0 +1,91 @@
+package com.iffomko.apsofttesttask.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iffomko.apsofttesttask.FilesLoaderFixture;
+import com.iffomko.apsofttesttask.services.FilesLoaderService;
+import com.iffomko.apsofttesttask.services.cache.DocumentModelCache;
+import com.iffomko.apsofttesttask.services.concurrency.ParserExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Полный путь обработки файла в сервисе: проверка типа, кэш, чтение, разбор и запись ответа.</p>
+ * <p>По умолчанию кэш выключен, чтобы замерялся сам разбор. С кэшем все вызовы, кроме первого, являются попаданиями.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilesLoaderServiceBenchmark {
+    /**
+     * Размер кэша, см. <code>parser.cache.maxSize</code>. Кэш разобранных документов
+     * (<code>parser.cache.modelMaxSize</code>) того же размера
+     */
+    @Param({"0MB", "64MB"})
+    public String cacheSize;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Path directory;
+    private FilesLoaderService filesLoaderService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("service-benchmark-");
+        filesLoaderService = new FilesLoaderFixture(directory)
+                .documentCache(DataSize.parse(cacheSize))
+                .documentModelCache(new DocumentModelCache(DataSize.parse(cacheSize)))
+                .objectMapper(objectMapper)
+                .parserExecutor(new ParserExecutor(0, -1, Duration.ofSeconds(1)))
+                .maxFileSize(DataSize.ofBytes(CorpusGenerator.MAX_FILE_SIZE))
+                .filesLoaderService();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    /**
+     * Ответ в JSON, вместе с сериализацией, которую делает контроллер
+     */
+    @Benchmark
+    public void parseFile(CorpusState corpus) throws IOException {
+        ResponseEntity<?> response = filesLoaderService.parseFile(corpus.file);
+
+        objectMapper.writeValue(OutputStream.nullOutputStream(), response.getBody());
+    }
+
+    /**
+     * Ответ в виде HTML без JSON обертки
+     */
+    @Benchmark
+    public void parseFileToHtml(CorpusState corpus) throws IOException {
+        ResponseEntity<StreamingResponseBody> response = filesLoaderService.parseFileToHtml(corpus.file);
+
+        response.getBody().writeTo(OutputStream.nullOutputStream());
+    }
+}
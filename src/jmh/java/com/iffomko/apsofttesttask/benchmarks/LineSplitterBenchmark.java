@@ -0,0 +1,43 @@
+package com.iffomko.apsofttesttask.benchmarks;
+
+import com.iffomko.apsofttesttask.services.lines.LineSplitter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Разбиение загруженного файла на строчки.</p>
+ * <p>Повторяет то, что делает <code>UploadReader.getLines</code> при каждом обходе файла:
+ * открывает поток загруженного файла и разбивает его на строчки.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LineSplitterBenchmark {
+    @Benchmark
+    public void getLines(CorpusState corpus, Blackhole blackhole) throws IOException {
+        try (InputStream inputStream = corpus.file.getInputStream()) {
+            LineSplitter.split(inputStream, StandardCharsets.UTF_8, blackhole::consume);
+        }
+    }
+
+    /**
+     * Прежнее разбиение через регулярное выражение, для сравнения
+     */
+    @Benchmark
+    public String[] legacySplit(CorpusState corpus) {
+        return new String(corpus.bytes, StandardCharsets.UTF_8).split("\r|\n|\r\n");
+    }
+}
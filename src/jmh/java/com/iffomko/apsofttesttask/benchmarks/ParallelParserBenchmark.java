@@ -0,0 +1,78 @@
+package com.iffomko.apsofttesttask.benchmarks;
+
+import com.iffomko.apsofttesttask.services.lines.LineSplitter;
+import com.iffomko.apsofttesttask.services.parser.IntoHtmlFileParser;
+import com.iffomko.apsofttesttask.services.parser.ParallelIntoHtmlFileParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Масштабирование параллельного разбора одного документа в 8 Мб по количеству потоков.</p>
+ * <p>Для сравнения рядом замеряется последовательный потоковый разбор тех же байтов.
+ * Ускорение имеет смысл смотреть только на машине, где ядер не меньше, чем потоков.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelParserBenchmark {
+    @Param({"NESTED_SECTIONS", "MIXED_LINE_BREAKS"})
+    public CorpusGenerator.Shape shape;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private final IntoHtmlFileParser fileParser = new IntoHtmlFileParser('#');
+    private ParallelIntoHtmlFileParser parallelFileParser;
+    private byte[] bytes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bytes = CorpusGenerator.generate(shape, CorpusGenerator.MAX_FILE_SIZE);
+        parallelFileParser = new ParallelIntoHtmlFileParser(fileParser, true, threads, DataSize.ofKilobytes(64));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        parallelFileParser.destroy();
+    }
+
+    /**
+     * Последовательный потоковый разбор, от количества потоков не зависит
+     */
+    @Benchmark
+    public void sequential() throws IOException {
+        fileParser.parse(
+                consumer -> LineSplitter.split(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8, consumer),
+                OutputStream.nullOutputStream()
+        );
+    }
+
+    /**
+     * Параллельный разбор частями в <code>ForkJoinPool</code>
+     */
+    @Benchmark
+    public void parallel() throws IOException {
+        parallelFileParser.parse(bytes, StandardCharsets.UTF_8, OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,77 @@
+package com.iffomko.apsofttesttask.benchmarks;
+
+import com.iffomko.apsofttesttask.services.lines.LineSource;
+import com.iffomko.apsofttesttask.services.lines.LineSplitter;
+import com.iffomko.apsofttesttask.services.parser.IntoHtmlFileParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Парсер сам по себе, без чтения файла: строчки уже разбиты заранее.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+    private final IntoHtmlFileParser fileParser = new IntoHtmlFileParser('#');
+
+    /**
+     * Разбор списка строчек в строку, как раньше работал сервис
+     */
+    @Benchmark
+    public String parseList(CorpusState corpus) {
+        return fileParser.parse(corpus.lines);
+    }
+
+    /**
+     * Потоковый разбор, результат которого никуда не сохраняется
+     */
+    @Benchmark
+    public void parseStream(CorpusState corpus) throws IOException {
+        fileParser.parse(LineSource.of(corpus.lines), OutputStream.nullOutputStream());
+    }
+
+    /**
+     * Разбиение байтов файла на строчки <code>String</code> вместе с потоковым разбором
+     */
+    @Benchmark
+    public void splitAndParseStream(CorpusState corpus) throws IOException {
+        fileParser.parse(
+                consumer -> LineSplitter.split(new ByteArrayInputStream(corpus.bytes), StandardCharsets.UTF_8, consumer),
+                OutputStream.nullOutputStream()
+        );
+    }
+
+    /**
+     * Разбиение байтов файла в <code>IndexedDocument</code> вместе с отрисовкой прямо из байтов.
+     * С <code>-prof gc</code> видно, насколько меньше памяти выделяется на строчку, чем в <code>splitAndParseStream</code>
+     */
+    @Benchmark
+    public void indexAndParse(CorpusState corpus) throws IOException {
+        fileParser.parse(fileParser.index(corpus.bytes), OutputStream.nullOutputStream());
+    }
+
+    /**
+     * Только дерево разделов, без отрисовки текста
+     */
+    @Benchmark
+    public Object sectionTree(CorpusState corpus) throws IOException {
+        return fileParser.getSectionTree(LineSource.of(corpus.lines));
+    }
+}
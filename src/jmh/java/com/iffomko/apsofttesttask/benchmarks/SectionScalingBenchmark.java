@@ -0,0 +1,59 @@
+package com.iffomko.apsofttesttask.benchmarks;
+
+import com.iffomko.apsofttesttask.services.lines.LineSource;
+import com.iffomko.apsofttesttask.services.parser.IntoHtmlFileParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Рост времени разбора с количеством разделов.</p>
+ * <p>Документ из одних разделов с короткими параграфами. Разделов в 4 раза больше - и время разбора должно вырасти
+ * примерно в 4 раза: если оно растет в 16 раз, то разбор снова стал квадратичным по количеству разделов.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SectionScalingBenchmark {
+    @Param({"25000", "100000"})
+    public int headingsCount;
+
+    private final IntoHtmlFileParser fileParser = new IntoHtmlFileParser('#');
+    private List<String> lines;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(headingsCount);
+
+        lines = new ArrayList<>(headingsCount * 2);
+
+        for (int i = 0; i < headingsCount; i++) {
+            lines.add("#".repeat(1 + random.nextInt(4)) + "Section " + i);
+            lines.add("text of the section " + i);
+        }
+    }
+
+    @Benchmark
+    public void parse() throws IOException {
+        fileParser.parse(LineSource.of(lines), OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,53 @@
+package com.iffomko.apsofttesttask.config;
+
+import jakarta.servlet.MultipartConfigElement;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.web.servlet.MultipartProperties;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.DispatcherServlet;
+
+/**
+ * <p>Лимит <code>multipart/form-data</code> для больших документов.</p>
+ * <p>Tomcat принимает части загрузки во временные файлы еще до контроллера, и лимит на это задается для сервлета
+ * целиком. Поэтому общий лимит (<code>spring.servlet.multipart.*</code>) остается небольшим, как у обычного режима,
+ * а <code>/api/v1/files/parser/large</code> и <code>POST /api/v1/files/jobs</code> обслуживает отдельный
+ * <code>DispatcherServlet</code> с тем же контекстом и лимитом <code>parser.largeFile.maxFileSize</code>.</p>
+ */
+@Configuration
+public class LargeUploadConfiguration {
+    /**
+     * Пути, на которые загружаются большие документы
+     */
+    private static final String[] LARGE_UPLOAD_PATHS = {"/api/v1/files/parser/large", "/api/v1/files/jobs"};
+    /**
+     * Запас размера запроса сверх размера файла на границы и заголовки частей
+     */
+    private static final long REQUEST_OVERHEAD = DataSize.ofMegabytes(1).toBytes();
+
+    @Bean
+    public ServletRegistrationBean<DispatcherServlet> largeUploadDispatcherServlet(
+            WebApplicationContext context,
+            MultipartProperties multipartProperties,
+            @Value("${parser.largeFile.maxFileSize}") DataSize maxLargeFileSize
+    ) {
+        ServletRegistrationBean<DispatcherServlet> registration = new ServletRegistrationBean<>(
+                new DispatcherServlet(context),
+                LARGE_UPLOAD_PATHS
+        );
+        String location = multipartProperties.getLocation();
+
+        registration.setName("largeUploadDispatcherServlet");
+        registration.setMultipartConfig(new MultipartConfigElement(
+                location != null ? location : "",
+                maxLargeFileSize.toBytes(),
+                maxLargeFileSize.toBytes() + REQUEST_OVERHEAD,
+                (int) multipartProperties.getFileSizeThreshold().toBytes()
+        ));
+
+        return registration;
+    }
+}
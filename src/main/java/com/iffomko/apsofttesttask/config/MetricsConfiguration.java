@@ -0,0 +1,46 @@
+package com.iffomko.apsofttesttask.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iffomko.apsofttesttask.services.metrics.ParserMetrics;
+import com.iffomko.apsofttesttask.services.responses.FilesLoaderResponse;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * <p>Замер сериализации ответов <code>FilesLoaderResponse</code> в JSON.</p>
+ * <p>Ответ сериализуется уже после того, как контроллер вернул его, поэтому время замеряется в конвертере.
+ * Конвертер заменяет стандартный конвертер Jackson из Spring Boot и использует тот же <code>ObjectMapper</code>.</p>
+ */
+@Configuration
+public class MetricsConfiguration {
+    @Bean
+    public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(
+            ObjectMapper objectMapper,
+            ParserMetrics parserMetrics
+    ) {
+        return new MappingJackson2HttpMessageConverter(objectMapper) {
+            @Override
+            protected void writeInternal(
+                    Object object,
+                    Type type,
+                    HttpOutputMessage outputMessage
+            ) throws IOException, HttpMessageNotWritableException {
+                if (!(object instanceof FilesLoaderResponse)) {
+                    super.writeInternal(object, type, outputMessage);
+                    return;
+                }
+
+                long start = System.nanoTime();
+
+                super.writeInternal(object, type, outputMessage);
+                parserMetrics.recordSerialization(System.nanoTime() - start);
+            }
+        };
+    }
+}
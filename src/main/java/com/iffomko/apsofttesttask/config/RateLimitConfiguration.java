@@ -0,0 +1,44 @@
+package com.iffomko.apsofttesttask.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iffomko.apsofttesttask.controllers.ClientRateLimitFilter;
+import com.iffomko.apsofttesttask.services.concurrency.ClientRateLimiter;
+import com.iffomko.apsofttesttask.services.metrics.ParserMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * <p>Ограничение частоты запросов каждого клиента к <code>/api/v1/files/*</code>. Включается через
+ * <code>parser.rateLimit.enabled=true</code>.</p>
+ * <p><code>ParserExecutor</code> защищает сервис от перегрузки в целом, а это ограничение не дает одному
+ * клиенту занять все места в его очереди.</p>
+ */
+@Configuration
+@ConditionalOnProperty(name = "parser.rateLimit.enabled", havingValue = "true")
+public class RateLimitConfiguration {
+    @Bean
+    public ClientRateLimiter clientRateLimiter(
+            @Value("${parser.rateLimit.capacity}") int capacity,
+            @Value("${parser.rateLimit.refillPerSecond}") double refillPerSecond,
+            @Value("${parser.rateLimit.maxClients}") long maxClients
+    ) {
+        return new ClientRateLimiter(capacity, refillPerSecond, maxClients);
+    }
+
+    @Bean
+    public FilterRegistrationBean<ClientRateLimitFilter> clientRateLimitFilter(
+            ClientRateLimiter clientRateLimiter,
+            ObjectMapper objectMapper,
+            ParserMetrics parserMetrics
+    ) {
+        FilterRegistrationBean<ClientRateLimitFilter> registration = new FilterRegistrationBean<>(
+                new ClientRateLimitFilter(clientRateLimiter, objectMapper, parserMetrics)
+        );
+        registration.addUrlPatterns("/api/v1/files/*");
+
+        return registration;
+    }
+}
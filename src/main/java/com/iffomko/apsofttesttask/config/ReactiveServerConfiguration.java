@@ -0,0 +1,96 @@
+package com.iffomko.apsofttesttask.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iffomko.apsofttesttask.controllers.reactive.ReactiveClientRateLimitFilter;
+import com.iffomko.apsofttesttask.controllers.reactive.ReactiveFilesLoaderHandler;
+import com.iffomko.apsofttesttask.controllers.reactive.ReactiveParserServer;
+import com.iffomko.apsofttesttask.services.concurrency.ClientRateLimiter;
+import com.iffomko.apsofttesttask.services.concurrency.MemoryBudget;
+import com.iffomko.apsofttesttask.services.concurrency.ParserExecutor;
+import com.iffomko.apsofttesttask.services.metrics.ParserMetrics;
+import com.iffomko.apsofttesttask.services.parser.IFileParser;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.multipart.DefaultPartHttpMessageReader;
+import org.springframework.http.codec.multipart.MultipartHttpMessageReader;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.adapter.WebHttpHandlerBuilder;
+
+import java.util.Optional;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
+import static org.springframework.web.reactive.function.server.RequestPredicates.accept;
+import static org.springframework.web.reactive.function.server.RequestPredicates.contentType;
+
+/**
+ * <p>Реактивный вариант endpoint'а разбора на отдельном порту <code>parser.reactive.port</code>.
+ * Включается через <code>parser.reactive.enabled=true</code>.</p>
+ * <p>Endpoint тот же, что и <code>POST /api/v1/files/parser</code> с <code>Accept: text/html</code>,
+ * и использует тот же пул разбора, бюджет памяти и метрики, что и сервлетный.</p>
+ * <p>Если включено <code>parser.rateLimit.enabled</code>, то запросы на этот порт проходят через
+ * <code>ReactiveClientRateLimitFilter</code> с тем же <code>ClientRateLimiter</code>, что и сервлетные.</p>
+ */
+@Configuration
+@ConditionalOnProperty(name = "parser.reactive.enabled", havingValue = "true")
+public class ReactiveServerConfiguration {
+    @Bean
+    public ReactiveFilesLoaderHandler reactiveFilesLoaderHandler(
+            @Qualifier("intoHtmlFileParser") IFileParser fileParser,
+            ParserExecutor parserExecutor,
+            MemoryBudget memoryBudget,
+            ParserMetrics parserMetrics,
+            @Value("${parser.maxFileSize}") DataSize maxFileSize
+    ) {
+        return new ReactiveFilesLoaderHandler(fileParser, parserExecutor, memoryBudget, parserMetrics, maxFileSize.toBytes());
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> reactiveParserRoutes(ReactiveFilesLoaderHandler handler) {
+        return RouterFunctions.route(
+                POST("/api/v1/files/parser")
+                        .and(contentType(MediaType.MULTIPART_FORM_DATA))
+                        .and(accept(MediaType.TEXT_HTML)),
+                handler::parseFileToHtml
+        );
+    }
+
+    @Bean
+    public ReactiveParserServer reactiveParserServer(
+            RouterFunction<ServerResponse> reactiveParserRoutes,
+            Optional<ClientRateLimiter> clientRateLimiter,
+            ObjectMapper objectMapper,
+            ParserMetrics parserMetrics,
+            @Value("${parser.reactive.port}") int port,
+            @Value("${parser.maxFileSize}") DataSize maxFileSize
+    ) {
+        DefaultPartHttpMessageReader partReader = new DefaultPartHttpMessageReader();
+        // файл больше лимита отклоняется еще при чтении запроса, а не после того, как он лег на диск целиком
+        partReader.setMaxDiskUsagePerPart(maxFileSize.toBytes());
+
+        ServerCodecConfigurer codecConfigurer = ServerCodecConfigurer.create();
+        codecConfigurer.defaultCodecs().multipartReader(new MultipartHttpMessageReader(partReader));
+
+        // ServerRequest.multipartData() читает части кодеками обмена, а не HandlerStrategies,
+        // поэтому кодеки передаются в сам HttpHandler. Он же удаляет временные файлы частей после ответа
+        WebHttpHandlerBuilder httpHandlerBuilder = WebHttpHandlerBuilder
+                .webHandler(RouterFunctions.toWebHandler(reactiveParserRoutes))
+                .codecConfigurer(codecConfigurer);
+
+        clientRateLimiter.ifPresent(rateLimiter -> httpHandlerBuilder.filter(
+                new ReactiveClientRateLimitFilter(rateLimiter, objectMapper, parserMetrics)
+        ));
+
+        HttpHandler httpHandler = httpHandlerBuilder.build();
+
+        return new ReactiveParserServer(httpHandler, port);
+    }
+}
@@ -0,0 +1,44 @@
+package com.iffomko.apsofttesttask.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+
+import java.util.concurrent.Executors;
+
+/**
+ * <p>Режим, в котором запросы обрабатываются в виртуальных потоках. Включается через
+ * <code>parser.virtualThreads.enabled=true</code>.</p>
+ * <p>Поток запроса большую часть времени заблокирован на чтении тела <code>multipart/form-data</code>
+ * или на записи ответа медленному клиенту. Виртуальный поток в это время не занимает поток операционной системы,
+ * поэтому медленные клиенты больше не исчерпывают пул Tomcat. Сам разбор файла при этом все равно
+ * выполняется в ограниченном пуле <code>ParserExecutor</code>.</p>
+ */
+@Configuration
+@ConditionalOnProperty(name = "parser.virtualThreads.enabled", havingValue = "true")
+public class VirtualThreadsConfiguration {
+    /**
+     * Tomcat выполняет каждый запрос в новом виртуальном потоке вместо своего пула
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadsProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    /**
+     * Потоковые ответы (<code>StreamingResponseBody</code>) тоже пишутся в виртуальных потоках,
+     * а не в ограниченном пуле <code>applicationTaskExecutor</code>
+     */
+    @Bean(name = {
+            TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+            AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME
+    })
+    public AsyncTaskExecutor applicationTaskExecutor() {
+        return new TaskExecutorAdapter(Executors.newVirtualThreadPerTaskExecutor());
+    }
+}
@@ -0,0 +1,66 @@
+package com.iffomko.apsofttesttask.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iffomko.apsofttesttask.services.concurrency.ClientRateLimiter;
+import com.iffomko.apsofttesttask.services.metrics.ParserMetrics;
+import com.iffomko.apsofttesttask.services.responses.FilesLoaderErrorResponse;
+import com.iffomko.apsofttesttask.services.responses.utils.FileLoaderResponseCodes;
+import com.iffomko.apsofttesttask.services.responses.utils.FileLoaderResponseMessages;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * <p>Фильтр, который отклоняет запросы клиента, превысившего ограничение <code>ClientRateLimiter</code>,
+ * с кодом <code>429</code> и заголовком <code>Retry-After</code>.</p>
+ * <p>Это фильтр, а не перехватчик Spring MVC: запрос отклоняется до того, как <code>DispatcherServlet</code>
+ * прочитает тело <code>multipart/form-data</code>, поэтому отклоненная загрузка не занимает ни память, ни диск.</p>
+ * <p>Клиент определяется по адресу, с которого пришел запрос. Если перед сервисом стоит прокси, то адрес
+ * клиента берется из <code>X-Forwarded-For</code> только при <code>server.forward-headers-strategy</code>.</p>
+ */
+@Slf4j
+public class ClientRateLimitFilter extends OncePerRequestFilter {
+    private final ClientRateLimiter rateLimiter;
+    private final ObjectMapper objectMapper;
+    private final ParserMetrics parserMetrics;
+
+    public ClientRateLimitFilter(ClientRateLimiter rateLimiter, ObjectMapper objectMapper, ParserMetrics parserMetrics) {
+        this.rateLimiter = rateLimiter;
+        this.objectMapper = objectMapper;
+        this.parserMetrics = parserMetrics;
+    }
+
+    @Override
+    protected void doFilterInternal(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            FilterChain filterChain
+    ) throws ServletException, IOException {
+        String client = request.getRemoteAddr();
+        long retryAfter = rateLimiter.tryAcquire(client);
+
+        if (retryAfter == 0) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        log.debug(String.format("Rate limit exceeded for client %s", client));
+        parserMetrics.recordResponse(FileLoaderResponseCodes.RATE_LIMIT_EXCEEDED);
+
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), new FilesLoaderErrorResponse(
+                FileLoaderResponseMessages.RATE_LIMIT_EXCEEDED.getMessage(),
+                FileLoaderResponseCodes.RATE_LIMIT_EXCEEDED.name()
+        ));
+    }
+}
@@ -0,0 +1,87 @@
+package com.iffomko.apsofttesttask.controllers;
+
+import com.iffomko.apsofttesttask.services.DocumentsService;
+import com.iffomko.apsofttesttask.services.store.DocumentPatch;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Контроллер, который обслуживает сохраненные документы
+ */
+@RestController
+@RequestMapping("api/v1/files")
+public class DocumentsController {
+    private final DocumentsService documentsService;
+
+    /**
+     * @param documentsService класс-сервис, который обслуживает этот контроллер
+     */
+    @Autowired
+    public DocumentsController(DocumentsService documentsService) {
+        this.documentsService = documentsService;
+    }
+
+    /**
+     * Endpoint, который разбирает текстовый файл, сохраняет документ и индекс его разделов на диск
+     * и возвращает идентификатор документа
+     * @param textFile текстовый файл полученный из сети
+     */
+    @PostMapping(
+            path = "/documents",
+            consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<?> handlePostDocument(@RequestParam("file") MultipartFile textFile) {
+        return documentsService.storeDocument(textFile);
+    }
+
+    /**
+     * Endpoint, который возвращает весь сохраненный HTML документ
+     * @param documentId идентификатор документа
+     */
+    @GetMapping(path = "/documents/{documentId}", produces = MediaType.TEXT_HTML_VALUE)
+    public ResponseEntity<StreamingResponseBody> handleGetDocument(@PathVariable String documentId) {
+        return documentsService.getDocument(documentId);
+    }
+
+    /**
+     * Endpoint, который применяет к сохраненному документу правку строчек
+     * и возвращает идентификатор нового документа
+     * @param documentId идентификатор документа
+     * @param patch правка: диапазон заменяемых строчек и новые строчки
+     */
+    @PatchMapping(
+            path = "/documents/{documentId}",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<?> handlePatchDocument(@PathVariable String documentId, @RequestBody DocumentPatch patch) {
+        return documentsService.patchDocument(documentId, patch);
+    }
+
+    /**
+     * Endpoint, который удаляет сохраненный документ
+     * @param documentId идентификатор документа
+     */
+    @DeleteMapping(path = "/documents/{documentId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> handleDeleteDocument(@PathVariable String documentId) {
+        return documentsService.deleteDocument(documentId);
+    }
+
+    /**
+     * Endpoint, который возвращает HTML одного раздела сохраненного документа
+     * @param documentId идентификатор документа
+     * @param sectionId идентификатор раздела, тот же, что и в ссылках содержания документа
+     */
+    @GetMapping(path = "/documents/{documentId}/sections/{sectionId}", produces = MediaType.TEXT_HTML_VALUE)
+    public ResponseEntity<StreamingResponseBody> handleGetDocumentSection(
+            @PathVariable String documentId,
+            @PathVariable String sectionId
+    ) {
+        return documentsService.getDocumentSection(documentId, sectionId);
+    }
+}
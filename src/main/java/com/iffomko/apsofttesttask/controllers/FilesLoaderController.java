@@ -2,10 +2,15 @@ package com.iffomko.apsofttesttask.controllers;
 
 import com.iffomko.apsofttesttask.services.FilesLoaderService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InputStream;
+import java.util.List;
 
 /**
  * Контроллер, который обслуживает файлы
@@ -26,15 +31,120 @@ public class FilesLoaderController {
     /**
      * Endpoint, который принимает текстовый файл и парсит его в html формат,
      * где сначала идет содержание текст (раздел помечается определяющим признаком в начале строки
-     * исходного текста), а затем сам текст
+     * исходного текста), а затем сам текст. Если ETag результата есть в <code>If-None-Match</code>,
+     * то файл не разбирается и возвращается 304
+     * @param textFile текстовый файл полученный из сети
+     * @param ifNoneMatch заголовок <code>If-None-Match</code>
+     */
+    @PostMapping(
+            path = "/parser",
+            consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<?> handlePostFileParser(
+            @RequestParam("file") MultipartFile textFile,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+    ) {
+        return filesLoaderService.parseFile(textFile, ifNoneMatch);
+    }
+
+    /**
+     * Тот же endpoint, что и <code>handlePostFileParser</code>, но для клиентов,
+     * которые передали заголовок <code>Accept: text/html</code>. HTML документ
+     * возвращается в теле ответа как есть и пишется в него по мере разбора файла,
+     * сжатым, если клиент это разрешил в <code>Accept-Encoding</code>
      * @param textFile текстовый файл полученный из сети
+     * @param acceptEncoding заголовок <code>Accept-Encoding</code>
+     * @param ifNoneMatch заголовок <code>If-None-Match</code>
      */
     @PostMapping(
             path = "/parser",
             consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.TEXT_HTML_VALUE
+    )
+    public ResponseEntity<StreamingResponseBody> handlePostFileParserToHtml(
+            @RequestParam("file") MultipartFile textFile,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+    ) {
+        return filesLoaderService.parseFileToHtml(textFile, acceptEncoding, ifNoneMatch);
+    }
+
+    /**
+     * Тот же endpoint, что и <code>handlePostFileParserToHtml</code>, но для клиентов, которые присылают файл
+     * прямо телом запроса, без <code>multipart/form-data</code>. Тело читается из потока запроса один раз
+     * и целиком в памяти не держится
+     * @param body поток тела запроса
+     * @param contentLength заголовок <code>Content-Length</code>
+     * @param acceptEncoding заголовок <code>Accept-Encoding</code>
+     * @param ifNoneMatch заголовок <code>If-None-Match</code>
+     */
+    @PostMapping(
+            path = "/parser",
+            consumes = {MediaType.TEXT_PLAIN_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE},
+            produces = MediaType.TEXT_HTML_VALUE
+    )
+    public ResponseEntity<StreamingResponseBody> handlePostRawFileParserToHtml(
+            InputStream body,
+            @RequestHeader(value = HttpHeaders.CONTENT_LENGTH, required = false) Long contentLength,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+    ) {
+        return filesLoaderService.parseBodyToHtml(
+                body,
+                contentLength != null ? contentLength : -1,
+                acceptEncoding,
+                ifNoneMatch
+        );
+    }
+
+    /**
+     * Endpoint для больших документов (сотни мегабайт). Возвращает HTML документ как есть, как и
+     * <code>handlePostFileParserToHtml</code>, но файл разбирается с диска, а не из памяти
+     * @param textFile текстовый файл полученный из сети
+     * @param acceptEncoding заголовок <code>Accept-Encoding</code>
+     * @param ifNoneMatch заголовок <code>If-None-Match</code>
+     */
+    @PostMapping(
+            path = "/parser/large",
+            consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.TEXT_HTML_VALUE
+    )
+    public ResponseEntity<StreamingResponseBody> handlePostLargeFileParser(
+            @RequestParam("file") MultipartFile textFile,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+    ) {
+        return filesLoaderService.parseLargeFileToHtml(textFile, acceptEncoding, ifNoneMatch);
+    }
+
+    /**
+     * Endpoint, который возвращает только дерево разделов текстового файла в JSON, без самого документа.
+     * Подходит клиентам, которым нужна только навигация
+     * @param textFile текстовый файл полученный из сети
+     */
+    @PostMapping(
+            path = "/parser/sections",
+            consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<?> handlePostFileSections(@RequestParam("file") MultipartFile textFile) {
+        return filesLoaderService.parseSections(textFile);
+    }
+
+    /**
+     * Endpoint, который принимает сразу несколько текстовых файлов (несколько частей <code>file</code>)
+     * и возвращает JSON массив с результатом разбора каждого из них в том же порядке
+     * @param textFiles текстовые файлы полученные из сети
+     */
+    @PostMapping(
+            path = "/parser/batch",
+            consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    public ResponseEntity<?> handlePostFileParser(@RequestParam("file") MultipartFile textFile) {
-        return filesLoaderService.parseFile(textFile);
+    public ResponseEntity<StreamingResponseBody> handlePostFilesParserBatch(
+            @RequestParam("file") List<MultipartFile> textFiles
+    ) {
+        return filesLoaderService.parseFiles(textFiles);
     }
 }
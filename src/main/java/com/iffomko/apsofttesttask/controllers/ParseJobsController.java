@@ -0,0 +1,71 @@
+package com.iffomko.apsofttesttask.controllers;
+
+import com.iffomko.apsofttesttask.services.ParseJobsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Контроллер, который обслуживает фоновые задачи разбора больших документов
+ */
+@RestController
+@RequestMapping("api/v1/files")
+public class ParseJobsController {
+    private final ParseJobsService parseJobsService;
+
+    /**
+     * @param parseJobsService класс-сервис, который обслуживает этот контроллер
+     */
+    @Autowired
+    public ParseJobsController(ParseJobsService parseJobsService) {
+        this.parseJobsService = parseJobsService;
+    }
+
+    /**
+     * Endpoint, который ставит большой текстовый файл в очередь фонового разбора и сразу возвращает
+     * <code>202 Accepted</code> с идентификатором задачи, не дожидаясь разбора
+     * @param textFile текстовый файл полученный из сети
+     */
+    @PostMapping(
+            path = "/jobs",
+            consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<?> handlePostJob(@RequestParam("file") MultipartFile textFile) {
+        return parseJobsService.submitJob(textFile);
+    }
+
+    /**
+     * Endpoint, который возвращает состояние задачи фонового разбора. С параметром <code>wait</code>
+     * ответ приходит, когда задача завершится или пройдет столько секунд
+     * @param jobId идентификатор задачи
+     * @param wait сколько секунд ждать завершения задачи
+     */
+    @GetMapping(path = "/jobs/{jobId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<?>> handleGetJob(
+            @PathVariable String jobId,
+            @RequestParam(value = "wait", required = false) Long wait
+    ) {
+        return parseJobsService.getJob(jobId, wait != null ? Duration.ofSeconds(wait) : null);
+    }
+
+    /**
+     * Endpoint, который возвращает HTML документ завершенной задачи фонового разбора
+     * @param jobId идентификатор задачи
+     * @param acceptEncoding заголовок <code>Accept-Encoding</code>
+     */
+    @GetMapping(path = "/jobs/{jobId}/result", produces = MediaType.TEXT_HTML_VALUE)
+    public ResponseEntity<StreamingResponseBody> handleGetJobResult(
+            @PathVariable String jobId,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) {
+        return parseJobsService.getJobResult(jobId, acceptEncoding);
+    }
+}
@@ -0,0 +1,48 @@
+package com.iffomko.apsofttesttask.controllers;
+
+import com.iffomko.apsofttesttask.services.RenderService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Контроллер, который отрисовывает файлы в разных форматах
+ */
+@RestController
+@RequestMapping("api/v1/files")
+public class RenderController {
+    private final RenderService renderService;
+
+    /**
+     * @param renderService класс-сервис, который обслуживает этот контроллер
+     */
+    @Autowired
+    public RenderController(RenderService renderService) {
+        this.renderService = renderService;
+    }
+
+    /**
+     * Endpoint, который принимает текстовый файл и возвращает документ в формате из параметра <code>format</code>
+     * или, если его нет, из заголовка <code>Accept</code>: HTML, Markdown, JSON или только содержание простым текстом.
+     * Другой формат того же файла не разбирает его заново, а только отрисовывает
+     * @param textFile текстовый файл полученный из сети
+     * @param format формат документа: <code>html</code>, <code>markdown</code>, <code>json</code> или <code>toc</code>
+     * @param accept заголовок <code>Accept</code>
+     * @param acceptEncoding заголовок <code>Accept-Encoding</code>
+     * @param ifNoneMatch заголовок <code>If-None-Match</code>
+     */
+    @PostMapping(path = "/parser/render", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<StreamingResponseBody> handlePostFileRender(
+            @RequestParam("file") MultipartFile textFile,
+            @RequestParam(value = "format", required = false) String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+    ) {
+        return renderService.renderFile(textFile, format, accept, acceptEncoding, ifNoneMatch);
+    }
+}
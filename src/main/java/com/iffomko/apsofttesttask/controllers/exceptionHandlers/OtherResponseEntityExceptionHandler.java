@@ -4,12 +4,14 @@ import com.iffomko.apsofttesttask.controllers.exceptionHandlers.utils.ResponseEn
 import com.iffomko.apsofttesttask.controllers.exceptionHandlers.utils.ResponseEntityExceptionHandlerMessages;
 import com.iffomko.apsofttesttask.controllers.exceptionHandlers.responses.SizeLimitExceededExceptionResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.tomcat.util.http.fileupload.impl.SizeException;
 import org.apache.tomcat.util.http.fileupload.impl.SizeLimitExceededException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 
 import java.text.MessageFormat;
 
@@ -46,4 +48,39 @@ public class OtherResponseEntityExceptionHandler {
                 ex.getPermittedSize()
         ));
     }
+
+    /**
+     * Обрабатывает исключение <code>MaxUploadSizeExceededException</code>, в которое Spring оборачивает
+     * превышение <code>spring.servlet.multipart.maxFileSize</code> при разборе <code>multipart/form-data</code>
+     * @param ex перехваченное исключение
+     * @param request сам запрос
+     * @return ответ для клиента в формате JSON
+     */
+    @ExceptionHandler(value = MaxUploadSizeExceededException.class)
+    public ResponseEntity<SizeLimitExceededExceptionResponse> MaxUploadSizeExceededExceptionHandler(
+            MaxUploadSizeExceededException ex,
+            WebRequest request
+    ) {
+        long actualSize = -1;
+        long permittedSize = ex.getMaxUploadSize();
+
+        if (ex.getRootCause() instanceof SizeException sizeException) {
+            actualSize = sizeException.getActualSize();
+            permittedSize = sizeException.getPermittedSize();
+        }
+
+        log.debug(String.format(
+                "%s, actual size: %s, permitted size: %s",
+                ResponseEntityExceptionHandlerMessages.SIZE_LIMIT_EXCEEDED_EXCEPTION.getMessage(),
+                actualSize,
+                permittedSize
+        ));
+        return ResponseEntity.badRequest().body(new SizeLimitExceededExceptionResponse(
+                ResponseEntityExceptionHandlerMessages.SIZE_LIMIT_EXCEEDED_EXCEPTION.getMessage(),
+                ResponseEntityExceptionHandlerCodes.SIZE_LIMIT_EXCEEDED_EXCEPTION.name(),
+                HttpStatus.BAD_REQUEST.value(),
+                actualSize,
+                permittedSize
+        ));
+    }
 }
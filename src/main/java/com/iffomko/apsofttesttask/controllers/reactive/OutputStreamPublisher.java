@@ -0,0 +1,160 @@
+package com.iffomko.apsofttesttask.controllers.reactive;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+
+/**
+ * <p>Превращает запись в <code>OutputStream</code> в <code>Flux&lt;DataBuffer&gt;</code> с обратным давлением.</p>
+ * <p>Парсер пишет документ в обычный поток, поэтому запись выполняется в отдельном потоке (в пуле разбора),
+ * а записанные байты отдаются подписчику порциями по <code>chunkSize</code>. Порция отдается только тогда,
+ * когда подписчик ее запросил: если клиент читает медленно, то поток записи ждет, а не копит документ в памяти.
+ * Если подписчик отменил подписку (клиент отключился), то следующая запись бросает <code>IOException</code>,
+ * и разбор прекращается.</p>
+ */
+public final class OutputStreamPublisher {
+    /**
+     * Запись в поток, которая выполняется в потоке <code>executor</code>
+     */
+    @FunctionalInterface
+    public interface Writer {
+        void write(OutputStream outputStream) throws Exception;
+    }
+
+    private OutputStreamPublisher() {
+    }
+
+    /**
+     * @param writer запись в поток
+     * @param bufferFactory фабрика буферов ответа
+     * @param executor в каком пуле выполняется запись
+     * @param chunkSize размер одной порции
+     * @return порции записанных байтов, запись начинается при подписке
+     */
+    public static Flux<DataBuffer> publish(
+            Writer writer,
+            DataBufferFactory bufferFactory,
+            Executor executor,
+            int chunkSize
+    ) {
+        return Flux.create(sink -> {
+            DemandOutputStream outputStream = new DemandOutputStream(sink, bufferFactory, chunkSize);
+
+            sink.onRequest(outputStream::request);
+            sink.onDispose(outputStream::cancel);
+            executor.execute(() -> {
+                try (outputStream) {
+                    writer.write(outputStream);
+                } catch (Throwable e) {
+                    sink.error(e);
+                    return;
+                }
+
+                sink.complete();
+            });
+        });
+    }
+
+    /**
+     * Поток, который копит байты в порцию и отдает ее подписчику, дождавшись его запроса
+     */
+    private static final class DemandOutputStream extends OutputStream {
+        private final FluxSink<DataBuffer> sink;
+        private final DataBufferFactory bufferFactory;
+        private final int chunkSize;
+        private byte[] chunk;
+        private int count;
+        private long demand;
+        private boolean cancelled;
+
+        private DemandOutputStream(FluxSink<DataBuffer> sink, DataBufferFactory bufferFactory, int chunkSize) {
+            this.sink = sink;
+            this.bufferFactory = bufferFactory;
+            this.chunkSize = chunkSize;
+            this.chunk = new byte[chunkSize];
+        }
+
+        private synchronized void request(long n) {
+            demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            notifyAll();
+        }
+
+        private synchronized void cancel() {
+            cancelled = true;
+            notifyAll();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == chunk.length) {
+                emit();
+            }
+
+            chunk[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == chunk.length) {
+                    emit();
+                }
+
+                int length = Math.min(len, chunk.length - count);
+
+                System.arraycopy(b, off, chunk, count, length);
+                count += length;
+                off += length;
+                len -= length;
+            }
+        }
+
+        /**
+         * Порции и так отдаются по мере заполнения, а отдавать неполные порции на каждый <code>flush</code>
+         * рендерера значило бы дробить ответ
+         */
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() throws IOException {
+            emit();
+        }
+
+        private void emit() throws IOException {
+            if (count == 0) {
+                return;
+            }
+
+            awaitDemand();
+            sink.next(bufferFactory.wrap(ByteBuffer.wrap(chunk, 0, count)));
+            chunk = new byte[chunkSize];
+            count = 0;
+        }
+
+        private synchronized void awaitDemand() throws IOException {
+            try {
+                while (demand == 0 && !cancelled) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the subscriber");
+            }
+
+            if (cancelled) {
+                throw new IOException("The subscriber cancelled the response");
+            }
+
+            demand--;
+        }
+    }
+}
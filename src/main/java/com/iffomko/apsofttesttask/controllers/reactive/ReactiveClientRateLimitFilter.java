@@ -0,0 +1,86 @@
+package com.iffomko.apsofttesttask.controllers.reactive;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iffomko.apsofttesttask.services.concurrency.ClientRateLimiter;
+import com.iffomko.apsofttesttask.services.metrics.ParserMetrics;
+import com.iffomko.apsofttesttask.services.responses.FilesLoaderErrorResponse;
+import com.iffomko.apsofttesttask.services.responses.utils.FileLoaderResponseCodes;
+import com.iffomko.apsofttesttask.services.responses.utils.FileLoaderResponseMessages;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+
+/**
+ * <p>Реактивный вариант <code>ClientRateLimitFilter</code> для сервера на порту <code>parser.reactive.port</code>.</p>
+ * <p>Использует тот же <code>ClientRateLimiter</code>, что и сервлетный фильтр, поэтому у клиента один лимит
+ * на оба порта. Запрос отклоняется с кодом <code>429</code> и заголовком <code>Retry-After</code> до того,
+ * как обработчик начнет читать тело <code>multipart/form-data</code>.</p>
+ * <p>Клиент определяется по адресу, с которого пришло соединение: заголовки прокси на этом сервере не учитываются.</p>
+ */
+@Slf4j
+public class ReactiveClientRateLimitFilter implements WebFilter {
+    private final ClientRateLimiter rateLimiter;
+    private final ObjectMapper objectMapper;
+    private final ParserMetrics parserMetrics;
+
+    public ReactiveClientRateLimitFilter(ClientRateLimiter rateLimiter, ObjectMapper objectMapper, ParserMetrics parserMetrics) {
+        this.rateLimiter = rateLimiter;
+        this.objectMapper = objectMapper;
+        this.parserMetrics = parserMetrics;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String client = getClient(exchange);
+        long retryAfter = rateLimiter.tryAcquire(client);
+
+        if (retryAfter == 0) {
+            return chain.filter(exchange);
+        }
+
+        log.debug(String.format("Rate limit exceeded for client %s", client));
+        parserMetrics.recordResponse(FileLoaderResponseCodes.RATE_LIMIT_EXCEEDED);
+
+        ServerHttpResponse response = exchange.getResponse();
+        byte[] body;
+
+        try {
+            body = objectMapper.writeValueAsBytes(new FilesLoaderErrorResponse(
+                    FileLoaderResponseMessages.RATE_LIMIT_EXCEEDED.getMessage(),
+                    FileLoaderResponseCodes.RATE_LIMIT_EXCEEDED.name()
+            ));
+        } catch (JsonProcessingException e) {
+            return Mono.error(e);
+        }
+
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+    }
+
+    /**
+     * Возвращает адрес клиента в том же виде, что и <code>HttpServletRequest.getRemoteAddr</code>
+     * @param exchange обмен запроса
+     * @return адрес клиента
+     */
+    private static String getClient(ServerWebExchange exchange) {
+        InetSocketAddress address = exchange.getRequest().getRemoteAddress();
+
+        if (address == null) {
+            return "";
+        }
+
+        return address.getAddress() != null ? address.getAddress().getHostAddress() : address.getHostString();
+    }
+}
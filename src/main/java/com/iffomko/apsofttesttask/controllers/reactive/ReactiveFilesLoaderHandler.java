@@ -0,0 +1,272 @@
+package com.iffomko.apsofttesttask.controllers.reactive;
+
+import com.iffomko.apsofttesttask.controllers.exceptionHandlers.utils.ResponseEntityExceptionHandlerCodes;
+import com.iffomko.apsofttesttask.controllers.exceptionHandlers.utils.ResponseEntityExceptionHandlerMessages;
+import com.iffomko.apsofttesttask.services.concurrency.MemoryBudget;
+import com.iffomko.apsofttesttask.services.concurrency.ParserExecutor;
+import com.iffomko.apsofttesttask.services.concurrency.ParserOverloadedException;
+import com.iffomko.apsofttesttask.services.lines.DecodedTextInputStream;
+import com.iffomko.apsofttesttask.services.metrics.ParseObservation;
+import com.iffomko.apsofttesttask.services.metrics.ParserMetrics;
+import com.iffomko.apsofttesttask.services.parser.IFileParser;
+import com.iffomko.apsofttesttask.services.parser.IndexedDocument;
+import com.iffomko.apsofttesttask.services.responses.FilesLoaderErrorResponse;
+import com.iffomko.apsofttesttask.services.responses.utils.FileLoaderResponseCodes;
+import com.iffomko.apsofttesttask.services.responses.utils.FileLoaderResponseMessages;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.http.codec.multipart.Part;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.channel.AbortedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+
+/**
+ * <p>Реактивный вариант <code>POST /api/v1/files/parser</code> с <code>Accept: text/html</code>.</p>
+ * <p>Ни один поток не ждет, пока клиент пришлет файл или прочитает ответ: часть <code>file</code> читается
+ * как <code>Flux&lt;DataBuffer&gt;</code> и собирается в один массив (не больше <code>parser.maxFileSize</code>),
+ * текст проверяется, разбивается на строчки и разделы в пуле <code>ParserExecutor</code>, а HTML документ
+ * отдается как <code>Flux&lt;DataBuffer&gt;</code> порциями по запросу клиента.</p>
+ * <p>Когда запрос пришел целиком, резервируется память по его <code>Content-Length</code>, а перед разбором
+ * выдается допуск в пул разбора, поэтому перегрузка так же, как и у сервлетного endpoint'а, отвечает
+ * <code>503</code> с <code>Retry-After</code>. Кэша, ETag и сжатия у этого варианта нет.</p>
+ */
+@Slf4j
+public class ReactiveFilesLoaderHandler {
+    /**
+     * Во сколько раз пиковый расход памяти больше файла: сам файл, его текст в UTF-8 и индекс строчек
+     */
+    private static final int HTML_FOOTPRINT = 3;
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private final IFileParser fileParser;
+    private final ParserExecutor parserExecutor;
+    private final MemoryBudget memoryBudget;
+    private final ParserMetrics parserMetrics;
+    private final long maxFileSize;
+
+    /**
+     * @param fileParser парсер файлов
+     * @param parserExecutor пул потоков, в котором разбираются файлы
+     * @param memoryBudget бюджет памяти для файлов, которые разбираются в памяти
+     * @param parserMetrics метрики разбора файлов
+     * @param maxFileSize максимальный размер файла
+     */
+    public ReactiveFilesLoaderHandler(
+            IFileParser fileParser,
+            ParserExecutor parserExecutor,
+            MemoryBudget memoryBudget,
+            ParserMetrics parserMetrics,
+            long maxFileSize
+    ) {
+        this.fileParser = fileParser;
+        this.parserExecutor = parserExecutor;
+        this.memoryBudget = memoryBudget;
+        this.parserMetrics = parserMetrics;
+        this.maxFileSize = maxFileSize;
+    }
+
+    /**
+     * Разбирает файл из части <code>file</code> и возвращает HTML документ
+     * @param request запрос с <code>multipart/form-data</code>
+     * @return ответ с HTML документом или ошибка в виде JSON
+     */
+    public Mono<ServerResponse> parseFileToHtml(ServerRequest request) {
+        long expectedSize = Math.min(request.headers().contentLength().orElse(maxFileSize), maxFileSize);
+
+        return request.multipartData()
+                .flatMap(parts -> reserveMemory(expectedSize * HTML_FOOTPRINT)
+                        .flatMap(reservation -> parseFilePart(parts.getFirst("file"), reservation)
+                                .doOnError(e -> reservation.close())
+                                .doOnCancel(reservation::close)))
+                .onErrorResume(this::getErrorResponse);
+    }
+
+    /**
+     * Резервирует память уже после того, как запрос пришел целиком и части лежат на диске, поэтому медленный
+     * клиент не держит память, пока присылает файл. Резервирование может ждать, пока память освободится,
+     * поэтому выполняется не в потоке Netty
+     * @param bytes оценка пикового расхода памяти
+     * @return резервирование
+     */
+    private Mono<MemoryBudget.Reservation> reserveMemory(long bytes) {
+        return Mono.fromCallable(() -> memoryBudget.reserve(bytes)).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * @param part часть <code>file</code> или null
+     * @param reservation память, зарезервированная под разбор, ее освобождает ответ
+     * @return ответ с HTML документом или ошибка
+     */
+    private Mono<ServerResponse> parseFilePart(Part part, MemoryBudget.Reservation reservation) {
+        if (!(part instanceof FilePart filePart)) {
+            reservation.close();
+            return ServerResponse.badRequest()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(new FilesLoaderErrorResponse(
+                            ResponseEntityExceptionHandlerMessages.MISSING_SERVLET_REQUEST_PART.getMessage(),
+                            ResponseEntityExceptionHandlerCodes.MISSING_SERVLET_REQUEST_PART.name()
+                    ));
+        }
+
+        if (!MediaType.TEXT_PLAIN.equals(filePart.headers().getContentType())) {
+            log.error(String.format("Invalid content-type in the request: %s", filePart.headers().getContentType()));
+            reservation.close();
+            return getErrorResponse(
+                    HttpStatus.BAD_REQUEST,
+                    FileLoaderResponseMessages.INCORRECT_REQUEST_TYPE,
+                    FileLoaderResponseCodes.INCORRECT_REQUEST_TYPE
+            );
+        }
+
+        return DataBufferUtils.join(filePart.content(), (int) Math.min(maxFileSize, Integer.MAX_VALUE))
+                .map(ReactiveFilesLoaderHandler::toBytes)
+                .defaultIfEmpty(new byte[0])
+                .flatMap(content -> render(content, reservation));
+    }
+
+    /**
+     * Проверяет и индексирует текст в пуле разбора, а затем возвращает ответ, тело которого отрисовывается
+     * в том же пуле по мере того, как клиент его читает
+     * @param content байты файла
+     * @param reservation память, зарезервированная под разбор
+     * @return ответ с HTML документом или ошибка
+     */
+    private Mono<ServerResponse> render(byte[] content, MemoryBudget.Reservation reservation) {
+        ParserExecutor.Admission admission = parserExecutor.admit();
+        Executor executor = admission.asExecutor();
+        ParseObservation observation = parserMetrics.observe(content.length);
+
+        return Mono.fromCallable(() -> observation.index(decode(content)))
+                .subscribeOn(Schedulers.fromExecutor(executor))
+                .flatMap(document -> {
+                    Flux<DataBuffer> body = OutputStreamPublisher.publish(
+                            outputStream -> write(document, observation, outputStream),
+                            DefaultDataBufferFactory.sharedInstance,
+                            executor,
+                            CHUNK_SIZE
+                    ).doFinally(signal -> {
+                        admission.close();
+                        reservation.close();
+                    });
+
+                    parserMetrics.recordResponse(FileLoaderResponseCodes.SUCCESS);
+
+                    return ServerResponse.ok()
+                            .contentType(new MediaType(MediaType.TEXT_HTML, StandardCharsets.UTF_8))
+                            .body(BodyInserters.fromDataBuffers(body));
+                })
+                .doOnError(e -> admission.close());
+    }
+
+    private void write(IndexedDocument document, ParseObservation observation, OutputStream outputStream) throws IOException {
+        OutputStream countingStream = observation.countOutput(outputStream);
+
+        observation.timeRender(() -> fileParser.parse(document, countingStream));
+        observation.finish();
+    }
+
+    /**
+     * @param content байты файла в любой из кодировок, которые понимает <code>DecodedTextInputStream</code>
+     * @return текст в UTF-8
+     * @throws UnsupportedEncodingException возникает тогда, когда в файле некорректные байты
+     */
+    private static byte[] decode(byte[] content) throws IOException {
+        try (InputStream inputStream = new DecodedTextInputStream(new ByteArrayInputStream(content))) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    private static byte[] toBytes(DataBuffer dataBuffer) {
+        try {
+            byte[] bytes = new byte[dataBuffer.readableByteCount()];
+
+            dataBuffer.read(bytes);
+
+            return bytes;
+        } finally {
+            DataBufferUtils.release(dataBuffer);
+        }
+    }
+
+    private Mono<ServerResponse> getErrorResponse(
+            HttpStatus status,
+            FileLoaderResponseMessages message,
+            FileLoaderResponseCodes code
+    ) {
+        parserMetrics.recordResponse(code);
+
+        return ServerResponse.status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new FilesLoaderErrorResponse(message.getMessage(), code.name()));
+    }
+
+    /**
+     * Формирует ответ с ошибкой по исключению из реактивной цепочки
+     * @param e исключение
+     * @return ответ с ошибкой
+     */
+    private Mono<ServerResponse> getErrorResponse(Throwable e) {
+        if (e instanceof AbortedException) {
+            // клиент закрыл соединение, не дослав запрос: отвечать уже некому
+            log.debug(String.format("Connection closed by the client: %s", e.getMessage()));
+            return Mono.empty();
+        }
+
+        if (e instanceof ParserOverloadedException overloaded) {
+            log.error(String.format("Parser overloaded: %s", e.getMessage()));
+            parserMetrics.recordResponse(FileLoaderResponseCodes.SERVICE_OVERLOADED);
+
+            return ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(overloaded.getRetryAfterSeconds()))
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(new FilesLoaderErrorResponse(
+                            FileLoaderResponseMessages.SERVICE_OVERLOADED.getMessage(),
+                            FileLoaderResponseCodes.SERVICE_OVERLOADED.name()
+                    ));
+        }
+
+        if (e instanceof DataBufferLimitException) {
+            log.error(String.format("File size limit exceeded: %s", e.getMessage()));
+            return getErrorResponse(
+                    HttpStatus.BAD_REQUEST,
+                    FileLoaderResponseMessages.SIZE_LIMIT_EXCEEDED_EXCEPTION,
+                    FileLoaderResponseCodes.SIZE_LIMIT_EXCEEDED_EXCEPTION
+            );
+        }
+
+        if (e instanceof UnsupportedEncodingException) {
+            log.error(String.format("Unsupported encoding exception: %s", e.getMessage()));
+            return getErrorResponse(
+                    HttpStatus.BAD_REQUEST,
+                    FileLoaderResponseMessages.INCORRECT_ENCODING,
+                    FileLoaderResponseCodes.INCORRECT_ENCODING
+            );
+        }
+
+        log.error(String.format("Internal server error: %s", e.getMessage()), e);
+        return getErrorResponse(
+                HttpStatus.INTERNAL_SERVER_ERROR,
+                FileLoaderResponseMessages.INTERNAL_SERVER_ERROR,
+                FileLoaderResponseCodes.INTERNAL_SERVER_ERROR
+        );
+    }
+}
@@ -0,0 +1,64 @@
+package com.iffomko.apsofttesttask.controllers.reactive;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+
+/**
+ * <p>Отдельный сервер Reactor Netty для реактивного endpoint'а.</p>
+ * <p>Приложение остается сервлетным: основной API обслуживает Tomcat, а этот сервер поднимается рядом
+ * на своем порту вместе с контекстом и останавливается вместе с ним.</p>
+ */
+@Slf4j
+public class ReactiveParserServer implements SmartLifecycle {
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(10);
+
+    private final HttpHandler httpHandler;
+    private final int port;
+    private volatile DisposableServer server;
+
+    /**
+     * @param httpHandler обработчик запросов
+     * @param port порт сервера, 0 - любой свободный
+     */
+    public ReactiveParserServer(HttpHandler httpHandler, int port) {
+        this.httpHandler = httpHandler;
+        this.port = port;
+    }
+
+    /**
+     * @return порт, на котором сервер принимает запросы
+     */
+    public int getPort() {
+        return server != null ? server.port() : port;
+    }
+
+    @Override
+    public void start() {
+        server = HttpServer.create()
+                .port(port)
+                .handle(new ReactorHttpHandlerAdapter(httpHandler))
+                .bindNow();
+        log.info(String.format("Reactive parser endpoint started on port %d", server.port()));
+    }
+
+    @Override
+    public void stop() {
+        DisposableServer current = server;
+
+        if (current != null) {
+            current.disposeNow(SHUTDOWN_TIMEOUT);
+            server = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return server != null;
+    }
+}
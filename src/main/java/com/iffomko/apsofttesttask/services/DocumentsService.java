@@ -0,0 +1,263 @@
+package com.iffomko.apsofttesttask.services;
+
+import com.iffomko.apsofttesttask.services.concurrency.ParserExecutor;
+import com.iffomko.apsofttesttask.services.metrics.ParseObservation;
+import com.iffomko.apsofttesttask.services.metrics.ParserMetrics;
+import com.iffomko.apsofttesttask.services.parser.IntoHtmlFileParser;
+import com.iffomko.apsofttesttask.services.responses.FilesLoaderDocumentResponse;
+import com.iffomko.apsofttesttask.services.responses.FilesLoaderResponses;
+import com.iffomko.apsofttesttask.services.responses.utils.FileLoaderResponseCodes;
+import com.iffomko.apsofttesttask.services.responses.utils.FileLoaderResponseMessages;
+import com.iffomko.apsofttesttask.services.store.DocumentPatch;
+import com.iffomko.apsofttesttask.services.store.DocumentPatcher;
+import com.iffomko.apsofttesttask.services.store.DocumentStore;
+import com.iffomko.apsofttesttask.services.store.StoredDocumentWriter;
+import com.iffomko.apsofttesttask.services.store.StoredRange;
+import com.iffomko.apsofttesttask.services.uploads.UploadReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+/**
+ * Сервис, который сохраняет разобранные документы, правит их и отдает документ или его раздел по идентификатору
+ */
+@Service
+@Slf4j
+public class DocumentsService {
+    private final IntoHtmlFileParser fileParser;
+    private final UploadReader uploadReader;
+    private final FilesLoaderResponses responses;
+    private final ParserExecutor parserExecutor;
+    private final ParserMetrics parserMetrics;
+    private final DocumentStore documentStore;
+    private final DocumentPatcher documentPatcher;
+    private final long maxFileSize;
+
+    /**
+     * @param fileParser парсер файлов, который сообщает положения разделов для индекса хранилища
+     * @param uploadReader чтение загруженных файлов
+     * @param responses проверки загрузок и ответы с ошибками
+     * @param parserExecutor пул потоков, в котором разбираются файлы
+     * @param parserMetrics метрики разбора файлов
+     * @param documentStore хранилище разобранных документов
+     * @param documentPatcher правка документов из хранилища
+     * @param maxFileSize максимальный размер файла для обычного режима
+     */
+    @Autowired
+    public DocumentsService(
+            IntoHtmlFileParser fileParser,
+            UploadReader uploadReader,
+            FilesLoaderResponses responses,
+            ParserExecutor parserExecutor,
+            ParserMetrics parserMetrics,
+            DocumentStore documentStore,
+            DocumentPatcher documentPatcher,
+            @Value("${parser.maxFileSize}") DataSize maxFileSize
+    ) {
+        this.fileParser = fileParser;
+        this.uploadReader = uploadReader;
+        this.responses = responses;
+        this.parserExecutor = parserExecutor;
+        this.parserMetrics = parserMetrics;
+        this.documentStore = documentStore;
+        this.documentPatcher = documentPatcher;
+        this.maxFileSize = maxFileSize.toBytes();
+    }
+
+    /**
+     * <p>
+     *     Разбирает файл так же, как и <code>FilesLoaderService.parseFile</code>, но не возвращает документ,
+     *     а сохраняет его в хранилище вместе с индексом разделов и возвращает идентификатор документа. После этого
+     *     документ и любой его раздел можно получить по идентификатору, не загружая файл заново.
+     * </p>
+     * @param multipartFile файл полученный из сети
+     */
+    public ResponseEntity<?> storeDocument(MultipartFile multipartFile) {
+        try {
+            Optional<ResponseEntity<?>> rejection = responses.checkUpload(multipartFile, maxFileSize);
+
+            if (rejection.isPresent()) {
+                return rejection.get();
+            }
+
+            String documentId = parserExecutor.execute(() -> {
+                ParseObservation observation = parserMetrics.observe(multipartFile.getSize());
+
+                try (StoredDocumentWriter writer = documentStore.create()) {
+                    this.fileParser.parse(
+                            uploadReader.getLines(multipartFile, observation),
+                            observation.countOutput(writer.getOutputStream()),
+                            writer
+                    );
+                    observation.finish();
+
+                    return writer.commit();
+                }
+            });
+
+            parserMetrics.recordResponse(FileLoaderResponseCodes.SUCCESS);
+
+            return ResponseEntity
+                    .created(URI.create("documents/" + documentId))
+                    .body(new FilesLoaderDocumentResponse(FileLoaderResponseCodes.SUCCESS.name(), documentId));
+        } catch (Exception e) {
+            return responses.getErrorResponse(e);
+        }
+    }
+
+    /**
+     * <p>
+     *     Применяет к сохраненному документу правку строчек и сохраняет результат как новый документ,
+     *     старый документ при этом не меняется. Результат такой же, как если бы весь текст после правки
+     *     загрузили через <code>storeDocument</code>, но заново разбираются только новые строчки,
+     *     а остальная часть документа копируется из старого документа.
+     * </p>
+     * @param documentId идентификатор документа из <code>storeDocument</code>
+     * @param patch правка
+     */
+    public ResponseEntity<?> patchDocument(String documentId, DocumentPatch patch) {
+        try {
+            if (!isCorrectPatch(patch)) {
+                return responses.getErrorResponse(
+                        HttpStatus.BAD_REQUEST,
+                        FileLoaderResponseMessages.INCORRECT_PATCH,
+                        FileLoaderResponseCodes.INCORRECT_PATCH
+                );
+            }
+
+            Optional<String> patchedId = parserExecutor.execute(() -> documentPatcher.patch(documentId, patch));
+
+            if (patchedId.isEmpty()) {
+                return responses.getErrorResponse(
+                        HttpStatus.NOT_FOUND,
+                        FileLoaderResponseMessages.NOT_FOUND,
+                        FileLoaderResponseCodes.NOT_FOUND
+                );
+            }
+
+            parserMetrics.recordResponse(FileLoaderResponseCodes.SUCCESS);
+
+            return ResponseEntity
+                    .created(URI.create(patchedId.get()))
+                    .body(new FilesLoaderDocumentResponse(FileLoaderResponseCodes.SUCCESS.name(), patchedId.get()));
+        } catch (IllegalArgumentException e) {
+            log.error(String.format("Incorrect patch of the document %s: %s", documentId, e.getMessage()));
+            return responses.getErrorResponse(
+                    HttpStatus.BAD_REQUEST,
+                    FileLoaderResponseMessages.INCORRECT_PATCH,
+                    FileLoaderResponseCodes.INCORRECT_PATCH
+            );
+        } catch (Exception e) {
+            return responses.getErrorResponse(e);
+        }
+    }
+
+    /**
+     * Проверяет то, что можно проверить без документа: новые строчки есть и не содержат переводов строк
+     * @param patch правка
+     * @return true, если правка корректная
+     */
+    private boolean isCorrectPatch(DocumentPatch patch) {
+        if (patch == null || patch.lines() == null) {
+            return false;
+        }
+
+        for (String line : patch.lines()) {
+            if (line == null || line.indexOf('\r') >= 0 || line.indexOf('\n') >= 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Возвращает весь сохраненный документ
+     * @param documentId идентификатор документа из <code>storeDocument</code>
+     */
+    public ResponseEntity<StreamingResponseBody> getDocument(String documentId) {
+        try {
+            return toStoredRangeResponse(documentStore.findDocument(documentId));
+        } catch (Exception e) {
+            return responses.toStreamingResponse(responses.getErrorResponse(e));
+        }
+    }
+
+    /**
+     * <p>
+     *     Возвращает HTML одного раздела сохраненного документа вместе с его подразделами:
+     *     параграфы от параграфа раздела до следующего раздела такой же или меньшей вложенности.
+     *     С диска читаются только запись индекса и диапазон байтов этого раздела.
+     * </p>
+     * @param documentId идентификатор документа из <code>storeDocument</code>
+     * @param sectionId идентификатор раздела, тот же, что и в ссылках содержания
+     */
+    public ResponseEntity<StreamingResponseBody> getDocumentSection(String documentId, String sectionId) {
+        try {
+            return toStoredRangeResponse(documentStore.findSection(documentId, sectionId));
+        } catch (Exception e) {
+            return responses.toStreamingResponse(responses.getErrorResponse(e));
+        }
+    }
+
+    /**
+     * <p>
+     *     Удаляет сохраненный документ вместе с индексом разделов. Правка не меняет старый документ,
+     *     поэтому клиент, которому старая версия больше не нужна, удаляет ее сам, не дожидаясь
+     *     <code>parser.store.ttl</code>.
+     * </p>
+     * @param documentId идентификатор документа из <code>storeDocument</code> или <code>patchDocument</code>
+     */
+    public ResponseEntity<?> deleteDocument(String documentId) {
+        try {
+            if (!documentStore.delete(documentId)) {
+                return responses.getErrorResponse(
+                        HttpStatus.NOT_FOUND,
+                        FileLoaderResponseMessages.NOT_FOUND,
+                        FileLoaderResponseCodes.NOT_FOUND
+                );
+            }
+
+            parserMetrics.recordResponse(FileLoaderResponseCodes.SUCCESS);
+
+            return ResponseEntity.noContent().build();
+        } catch (Exception e) {
+            return responses.getErrorResponse(e);
+        }
+    }
+
+    /**
+     * Формирует ответ с диапазоном сохраненного документа или ошибку, если его нет
+     * @param range найденный диапазон
+     * @return потоковый ответ
+     */
+    private ResponseEntity<StreamingResponseBody> toStoredRangeResponse(Optional<StoredRange> range) {
+        if (range.isEmpty()) {
+            return responses.toStreamingResponse(responses.getErrorResponse(
+                    HttpStatus.NOT_FOUND,
+                    FileLoaderResponseMessages.NOT_FOUND,
+                    FileLoaderResponseCodes.NOT_FOUND
+            ));
+        }
+
+        StoredRange storedRange = range.get();
+
+        parserMetrics.recordResponse(FileLoaderResponseCodes.SUCCESS);
+
+        return ResponseEntity.ok()
+                .contentType(new MediaType(MediaType.TEXT_HTML, StandardCharsets.UTF_8))
+                .contentLength(storedRange.end() - storedRange.start())
+                .body(outputStream -> documentStore.copy(storedRange, outputStream));
+    }
+}
@@ -1,119 +1,733 @@
 package com.iffomko.apsofttesttask.services;
 
-import com.iffomko.apsofttesttask.services.responses.FilesLoaderErrorResponse;
+import com.iffomko.apsofttesttask.services.cache.HashedUpload;
+import com.iffomko.apsofttesttask.services.cache.ParsedDocumentCache;
+import com.iffomko.apsofttesttask.services.compression.CompressedDocument;
+import com.iffomko.apsofttesttask.services.compression.ContentCoding;
+import com.iffomko.apsofttesttask.services.compression.DocumentEncoder;
+import com.iffomko.apsofttesttask.services.compression.ResponseCompression;
+import com.iffomko.apsofttesttask.services.concurrency.MemoryBudget;
+import com.iffomko.apsofttesttask.services.concurrency.ParserExecutor;
+import com.iffomko.apsofttesttask.services.concurrency.ParserOverloadedException;
+import com.iffomko.apsofttesttask.services.concurrency.ResponseResources;
+import com.iffomko.apsofttesttask.services.etag.EntityTags;
+import com.iffomko.apsofttesttask.services.lines.DecodedTextInputStream;
+import com.iffomko.apsofttesttask.services.lines.MappedFileLineSource;
+import com.iffomko.apsofttesttask.services.metrics.ParseObservation;
+import com.iffomko.apsofttesttask.services.metrics.ParserMetrics;
+import com.iffomko.apsofttesttask.services.parser.IndexedDocument;
+import com.iffomko.apsofttesttask.services.parser.IntoHtmlFileParser;
+import com.iffomko.apsofttesttask.services.parser.ParallelIntoHtmlFileParser;
+import com.iffomko.apsofttesttask.services.parser.SectionNode;
 import com.iffomko.apsofttesttask.services.responses.FilesLoaderResponse;
+import com.iffomko.apsofttesttask.services.responses.FilesLoaderResponses;
+import com.iffomko.apsofttesttask.services.responses.FilesLoaderSectionsResponse;
 import com.iffomko.apsofttesttask.services.responses.utils.FileLoaderResponseCodes;
-import com.iffomko.apsofttesttask.services.parser.IFileParser;
-import com.iffomko.apsofttesttask.services.responses.utils.FileLoaderResponseMessages;
+import com.iffomko.apsofttesttask.services.spool.LimitedInputStream;
+import com.iffomko.apsofttesttask.services.spool.UploadSpool;
+import com.iffomko.apsofttesttask.services.uploads.UploadReader;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.http.HttpStatus;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.UnsupportedEncodingException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
- * Сервис с бизнес-логикой по обработке загружаемых файлов.
+ * Сервис с бизнес-логикой по обработке загружаемых файлов: разбор в JSON и HTML, пакетный разбор,
+ * режим больших документов и дерево разделов. Хранилище документов, отрисовка в других форматах и фоновые
+ * задачи вынесены в <code>DocumentsService</code>, <code>RenderService</code> и <code>ParseJobsService</code>.
  */
 @Service
 @Slf4j
 public class FilesLoaderService {
-    private final IFileParser fileParser;
+    /**
+     * Способ выполнить разбор файла: в пуле <code>ParserExecutor</code> или прямо в текущем потоке,
+     * если он сам уже из этого пула
+     */
+    @FunctionalInterface
+    private interface ParseRunner {
+        byte[] run(Callable<byte[]> parse) throws Exception;
+    }
+
+    private final IntoHtmlFileParser fileParser;
+    private final ParsedDocumentCache documentCache;
+    private final ObjectMapper objectMapper;
+    private final UploadSpool uploadSpool;
+    private final ParserExecutor parserExecutor;
+    private final ParallelIntoHtmlFileParser parallelFileParser;
+    private final ParserMetrics parserMetrics;
+    private final ResponseCompression responseCompression;
+    private final UploadReader uploadReader;
+    private final FilesLoaderResponses responses;
+    private final long maxFileSize;
+    private final long maxLargeFileSize;
     private final Charset charset;
 
     /**
-     * @param fileParser парсер файлов
+     * @param fileParser парсер файлов, который также строит дерево разделов
+     * @param documentCache кэш уже разобранных документов
+     * @param objectMapper сериализатор JSON для результатов пакетного разбора
+     * @param uploadSpool директория для временных файлов больших документов
+     * @param parserExecutor пул потоков, в котором разбираются файлы
+     * @param parallelFileParser парсер, который разбирает один большой файл на нескольких ядрах
+     * @param parserMetrics метрики разбора файлов
+     * @param responseCompression сжатие HTML документов в ответах
+     * @param uploadReader чтение загруженных файлов
+     * @param responses проверки загрузок и ответы с ошибками
+     * @param maxFileSize максимальный размер файла для обычного режима
+     * @param maxLargeFileSize максимальный размер файла для режима больших документов
      */
     @Autowired
-    public FilesLoaderService(@Qualifier("intoHtmlFileParser") IFileParser fileParser) {
+    public FilesLoaderService(
+            IntoHtmlFileParser fileParser,
+            ParsedDocumentCache documentCache,
+            ObjectMapper objectMapper,
+            UploadSpool uploadSpool,
+            ParserExecutor parserExecutor,
+            ParallelIntoHtmlFileParser parallelFileParser,
+            ParserMetrics parserMetrics,
+            ResponseCompression responseCompression,
+            UploadReader uploadReader,
+            FilesLoaderResponses responses,
+            @Value("${parser.maxFileSize}") DataSize maxFileSize,
+            @Value("${parser.largeFile.maxFileSize}") DataSize maxLargeFileSize
+    ) {
         this.fileParser = fileParser;
+        this.documentCache = documentCache;
+        this.objectMapper = objectMapper;
+        this.uploadSpool = uploadSpool;
+        this.parserExecutor = parserExecutor;
+        this.parallelFileParser = parallelFileParser;
+        this.parserMetrics = parserMetrics;
+        this.responseCompression = responseCompression;
+        this.uploadReader = uploadReader;
+        this.responses = responses;
+        this.maxFileSize = maxFileSize.toBytes();
+        this.maxLargeFileSize = maxLargeFileSize.toBytes();
         this.charset = StandardCharsets.UTF_8;
     }
 
     /**
-     * Разбивает строку на строчки по CRLF (либо CR, либо LF, либо то и то)
-     * @param bytes строчка в байтах
-     * @return список строчек
+     * <p>
+     *     Парсит текстовый файл из формата, где символ '#' указывает на начало раздела,
+     *     а количество повторений этого символа для раздела указывает на его вложенность,
+     *     в формат HTML, где сначала идет структура разделов, посредством которой
+     *     можно осуществлять навигацию по разделам, а затем сам текст.
+     * </p>
+     * <p>
+     *     Сам разбор выполняется в пуле <code>ParserExecutor</code>, а поток запроса только ждет результата.
+     *     Если включен <code>parser.parallel.enabled</code>, то большой файл еще и делится на части,
+     *     которые разбираются на нескольких ядрах.
+     * </p>
+     * @param multipartFile файл полученный из сети
      */
-    private List<String> getLines(byte[] bytes) {
-        String text = new String(bytes, charset);
+    public ResponseEntity<?> parseFile(MultipartFile multipartFile) {
+        return parseFile(multipartFile, null);
+    }
 
-        return Arrays.stream(text.split("\r|\n|\r\n")).collect(Collectors.toCollection(ArrayList::new));
+    /**
+     * Делает то же самое, что и <code>parseFile</code>, но если ETag документа есть в <code>If-None-Match</code>,
+     * то файл не разбирается и возвращается 304
+     * @param multipartFile файл полученный из сети
+     * @param ifNoneMatch значение заголовка <code>If-None-Match</code> или null
+     */
+    public ResponseEntity<?> parseFile(MultipartFile multipartFile, String ifNoneMatch) {
+        return parseFile(multipartFile, ifNoneMatch, parserExecutor::execute, true);
     }
 
     /**
-     * Переводит стек вызовов в строковое представление
-     * @param stackTraceElements сам стек вызовов
-     * @return строковое представление
+     * Делает то же самое, что и публичный <code>parseFile</code>
+     * @param multipartFile файл полученный из сети
+     * @param ifNoneMatch значение заголовка <code>If-None-Match</code> или null
+     * @param parseRunner способ выполнить разбор файла
+     * @param reserveMemory true, если память под разбор еще не зарезервирована
      */
-    private String stackTraceElementsToString(StackTraceElement[] stackTraceElements) {
-        StringBuilder stringView = new StringBuilder();
+    private ResponseEntity<?> parseFile(
+            MultipartFile multipartFile,
+            String ifNoneMatch,
+            ParseRunner parseRunner,
+            boolean reserveMemory
+    ) {
+        try {
+            Optional<ResponseEntity<?>> rejection = responses.checkUpload(multipartFile, maxFileSize);
 
-        for (StackTraceElement stackTraceElement : stackTraceElements) {
-            stringView.append(stackTraceElement);
-            stringView.append("\r\n");
-        }
+            if (rejection.isPresent()) {
+                return rejection.get();
+            }
+
+            // в пакете память уже зарезервирована до отправки задачи в пул
+            MemoryBudget.Reservation reservation = reserveMemory
+                    ? uploadReader.reserveMemory(multipartFile, UploadReader.JSON_FOOTPRINT)
+                    : null;
+
+            try (reservation) {
+                ParseObservation observation = parserMetrics.observe(multipartFile.getSize());
+                HashedUpload upload = uploadReader.read(multipartFile, observation);
+                String entityTag = EntityTags.weak(upload.key(), "json");
+
+                if (EntityTags.matches(ifNoneMatch, entityTag)) {
+                    return responses.getNotModifiedResponse(entityTag);
+                }
+
+                byte[] resultText = documentCache.getText(upload.key());
 
-        return stringView.toString();
+                if (resultText == null) {
+                    resultText = parseRunner.run(() -> {
+                        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                        OutputStream countingStream = observation.countOutput(outputStream);
+
+                        if (parallelFileParser.supports(upload.content().length)) {
+                            parallelFileParser.parse(upload.content(), charset, countingStream);
+                        } else {
+                            IndexedDocument document = uploadReader.getDocumentModel(upload, observation);
+                            observation.timeRender(() -> this.fileParser.parse(document, countingStream));
+                        }
+
+                        observation.finish();
+
+                        return outputStream.toByteArray();
+                    });
+
+                    if (documentCache.isEnabled()) {
+                        documentCache.putText(upload.key(), resultText);
+                    }
+                }
+
+                parserMetrics.recordResponse(FileLoaderResponseCodes.SUCCESS);
+
+                return ResponseEntity.ok()
+                        .eTag(entityTag)
+                        .body(new FilesLoaderResponse(
+                                FileLoaderResponseCodes.SUCCESS.name(),
+                                new String(resultText, charset)
+                        ));
+            }
+        } catch (Exception e) {
+            return responses.getErrorResponse(e);
+        }
     }
 
     /**
      * <p>
-     *     Парсит текстовый файл из формата, где символ '#' указывает на начало раздела,
-     *     а количество повторений этого символа для раздела указывает на его вложенность,
-     *     в формат HTML, где сначала идет структура разделов, посредством которой
-     *     можно осуществлять навигацию по разделам, а затем сам текст.
+     *     Возвращает только структуру разделов файла в виде дерева: у каждого раздела есть вложенность,
+     *     название, идентификатор (тот же, что и в HTML документе), диапазон строчек и подразделы.
+     * </p>
+     * <p>
+     *     Дерево строится за один обход строчек, а сам текст не отрисовывается, поэтому
+     *     это намного дешевле, чем разбирать весь документ ради содержания.
      * </p>
      * @param multipartFile файл полученный из сети
      */
-    public ResponseEntity<?> parseFile(MultipartFile multipartFile) {
+    public ResponseEntity<?> parseSections(MultipartFile multipartFile) {
         try {
-            if (!(Objects.equals(multipartFile.getContentType(), MediaType.TEXT_PLAIN_VALUE))) {
-                log.error(String.format(
-                        "Invalid content-type in the request: %s",
-                        multipartFile.getContentType()
-                ));
-                return ResponseEntity.badRequest().body(new FilesLoaderErrorResponse(
-                        FileLoaderResponseMessages.INCORRECT_REQUEST_TYPE.getMessage(),
-                        FileLoaderResponseCodes.INCORRECT_REQUEST_TYPE.name()
-                ));
+            Optional<ResponseEntity<?>> rejection = responses.checkUpload(multipartFile, maxFileSize);
+
+            if (rejection.isPresent()) {
+                return rejection.get();
             }
 
-            List<String> lines = getLines(multipartFile.getBytes());
+            List<SectionNode> sections = parserExecutor.execute(() -> {
+                long start = System.nanoTime();
+                List<SectionNode> tree = this.fileParser.getSectionTree(uploadReader.getLines(multipartFile));
 
-            String resultText = this.fileParser.parse(lines);
+                parserMetrics.recordOutline(System.nanoTime() - start);
 
-            return ResponseEntity.ok(new FilesLoaderResponse(
+                return tree;
+            });
+
+            parserMetrics.recordResponse(FileLoaderResponseCodes.SUCCESS);
+
+            return ResponseEntity.ok(new FilesLoaderSectionsResponse(
                     FileLoaderResponseCodes.SUCCESS.name(),
-                    resultText
-            ));
-        } catch (UnsupportedEncodingException e) {
-            log.error(String.format("Unsupported encoding exception: %s", e.getMessage()));
-            return ResponseEntity.badRequest().body(new FilesLoaderErrorResponse(
-                    FileLoaderResponseMessages.INCORRECT_ENCODING.getMessage(),
-                    FileLoaderResponseCodes.INCORRECT_ENCODING.name()
+                    sections
             ));
         } catch (Exception e) {
-            log.error(String.format(
-                    "Internal server error:\r\nmessage: %s\r\nstack trace: %s",
-                    e.getMessage(),
-                    stackTraceElementsToString(e.getStackTrace())
-            ));
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new FilesLoaderErrorResponse(
-                    FileLoaderResponseMessages.INTERNAL_SERVER_ERROR.getMessage(),
-                    FileLoaderResponseCodes.INTERNAL_SERVER_ERROR.name()
-            ));
+            return responses.getErrorResponse(e);
+        }
+    }
+
+    /**
+     * Дожидается результата разбора одного файла из пакета
+     * @param future результат разбора
+     * @return ответ для этого файла
+     * @throws IOException возникает тогда, когда поток, который пишет ответ, был прерван
+     */
+    private ResponseEntity<?> getBatchResult(Future<ResponseEntity<?>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the batch result");
+        } catch (ExecutionException e) {
+            return responses.getErrorResponse(e.getCause() instanceof Exception cause ? cause : e);
+        }
+    }
+
+    /**
+     * Резервирует память под разбор одного файла из пакета и отправляет его разбор в пул. Память резервируется
+     * в потоке, который пишет ответ, а не в потоке пула, поэтому пакет не занимает потоки пула ожиданием памяти,
+     * а следующий файл не начинает разбираться, пока для него нет памяти. Резервирование закрывает сам разбор,
+     * а если разбор отменили, то отмена
+     * @param admission допуск пакета в пул
+     * @param multipartFile файл полученный из сети
+     * @return результат разбора файла
+     * @throws IOException возникает тогда, когда поток, который пишет ответ, был прерван
+     */
+    private Future<ResponseEntity<?>> submitBatchFile(
+            ParserExecutor.Admission admission,
+            MultipartFile multipartFile
+    ) throws IOException {
+        MemoryBudget.Reservation reservation;
+
+        try {
+            reservation = uploadReader.reserveMemory(multipartFile, UploadReader.JSON_FOOTPRINT);
+        } catch (ParserOverloadedException e) {
+            return CompletableFuture.completedFuture(responses.getErrorResponse(e));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the memory budget");
+        }
+
+        FutureTask<ResponseEntity<?>> task = new FutureTask<>(() -> {
+            try (reservation) {
+                return parseFile(multipartFile, null, Callable::call, false);
+            }
+        }) {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                try {
+                    return super.cancel(mayInterruptIfRunning);
+                } finally {
+                    reservation.close();
+                }
+            }
+        };
+
+        admission.asExecutor().execute(task);
+
+        return task;
+    }
+
+    /**
+     * <p>
+     *     Пакетный вариант <code>parseFile</code>: разбирает сразу несколько файлов из одного запроса
+     *     параллельно в пуле <code>ParserExecutor</code> и возвращает JSON массив, где для каждого файла,
+     *     в том же порядке, в котором они были переданы, лежит такой же ответ, как и у <code>parseFile</code>.
+     *     Ошибка в одном файле не мешает остальным: у каждого элемента свой <code>code</code>.
+     * </p>
+     * <p>
+     *     Элементы массива пишутся в ответ сразу, как только готов очередной по порядку файл.
+     *     Вперед разбирается не больше двух файлов на поток пула, чтобы готовые, но еще не записанные
+     *     результаты не копились в памяти.
+     * </p>
+     * @param multipartFiles файлы полученные из сети
+     */
+    public ResponseEntity<StreamingResponseBody> parseFiles(List<MultipartFile> multipartFiles) {
+        int window = parserExecutor.getThreads() * 2;
+        ParserExecutor.Admission admission;
+
+        try {
+            admission = parserExecutor.admit();
+        } catch (ParserOverloadedException e) {
+            return responses.toStreamingResponse(responses.getErrorResponse(e));
+        }
+
+        ResponseResources resources = ResponseResources.open();
+
+        resources.add(admission);
+
+        StreamingResponseBody body = outputStream -> {
+            Deque<Future<ResponseEntity<?>>> pending = new ArrayDeque<>();
+
+            try (resources; JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.writeStartArray();
+
+                int next = 0;
+
+                while (next < multipartFiles.size() || !pending.isEmpty()) {
+                    for (; next < multipartFiles.size() && pending.size() < window; next++) {
+                        pending.add(submitBatchFile(admission, multipartFiles.get(next)));
+                    }
+
+                    // файл остается в очереди, пока ждет результата, чтобы при обрыве записи его разбор тоже отменился
+                    Object result = getBatchResult(pending.peek()).getBody();
+
+                    pending.remove();
+
+                    long start = System.nanoTime();
+
+                    objectMapper.writeValue(generator, result);
+                    parserMetrics.recordSerialization(System.nanoTime() - start);
+                }
+
+                generator.writeEndArray();
+            } catch (IOException | RuntimeException e) {
+                log.error(String.format("Failed to stream the batch result: %s", e.getMessage()));
+                throw e;
+            } finally {
+                pending.forEach(future -> future.cancel(true));
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    /**
+     * <p>
+     *     Делает то же самое, что и <code>parseFile</code>, но возвращает HTML документ
+     *     как есть, без JSON обертки. Документ пишется в ответ по мере разбора файла,
+     *     поэтому целиком в памяти не собирается и не экранируется.
+     * </p>
+     * <p>
+     *     Ошибки, которые удалось обнаружить до начала записи документа, возвращаются в виде JSON.
+     * </p>
+     * @param multipartFile файл полученный из сети
+     */
+    public ResponseEntity<StreamingResponseBody> parseFileToHtml(MultipartFile multipartFile) {
+        return parseFileToHtml(multipartFile, null, null);
+    }
+
+    /**
+     * <p>
+     *     Делает то же самое, что и <code>parseFileToHtml</code>, но сжимает документ в кодировании,
+     *     которое выбрано по заголовку <code>Accept-Encoding</code>. Сжатие идет прямо во время записи документа.
+     * </p>
+     * <p>
+     *     Документ из кэша отдается уже сжатым, так что повторная загрузка того же файла не тратит процессор на сжатие.
+     *     Если же ETag документа есть в <code>If-None-Match</code>, то файл не разбирается и возвращается 304.
+     * </p>
+     * @param multipartFile файл полученный из сети
+     * @param acceptEncoding значение заголовка <code>Accept-Encoding</code> или null
+     * @param ifNoneMatch значение заголовка <code>If-None-Match</code> или null
+     */
+    public ResponseEntity<StreamingResponseBody> parseFileToHtml(
+            MultipartFile multipartFile,
+            String acceptEncoding,
+            String ifNoneMatch
+    ) {
+        MemoryBudget.Reservation reservation = null;
+
+        try {
+            Optional<ResponseEntity<?>> rejection = responses.checkUpload(multipartFile, maxFileSize);
+
+            if (rejection.isPresent()) {
+                return responses.toStreamingResponse(rejection.get());
+            }
+
+            ContentCoding coding = responseCompression.negotiate(acceptEncoding);
+            ParseObservation observation = parserMetrics.observe(multipartFile.getSize());
+
+            reservation = uploadReader.reserveMemory(multipartFile, UploadReader.HTML_FOOTPRINT);
+
+            HashedUpload upload = uploadReader.read(multipartFile, observation);
+            String entityTag = EntityTags.of(upload.key(), FilesLoaderResponses.getHtmlVariant(coding));
+
+            if (EntityTags.matches(ifNoneMatch, entityTag)) {
+                return responses.getNotModifiedResponse(entityTag);
+            }
+
+            CompressedDocument cachedText = documentCache.get(upload.key());
+
+            if (cachedText != null) {
+                parserMetrics.recordResponse(FileLoaderResponseCodes.SUCCESS);
+                return responses.getHtmlResponse(coding, entityTag)
+                        .contentLength(cachedText.getEncodedLength(coding))
+                        .body(outputStream -> cachedText.writeTo(outputStream, coding));
+            }
+
+            ParserExecutor.Admission admission = parserExecutor.admit();
+            ResponseResources resources = ResponseResources.open();
+
+            resources.add(reservation);
+            resources.add(admission);
+
+            StreamingResponseBody body = outputStream -> resources.stream(
+                    admission,
+                    "Failed to stream the parsed file",
+                    () -> {
+                        try (DocumentEncoder encoder = responseCompression.encode(
+                                outputStream,
+                                coding,
+                                documentCache.isEnabled() ? documentCache.getMaxDocumentSize() : 0
+                        )) {
+                            IndexedDocument document = uploadReader.getDocumentModel(upload, observation);
+                            OutputStream countingStream = observation.countOutput(encoder);
+
+                            observation.timeRender(() -> this.fileParser.parse(document, countingStream));
+                            encoder.finish();
+                            observation.finish();
+
+                            encoder.getDocument().ifPresent(compressed -> documentCache.put(upload.key(), compressed));
+                        } catch (IOException | RuntimeException e) {
+                            parserMetrics.recordResponse(FileLoaderResponseCodes.INTERNAL_SERVER_ERROR);
+                            throw e;
+                        }
+
+                        parserMetrics.recordResponse(FileLoaderResponseCodes.SUCCESS);
+
+                        return null;
+                    }
+            );
+
+            // память освободит тело ответа, когда документ будет записан, или завершение асинхронного запроса
+            reservation = null;
+
+            return responses.getHtmlResponse(coding, entityTag).body(body);
+        } catch (Exception e) {
+            return responses.toStreamingResponse(responses.getErrorResponse(e));
+        } finally {
+            if (reservation != null) {
+                reservation.close();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     *     Режим больших документов: делает то же самое, что и <code>parseFileToHtml</code>, но для файлов
+     *     размером в сотни мегабайт. Загруженный файл переносится во временный файл и читается окнами через
+     *     <code>FileChannel.map</code>, содержание при разборе тоже складывается во временный файл,
+     *     а документ пишется в ответ по мере разбора. Поэтому расход памяти не зависит от размера файла.
+     * </p>
+     * <p>
+     *     Документы из этого режима не кэшируются: они больше любого разумного размера кэша.
+     * </p>
+     * @param multipartFile файл полученный из сети
+     */
+    public ResponseEntity<StreamingResponseBody> parseLargeFileToHtml(MultipartFile multipartFile) {
+        return parseLargeFileToHtml(multipartFile, null, null);
+    }
+
+    /**
+     * <p>
+     *     Делает то же самое, что и <code>parseLargeFileToHtml</code>, но сжимает документ в кодировании,
+     *     которое выбрано по заголовку <code>Accept-Encoding</code>.
+     * </p>
+     * <p>
+     *     Если ETag документа есть в <code>If-None-Match</code>, то файл не разбирается и возвращается 304.
+     *     Ключ документа здесь вычисляется отдельным чтением временного файла: файл слишком большой, чтобы держать его
+     *     в памяти, а ETag нужен раньше, чем начнется разбор. В этом же чтении проверяется кодировка файла.
+     * </p>
+     * @param multipartFile файл полученный из сети
+     * @param acceptEncoding значение заголовка <code>Accept-Encoding</code> или null
+     * @param ifNoneMatch значение заголовка <code>If-None-Match</code> или null
+     */
+    public ResponseEntity<StreamingResponseBody> parseLargeFileToHtml(
+            MultipartFile multipartFile,
+            String acceptEncoding,
+            String ifNoneMatch
+    ) {
+        Path uploadFile = null;
+        Path contentsFile = null;
+
+        try {
+            Optional<ResponseEntity<?>> rejection = responses.checkUpload(multipartFile, maxLargeFileSize);
+
+            if (rejection.isPresent()) {
+                return responses.toStreamingResponse(rejection.get());
+            }
+
+            ContentCoding coding = responseCompression.negotiate(acceptEncoding);
+            ParseObservation observation = parserMetrics.observe(multipartFile.getSize());
+
+            uploadFile = observation.timeRead(() -> uploadSpool.spool(multipartFile));
+
+            Path spooledFile = uploadFile;
+            DecodedTextInputStream text = new DecodedTextInputStream(Files.newInputStream(spooledFile));
+            String key;
+
+            try (text) {
+                key = observation.timeRead(() -> documentCache.getKey(text));
+            }
+
+            if (!text.isIdentity()) {
+                // парсер читает временный файл напрямую, поэтому BOM и другие кодировки надо убрать из самого файла
+                uploadFile = observation.timeRead(() -> uploadSpool.spoolText(spooledFile));
+            }
+
+            Path spooledUpload = uploadFile;
+            String entityTag = EntityTags.of(key, FilesLoaderResponses.getHtmlVariant(coding));
+
+            if (EntityTags.matches(ifNoneMatch, entityTag)) {
+                uploadSpool.delete(uploadFile);
+                return responses.getNotModifiedResponse(entityTag);
+            }
+
+            contentsFile = uploadSpool.createFile("contents-");
+
+            Path spooledContents = contentsFile;
+            ParserExecutor.Admission admission = parserExecutor.admit();
+            ResponseResources resources = ResponseResources.open();
+
+            resources.add(() -> uploadSpool.delete(spooledUpload, spooledContents));
+            resources.add(admission);
+
+            StreamingResponseBody body = outputStream -> resources.stream(
+                    admission,
+                    "Failed to stream the parsed large file",
+                    () -> {
+                        try (DocumentEncoder encoder = responseCompression.encode(outputStream, coding, 0)) {
+                            this.fileParser.parse(
+                                    observation.timeLines(new MappedFileLineSource(spooledUpload, charset)),
+                                    observation.countOutput(encoder),
+                                    spooledContents
+                            );
+                            encoder.finish();
+                            observation.finish();
+                        } catch (IOException | RuntimeException e) {
+                            parserMetrics.recordResponse(FileLoaderResponseCodes.INTERNAL_SERVER_ERROR);
+                            throw e;
+                        }
+
+                        parserMetrics.recordResponse(FileLoaderResponseCodes.SUCCESS);
+
+                        return null;
+                    }
+            );
+
+            return responses.getHtmlResponse(coding, entityTag).body(body);
+        } catch (Exception e) {
+            uploadSpool.delete(uploadFile, contentsFile);
+            return responses.toStreamingResponse(responses.getErrorResponse(e));
+        }
+    }
+
+    /**
+     * <p>
+     *     Делает то же самое, что и <code>parseFileToHtml</code>, но файл приходит телом запроса
+     *     (<code>text/plain</code> или <code>application/octet-stream</code>), а не частью
+     *     <code>multipart/form-data</code>. Поэтому нет ни поиска границ частей, ни временного файла Tomcat.
+     * </p>
+     * <p>
+     *     Тело читается из потока запроса один раз: по ходу чтения проверяется размер и кодировка, вычисляется ключ
+     *     документа, а текст в UTF-8 складывается во временный файл. Содержание документа идет раньше текста,
+     *     поэтому текст надо прочитать целиком еще до первого параграфа, и он лежит на диске, а не в памяти.
+     *     Дальше файл разбирается так же, как в режиме больших документов, а готовый документ попадает в кэш.
+     * </p>
+     * @param body поток тела запроса
+     * @param contentLength значение заголовка <code>Content-Length</code> или -1, если его нет
+     * @param acceptEncoding значение заголовка <code>Accept-Encoding</code> или null
+     * @param ifNoneMatch значение заголовка <code>If-None-Match</code> или null
+     */
+    public ResponseEntity<StreamingResponseBody> parseBodyToHtml(
+            InputStream body,
+            long contentLength,
+            String acceptEncoding,
+            String ifNoneMatch
+    ) {
+        Path uploadFile = null;
+        Path contentsFile = null;
+
+        try {
+            Optional<ResponseEntity<?>> rejection = responses.checkSize(contentLength, maxFileSize);
+
+            if (rejection.isPresent()) {
+                return responses.toStreamingResponse(rejection.get());
+            }
+
+            ContentCoding coding = responseCompression.negotiate(acceptEncoding);
+            LimitedInputStream limitedBody = new LimitedInputStream(body, maxFileSize);
+            String key;
+
+            uploadFile = uploadSpool.createFile("text-");
+
+            try (
+                    InputStream text = new DecodedTextInputStream(limitedBody);
+                    OutputStream spoolStream = Files.newOutputStream(uploadFile)
+            ) {
+                key = documentCache.getKey(text, spoolStream);
+            }
+
+            // время приема тела по сети в замер не входит, как и у загрузок multipart/form-data
+            ParseObservation observation = parserMetrics.observe(limitedBody.getCount());
+            String entityTag = EntityTags.of(key, FilesLoaderResponses.getHtmlVariant(coding));
+
+            if (EntityTags.matches(ifNoneMatch, entityTag)) {
+                uploadSpool.delete(uploadFile);
+                return responses.getNotModifiedResponse(entityTag);
+            }
+
+            CompressedDocument cachedText = documentCache.get(key);
+
+            if (cachedText != null) {
+                uploadSpool.delete(uploadFile);
+                parserMetrics.recordResponse(FileLoaderResponseCodes.SUCCESS);
+                return responses.getHtmlResponse(coding, entityTag)
+                        .contentLength(cachedText.getEncodedLength(coding))
+                        .body(outputStream -> cachedText.writeTo(outputStream, coding));
+            }
+
+            contentsFile = uploadSpool.createFile("contents-");
+
+            Path spooledUpload = uploadFile;
+            Path spooledContents = contentsFile;
+            ParserExecutor.Admission admission = parserExecutor.admit();
+            ResponseResources resources = ResponseResources.open();
+
+            resources.add(() -> uploadSpool.delete(spooledUpload, spooledContents));
+            resources.add(admission);
+
+            StreamingResponseBody responseBody = outputStream -> resources.stream(
+                    admission,
+                    "Failed to stream the parsed request body",
+                    () -> {
+                        try (DocumentEncoder encoder = responseCompression.encode(
+                                outputStream,
+                                coding,
+                                documentCache.isEnabled() ? documentCache.getMaxDocumentSize() : 0
+                        )) {
+                            this.fileParser.parse(
+                                    observation.timeLines(new MappedFileLineSource(spooledUpload, charset)),
+                                    observation.countOutput(encoder),
+                                    spooledContents
+                            );
+                            encoder.finish();
+                            observation.finish();
+
+                            encoder.getDocument().ifPresent(compressed -> documentCache.put(key, compressed));
+                        } catch (IOException | RuntimeException e) {
+                            parserMetrics.recordResponse(FileLoaderResponseCodes.INTERNAL_SERVER_ERROR);
+                            throw e;
+                        }
+
+                        parserMetrics.recordResponse(FileLoaderResponseCodes.SUCCESS);
+
+                        return null;
+                    }
+            );
+
+            return responses.getHtmlResponse(coding, entityTag).body(responseBody);
+        } catch (Exception e) {
+            uploadSpool.delete(uploadFile, contentsFile);
+            return responses.toStreamingResponse(responses.getErrorResponse(e));
         }
     }
 }
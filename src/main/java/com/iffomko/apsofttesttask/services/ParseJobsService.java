@@ -0,0 +1,279 @@
+package com.iffomko.apsofttesttask.services;
+
+import com.iffomko.apsofttesttask.services.compression.ContentCoding;
+import com.iffomko.apsofttesttask.services.compression.DocumentEncoder;
+import com.iffomko.apsofttesttask.services.compression.ResponseCompression;
+import com.iffomko.apsofttesttask.services.concurrency.ResponseResources;
+import com.iffomko.apsofttesttask.services.etag.EntityTags;
+import com.iffomko.apsofttesttask.services.jobs.ParseJob;
+import com.iffomko.apsofttesttask.services.jobs.ParseJobs;
+import com.iffomko.apsofttesttask.services.lines.DecodedTextInputStream;
+import com.iffomko.apsofttesttask.services.lines.MappedFileLineSource;
+import com.iffomko.apsofttesttask.services.metrics.ParseObservation;
+import com.iffomko.apsofttesttask.services.metrics.ParserMetrics;
+import com.iffomko.apsofttesttask.services.parser.IFileParser;
+import com.iffomko.apsofttesttask.services.responses.FilesLoaderJobResponse;
+import com.iffomko.apsofttesttask.services.responses.FilesLoaderResponses;
+import com.iffomko.apsofttesttask.services.responses.utils.FileLoaderResponseCodes;
+import com.iffomko.apsofttesttask.services.responses.utils.FileLoaderResponseMessages;
+import com.iffomko.apsofttesttask.services.spool.UploadSpool;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сервис фонового разбора больших документов: постановка в очередь <code>ParseJobs</code>, состояние задачи
+ * и ее результат
+ */
+@Service
+public class ParseJobsService {
+    private final IFileParser fileParser;
+    private final FilesLoaderResponses responses;
+    private final UploadSpool uploadSpool;
+    private final ParserMetrics parserMetrics;
+    private final ResponseCompression responseCompression;
+    private final ParseJobs parseJobs;
+    private final long maxLargeFileSize;
+
+    /**
+     * @param fileParser парсер файлов
+     * @param responses проверки загрузок и ответы с ошибками
+     * @param uploadSpool директория для временных файлов больших документов
+     * @param parserMetrics метрики разбора файлов
+     * @param responseCompression сжатие HTML документов в ответах
+     * @param parseJobs фоновый разбор больших документов
+     * @param maxLargeFileSize максимальный размер файла для режима больших документов
+     */
+    @Autowired
+    public ParseJobsService(
+            @Qualifier("intoHtmlFileParser") IFileParser fileParser,
+            FilesLoaderResponses responses,
+            UploadSpool uploadSpool,
+            ParserMetrics parserMetrics,
+            ResponseCompression responseCompression,
+            ParseJobs parseJobs,
+            @Value("${parser.largeFile.maxFileSize}") DataSize maxLargeFileSize
+    ) {
+        this.fileParser = fileParser;
+        this.responses = responses;
+        this.uploadSpool = uploadSpool;
+        this.parserMetrics = parserMetrics;
+        this.responseCompression = responseCompression;
+        this.parseJobs = parseJobs;
+        this.maxLargeFileSize = maxLargeFileSize.toBytes();
+    }
+
+    /**
+     * <p>
+     *     Режим фоновых задач для больших документов: файл проверяется и переносится во временный файл, как в
+     *     <code>FilesLoaderService.parseLargeFileToHtml</code>, но не разбирается в запросе, а ставится в очередь
+     *     <code>ParseJobs</code>. В ответ сразу приходит <code>202 Accepted</code> с идентификатором задачи,
+     *     а соединение и поток запроса не заняты, пока файл разбирается.
+     * </p>
+     * <p>
+     *     Готовый документ лежит в файле задачи, пока не устареет, и отдается через <code>getJobResult</code>.
+     * </p>
+     * @param multipartFile файл полученный из сети
+     */
+    public ResponseEntity<?> submitJob(MultipartFile multipartFile) {
+        Path uploadFile = null;
+
+        try {
+            Optional<ResponseEntity<?>> rejection = responses.checkUpload(multipartFile, maxLargeFileSize);
+
+            if (rejection.isPresent()) {
+                return rejection.get();
+            }
+
+            uploadFile = uploadSpool.spool(multipartFile);
+
+            Path spooledUpload = uploadFile;
+            long size = multipartFile.getSize();
+            ParseJob job = parseJobs.submit(result -> parseJobFile(spooledUpload, size, result));
+
+            parserMetrics.recordResponse(FileLoaderResponseCodes.SUCCESS);
+
+            return ResponseEntity
+                    .accepted()
+                    .location(URI.create("jobs/" + job.getId()))
+                    .body(getJobResponse(job));
+        } catch (Exception e) {
+            uploadSpool.delete(uploadFile);
+            return responses.getErrorResponse(e);
+        }
+    }
+
+    /**
+     * Разбирает временный файл задачи так же, как в режиме больших документов, и удаляет временные файлы
+     * @param uploadFile временный файл с загрузкой
+     * @param size размер загруженного файла
+     * @param result поток файла результата задачи
+     * @throws IOException возникает тогда, когда не удалось прочитать файл или в нем некорректная кодировка
+     */
+    private void parseJobFile(Path uploadFile, long size, OutputStream result) throws IOException {
+        // замер начинается здесь, а не при загрузке, чтобы в него не попало время ожидания в очереди задач
+        ParseObservation observation = parserMetrics.observe(size);
+        DecodedTextInputStream text = new DecodedTextInputStream(Files.newInputStream(uploadFile));
+        Path textFile = uploadFile;
+        Path contentsFile = null;
+
+        try {
+            try (text) {
+                observation.timeRead(() -> text.transferTo(OutputStream.nullOutputStream()));
+            }
+
+            if (!text.isIdentity()) {
+                textFile = observation.timeRead(() -> uploadSpool.spoolText(uploadFile));
+            }
+
+            contentsFile = uploadSpool.createFile("contents-");
+
+            this.fileParser.parse(
+                    observation.timeLines(new MappedFileLineSource(textFile, StandardCharsets.UTF_8)),
+                    observation.countOutput(result),
+                    contentsFile
+            );
+            observation.finish();
+        } finally {
+            uploadSpool.delete(uploadFile, textFile, contentsFile);
+        }
+    }
+
+    /**
+     * @param job задача
+     * @return ответ с состоянием задачи
+     */
+    private FilesLoaderJobResponse getJobResponse(ParseJob job) {
+        return new FilesLoaderJobResponse(
+                FileLoaderResponseCodes.SUCCESS.name(),
+                job.getId(),
+                job.getStatus().name()
+        );
+    }
+
+    /**
+     * @return ответ о том, что задачи нет или ее результат уже удален
+     */
+    private ResponseEntity<?> getJobNotFoundResponse() {
+        return responses.getErrorResponse(
+                HttpStatus.NOT_FOUND,
+                FileLoaderResponseMessages.JOB_NOT_FOUND,
+                FileLoaderResponseCodes.JOB_NOT_FOUND
+        );
+    }
+
+    /**
+     * <p>
+     *     Возвращает состояние задачи из <code>submitJob</code>. Если задано <code>wait</code>, а задача еще
+     *     не завершилась, то ответ приходит, когда задача завершится или пройдет <code>wait</code>
+     *     (не больше <code>parser.jobs.maxWait</code>). Пока ответ ждет, поток запроса свободен: запрос
+     *     обрабатывается асинхронно.
+     * </p>
+     * @param jobId идентификатор задачи
+     * @param wait сколько ждать завершения задачи или null, чтобы вернуть состояние сразу
+     */
+    public CompletableFuture<ResponseEntity<?>> getJob(String jobId, Duration wait) {
+        Optional<ParseJob> found = parseJobs.find(jobId);
+
+        if (found.isEmpty()) {
+            return CompletableFuture.completedFuture(getJobNotFoundResponse());
+        }
+
+        ParseJob job = found.get();
+
+        if (job.isFinished() || wait == null || wait.isNegative() || wait.isZero()) {
+            parserMetrics.recordResponse(FileLoaderResponseCodes.SUCCESS);
+            return CompletableFuture.completedFuture(ResponseEntity.ok(getJobResponse(job)));
+        }
+
+        // ограничивается до toMillis: очень большое wait в миллисекундах не помещается в long
+        Duration maxWait = parseJobs.getMaxWait();
+        long waitMillis = (wait.compareTo(maxWait) > 0 ? maxWait : wait).toMillis();
+
+        return job.getCompletion()
+                .copy()
+                .completeOnTimeout(job, waitMillis, TimeUnit.MILLISECONDS)
+                .<ResponseEntity<?>>thenApply(finished -> {
+                    parserMetrics.recordResponse(FileLoaderResponseCodes.SUCCESS);
+                    return ResponseEntity.ok(getJobResponse(finished));
+                });
+    }
+
+    /**
+     * <p>
+     *     Возвращает HTML документ завершенной задачи из <code>submitJob</code>, сжатым, если клиент это разрешил.
+     *     Если задача еще не завершилась, то возвращается <code>409</code> с кодом <code>JOB_NOT_FINISHED</code>,
+     *     а если завершилась с ошибкой, то та же ошибка, которую вернул бы
+     *     <code>FilesLoaderService.parseLargeFileToHtml</code>.
+     * </p>
+     * @param jobId идентификатор задачи
+     * @param acceptEncoding значение заголовка <code>Accept-Encoding</code> или null
+     */
+    public ResponseEntity<StreamingResponseBody> getJobResult(String jobId, String acceptEncoding) {
+        try {
+            Optional<ParseJob> found = parseJobs.find(jobId);
+
+            if (found.isEmpty()) {
+                return responses.toStreamingResponse(getJobNotFoundResponse());
+            }
+
+            ParseJob job = found.get();
+
+            if (job.getStatus() == ParseJob.Status.FAILED) {
+                return responses.toStreamingResponse(responses.getErrorResponse(job.getFailure()));
+            }
+
+            if (job.getStatus() != ParseJob.Status.DONE) {
+                return responses.toStreamingResponse(responses.getErrorResponse(
+                        HttpStatus.CONFLICT,
+                        FileLoaderResponseMessages.JOB_NOT_FINISHED,
+                        FileLoaderResponseCodes.JOB_NOT_FINISHED
+                ));
+            }
+
+            ContentCoding coding = responseCompression.negotiate(acceptEncoding);
+            InputStream result;
+
+            try {
+                // файл открывается до ответа: если его удалят по истечении срока, открытый файл все равно дочитается
+                result = Files.newInputStream(job.getResultFile());
+            } catch (NoSuchFileException e) {
+                return responses.toStreamingResponse(getJobNotFoundResponse());
+            }
+
+            ResponseResources resources = ResponseResources.open();
+
+            resources.add(result);
+            parserMetrics.recordResponse(FileLoaderResponseCodes.SUCCESS);
+
+            return responses.getHtmlResponse(coding, EntityTags.of(job.getId(), FilesLoaderResponses.getHtmlVariant(coding)))
+                    .body(outputStream -> {
+                        try (resources; DocumentEncoder encoder = responseCompression.encode(outputStream, coding, 0)) {
+                            result.transferTo(encoder);
+                            encoder.finish();
+                        }
+                    });
+        } catch (Exception e) {
+            return responses.toStreamingResponse(responses.getErrorResponse(e));
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.iffomko.apsofttesttask.services;
+
+import com.iffomko.apsofttesttask.services.cache.HashedUpload;
+import com.iffomko.apsofttesttask.services.compression.ContentCoding;
+import com.iffomko.apsofttesttask.services.compression.DocumentEncoder;
+import com.iffomko.apsofttesttask.services.compression.ResponseCompression;
+import com.iffomko.apsofttesttask.services.concurrency.MemoryBudget;
+import com.iffomko.apsofttesttask.services.concurrency.ParserExecutor;
+import com.iffomko.apsofttesttask.services.concurrency.ResponseResources;
+import com.iffomko.apsofttesttask.services.etag.EntityTags;
+import com.iffomko.apsofttesttask.services.metrics.ParseObservation;
+import com.iffomko.apsofttesttask.services.metrics.ParserMetrics;
+import com.iffomko.apsofttesttask.services.parser.IndexedDocument;
+import com.iffomko.apsofttesttask.services.render.DocumentRenderer;
+import com.iffomko.apsofttesttask.services.render.DocumentRenderers;
+import com.iffomko.apsofttesttask.services.responses.FilesLoaderResponses;
+import com.iffomko.apsofttesttask.services.responses.utils.FileLoaderResponseCodes;
+import com.iffomko.apsofttesttask.services.responses.utils.FileLoaderResponseMessages;
+import com.iffomko.apsofttesttask.services.uploads.UploadReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Optional;
+
+/**
+ * Сервис, который отрисовывает загруженный файл в одном из форматов <code>DocumentRenderers</code>
+ */
+@Service
+@Slf4j
+public class RenderService {
+    private final UploadReader uploadReader;
+    private final FilesLoaderResponses responses;
+    private final ParserExecutor parserExecutor;
+    private final ParserMetrics parserMetrics;
+    private final ResponseCompression responseCompression;
+    private final DocumentRenderers documentRenderers;
+    private final long maxFileSize;
+
+    /**
+     * @param uploadReader чтение загруженных файлов
+     * @param responses проверки загрузок и ответы с ошибками
+     * @param parserExecutor пул потоков, в котором разбираются файлы
+     * @param parserMetrics метрики разбора файлов
+     * @param responseCompression сжатие документов в ответах
+     * @param documentRenderers форматы, в которых можно отрисовать документ
+     * @param maxFileSize максимальный размер файла для обычного режима
+     */
+    @Autowired
+    public RenderService(
+            UploadReader uploadReader,
+            FilesLoaderResponses responses,
+            ParserExecutor parserExecutor,
+            ParserMetrics parserMetrics,
+            ResponseCompression responseCompression,
+            DocumentRenderers documentRenderers,
+            @Value("${parser.maxFileSize}") DataSize maxFileSize
+    ) {
+        this.uploadReader = uploadReader;
+        this.responses = responses;
+        this.parserExecutor = parserExecutor;
+        this.parserMetrics = parserMetrics;
+        this.responseCompression = responseCompression;
+        this.documentRenderers = documentRenderers;
+        this.maxFileSize = maxFileSize.toBytes();
+    }
+
+    /**
+     * <p>
+     *     Разбирает файл и отрисовывает его в формате, который выбран параметром <code>format</code> или
+     *     заголовком <code>Accept</code> (HTML, Markdown, JSON или только содержание, см. <code>DocumentRenderers</code>).
+     * </p>
+     * <p>
+     *     Разобранный документ кэшируется по ключу загрузки отдельно от отрисовки, поэтому тот же файл в другом формате
+     *     (или в HTML после <code>FilesLoaderService.parseFileToHtml</code>) не разбирается заново, а только
+     *     отрисовывается. ETag у каждого формата свой, а документ пишется в ответ по мере отрисовки, сжатым,
+     *     если клиент это разрешил.
+     * </p>
+     * @param multipartFile файл полученный из сети
+     * @param format значение параметра <code>format</code> или null
+     * @param accept значение заголовка <code>Accept</code> или null
+     * @param acceptEncoding значение заголовка <code>Accept-Encoding</code> или null
+     * @param ifNoneMatch значение заголовка <code>If-None-Match</code> или null
+     */
+    public ResponseEntity<StreamingResponseBody> renderFile(
+            MultipartFile multipartFile,
+            String format,
+            String accept,
+            String acceptEncoding,
+            String ifNoneMatch
+    ) {
+        MemoryBudget.Reservation reservation = null;
+
+        try {
+            Optional<ResponseEntity<?>> rejection = responses.checkUpload(multipartFile, maxFileSize);
+
+            if (rejection.isPresent()) {
+                return responses.toStreamingResponse(rejection.get());
+            }
+
+            Optional<DocumentRenderer> selectedRenderer = documentRenderers.select(format, accept);
+
+            if (selectedRenderer.isEmpty()) {
+                log.error(String.format("Unsupported format: %s, accept: %s", format, accept));
+                return responses.toStreamingResponse(responses.getErrorResponse(
+                        format != null ? HttpStatus.BAD_REQUEST : HttpStatus.NOT_ACCEPTABLE,
+                        FileLoaderResponseMessages.UNSUPPORTED_FORMAT,
+                        FileLoaderResponseCodes.UNSUPPORTED_FORMAT
+                ));
+            }
+
+            DocumentRenderer renderer = selectedRenderer.get();
+            ContentCoding coding = responseCompression.negotiate(acceptEncoding);
+            ParseObservation observation = parserMetrics.observe(multipartFile.getSize());
+
+            reservation = uploadReader.reserveMemory(multipartFile, UploadReader.HTML_FOOTPRINT);
+
+            HashedUpload upload = uploadReader.read(multipartFile, observation);
+            String variant = coding.isCompressed() ? renderer.getFormat() + "-" + coding.getToken() : renderer.getFormat();
+            String entityTag = EntityTags.of(upload.key(), variant);
+
+            if (EntityTags.matches(ifNoneMatch, entityTag)) {
+                return responses.getNotModifiedResponse(entityTag);
+            }
+
+            ParserExecutor.Admission admission = parserExecutor.admit();
+            ResponseResources resources = ResponseResources.open();
+
+            resources.add(reservation);
+            resources.add(admission);
+
+            StreamingResponseBody body = outputStream -> resources.stream(
+                    admission,
+                    "Failed to stream the rendered file",
+                    () -> {
+                        try (DocumentEncoder encoder = responseCompression.encode(outputStream, coding, 0)) {
+                            IndexedDocument document = uploadReader.getDocumentModel(upload, observation);
+                            OutputStream countingStream = observation.countOutput(encoder);
+
+                            observation.timeRender(() -> renderer.render(document, countingStream));
+                            encoder.finish();
+                            observation.finish();
+                        } catch (IOException | RuntimeException e) {
+                            parserMetrics.recordResponse(FileLoaderResponseCodes.INTERNAL_SERVER_ERROR);
+                            throw e;
+                        }
+
+                        parserMetrics.recordResponse(FileLoaderResponseCodes.SUCCESS);
+
+                        return null;
+                    }
+            );
+
+            // память освободит тело ответа, когда документ будет записан, или завершение асинхронного запроса
+            reservation = null;
+
+            ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                    .contentType(renderer.getMediaType())
+                    .eTag(entityTag)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING);
+
+            if (coding.isCompressed()) {
+                builder.header(HttpHeaders.CONTENT_ENCODING, coding.getToken());
+            }
+
+            return builder.body(body);
+        } catch (Exception e) {
+            return responses.toStreamingResponse(responses.getErrorResponse(e));
+        } finally {
+            if (reservation != null) {
+                reservation.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.iffomko.apsofttesttask.services.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.iffomko.apsofttesttask.services.parser.IndexedDocument;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * <p>Кэш разобранных, но еще не отрисованных документов (<code>IndexedDocument</code>): текст, строчки, разделы
+ * с вложенностью и их идентификаторы. Ключ тот же, что и у <code>ParsedDocumentCache</code>.</p>
+ * <p><code>ParsedDocumentCache</code> хранит готовый HTML, а этот кэш нужен, чтобы отрисовать ту же загрузку
+ * в другом формате (см. <code>DocumentRenderer</code>) без повторного разбора: второй формат стоит только отрисовки.</p>
+ * <p>Размер кэша ограничен суммарным размером документов вместе с индексами строчек.</p>
+ */
+@Component
+public class DocumentModelCache {
+    /**
+     * Примерные накладные расходы на одну запись: ключ, объект документа и узел кэша
+     */
+    private static final int ENTRY_OVERHEAD = 256;
+
+    private final Cache<String, IndexedDocument> cache;
+    private final long maxSize;
+
+    /**
+     * @param maxSize максимальный суммарный размер документов в кэше, 0 выключает кэш
+     */
+    public DocumentModelCache(@Value("${parser.cache.modelMaxSize}") DataSize maxSize) {
+        this.maxSize = maxSize.toBytes();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(this.maxSize)
+                .weigher((String key, IndexedDocument document) ->
+                        (int) Math.min(Integer.MAX_VALUE, document.getRetainedSize() + ENTRY_OVERHEAD))
+                .recordStats()
+                // обслуживание кэша (вытеснение) выполняется в потоке запроса, а не в общем ForkJoinPool
+                .executor(Runnable::run)
+                .build();
+    }
+
+    /**
+     * @return true, если кэш включен
+     */
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * @param key ключ документа
+     * @return разобранный документ или null, если его нет в кэше
+     */
+    public IndexedDocument get(String key) {
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * Кладет разобранный документ в кэш. Документ после этого не должен меняться
+     * @param key ключ документа
+     * @param document разобранный документ
+     */
+    public void put(String key, IndexedDocument document) {
+        if (!isEnabled() || document.getRetainedSize() > maxSize) {
+            return;
+        }
+
+        cache.put(key, document);
+    }
+
+    /**
+     * @return счетчики попаданий, промахов и вытеснений
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return приблизительное количество документов в кэше
+     */
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+}
@@ -0,0 +1,9 @@
+package com.iffomko.apsofttesttask.services.cache;
+
+/**
+ * Загруженный файл, прочитанный в память за один проход вместе с ключом документа
+ * @param content байты файла
+ * @param key ключ документа, см. <code>ParsedDocumentCache.getKey</code>
+ */
+public record HashedUpload(byte[] content, String key) {
+}
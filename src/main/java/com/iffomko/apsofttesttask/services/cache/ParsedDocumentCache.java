@@ -0,0 +1,233 @@
+package com.iffomko.apsofttesttask.services.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.iffomko.apsofttesttask.services.compression.CompressedDocument;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * <p>Кэш уже разобранных документов, который адресуется содержимым загруженного файла.</p>
+ * <p>Ключ - это SHA-256 от определяющего признака раздела и байтов файла, поэтому одинаковые файлы
+ * попадают в одну запись независимо от имени. Некриптографический хэш здесь не подходит: файлы присылают клиенты,
+ * и коллизия означала бы, что один клиент получит чужой документ. Этот же ключ лежит в основе ETag документа.</p>
+ * <p>Размер кэша ограничен суммарным размером хранимых документов, а вытеснение идет по алгоритму W-TinyLFU,
+ * так что часто загружаемые шаблоны не вытесняются потоком одноразовых файлов.</p>
+ * <p>Документы для HTML ответов хранятся уже сжатыми, поэтому в ту же память помещается в несколько раз больше
+ * документов, а повторная отдача клиенту, который принимает сжатие, не тратит процессор на сжатие. Документы для JSON
+ * ответов хранятся отдельно и как есть: они все равно вставляются в JSON строкой, и сжатие с распаковкой только
+ * тратили бы процессор.</p>
+ */
+@Component
+public class ParsedDocumentCache {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * Примерные накладные расходы на одну запись: ключ, массив и узел кэша
+     */
+    private static final int ENTRY_OVERHEAD = 256;
+
+    /**
+     * Ключ записи: один и тот же документ может лежать и сжатым, и как есть
+     */
+    private record EntryKey(String key, boolean compressed) {
+    }
+
+    private final Cache<EntryKey, Object> cache;
+    private final Character sectionTag;
+    private final long maxSize;
+
+    /**
+     * @param sectionTag определяющий признак раздела, с которым разбираются документы
+     * @param maxSize максимальный суммарный размер документов в кэше, 0 выключает кэш
+     */
+    public ParsedDocumentCache(
+            @Value("${section.tag}") Character sectionTag,
+            @Value("${parser.cache.maxSize}") DataSize maxSize
+    ) {
+        this.sectionTag = sectionTag;
+        this.maxSize = maxSize.toBytes();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(this.maxSize)
+                .weigher((EntryKey key, Object document) -> getLength(document) + ENTRY_OVERHEAD)
+                .recordStats()
+                // обслуживание кэша (вытеснение) выполняется в потоке запроса, а не в общем ForkJoinPool
+                .executor(Runnable::run)
+                .build();
+    }
+
+    /**
+     * @return true, если кэш включен
+     */
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * @return максимальный размер одного документа, который имеет смысл класть в кэш
+     */
+    public long getMaxDocumentSize() {
+        return maxSize;
+    }
+
+    /**
+     * Вычисляет ключ для документа, читая поток до конца
+     * @param inputStream поток с байтами загруженного файла
+     * @return ключ документа
+     * @throws IOException возникает тогда, когда не удалось прочитать поток
+     */
+    public String getKey(InputStream inputStream) throws IOException {
+        return getKey(inputStream, OutputStream.nullOutputStream());
+    }
+
+    /**
+     * Вычисляет ключ для документа, читая поток до конца, и копирует прочитанные байты в другой поток,
+     * так что файл, который складывается на диск, читается один раз
+     * @param inputStream поток с байтами загруженного файла
+     * @param outputStream поток, в который копируются байты файла
+     * @return ключ документа
+     * @throws IOException возникает тогда, когда не удалось прочитать поток или записать копию
+     */
+    public String getKey(InputStream inputStream, OutputStream outputStream) throws IOException {
+        MessageDigest digest = newKeyDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        int read;
+
+        while ((read = inputStream.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+            outputStream.write(buffer, 0, read);
+        }
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Читает файл в память и вычисляет ключ документа по ходу чтения, так что файл читается один раз
+     * @param inputStream поток с байтами загруженного файла
+     * @param size ожидаемый размер файла
+     * @return байты файла и ключ документа
+     * @throws IOException возникает тогда, когда не удалось прочитать поток
+     */
+    public HashedUpload read(InputStream inputStream, long size) throws IOException {
+        MessageDigest digest = newKeyDigest();
+        byte[] content = new byte[Math.toIntExact(Math.max(size, 0))];
+        int length = 0;
+
+        while (true) {
+            if (length == content.length) {
+                // обычно размер известен точно, поэтому массив растет только если поток не закончился
+                int next = inputStream.read();
+
+                if (next == -1) {
+                    break;
+                }
+
+                content = Arrays.copyOf(content, Math.max(BUFFER_SIZE, Math.addExact(content.length, content.length >> 1)));
+                content[length] = (byte) next;
+                digest.update(content, length++, 1);
+            }
+
+            int read = inputStream.read(content, length, Math.min(content.length - length, BUFFER_SIZE));
+
+            if (read == -1) {
+                break;
+            }
+
+            digest.update(content, length, read);
+            length += read;
+        }
+
+        return new HashedUpload(
+                length == content.length ? content : Arrays.copyOf(content, length),
+                HexFormat.of().formatHex(digest.digest())
+        );
+    }
+
+    private MessageDigest newKeyDigest() {
+        MessageDigest digest = newDigest();
+
+        digest.update(sectionTag.toString().getBytes(StandardCharsets.UTF_8));
+
+        return digest;
+    }
+
+    /**
+     * @param key ключ документа
+     * @return сжатый разобранный документ в UTF-8 или null, если его нет в кэше
+     */
+    public CompressedDocument get(String key) {
+        return (CompressedDocument) cache.getIfPresent(new EntryKey(key, true));
+    }
+
+    /**
+     * Кладет разобранный документ в кэш
+     * @param key ключ документа
+     * @param document сжатый разобранный документ в UTF-8
+     */
+    public void put(String key, CompressedDocument document) {
+        put(new EntryKey(key, true), document);
+    }
+
+    /**
+     * @param key ключ документа
+     * @return несжатый разобранный документ в UTF-8 или null, если его нет в кэше
+     */
+    public byte[] getText(String key) {
+        return (byte[]) cache.getIfPresent(new EntryKey(key, false));
+    }
+
+    /**
+     * Кладет в кэш несжатый разобранный документ
+     * @param key ключ документа
+     * @param document несжатый разобранный документ в UTF-8
+     */
+    public void putText(String key, byte[] document) {
+        put(new EntryKey(key, false), document);
+    }
+
+    private void put(EntryKey key, Object document) {
+        if (!isEnabled() || getLength(document) > maxSize) {
+            return;
+        }
+
+        cache.put(key, document);
+    }
+
+    private static int getLength(Object document) {
+        return document instanceof CompressedDocument compressed ? compressed.deflated().length : ((byte[]) document).length;
+    }
+
+    /**
+     * @return счетчики попаданий, промахов и вытеснений
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return приблизительное количество документов в кэше
+     */
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 обязана поддерживаться любой реализацией Java
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.iffomko.apsofttesttask.services.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterOutputStream;
+
+/**
+ * Документ, который хранится уже сжатым: поток deflate без заголовка и контрольные суммы несжатых данных,
+ * которых хватает, чтобы отдать его в любом кодировании из <code>ContentCoding</code>
+ * @param deflated сжатые данные (raw deflate)
+ * @param crc32 CRC-32 несжатых данных
+ * @param adler32 Adler-32 несжатых данных
+ * @param length длина несжатых данных
+ */
+public record CompressedDocument(byte[] deflated, int crc32, int adler32, long length) {
+    /**
+     * Буфер <code>InflaterOutputStream</code> по умолчанию - 512 байт, с ним распаковка в разы медленнее
+     */
+    private static final int INFLATE_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * @param coding кодирование ответа
+     * @return длина документа в этом кодировании
+     */
+    public long getEncodedLength(ContentCoding coding) {
+        return coding.isCompressed() ? coding.getEncodedLength(deflated.length) : length;
+    }
+
+    /**
+     * Пишет документ в поток. В сжатом кодировании данные пишутся как есть, без повторного сжатия,
+     * а без сжатия - распаковываются
+     * @param outputStream куда пишется документ
+     * @param coding кодирование ответа
+     * @throws IOException возникает тогда, когда не удалось записать документ
+     */
+    public void writeTo(OutputStream outputStream, ContentCoding coding) throws IOException {
+        if (!coding.isCompressed()) {
+            Inflater inflater = new Inflater(true);
+
+            try {
+                InflaterOutputStream inflating = new InflaterOutputStream(outputStream, inflater, INFLATE_BUFFER_SIZE);
+
+                inflating.write(deflated);
+                inflating.finish();
+            } finally {
+                inflater.end();
+            }
+
+            return;
+        }
+
+        coding.writeHeader(outputStream);
+        outputStream.write(deflated);
+        coding.writeTrailer(outputStream, crc32, adler32, length);
+    }
+
+    /**
+     * @return несжатый документ
+     */
+    public byte[] toByteArray() {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(Math.toIntExact(length));
+
+        try {
+            writeTo(outputStream, ContentCoding.IDENTITY);
+        } catch (IOException e) {
+            // в массив запись не падает, а сжатые данные сформированы этим же приложением
+            throw new IllegalStateException(e);
+        }
+
+        return outputStream.toByteArray();
+    }
+}
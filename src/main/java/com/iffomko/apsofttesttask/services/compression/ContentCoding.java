@@ -0,0 +1,134 @@
+package com.iffomko.apsofttesttask.services.compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * <p>Кодирование тела ответа (заголовок <code>Content-Encoding</code>).</p>
+ * <p>Оба сжатых кодирования - это один и тот же поток deflate (RFC 1951), который отличается только
+ * заголовком и окончанием: у gzip (RFC 1952) это CRC-32 и длина, у deflate (RFC 1950, zlib) - Adler-32.
+ * Поэтому один раз сжатый документ можно отдать в любом из них, не сжимая его заново.</p>
+ */
+public enum ContentCoding {
+    GZIP("gzip", new byte[] {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff}, 2 * Integer.BYTES),
+    DEFLATE("deflate", new byte[] {0x78, (byte) 0x9c}, Integer.BYTES),
+    IDENTITY("identity", new byte[0], 0);
+
+    private final String token;
+    private final byte[] header;
+    private final int trailerSize;
+
+    ContentCoding(String token, byte[] header, int trailerSize) {
+        this.token = token;
+        this.header = header;
+        this.trailerSize = trailerSize;
+    }
+
+    /**
+     * @return значение заголовка <code>Content-Encoding</code>
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * @return true, если тело ответа сжимается
+     */
+    public boolean isCompressed() {
+        return this != IDENTITY;
+    }
+
+    /**
+     * @param deflatedLength длина потока deflate
+     * @return длина тела ответа в этом кодировании
+     */
+    long getEncodedLength(long deflatedLength) {
+        return header.length + deflatedLength + trailerSize;
+    }
+
+    void writeHeader(OutputStream outputStream) throws IOException {
+        outputStream.write(header);
+    }
+
+    /**
+     * Пишет окончание потока
+     * @param outputStream куда пишется окончание
+     * @param crc32 CRC-32 несжатых данных
+     * @param adler32 Adler-32 несжатых данных
+     * @param length длина несжатых данных
+     */
+    void writeTrailer(OutputStream outputStream, int crc32, int adler32, long length) throws IOException {
+        if (this == GZIP) {
+            writeLittleEndian(outputStream, crc32);
+            writeLittleEndian(outputStream, (int) length);
+        } else if (this == DEFLATE) {
+            outputStream.write(adler32 >>> 24);
+            outputStream.write(adler32 >>> 16);
+            outputStream.write(adler32 >>> 8);
+            outputStream.write(adler32);
+        }
+    }
+
+    private static void writeLittleEndian(OutputStream outputStream, int value) throws IOException {
+        outputStream.write(value);
+        outputStream.write(value >>> 8);
+        outputStream.write(value >>> 16);
+        outputStream.write(value >>> 24);
+    }
+
+    /**
+     * <p>Выбирает кодирование по заголовку <code>Accept-Encoding</code>: сжатое кодирование с наибольшим весом <code>q</code>,
+     * при равных весах - gzip. Если клиент не принимает ни одно сжатое кодирование, то ответ не сжимается.</p>
+     * @param acceptEncoding значение заголовка или null, если его нет
+     * @return кодирование ответа
+     */
+    public static ContentCoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isBlank()) {
+            return IDENTITY;
+        }
+
+        double gzip = -1;
+        double deflate = -1;
+        double any = -1;
+
+        for (String element : acceptEncoding.split(",")) {
+            String[] parameters = element.split(";");
+            String name = parameters[0].trim().toLowerCase(Locale.ROOT);
+            double quality = getQuality(parameters);
+
+            switch (name) {
+                case "gzip", "x-gzip" -> gzip = quality;
+                case "deflate" -> deflate = quality;
+                case "*" -> any = quality;
+                default -> {
+                }
+            }
+        }
+
+        gzip = gzip < 0 ? any : gzip;
+        deflate = deflate < 0 ? any : deflate;
+
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        }
+
+        return deflate > 0 ? DEFLATE : IDENTITY;
+    }
+
+    private static double getQuality(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+
+        return 1;
+    }
+}
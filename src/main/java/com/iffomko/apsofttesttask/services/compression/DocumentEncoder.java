@@ -0,0 +1,173 @@
+package com.iffomko.apsofttesttask.services.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Optional;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * <p>Поток, который пишет документ в ответ в выбранном кодировании по мере того, как документ формируется.</p>
+ * <p>Если задан лимит копии, то поток одновременно собирает сжатую копию документа для кэша. В сжатом кодировании
+ * это те же самые байты, что ушли в ответ, поэтому второй раз документ не сжимается. Копия больше лимита выбрасывается.</p>
+ * <p>После того, как документ написан, надо вызвать <code>finish</code>, который допишет окончание сжатого потока.
+ * <code>close</code> только освобождает <code>Deflater</code> и не закрывает поток ответа, потому что он принадлежит вызывающему.</p>
+ */
+public class DocumentEncoder extends OutputStream {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final OutputStream out;
+    private final ContentCoding coding;
+    private final Deflater deflater;
+    private final long captureLimit;
+    private final CRC32 crc32 = new CRC32();
+    private final Adler32 adler32 = new Adler32();
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private ByteArrayOutputStream captured;
+    private long length;
+    private boolean finished;
+
+    /**
+     * @param out поток ответа
+     * @param coding кодирование ответа
+     * @param level уровень сжатия от 0 до 9
+     * @param captureLimit максимальный размер сжатой копии для кэша, 0 выключает копию
+     * @throws IOException возникает тогда, когда не удалось записать заголовок сжатого потока
+     */
+    DocumentEncoder(OutputStream out, ContentCoding coding, int level, long captureLimit) throws IOException {
+        this.out = out;
+        this.coding = coding;
+        this.captureLimit = captureLimit;
+        this.captured = captureLimit > 0 ? new ByteArrayOutputStream() : null;
+        this.deflater = coding.isCompressed() || captured != null ? new Deflater(level, true) : null;
+
+        coding.writeHeader(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("The document is already finished");
+        }
+
+        if (!coding.isCompressed()) {
+            out.write(b, off, len);
+        }
+
+        if (isDeflating()) {
+            crc32.update(b, off, len);
+            adler32.update(b, off, len);
+            deflater.setInput(b, off, len);
+
+            while (!deflater.needsInput()) {
+                deflate(Deflater.NO_FLUSH);
+            }
+        }
+
+        length += len;
+    }
+
+    /**
+     * В сжатом кодировании отдает клиенту все, что уже сжато, поэтому так делать стоит только в конце документа
+     */
+    @Override
+    public void flush() throws IOException {
+        if (coding.isCompressed() && !finished) {
+            int deflated;
+
+            do {
+                deflated = deflate(Deflater.SYNC_FLUSH);
+            } while (deflated == buffer.length);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Дописывает окончание сжатого потока и завершает копию для кэша
+     * @throws IOException возникает тогда, когда не удалось записать в поток ответа
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+
+        if (isDeflating()) {
+            deflater.finish();
+
+            while (!deflater.finished()) {
+                deflate(Deflater.NO_FLUSH);
+            }
+        }
+
+        coding.writeTrailer(out, (int) crc32.getValue(), (int) adler32.getValue(), length);
+        finished = true;
+        close();
+        out.flush();
+    }
+
+    /**
+     * @return сжатая копия документа или пусто, если копия не собиралась, оказалась больше лимита
+     * или документ еще не дописан
+     */
+    public Optional<CompressedDocument> getDocument() {
+        if (!finished || captured == null) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new CompressedDocument(
+                captured.toByteArray(),
+                (int) crc32.getValue(),
+                (int) adler32.getValue(),
+                length
+        ));
+    }
+
+    /**
+     * Освобождает <code>Deflater</code>, поток ответа не закрывается
+     */
+    @Override
+    public void close() {
+        if (deflater != null) {
+            deflater.end();
+        }
+    }
+
+    private boolean isDeflating() {
+        return coding.isCompressed() || captured != null;
+    }
+
+    private int deflate(int flush) throws IOException {
+        int deflated = deflater.deflate(buffer, 0, buffer.length, flush);
+
+        if (deflated > 0) {
+            if (coding.isCompressed()) {
+                out.write(buffer, 0, deflated);
+            }
+
+            capture(deflated);
+        }
+
+        return deflated;
+    }
+
+    private void capture(int deflated) {
+        if (captured == null) {
+            return;
+        }
+
+        if (captured.size() + (long) deflated > captureLimit) {
+            captured = null;
+            return;
+        }
+
+        captured.write(buffer, 0, deflated);
+    }
+}
@@ -0,0 +1,81 @@
+package com.iffomko.apsofttesttask.services.compression;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Optional;
+
+/**
+ * <p>Сжатие документов в ответах по заголовку <code>Accept-Encoding</code>.</p>
+ * <p>Уровень сжатия - это компромисс между процессором и трафиком (см. <code>CompressionBenchmark</code>):
+ * документы очень повторяющиеся, поэтому уже быстрые уровни сжимают их в несколько раз.</p>
+ */
+@Component
+public class ResponseCompression {
+    private final boolean enabled;
+    private final int level;
+
+    /**
+     * @param enabled true, если ответы сжимаются
+     * @param level уровень сжатия от 0 до 9
+     */
+    public ResponseCompression(
+            @Value("${parser.compression.enabled}") boolean enabled,
+            @Value("${parser.compression.level}") int level
+    ) {
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException("Compression level must be between 0 and 9");
+        }
+
+        this.enabled = enabled;
+        this.level = level;
+    }
+
+    /**
+     * @return true, если ответы сжимаются, а значит зависят от заголовка <code>Accept-Encoding</code>
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param acceptEncoding значение заголовка <code>Accept-Encoding</code> или null
+     * @return кодирование ответа
+     */
+    public ContentCoding negotiate(String acceptEncoding) {
+        return enabled ? ContentCoding.negotiate(acceptEncoding) : ContentCoding.IDENTITY;
+    }
+
+    /**
+     * Создает поток, который пишет документ в ответ в выбранном кодировании
+     * @param outputStream поток ответа
+     * @param coding кодирование ответа
+     * @param captureLimit максимальный размер сжатой копии для кэша, 0 выключает копию
+     * @return поток, который надо завершить <code>finish</code> и закрыть
+     * @throws IOException возникает тогда, когда не удалось записать заголовок сжатого потока
+     */
+    public DocumentEncoder encode(OutputStream outputStream, ContentCoding coding, long captureLimit) throws IOException {
+        return new DocumentEncoder(outputStream, coding, level, captureLimit);
+    }
+
+    /**
+     * Сжимает уже готовый документ
+     * @param document документ
+     * @return сжатый документ
+     */
+    public CompressedDocument compress(byte[] document) {
+        try (DocumentEncoder encoder = encode(OutputStream.nullOutputStream(), ContentCoding.IDENTITY, Long.MAX_VALUE)) {
+            encoder.write(document);
+            encoder.finish();
+
+            Optional<CompressedDocument> compressed = encoder.getDocument();
+
+            return compressed.orElseThrow();
+        } catch (IOException e) {
+            // пишется в пустой поток, поэтому ошибки записи быть не может
+            throw new IllegalStateException(e);
+        }
+    }
+}
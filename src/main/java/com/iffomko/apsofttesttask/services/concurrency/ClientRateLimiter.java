@@ -0,0 +1,88 @@
+package com.iffomko.apsofttesttask.services.concurrency;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>Ограничение частоты запросов одного клиента по алгоритму token bucket.</p>
+ * <p>У каждого клиента есть ведро на <code>capacity</code> жетонов, которое пополняется на
+ * <code>refillPerSecond</code> жетонов в секунду. Запрос забирает один жетон, а если жетонов нет, то запрос
+ * отклоняется, и клиенту сообщается, через сколько секунд появится следующий жетон. Так один клиент не может
+ * занять весь <code>ParserExecutor</code>, но короткий всплеск до <code>capacity</code> запросов проходит.</p>
+ * <p>Ведра хранятся в кэше с ограниченным количеством клиентов и удаляются, когда клиент долго не присылает
+ * запросов: за это время ведро все равно наполнилось бы до конца.</p>
+ */
+public class ClientRateLimiter {
+    private static final long NANOS_PER_SECOND = Duration.ofSeconds(1).toNanos();
+
+    private final Cache<String, Bucket> buckets;
+    private final double capacity;
+    private final double refillPerNano;
+    private final LongSupplier clock;
+
+    /**
+     * @param capacity сколько запросов клиент может прислать подряд
+     * @param refillPerSecond сколько запросов в секунду клиент может присылать постоянно
+     * @param maxClients сколько клиентов отслеживается одновременно
+     */
+    public ClientRateLimiter(int capacity, double refillPerSecond, long maxClients) {
+        this(capacity, refillPerSecond, maxClients, System::nanoTime);
+    }
+
+    /**
+     * @param capacity сколько запросов клиент может прислать подряд
+     * @param refillPerSecond сколько запросов в секунду клиент может присылать постоянно
+     * @param maxClients сколько клиентов отслеживается одновременно
+     * @param clock источник времени в наносекундах
+     */
+    public ClientRateLimiter(int capacity, double refillPerSecond, long maxClients, LongSupplier clock) {
+        if (capacity < 1 || refillPerSecond <= 0) {
+            throw new IllegalArgumentException("Rate limit capacity and refill rate must be positive");
+        }
+
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / NANOS_PER_SECOND;
+        this.clock = clock;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxClients)
+                .expireAfterAccess(Duration.ofNanos((long) Math.ceil(capacity / refillPerNano)))
+                .executor(Runnable::run)
+                .build();
+    }
+
+    /**
+     * Забирает жетон у клиента
+     * @param client ключ клиента
+     * @return 0, если запрос допущен, или через сколько секунд клиенту стоит повторить запрос
+     */
+    public long tryAcquire(String client) {
+        return buckets.get(client, key -> new Bucket(capacity, clock.getAsLong())).tryAcquire(clock.getAsLong());
+    }
+
+    private final class Bucket {
+        private double tokens;
+        private long refilledAt;
+
+        private Bucket(double tokens, long refilledAt) {
+            this.tokens = tokens;
+            this.refilledAt = refilledAt;
+        }
+
+        private synchronized long tryAcquire(long now) {
+            tokens = Math.min(capacity, tokens + Math.max(0, now - refilledAt) * refillPerNano);
+            refilledAt = now;
+
+            if (tokens >= 1) {
+                tokens--;
+                return 0;
+            }
+
+            double waitNanos = (1 - tokens) / refillPerNano;
+
+            return Math.max(1, (long) Math.ceil(waitNanos / NANOS_PER_SECOND));
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.iffomko.apsofttesttask.services.concurrency;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Общий бюджет памяти кучи для файлов, которые разбираются в памяти.</p>
+ * <p>Пока файл разбирается, в памяти лежит сам файл, индекс его строчек и результат, поэтому каждый запрос
+ * занимает в несколько раз больше памяти, чем размер файла. <code>ParserExecutor</code> ограничивает количество
+ * запросов, но не их размер: десяток одновременных загрузок по 8 Мб может занять всю кучу. Поэтому запрос
+ * сначала резервирует оценку своего пикового расхода памяти, и только потом читает файл.</p>
+ * <p>Если свободного бюджета не хватает, то запрос ждет не дольше <code>maxWait</code>, пока другие запросы
+ * освободят память, а потом получает <code>ParserOverloadedException</code>. Запросы ждут в порядке очереди,
+ * так что поток мелких файлов не может бесконечно откладывать большой файл. Запрос, которому нужно больше
+ * всего бюджета, резервирует весь бюджет и разбирается один.</p>
+ * <p>Размер бюджета, зарезервированная память и количество отказов отдаются как метрики
+ * <code>parser.memory.*</code>.</p>
+ */
+@Component
+public class MemoryBudget implements MeterBinder {
+    /**
+     * Бюджет считается в килобайтах, чтобы в <code>Semaphore</code> помещался бюджет больше 2 Гб
+     */
+    private static final int UNIT = 1024;
+
+    /**
+     * Резервирование части бюджета. Пока оно не закрыто, эта часть занята
+     */
+    public final class Reservation implements AutoCloseable {
+        private final int units;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Reservation(int units) {
+            this.units = units;
+        }
+
+        /**
+         * @return сколько байтов зарезервировано
+         */
+        public long getBytes() {
+            return (long) units * UNIT;
+        }
+
+        /**
+         * Возвращает зарезервированную память в бюджет. Повторный вызов ничего не делает
+         */
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                semaphore.release(units);
+            }
+        }
+    }
+
+    private final Semaphore semaphore;
+    private final int budgetUnits;
+    private final Duration maxWait;
+    private final Duration retryAfter;
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param budget сколько памяти могут занять все файлы, которые разбираются одновременно,
+     *               0 - половина максимального размера кучи
+     * @param maxWait сколько запрос может ждать, пока освободится память
+     * @param retryAfter через сколько клиенту, которому отказали, стоит повторить запрос
+     */
+    public MemoryBudget(
+            @Value("${parser.memory.budget}") DataSize budget,
+            @Value("${parser.memory.maxWait}") Duration maxWait,
+            @Value("${parser.retryAfter}") Duration retryAfter
+    ) {
+        long bytes = budget.toBytes() > 0 ? budget.toBytes() : Runtime.getRuntime().maxMemory() / 2;
+
+        this.budgetUnits = (int) Math.min(Integer.MAX_VALUE, Math.max(1, bytes / UNIT));
+        this.semaphore = new Semaphore(budgetUnits, true);
+        this.maxWait = maxWait;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return размер бюджета в байтах
+     */
+    public long getBudget() {
+        return (long) budgetUnits * UNIT;
+    }
+
+    /**
+     * Резервирует память, дожидаясь, пока ее освободят другие запросы
+     * @param bytes оценка пикового расхода памяти запроса, больше бюджета резервируется весь бюджет
+     * @return резервирование, которое надо закрыть, когда запрос освободит память
+     * @throws ParserOverloadedException возникает тогда, когда память не освободилась за <code>maxWait</code>
+     * @throws InterruptedException возникает тогда, когда поток прервали во время ожидания
+     */
+    public Reservation reserve(long bytes) throws InterruptedException {
+        int units = (int) Math.min(budgetUnits, Math.max(1, (bytes + UNIT - 1) / UNIT));
+
+        if (!semaphore.tryAcquire(units, maxWait.toNanos(), TimeUnit.NANOSECONDS)) {
+            rejected.incrementAndGet();
+            throw new ParserOverloadedException(
+                    String.format(
+                            "The memory budget is exhausted: %d KB requested, %d KB of %d KB available",
+                            units,
+                            semaphore.availablePermits(),
+                            budgetUnits
+                    ),
+                    retryAfter
+            );
+        }
+
+        return new Reservation(units);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("parser.memory.budget", this, MemoryBudget::getBudget)
+                .description("Бюджет памяти для файлов, которые разбираются в памяти")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("parser.memory.reserved", semaphore, permits -> (double) (budgetUnits - permits.availablePermits()) * UNIT)
+                .description("Сколько памяти из бюджета зарезервировано прямо сейчас")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("parser.memory.waiting", semaphore, Semaphore::getQueueLength)
+                .description("Количество запросов, которые ждут свободной памяти")
+                .register(registry);
+        FunctionCounter.builder("parser.memory.rejected", rejected, AtomicLong::get)
+                .description("Количество запросов, которым отказано из-за нехватки памяти")
+                .register(registry);
+    }
+}
@@ -0,0 +1,214 @@
+package com.iffomko.apsofttesttask.services.concurrency;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Ограниченный пул потоков для разбора файлов, который отделяет работу процессора от потоков запросов.</p>
+ * <p>Потоки запросов в основном ждут: пока клиент пришлет тело запроса или пока он прочитает ответ.
+ * Таких потоков может быть много (особенно если они виртуальные), а разбор файла только нагружает процессор,
+ * поэтому одновременно разбирается не больше файлов, чем есть ядер, а остальные запросы ждут своей очереди,
+ * не мешая друг другу.</p>
+ * <p>Очередь тоже ограничена: запрос сначала получает допуск (<code>admit</code>), и если уже разбирается
+ * и ждет <code>threads + queueCapacity</code> запросов, то допуск не выдается и бросается
+ * <code>ParserOverloadedException</code>. Так при всплеске больших загрузок лишние запросы сразу получают
+ * <code>503</code>, а не ждут в очереди, пока задержка вырастет у всех и куча заполнится загруженными файлами.</p>
+ * <p>Длина очереди, количество разбираемых файлов, допущенных запросов и отказов отдаются как метрики
+ * <code>parser.executor.*</code>.</p>
+ */
+@Component
+public class ParserExecutor implements DisposableBean, MeterBinder {
+    /**
+     * <p>Допуск одного запроса в пул. Пока допуск не закрыт, он занимает одно место из
+     * <code>threads + queueCapacity</code>.</p>
+     * <p>Задачи одного допуска выполняются в пуле как обычно, поэтому запрос, который разбирает
+     * несколько файлов, может отправить несколько задач, но занимает одно место.</p>
+     */
+    public final class Admission implements AutoCloseable {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Admission() {
+        }
+
+        /**
+         * Отправляет задачу в пул, не дожидаясь ее выполнения
+         * @param task задача
+         * @return результат задачи, который будет доступен после ее выполнения
+         */
+        public <T> Future<T> submit(Callable<T> task) {
+            return executor.submit(task);
+        }
+
+        /**
+         * @return пул в виде <code>Executor</code>, чтобы отправлять в него задачи этого допуска
+         * из реактивных цепочек, которые не ждут результата в потоке
+         */
+        public Executor asExecutor() {
+            return executor;
+        }
+
+        /**
+         * Выполняет задачу в пуле и ждет ее результата. Исключение задачи пробрасывается как есть,
+         * без обертки в <code>ExecutionException</code>
+         * @param task задача
+         * @return результат задачи
+         * @throws Exception исключение, которое бросила задача
+         */
+        public <T> T execute(Callable<T> task) throws Exception {
+            Future<T> future = submit(task);
+
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+                throw e;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+
+                if (cause instanceof Exception exception) {
+                    throw exception;
+                }
+
+                if (cause instanceof Error error) {
+                    throw error;
+                }
+
+                throw e;
+            }
+        }
+
+        /**
+         * Освобождает место в пуле. Повторный вызов ничего не делает
+         */
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                admitted.decrementAndGet();
+            }
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final int threads;
+    private final int capacity;
+    private final Duration retryAfter;
+    private final AtomicInteger admitted = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param threads количество потоков, 0 - по количеству ядер процессора
+     * @param queueCapacity сколько запросов может ждать своей очереди сверх потоков, отрицательное число - без ограничения
+     * @param retryAfter через сколько клиенту, которому отказали, стоит повторить запрос
+     */
+    public ParserExecutor(
+            @Value("${parser.threads}") int threads,
+            @Value("${parser.queueCapacity}") int queueCapacity,
+            @Value("${parser.retryAfter}") Duration retryAfter
+    ) {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.capacity = queueCapacity >= 0 ? this.threads + queueCapacity : Integer.MAX_VALUE;
+        this.retryAfter = retryAfter;
+        // очередь задач не ограничена: ее ограничивают допуски, а один допуск может отправить несколько задач
+        this.executor = new ThreadPoolExecutor(
+                this.threads,
+                this.threads,
+                0,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactory() {
+                    private final AtomicInteger counter = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "parser-" + counter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }
+        );
+    }
+
+    /**
+     * @return количество потоков пула
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Выдает допуск в пул
+     * @return допуск, который надо закрыть, когда запрос больше не будет отправлять задачи
+     * @throws ParserOverloadedException возникает тогда, когда все места в пуле заняты
+     */
+    public Admission admit() {
+        int current;
+
+        do {
+            current = admitted.get();
+
+            if (current >= capacity) {
+                rejected.incrementAndGet();
+                throw new ParserOverloadedException(
+                        String.format("The parser is overloaded: %d requests are admitted", current),
+                        retryAfter
+                );
+            }
+        } while (!admitted.compareAndSet(current, current + 1));
+
+        return new Admission();
+    }
+
+    /**
+     * Получает допуск, выполняет задачу в пуле и ждет ее результата. Исключение задачи пробрасывается как есть,
+     * без обертки в <code>ExecutionException</code>
+     * @param task задача
+     * @return результат задачи
+     * @throws ParserOverloadedException возникает тогда, когда все места в пуле заняты
+     * @throws Exception исключение, которое бросила задача
+     */
+    public <T> T execute(Callable<T> task) throws Exception {
+        try (Admission admission = admit()) {
+            return admission.execute(task);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("parser.executor.queue", executor, pool -> pool.getQueue().size())
+                .description("Количество задач, которые ждут свободного потока")
+                .register(registry);
+        Gauge.builder("parser.executor.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Количество задач, которые выполняются прямо сейчас")
+                .register(registry);
+        Gauge.builder("parser.executor.admitted", admitted, AtomicInteger::get)
+                .description("Количество запросов, которые получили допуск в пул")
+                .register(registry);
+        FunctionCounter.builder("parser.executor.rejected", rejected, AtomicLong::get)
+                .description("Количество запросов, которым отказано из-за переполнения пула")
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,30 @@
+package com.iffomko.apsofttesttask.services.concurrency;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Исключение, которое возникает тогда, когда в <code>ParserExecutor</code> уже разбирается и ждет своей очереди
+ * столько файлов, сколько он может принять, или когда в <code>MemoryBudget</code> не освободилась память для файла
+ */
+public class ParserOverloadedException extends RejectedExecutionException {
+    private static final long serialVersionUID = 1L;
+
+    private final Duration retryAfter;
+
+    /**
+     * @param message сообщение об ошибке
+     * @param retryAfter через сколько клиенту стоит повторить запрос
+     */
+    public ParserOverloadedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return через сколько секунд клиенту стоит повторить запрос, для заголовка <code>Retry-After</code>
+     */
+    public long getRetryAfterSeconds() {
+        return Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+    }
+}
@@ -0,0 +1,122 @@
+package com.iffomko.apsofttesttask.services.concurrency;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+
+/**
+ * <p>Ресурсы потокового ответа: допуск в пул, резервирование памяти, временные файлы. Запрос занимает их еще
+ * до того, как вернет ответ, а освобождает тело ответа, когда допишет документ.</p>
+ * <p>Тело ответа выполняется асинхронно и может вообще не запуститься: при таймауте асинхронного запроса
+ * или ошибке Spring отменяет задачу, которая еще ждет потока. Поэтому ресурсы, которые созданы в потоке запроса,
+ * освобождаются еще и по завершении его асинхронной обработки, чем бы она ни закончилась. Освобождаются они
+ * один раз: тем, кто закроет их первым.</p>
+ */
+@Slf4j
+public class ResponseResources implements AutoCloseable {
+    private final Deque<AutoCloseable> resources = new ArrayDeque<>();
+    private boolean closed;
+
+    private ResponseResources() {
+    }
+
+    /**
+     * Создает пустой набор ресурсов. Если метод вызван в потоке запроса, то ресурсы освободятся
+     * и по завершении асинхронной обработки этого запроса
+     * @return набор ресурсов, который надо закрыть, если ответ так и не был возвращен
+     */
+    public static ResponseResources open() {
+        ResponseResources responseResources = new ResponseResources();
+
+        if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes) {
+            WebAsyncUtils.getAsyncManager(attributes.getRequest()).registerCallableInterceptor(
+                    responseResources,
+                    new CallableProcessingInterceptor() {
+                        @Override
+                        public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+                            responseResources.close();
+                        }
+                    }
+            );
+        }
+
+        return responseResources;
+    }
+
+    /**
+     * Добавляет ресурс. Если ресурсы уже освобождены, то ресурс сразу закрывается
+     * @param resource ресурс
+     * @return тот же ресурс
+     */
+    public <T extends AutoCloseable> T add(T resource) {
+        synchronized (this) {
+            if (!closed) {
+                resources.push(resource);
+                return resource;
+            }
+        }
+
+        release(resource);
+
+        return resource;
+    }
+
+    /**
+     * Пишет потоковый ответ в пуле <code>ParserExecutor</code> по допуску, полученному еще до того, как ответ
+     * был возвращен, и освобождает все ресурсы ответа. Поток, который пишет ответ, только ждет
+     * @param admission допуск в пул
+     * @param errorMessage с чего начинается сообщение в логе, если ответ не удалось написать
+     * @param task сама запись ответа
+     * @throws IOException возникает тогда, когда не удалось написать ответ
+     */
+    public void stream(ParserExecutor.Admission admission, String errorMessage, Callable<Void> task) throws IOException {
+        try (this) {
+            admission.execute(task);
+        } catch (IOException | RuntimeException e) {
+            log.error(String.format("%s: %s", errorMessage, e.getMessage()));
+            throw e;
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException(String.format("%s: interrupted", errorMessage));
+        } catch (Exception e) {
+            log.error(String.format("%s: %s", errorMessage, e.getMessage()));
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Освобождает ресурсы в обратном порядке. Повторный вызов ничего не делает
+     */
+    @Override
+    public void close() {
+        Deque<AutoCloseable> released;
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            released = new ArrayDeque<>(resources);
+            resources.clear();
+        }
+
+        released.forEach(ResponseResources::release);
+    }
+
+    private static void release(AutoCloseable resource) {
+        try {
+            resource.close();
+        } catch (Exception e) {
+            log.warn(String.format("Failed to release a response resource: %s", e.getMessage()));
+        }
+    }
+}
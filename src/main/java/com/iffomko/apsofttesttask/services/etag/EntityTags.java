@@ -0,0 +1,67 @@
+package com.iffomko.apsofttesttask.services.etag;
+
+/**
+ * <p>ETag разобранных документов и проверка заголовка <code>If-None-Match</code>.</p>
+ * <p>ETag строится из ключа документа (SHA-256 от признака раздела и байтов файла, см. <code>ParsedDocumentCache</code>)
+ * и варианта ответа. Ответ в JSON и HTML документ - это разные представления, а сжатое тело отличается от несжатого
+ * байтами, поэтому у каждого варианта свой сильный ETag.</p>
+ * <p>Исключение - ответ в JSON: его сжимает сам Tomcat (<code>server.compression.*</code>), а ответы с сильным ETag
+ * Tomcat не сжимает, потому что сжатие меняет байты ответа. Поэтому у JSON ETag слабый.</p>
+ */
+public final class EntityTags {
+    private static final String WEAK_PREFIX = "W/";
+
+    private EntityTags() {
+    }
+
+    /**
+     * @param key ключ документа
+     * @param variant вариант ответа
+     * @return сильный ETag в кавычках
+     */
+    public static String of(String key, String variant) {
+        return "\"" + key + "-" + variant + "\"";
+    }
+
+    /**
+     * @param key ключ документа
+     * @param variant вариант ответа
+     * @return слабый ETag
+     */
+    public static String weak(String key, String variant) {
+        return WEAK_PREFIX + of(key, variant);
+    }
+
+    /**
+     * Проверяет, есть ли у клиента этот вариант документа. Сравнение слабое, как требует RFC 9110
+     * для <code>If-None-Match</code>: префикс <code>W/</code> не учитывается
+     * @param ifNoneMatch значение заголовка <code>If-None-Match</code> или null
+     * @param entityTag ETag документа
+     * @return true, если документ можно не отдавать и ответить 304
+     */
+    public static boolean matches(String ifNoneMatch, String entityTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        String opaqueTag = getOpaqueTag(entityTag);
+
+        for (String element : ifNoneMatch.split(",")) {
+            String tag = element.trim();
+
+            if (tag.equals("*")) {
+                return true;
+            }
+
+            if (getOpaqueTag(tag).equals(opaqueTag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static String getOpaqueTag(String entityTag) {
+        return entityTag.startsWith(WEAK_PREFIX) ? entityTag.substring(WEAK_PREFIX.length()) : entityTag;
+    }
+}
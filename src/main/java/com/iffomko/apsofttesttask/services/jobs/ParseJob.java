@@ -0,0 +1,102 @@
+package com.iffomko.apsofttesttask.services.jobs;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>Задача фонового разбора одного файла (см. <code>ParseJobs</code>).</p>
+ * <p>Задача ждет в очереди (<code>PENDING</code>), разбирается (<code>RUNNING</code>) и завершается либо готовым
+ * документом в файле результата (<code>DONE</code>), либо ошибкой (<code>FAILED</code>). Завершение можно
+ * ждать через <code>getCompletion</code>, не занимая поток.</p>
+ */
+public class ParseJob {
+    /**
+     * Состояние задачи
+     */
+    public enum Status {
+        PENDING,
+        RUNNING,
+        DONE,
+        FAILED
+    }
+
+    private final String id;
+    private final Path resultFile;
+    private final CompletableFuture<ParseJob> completion = new CompletableFuture<>();
+    private volatile Status status = Status.PENDING;
+    private volatile Exception failure;
+    private volatile long finishedNanos;
+
+    ParseJob(String id, Path resultFile) {
+        this.id = id;
+        this.resultFile = resultFile;
+    }
+
+    /**
+     * @return идентификатор задачи
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return текущее состояние задачи
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return true, если задача уже завершилась, успешно или с ошибкой
+     */
+    public boolean isFinished() {
+        return status == Status.DONE || status == Status.FAILED;
+    }
+
+    /**
+     * @return файл с готовым документом, который есть только у задачи в состоянии <code>DONE</code>
+     */
+    public Path getResultFile() {
+        return resultFile;
+    }
+
+    /**
+     * @return исключение, с которым завершилась задача, или null, если задача не в состоянии <code>FAILED</code>
+     */
+    public Exception getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return результат, который завершается вместе с задачей и никогда не завершается исключением
+     */
+    public CompletableFuture<ParseJob> getCompletion() {
+        return completion;
+    }
+
+    void start() {
+        status = Status.RUNNING;
+    }
+
+    void complete(long nanos) {
+        finishedNanos = nanos;
+        status = Status.DONE;
+        completion.complete(this);
+    }
+
+    void fail(Exception e, long nanos) {
+        failure = e;
+        finishedNanos = nanos;
+        status = Status.FAILED;
+        completion.complete(this);
+    }
+
+    /**
+     * @param nanos текущее время в наносекундах
+     * @param ttlNanos сколько хранится результат завершенной задачи
+     * @return true, если задача завершилась больше <code>ttlNanos</code> назад
+     */
+    boolean isExpired(long nanos, long ttlNanos) {
+        return isFinished() && nanos - finishedNanos >= ttlNanos;
+    }
+}
@@ -0,0 +1,268 @@
+package com.iffomko.apsofttesttask.services.jobs;
+
+import com.iffomko.apsofttesttask.services.concurrency.ParserOverloadedException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>Фоновый разбор файлов: запрос только ставит задачу в очередь и сразу получает ее идентификатор,
+ * а файл разбирается в отдельном пуле из <code>parser.jobs.threads</code> потоков. Поэтому большой файл
+ * не держит ни соединение, ни поток запроса, пока разбирается.</p>
+ * <p>Пул отделен от <code>ParserExecutor</code>, чтобы фоновые задачи не занимали места обычных запросов.
+ * Очередь ограничена <code>parser.jobs.queueCapacity</code> задачами, а если она заполнена, то бросается
+ * <code>ParserOverloadedException</code>.</p>
+ * <p>Документ пишется в файл <code>&lt;id&gt;.html</code> в директории <code>parser.jobs.directory</code>
+ * и хранится <code>parser.jobs.ttl</code> после завершения задачи, после чего задача и ее файл удаляются.
+ * Состояние задач хранится только в памяти, поэтому файлы, которые остались от прошлого запуска, удаляются при старте.</p>
+ */
+@Slf4j
+@Component
+public class ParseJobs implements InitializingBean, DisposableBean {
+    /**
+     * Разбор файла задачи, который пишет документ в поток результата
+     */
+    @FunctionalInterface
+    public interface Task {
+        void run(OutputStream result) throws Exception;
+    }
+
+    private static final String RESULT_SUFFIX = ".html";
+    private static final String TEMP_PREFIX = "job-";
+    private static final Duration CLEANUP_INTERVAL = Duration.ofMinutes(1);
+
+    private final Path directory;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledThreadPoolExecutor cleaner;
+    private final Map<String, ParseJob> jobs = new ConcurrentHashMap<>();
+    private final long ttlNanos;
+    private final Duration maxWait;
+    private final Duration retryAfter;
+    private final LongSupplier clock;
+
+    /**
+     * @param directory директория для документов задач
+     * @param threads количество потоков, в которых разбираются задачи
+     * @param queueCapacity сколько задач может ждать своей очереди сверх потоков
+     * @param ttl сколько хранится документ после завершения задачи
+     * @param maxWait сколько клиент может ждать завершения задачи в одном запросе
+     * @param retryAfter через сколько клиенту, которому отказали, стоит повторить запрос
+     */
+    @Autowired
+    public ParseJobs(
+            @Value("${parser.jobs.directory}") Path directory,
+            @Value("${parser.jobs.threads}") int threads,
+            @Value("${parser.jobs.queueCapacity}") int queueCapacity,
+            @Value("${parser.jobs.ttl}") Duration ttl,
+            @Value("${parser.jobs.maxWait}") Duration maxWait,
+            @Value("${parser.retryAfter}") Duration retryAfter
+    ) {
+        this(directory, threads, queueCapacity, ttl, maxWait, retryAfter, System::nanoTime);
+    }
+
+    /**
+     * @param directory директория для документов задач
+     * @param threads количество потоков, в которых разбираются задачи
+     * @param queueCapacity сколько задач может ждать своей очереди сверх потоков
+     * @param ttl сколько хранится документ после завершения задачи
+     * @param maxWait сколько клиент может ждать завершения задачи в одном запросе
+     * @param retryAfter через сколько клиенту, которому отказали, стоит повторить запрос
+     * @param clock источник времени в наносекундах
+     */
+    public ParseJobs(
+            Path directory,
+            int threads,
+            int queueCapacity,
+            Duration ttl,
+            Duration maxWait,
+            Duration retryAfter,
+            LongSupplier clock
+    ) {
+        if (threads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Parse jobs need at least one thread and a place in the queue");
+        }
+
+        this.directory = directory;
+        this.ttlNanos = ttl.toNanos();
+        this.maxWait = maxWait;
+        this.retryAfter = retryAfter;
+        this.clock = clock;
+        this.executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                0,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                newThreadFactory("parse-job-")
+        );
+        this.cleaner = new ScheduledThreadPoolExecutor(1, newThreadFactory("parse-job-cleaner-"));
+    }
+
+    private static ThreadFactory newThreadFactory(String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Удаляет файлы, которые остались от прошлого запуска, и запускает удаление устаревших задач
+     * @throws IOException возникает тогда, когда не удалось создать директорию
+     */
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        Files.createDirectories(directory);
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*{" + RESULT_SUFFIX + ",.tmp}")) {
+            for (Path file : files) {
+                delete(file);
+            }
+        }
+
+        long interval = Math.min(CLEANUP_INTERVAL.toNanos(), Math.max(ttlNanos, 1));
+        cleaner.scheduleWithFixedDelay(this::removeExpired, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return сколько клиент может ждать завершения задачи в одном запросе
+     */
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * Ставит задачу в очередь
+     * @param task разбор файла
+     * @return поставленная задача
+     * @throws ParserOverloadedException возникает тогда, когда очередь задач заполнена
+     */
+    public ParseJob submit(Task task) {
+        String id = UUID.randomUUID().toString();
+        ParseJob job = new ParseJob(id, directory.resolve(id + RESULT_SUFFIX));
+
+        jobs.put(id, job);
+
+        try {
+            executor.execute(() -> run(job, task));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(id);
+            throw new ParserOverloadedException(
+                    String.format("The parse job queue is full: %d jobs are waiting", executor.getQueue().size()),
+                    retryAfter
+            );
+        }
+
+        return job;
+    }
+
+    private void run(ParseJob job, Task task) {
+        job.start();
+
+        Path tempFile = null;
+
+        try {
+            Files.createDirectories(directory);
+            tempFile = Files.createTempFile(directory, TEMP_PREFIX, ".tmp");
+
+            try (OutputStream result = new BufferedOutputStream(Files.newOutputStream(tempFile))) {
+                task.run(result);
+            }
+
+            Files.move(tempFile, job.getResultFile(), StandardCopyOption.REPLACE_EXISTING);
+            job.complete(clock.getAsLong());
+        } catch (Exception e) {
+            delete(tempFile);
+            log.error(String.format("Parse job %s failed: %s", job.getId(), e.getMessage()));
+            job.fail(e, clock.getAsLong());
+        }
+    }
+
+    /**
+     * Ищет задачу. Принимаются только UUID, поэтому идентификатор не может указать на файл вне директории
+     * @param jobId идентификатор задачи
+     * @return задача или пусто, если такой задачи нет или ее результат уже устарел
+     */
+    public Optional<ParseJob> find(String jobId) {
+        try {
+            UUID.fromString(jobId);
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+
+        ParseJob job = jobs.get(jobId);
+
+        if (job != null && job.isExpired(clock.getAsLong(), ttlNanos)) {
+            remove(job);
+            return Optional.empty();
+        }
+
+        return Optional.ofNullable(job);
+    }
+
+    /**
+     * Удаляет задачи, которые завершились больше <code>parser.jobs.ttl</code> назад, вместе с их файлами
+     */
+    public void removeExpired() {
+        long nanos = clock.getAsLong();
+
+        for (ParseJob job : jobs.values()) {
+            if (job.isExpired(nanos, ttlNanos)) {
+                remove(job);
+            }
+        }
+    }
+
+    private void remove(ParseJob job) {
+        if (jobs.remove(job.getId(), job)) {
+            delete(job.getResultFile());
+        }
+    }
+
+    private void delete(Path file) {
+        if (file == null) {
+            return;
+        }
+
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn(String.format("Failed to delete the parse job file %s: %s", file, e.getMessage()));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        cleaner.shutdownNow();
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,228 @@
+package com.iffomko.apsofttesttask.services.lines;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>Поток, который читает загруженный файл и отдает его текст в UTF-8, проверяя кодировку по ходу чтения.</p>
+ * <p>Кодировка определяется по BOM (UTF-8, UTF-16 и UTF-32), а без BOM - по нулевым байтам в начале файла:
+ * текст в UTF-16 без BOM, который начинается с латинского символа, начинается с нулевого байта
+ * (big endian) или со второго нулевого байта (little endian). Иначе файл считается UTF-8. BOM в результат не попадает.</p>
+ * <p>Байты декодируются <code>CharsetDecoder</code> с <code>CodingErrorAction.REPORT</code>, поэтому на первом же
+ * некорректном байте чтение прерывается <code>UnsupportedEncodingException</code> с его номером, а не заменяет его
+ * на U+FFFD, как <code>new String</code>. Текст в UTF-8 после проверки отдается теми же байтами, без перекодирования,
+ * остальные кодировки перекодируются в UTF-8.</p>
+ */
+public class DecodedTextInputStream extends InputStream {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int DETECTION_SIZE = 4;
+
+    private final InputStream inputStream;
+    private final ByteBuffer input;
+    private final CharBuffer chars;
+    private Charset charset;
+    private CharsetDecoder decoder;
+    private CharsetEncoder encoder;
+    private ByteBuffer encoded;
+    private ByteBuffer output;
+    private boolean passthrough;
+    private boolean identity;
+    private boolean endOfInput;
+    private boolean finished;
+    private long decodedBytes;
+
+    /**
+     * @param inputStream поток с байтами загруженного файла
+     */
+    public DecodedTextInputStream(InputStream inputStream) {
+        this.inputStream = inputStream;
+        this.input = ByteBuffer.allocate(BUFFER_SIZE).flip();
+        this.chars = CharBuffer.allocate(BUFFER_SIZE);
+        this.output = ByteBuffer.allocate(0);
+    }
+
+    /**
+     * @return кодировка файла или null, если из потока еще ничего не прочитано
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return true, если поток отдает ровно те же байты, что и файл: это UTF-8 без BOM
+     */
+    public boolean isIdentity() {
+        return identity;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!output.hasRemaining() && !advance()) {
+            return -1;
+        }
+
+        return output.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!output.hasRemaining() && !advance()) {
+            return -1;
+        }
+
+        int length = Math.min(len, output.remaining());
+
+        output.get(b, off, length);
+
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+    /**
+     * Декодирует очередную порцию файла
+     * @return false, если файл закончился
+     * @throws IOException возникает тогда, когда не удалось прочитать файл или в нем некорректный байт
+     */
+    private boolean advance() throws IOException {
+        while (!finished) {
+            if (!endOfInput) {
+                readInput();
+            }
+
+            if (decoder == null) {
+                if (input.remaining() < DETECTION_SIZE && !endOfInput) {
+                    continue;
+                }
+
+                detect();
+            }
+
+            int start = input.position();
+            CoderResult result = decoder.decode(input, chars, endOfInput);
+
+            if (result.isError()) {
+                throw new UnsupportedEncodingException(String.format(
+                        "Malformed %s input at byte %d",
+                        charset.name(),
+                        decodedBytes + input.position() - start
+                ));
+            }
+
+            if (endOfInput && result.isUnderflow()) {
+                decoder.flush(chars);
+                finished = true;
+            }
+
+            decodedBytes += input.position() - start;
+            chars.flip();
+
+            if (passthrough) {
+                chars.clear();
+                output = ByteBuffer.wrap(input.array(), start, input.position() - start);
+            } else {
+                encoded.clear();
+                encoder.encode(chars, encoded, finished);
+
+                if (finished) {
+                    encoder.flush(encoded);
+                }
+
+                chars.compact();
+                output = encoded.flip();
+            }
+
+            if (output.hasRemaining()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Дочитывает байты файла в буфер за непрочитанным остатком
+     */
+    private void readInput() throws IOException {
+        input.compact();
+
+        int read = inputStream.read(input.array(), input.position(), input.remaining());
+
+        if (read == -1) {
+            endOfInput = true;
+        } else {
+            input.position(input.position() + read);
+        }
+
+        input.flip();
+    }
+
+    /**
+     * Определяет кодировку по первым байтам файла и пропускает BOM
+     */
+    private void detect() {
+        int b0 = getByte(0);
+        int b1 = getByte(1);
+        int b2 = getByte(2);
+        int b3 = getByte(3);
+        int bomLength = 0;
+
+        if (b0 == 0xef && b1 == 0xbb && b2 == 0xbf) {
+            charset = StandardCharsets.UTF_8;
+            bomLength = 3;
+        } else if (b0 == 0 && b1 == 0 && b2 == 0xfe && b3 == 0xff) {
+            charset = Charset.forName("UTF-32BE");
+            bomLength = 4;
+        } else if (b0 == 0xff && b1 == 0xfe && b2 == 0 && b3 == 0) {
+            charset = Charset.forName("UTF-32LE");
+            bomLength = 4;
+        } else if (b0 == 0xfe && b1 == 0xff) {
+            charset = StandardCharsets.UTF_16BE;
+            bomLength = 2;
+        } else if (b0 == 0xff && b1 == 0xfe) {
+            charset = StandardCharsets.UTF_16LE;
+            bomLength = 2;
+        } else if (b0 == 0 && b1 > 0) {
+            charset = StandardCharsets.UTF_16BE;
+        } else if (b0 > 0 && b1 == 0 && !(b2 == 0 && b3 == 0)) {
+            charset = StandardCharsets.UTF_16LE;
+        } else {
+            charset = StandardCharsets.UTF_8;
+        }
+
+        input.position(input.position() + bomLength);
+        decodedBytes = bomLength;
+        passthrough = charset.equals(StandardCharsets.UTF_8);
+        identity = passthrough && bomLength == 0;
+        decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+        if (!passthrough) {
+            encoder = StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+            encoded = ByteBuffer.allocate((int) (BUFFER_SIZE * encoder.maxBytesPerChar()));
+        }
+    }
+
+    private int getByte(int index) {
+        return index < input.remaining() ? input.get(input.position() + index) & 0xff : -1;
+    }
+}
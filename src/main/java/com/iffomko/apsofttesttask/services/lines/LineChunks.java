@@ -0,0 +1,136 @@
+package com.iffomko.apsofttesttask.services.lines;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * <p>Разбиение текста, который целиком лежит в массиве байтов, на части по границам строчек,
+ * чтобы эти части можно было обрабатывать независимо друг от друга.</p>
+ * <p>Строчки получаются те же, что и у <code>LineSplitter</code>, если сначала отрезать от текста
+ * переводы строк в конце (<code>trimTrailingLineBreaks</code>): тогда все строчки в конце текста
+ * непустые и правило про отбрасывание пустых строчек в конце больше ни на что не влияет.
+ * Граница части никогда не разрезает CRLF.</p>
+ */
+public final class LineChunks {
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    private LineChunks() {
+    }
+
+    /**
+     * Отрезает переводы строк в конце текста
+     * @param content текст
+     * @param length длина текста
+     * @return длина текста без переводов строк в конце
+     */
+    public static int trimTrailingLineBreaks(byte[] content, int length) {
+        int end = length;
+
+        while (end > 0 && (content[end - 1] == CR || content[end - 1] == LF)) {
+            end--;
+        }
+
+        return end;
+    }
+
+    /**
+     * Делит текст на части примерно одинакового размера так, чтобы каждая часть, кроме последней,
+     * заканчивалась сразу после перевода строки
+     * @param content текст
+     * @param end длина текста
+     * @param chunksCount желаемое количество частей
+     * @return границы частей: часть <code>i</code> занимает байты от <code>bounds[i]</code> до <code>bounds[i + 1]</code>
+     */
+    public static int[] split(byte[] content, int end, int chunksCount) {
+        int[] bounds = new int[chunksCount + 1];
+        int count = 0;
+
+        for (int i = 1; i < chunksCount; i++) {
+            int bound = Math.max(bounds[count], (int) ((long) end * i / chunksCount));
+
+            while (bound < end && content[bound] != CR && content[bound] != LF) {
+                bound++;
+            }
+
+            if (bound < end) {
+                bound += content[bound] == CR && bound + 1 < end && content[bound + 1] == LF ? 2 : 1;
+            }
+
+            if (bound > bounds[count] && bound < end) {
+                bounds[++count] = bound;
+            }
+        }
+
+        bounds[++count] = end;
+
+        return count == chunksCount ? bounds : Arrays.copyOf(bounds, count + 1);
+    }
+
+    /**
+     * Считает строчки в части текста
+     * @param content текст
+     * @param from начало части
+     * @param to конец части
+     * @return количество строчек
+     */
+    public static int countLines(byte[] content, int from, int to) {
+        int count = 0;
+
+        for (int i = from; i < to; i++) {
+            byte current = content[i];
+
+            if (current == LF) {
+                count++;
+            } else if (current == CR) {
+                count++;
+
+                if (i + 1 < to && content[i + 1] == LF) {
+                    i++;
+                }
+            }
+        }
+
+        return to > from && content[to - 1] != CR && content[to - 1] != LF ? count + 1 : count;
+    }
+
+    /**
+     * Отдает все строчки части текста по порядку
+     * @param content текст
+     * @param from начало части
+     * @param to конец части
+     * @param charset кодировка, в которой записан текст
+     * @param consumer получатель строчек
+     * @throws IOException возникает тогда, когда получатель не смог обработать строчку
+     */
+    public static void forEachLine(
+            byte[] content,
+            int from,
+            int to,
+            Charset charset,
+            LineConsumer consumer
+    ) throws IOException {
+        int start = from;
+
+        for (int i = from; i < to; i++) {
+            byte current = content[i];
+
+            if (current != CR && current != LF) {
+                continue;
+            }
+
+            consumer.accept(new String(content, start, i - start, charset));
+
+            if (current == CR && i + 1 < to && content[i + 1] == LF) {
+                i++;
+            }
+
+            start = i + 1;
+        }
+
+        if (start < to) {
+            consumer.accept(new String(content, start, to - start, charset));
+        }
+    }
+}
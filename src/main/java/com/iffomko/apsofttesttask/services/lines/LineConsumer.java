@@ -0,0 +1,16 @@
+package com.iffomko.apsofttesttask.services.lines;
+
+import java.io.IOException;
+
+/**
+ * Получатель строчек, которые по одной отдает <code>LineSplitter</code>
+ */
+@FunctionalInterface
+public interface LineConsumer {
+    /**
+     * Обрабатывает очередную строчку текста
+     * @param line строчка без символов перевода строки
+     * @throws IOException возникает тогда, когда получатель не смог обработать строчку
+     */
+    void accept(String line) throws IOException;
+}
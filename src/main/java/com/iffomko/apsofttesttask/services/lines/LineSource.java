@@ -0,0 +1,30 @@
+package com.iffomko.apsofttesttask.services.lines;
+
+import java.io.IOException;
+
+/**
+ * Источник строчек текста, который можно обходить несколько раз.
+ * Каждый вызов <code>forEachLine</code> заново отдает все строчки с самого начала.
+ */
+@FunctionalInterface
+public interface LineSource {
+    /**
+     * Отдает все строчки текста по порядку
+     * @param consumer получатель строчек
+     * @throws IOException возникает тогда, когда не удалось прочитать текст или обработать строчку
+     */
+    void forEachLine(LineConsumer consumer) throws IOException;
+
+    /**
+     * Возвращает источник, который отдает строчки из уже готового набора
+     * @param lines набор строчек
+     * @return источник строчек
+     */
+    static LineSource of(Iterable<String> lines) {
+        return consumer -> {
+            for (String line : lines) {
+                consumer.accept(line);
+            }
+        };
+    }
+}
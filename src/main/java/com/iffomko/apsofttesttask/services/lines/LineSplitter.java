@@ -0,0 +1,156 @@
+package com.iffomko.apsofttesttask.services.lines;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * <p>Потоковый разбиватель текста на строчки, который работает на уровне байтов.</p>
+ * <p>Байты подаются порциями через <code>accept</code>, а готовые строчки сразу же
+ * передаются в <code>LineConsumer</code>, поэтому в памяти одновременно находится только
+ * текущая строчка. Переводом строки считается CR, LF или CRLF (CRLF - это один перевод строки,
+ * даже если CR и LF попали в разные порции).</p>
+ * <p>Чтобы результат совпадал с прежним <code>String.split</code>, пустые строчки в конце текста
+ * отбрасываются, а пустой текст превращается в одну пустую строчку.</p>
+ */
+public class LineSplitter {
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final Charset charset;
+    private final LineConsumer consumer;
+
+    private byte[] line;
+    private int lineLength;
+    private boolean previousWasCr;
+    private boolean empty;
+    private int pendingEmptyLines;
+
+    /**
+     * @param charset кодировка, в которой записан текст
+     * @param consumer получатель строчек
+     */
+    public LineSplitter(Charset charset, LineConsumer consumer) {
+        this.charset = charset;
+        this.consumer = consumer;
+        this.line = new byte[128];
+        this.empty = true;
+    }
+
+    /**
+     * Читает поток до конца и отдает все его строчки получателю
+     * @param inputStream поток с текстом
+     * @param charset кодировка, в которой записан текст
+     * @param consumer получатель строчек
+     * @throws IOException возникает тогда, когда не удалось прочитать поток или обработать строчку
+     */
+    public static void split(InputStream inputStream, Charset charset, LineConsumer consumer) throws IOException {
+        LineSplitter splitter = new LineSplitter(charset, consumer);
+        byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+
+        int read;
+
+        while ((read = inputStream.read(buffer)) != -1) {
+            splitter.accept(buffer, 0, read);
+        }
+
+        splitter.finish();
+    }
+
+    /**
+     * Обрабатывает очередную порцию байтов
+     * @param bytes массив с порцией
+     * @param offset начало порции в массиве
+     * @param length длина порции
+     * @throws IOException возникает тогда, когда получатель не смог обработать строчку
+     */
+    public void accept(byte[] bytes, int offset, int length) throws IOException {
+        if (length > 0) {
+            empty = false;
+        }
+
+        int start = offset;
+        int end = offset + length;
+
+        for (int i = offset; i < end; i++) {
+            byte current = bytes[i];
+
+            if (current != CR && current != LF) {
+                continue;
+            }
+
+            if (current == LF && previousWasCr && i == start) {
+                // LF из CRLF, у которого CR остался в прошлой порции или прямо перед ним
+                previousWasCr = false;
+                start = i + 1;
+                continue;
+            }
+
+            append(bytes, start, i - start);
+            completeLine();
+
+            previousWasCr = current == CR;
+            start = i + 1;
+        }
+
+        if (start < end) {
+            previousWasCr = false;
+            append(bytes, start, end - start);
+        }
+    }
+
+    /**
+     * Сообщает о конце текста и отдает последнюю строчку, если она не пустая
+     * @throws IOException возникает тогда, когда получатель не смог обработать строчку
+     */
+    public void finish() throws IOException {
+        if (empty) {
+            consumer.accept("");
+            return;
+        }
+
+        if (lineLength > 0) {
+            completeLine();
+        }
+    }
+
+    /**
+     * Дописывает байты в текущую строчку
+     * @param bytes массив с байтами
+     * @param offset начало байтов в массиве
+     * @param length количество байтов
+     */
+    private void append(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            return;
+        }
+
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        }
+
+        System.arraycopy(bytes, offset, line, lineLength, length);
+        lineLength += length;
+    }
+
+    /**
+     * Завершает текущую строчку. Пустые строчки придерживаются до тех пор,
+     * пока не придет непустая, чтобы не отдавать пустые строчки в конце текста.
+     * @throws IOException возникает тогда, когда получатель не смог обработать строчку
+     */
+    private void completeLine() throws IOException {
+        if (lineLength == 0) {
+            pendingEmptyLines++;
+            return;
+        }
+
+        for (; pendingEmptyLines > 0; pendingEmptyLines--) {
+            consumer.accept("");
+        }
+
+        consumer.accept(new String(line, 0, lineLength, charset));
+        lineLength = 0;
+    }
+}
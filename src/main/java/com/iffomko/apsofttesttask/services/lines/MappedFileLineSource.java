@@ -0,0 +1,76 @@
+package com.iffomko.apsofttesttask.services.lines;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <p>Источник строчек файла на диске, который читает файл через <code>FileChannel.map</code>.</p>
+ * <p>Файл отображается в память окнами фиксированного размера, поэтому файл любого размера
+ * читается без системных вызовов на каждую порцию и без того, чтобы держать его целиком в куче.
+ * Из окна байты небольшими порциями передаются в <code>LineSplitter</code>.</p>
+ */
+public class MappedFileLineSource implements LineSource {
+    /**
+     * Размер окна по умолчанию
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 16 * 1024 * 1024;
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final Path path;
+    private final Charset charset;
+    private final int windowSize;
+
+    /**
+     * @param path путь к файлу
+     * @param charset кодировка, в которой записан текст
+     */
+    public MappedFileLineSource(Path path, Charset charset) {
+        this(path, charset, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param path путь к файлу
+     * @param charset кодировка, в которой записан текст
+     * @param windowSize размер окна, которым файл отображается в память
+     */
+    public MappedFileLineSource(Path path, Charset charset, int windowSize) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Window size must be positive");
+        }
+
+        this.path = path;
+        this.charset = charset;
+        this.windowSize = windowSize;
+    }
+
+    @Override
+    public void forEachLine(LineConsumer consumer) throws IOException {
+        LineSplitter splitter = new LineSplitter(charset, consumer);
+        byte[] chunk = new byte[Math.min(CHUNK_SIZE, windowSize)];
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            for (long position = 0; position < size; position += windowSize) {
+                MappedByteBuffer window = channel.map(
+                        FileChannel.MapMode.READ_ONLY,
+                        position,
+                        Math.min(windowSize, size - position)
+                );
+
+                while (window.hasRemaining()) {
+                    int length = Math.min(chunk.length, window.remaining());
+
+                    window.get(chunk, 0, length);
+                    splitter.accept(chunk, 0, length);
+                }
+            }
+        }
+
+        splitter.finish();
+    }
+}
@@ -0,0 +1,310 @@
+package com.iffomko.apsofttesttask.services.metrics;
+
+import com.iffomko.apsofttesttask.services.lines.LineConsumer;
+import com.iffomko.apsofttesttask.services.lines.LineSource;
+import com.iffomko.apsofttesttask.services.parser.IndexedDocument;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * <p>Замер разбора одного документа.</p>
+ * <p>Этапы разбора идут вперемешку: парсер получает строчки по одной, пока файл еще читается и декодируется.
+ * Поэтому этапы замеряются обертками: обертка потока файла считает время чтения, обертка источника строчек
+ * считает время всего обхода и отдельно время, которое провел в получателе строчек парсер, по пачкам строчек.
+ * Время декодирования обхода - это то, что остается от него за вычетом чтения и работы парсера внутри этого же обхода.
+ * Чтение файла целиком до разбора (<code>timeRead</code>) из обхода не вычитается, а разбиение уже прочитанного текста
+ * (<code>index</code>) целиком считается декодированием.</p>
+ * <p>Количество строчек, разделов и вложенность считаются только при первом обходе источника.
+ * Замер не потокобезопасен: документ разбирается в одном потоке.</p>
+ */
+public class ParseObservation {
+    /**
+     * Чтение, которое может бросить <code>IOException</code>
+     */
+    @FunctionalInterface
+    public interface Read<T> {
+        T get() throws IOException;
+    }
+
+    /**
+     * Отрисовка документа, которая может бросить <code>IOException</code>
+     */
+    @FunctionalInterface
+    public interface Render {
+        void run() throws IOException;
+    }
+
+    private final ParserMetrics metrics;
+    private final Character sectionTag;
+    private final long inputSize;
+    private final long startNanos;
+    private long readNanos;
+    private long decodeNanos;
+    private long renderNanos;
+    private long parseNanos;
+    private long outputSize;
+    private int passes;
+    private int linesCount;
+    private int sectionsCount;
+    private int maxDepth;
+
+    ParseObservation(ParserMetrics metrics, Character sectionTag, long inputSize) {
+        this.metrics = metrics;
+        this.sectionTag = sectionTag;
+        this.inputSize = inputSize;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Оборачивает поток загруженного файла, чтобы считать время чтения
+     * @param inputStream поток файла
+     * @return поток, который читает то же самое
+     */
+    public InputStream timeReads(InputStream inputStream) {
+        return new FilterInputStream(inputStream) {
+            @Override
+            public int read() throws IOException {
+                long start = System.nanoTime();
+                int result = super.read();
+                readNanos += System.nanoTime() - start;
+                return result;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                long start = System.nanoTime();
+                int result = super.read(b, off, len);
+                readNanos += System.nanoTime() - start;
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Выполняет чтение файла целиком и считает его время
+     * @param read само чтение
+     * @return результат чтения
+     * @throws IOException возникает тогда, когда не удалось прочитать файл
+     */
+    public <T> T timeRead(Read<T> read) throws IOException {
+        long start = System.nanoTime();
+
+        try {
+            return read.get();
+        } finally {
+            readNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * <p>Оборачивает источник строчек, чтобы считать время обхода, время работы парсера и статистику строчек.</p>
+     * <p>Чтобы не засекать время на каждой строчке, строчки копятся пачками (см. <code>LinesChunk</code>),
+     * и парсер получает всю пачку за один замер. Время получения пачки из источника относится к обходу,
+     * а время, которое парсер разбирает пачку, - к отрисовке.</p>
+     * @param source источник строчек
+     * @return источник, который отдает те же строчки в том же порядке
+     */
+    public LineSource timeLines(LineSource source) {
+        return consumer -> {
+            boolean firstPass = passes++ == 0;
+            LinesChunk chunk = new LinesChunk(consumer);
+            long readBefore = readNanos;
+            long renderBefore = renderNanos;
+            long start = System.nanoTime();
+
+            try {
+                source.forEachLine(line -> {
+                    if (firstPass) {
+                        count(line);
+                    }
+
+                    chunk.add(line);
+                });
+                chunk.flush();
+            } finally {
+                long traversal = System.nanoTime() - start;
+                decodeNanos += Math.max(0, traversal - (readNanos - readBefore) - (renderNanos - renderBefore));
+            }
+        };
+    }
+
+    /**
+     * Пачка строчек, которые еще не отданы парсеру. Отдается, когда в ней набирается <code>MAX_LINES</code>
+     * строчек или <code>MAX_CHARS</code> символов, поэтому длинные строчки не задерживаются в памяти
+     */
+    private final class LinesChunk {
+        private static final int MAX_LINES = 256;
+        private static final int MAX_CHARS = 64 * 1024;
+
+        private final LineConsumer consumer;
+        private final String[] lines = new String[MAX_LINES];
+        private int size;
+        private int chars;
+
+        private LinesChunk(LineConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        private void add(String line) throws IOException {
+            lines[size++] = line;
+            chars += line.length();
+
+            if (size == MAX_LINES || chars >= MAX_CHARS) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            long start = System.nanoTime();
+
+            try {
+                for (int i = 0; i < size; i++) {
+                    consumer.accept(lines[i]);
+                    lines[i] = null;
+                }
+            } finally {
+                renderNanos += System.nanoTime() - start;
+                size = 0;
+                chars = 0;
+            }
+        }
+    }
+
+    /**
+     * Разбивает на строчки текст, который уже прочитан в память, и считает время разбиения как время декодирования.
+     * Статистика строчек берется из самого документа, поэтому строчки не обходятся еще раз
+     * @param content текст в UTF-8
+     * @return документ
+     */
+    public IndexedDocument index(byte[] content) {
+        long start = System.nanoTime();
+        IndexedDocument document = IndexedDocument.of(content, sectionTag);
+
+        decodeNanos += System.nanoTime() - start;
+        passes++;
+        linesCount = document.getLinesCount();
+        sectionsCount = document.getSectionsCount();
+        maxDepth = document.getMaxDepth();
+
+        return document;
+    }
+
+    /**
+     * Учитывает документ, который уже был построен <code>index</code> для той же загрузки и взят из кэша.
+     * Время разбиения на строчки не считается: его не было. Статистика документа и время отрисовки
+     * записываются так же, как и после <code>index</code>
+     * @param document документ
+     * @return тот же документ
+     */
+    public IndexedDocument reuse(IndexedDocument document) {
+        passes++;
+        linesCount = document.getLinesCount();
+        sectionsCount = document.getSectionsCount();
+        maxDepth = document.getMaxDepth();
+
+        return document;
+    }
+
+    /**
+     * Выполняет отрисовку документа, построенного <code>index</code>, и считает ее время
+     * @param render сама отрисовка
+     * @throws IOException возникает тогда, когда не удалось записать результат
+     */
+    public void timeRender(Render render) throws IOException {
+        long start = System.nanoTime();
+
+        try {
+            render.run();
+        } finally {
+            renderNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Оборачивает поток, в который пишется результат, чтобы считать его размер
+     * @param outputStream поток результата
+     * @return поток, который пишет то же самое
+     */
+    public OutputStream countOutput(OutputStream outputStream) {
+        return new FilterOutputStream(outputStream) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                outputSize++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                outputSize += len;
+            }
+        };
+    }
+
+    private void count(String line) {
+        linesCount++;
+
+        int depth = 0;
+
+        while (depth < line.length() && line.charAt(depth) == sectionTag) {
+            depth++;
+        }
+
+        if (depth != 0) {
+            sectionsCount++;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+    }
+
+    /**
+     * Завершает замер и записывает его в метрики. Вызывается только после успешного разбора
+     */
+    public void finish() {
+        parseNanos = System.nanoTime() - startNanos;
+        metrics.record(this);
+    }
+
+    long getReadNanos() {
+        return readNanos;
+    }
+
+    long getDecodeNanos() {
+        return decodeNanos;
+    }
+
+    long getRenderNanos() {
+        return renderNanos;
+    }
+
+    long getParseNanos() {
+        return parseNanos;
+    }
+
+    long getInputSize() {
+        return inputSize;
+    }
+
+    long getOutputSize() {
+        return outputSize;
+    }
+
+    boolean hasLines() {
+        return passes != 0;
+    }
+
+    int getLinesCount() {
+        return linesCount;
+    }
+
+    int getSectionsCount() {
+        return sectionsCount;
+    }
+
+    int getMaxDepth() {
+        return maxDepth;
+    }
+}
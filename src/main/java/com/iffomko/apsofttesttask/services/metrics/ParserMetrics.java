@@ -0,0 +1,135 @@
+package com.iffomko.apsofttesttask.services.metrics;
+
+import com.iffomko.apsofttesttask.services.responses.utils.FileLoaderResponseCodes;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Метрики разбора файлов, которые отдаются через <code>/actuator/prometheus</code>.</p>
+ * <p>Время каждого этапа пишется в таймер <code>parser.stage</code> с тегом <code>stage</code>:</p>
+ * <p>&nbsp;&nbsp;1. <code>read</code> - чтение загруженного файла</p>
+ * <p>&nbsp;&nbsp;2. <code>decode</code> - декодирование UTF-8 и разбиение на строчки</p>
+ * <p>&nbsp;&nbsp;3. <code>render</code> - обработка строчек парсером и отрисовка HTML</p>
+ * <p>&nbsp;&nbsp;4. <code>parse</code> - весь разбор целиком, то есть первые три этапа вместе</p>
+ * <p>&nbsp;&nbsp;5. <code>serialize</code> - сериализация ответа в JSON</p>
+ * <p>&nbsp;&nbsp;6. <code>outline</code> - построение дерева разделов без отрисовки текста</p>
+ * <p>Кроме того, считаются размеры документов на входе и выходе, количество строчек, разделов,
+ * максимальная вложенность разделов и количество ответов с каждым кодом <code>FileLoaderResponseCodes</code>.</p>
+ */
+@Component
+public class ParserMetrics {
+    private final Character sectionTag;
+    private final Timer readTimer;
+    private final Timer decodeTimer;
+    private final Timer renderTimer;
+    private final Timer parseTimer;
+    private final Timer serializeTimer;
+    private final Timer outlineTimer;
+    private final DistributionSummary inputSize;
+    private final DistributionSummary outputSize;
+    private final DistributionSummary linesCount;
+    private final DistributionSummary sectionsCount;
+    private final DistributionSummary maxDepth;
+    private final Map<FileLoaderResponseCodes, Counter> responses = new EnumMap<>(FileLoaderResponseCodes.class);
+
+    /**
+     * @param registry реестр, в котором регистрируются метрики
+     * @param sectionTag определяющий признак раздела
+     */
+    public ParserMetrics(MeterRegistry registry, @Value("${section.tag}") Character sectionTag) {
+        this.sectionTag = sectionTag;
+        this.readTimer = stageTimer(registry, "read");
+        this.decodeTimer = stageTimer(registry, "decode");
+        this.renderTimer = stageTimer(registry, "render");
+        this.parseTimer = stageTimer(registry, "parse");
+        this.serializeTimer = stageTimer(registry, "serialize");
+        this.outlineTimer = stageTimer(registry, "outline");
+        this.inputSize = summary(registry, "parser.document.size", "bytes", "direction", "in");
+        this.outputSize = summary(registry, "parser.document.size", "bytes", "direction", "out");
+        this.linesCount = summary(registry, "parser.document.lines", "lines");
+        this.sectionsCount = summary(registry, "parser.document.sections", "sections");
+        this.maxDepth = summary(registry, "parser.document.depth", "levels");
+
+        for (FileLoaderResponseCodes code : FileLoaderResponseCodes.values()) {
+            responses.put(code, Counter.builder("parser.responses")
+                    .description("Количество ответов с каждым кодом")
+                    .tag("code", code.name())
+                    .register(registry));
+        }
+    }
+
+    private static Timer stageTimer(MeterRegistry registry, String stage) {
+        return Timer.builder("parser.stage")
+                .description("Время одного этапа разбора файла")
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static DistributionSummary summary(MeterRegistry registry, String name, String unit, String... tags) {
+        return DistributionSummary.builder(name)
+                .baseUnit(unit)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * Начинает замер разбора одного документа
+     * @param inputSize размер документа в байтах
+     * @return замер, который надо завершить <code>ParseObservation.finish</code>
+     */
+    public ParseObservation observe(long inputSize) {
+        return new ParseObservation(this, sectionTag, inputSize);
+    }
+
+    /**
+     * Учитывает ответ с заданным кодом
+     * @param code код ответа
+     */
+    public void recordResponse(FileLoaderResponseCodes code) {
+        responses.get(code).increment();
+    }
+
+    /**
+     * Учитывает время сериализации ответа в JSON
+     * @param nanos время в наносекундах
+     */
+    public void recordSerialization(long nanos) {
+        serializeTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Учитывает время построения дерева разделов
+     * @param nanos время в наносекундах
+     */
+    public void recordOutline(long nanos) {
+        outlineTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Записывает результаты завершенного замера
+     */
+    void record(ParseObservation observation) {
+        readTimer.record(observation.getReadNanos(), TimeUnit.NANOSECONDS);
+        parseTimer.record(observation.getParseNanos(), TimeUnit.NANOSECONDS);
+        inputSize.record(observation.getInputSize());
+        outputSize.record(observation.getOutputSize());
+
+        if (observation.hasLines()) {
+            decodeTimer.record(observation.getDecodeNanos(), TimeUnit.NANOSECONDS);
+            renderTimer.record(observation.getRenderNanos(), TimeUnit.NANOSECONDS);
+            linesCount.record(observation.getLinesCount());
+            sectionsCount.record(observation.getSectionsCount());
+            maxDepth.record(observation.getMaxDepth());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.iffomko.apsofttesttask.services.parser;
+
+import java.io.IOException;
+
+/**
+ * Получатель положений частей отрисованного документа: пунктов содержания и параграфов текста.
+ * По ним можно построить индекс, чтобы потом читать отдельные разделы или переотрисовывать только
+ * измененную часть документа, не читая весь документ
+ */
+public interface DocumentLayoutConsumer {
+    /**
+     * Вызывается перед тем, как пишется пункт содержания
+     * @param section раздел, на который ссылается пункт
+     * @param offset номер байта документа, с которого начинается пункт
+     * @throws IOException возникает тогда, когда не удалось сохранить положение
+     */
+    void acceptContentsEntry(OutlineSection section, long offset) throws IOException;
+
+    /**
+     * Вызывается после того, как написан последний пункт содержания
+     * @param offset номер байта документа сразу после последнего пункта
+     * @throws IOException возникает тогда, когда не удалось сохранить положение
+     */
+    void acceptContentsEnd(long offset) throws IOException;
+
+    /**
+     * Вызывается перед тем, как пишется параграф текста
+     * @param index номер строчки параграфа
+     * @param section раздел, если строчка является разделом, иначе null
+     * @param offset номер байта документа, с которого начинается параграф
+     * @throws IOException возникает тогда, когда не удалось сохранить положение
+     */
+    void acceptParagraph(int index, OutlineSection section, long offset) throws IOException;
+
+    /**
+     * Вызывается после того, как написан последний параграф текста. Если блок текста не выводится,
+     * то не вызывается
+     * @param offset номер байта документа сразу после последнего параграфа
+     * @throws IOException возникает тогда, когда не удалось сохранить положение
+     */
+    void acceptTextEnd(long offset) throws IOException;
+}
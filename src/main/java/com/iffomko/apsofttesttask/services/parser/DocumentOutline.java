@@ -0,0 +1,12 @@
+package com.iffomko.apsofttesttask.services.parser;
+
+import java.util.List;
+
+/**
+ * Структура документа, которую можно получить за один обход строчек, не держа в памяти весь текст
+ * @param sections все разделы документа в порядке их следования
+ * @param linesCount количество строчек в документе
+ * @param emptyText true, если весь текст документа - это один пустой параграф
+ */
+public record DocumentOutline(List<OutlineSection> sections, int linesCount, boolean emptyText) {
+}
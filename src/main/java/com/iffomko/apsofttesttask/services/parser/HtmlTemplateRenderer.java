@@ -0,0 +1,398 @@
+package com.iffomko.apsofttesttask.services.parser;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>Пишет HTML страницу сразу в байтах UTF-8.</p>
+ * <p>Неизменяемые части шаблона (заголовок страницы со стилями, обертки параграфов и ссылок)
+ * кодируются в UTF-8 один раз при загрузке класса, а изменяемые части (идентификаторы разделов,
+ * черточки вложенности и сам текст) кодируются прямо в буфер, без <code>String.format</code>
+ * и промежуточных строк.</p>
+ * <p>Страница состоит из заголовка, блока разделов, блока текста и окончания,
+ * причем каждый блок заканчивается переводом строки.</p>
+ */
+public class HtmlTemplateRenderer implements Flushable {
+    private static final byte[] HEAD = encode("""
+            <!DOCTYPE html>
+            <html lang="en">
+            <head>
+                <meta charset="UTF-8">
+                <title>Title</title>
+                <link rel="preconnect" href="https://fonts.googleapis.com">
+                <link rel="preconnect" href="https://fonts.gstatic.com" crossorigin>
+                <link href="https://fonts.googleapis.com/css2?family=Roboto:wght@400;700&display=swap" rel="stylesheet">
+                <style>
+                    * {
+                        font-family: 'Roboto', sans-serif;
+                        color: #333;
+                        font-size: 15px;
+                        font-weight: 400;
+                    }
+                    a {
+                        font-family: 'Roboto', sans-serif;
+                        color: #333;
+                        font-size: 15px;
+                        font-style: normal;
+                        font-weight: 400;
+                        text-decoration: none;
+                    }
+                    a:visited, a:focus, a:hover {
+                        color: #333;
+                    }
+                    a.section_link {
+                        font-style: italic;
+                    }
+                    a.section_link:hover {
+                        text-decoration: underline;
+                    }
+                    h1 {
+                        font-family: 'Roboto', sans-serif;
+                        color: #333;
+                        font-size: 22px;
+                        font-weight: 400;
+
+                        margin: 10px 0;
+                    }
+                </style>
+            </head>
+            <body>
+            """);
+    private static final byte[] SECTIONS_TITLE = encode("<h1>Содержание:</h1>");
+    private static final byte[] TEXT_TITLE = encode("<h1>Текст:</h1>");
+    private static final byte[] TAIL = encode("""
+            </body>
+            </html>
+            """);
+    private static final byte[] SECTION_START = encode("<div><a class=\"section_link\" href=\"#");
+    private static final byte[] SECTION_MIDDLE = encode("\">");
+    private static final byte[] LINK_END = encode("</a></div>");
+    private static final byte[] PARAGRAPH_START = encode("<div>");
+    private static final byte[] PARAGRAPH_END = encode("</div>");
+    private static final byte[] ANCHOR_START = encode("<div><a name=\"");
+    private static final byte[] ANCHOR_MIDDLE = encode("\">");
+
+    /**
+     * Параграф, который получается из пустой строчки
+     */
+    public static final String EMPTY_PARAGRAPH = "<div></div>";
+    /**
+     * Строчки, которые начинаются с этого префикса, всегда выводились как есть, без обертки в параграф
+     */
+    public static final String RAW_PARAGRAPH_PREFIX = "<div";
+    /**
+     * <code>RAW_PARAGRAPH_PREFIX</code> в UTF-8
+     */
+    static final byte[] RAW_PARAGRAPH_PREFIX_BYTES = encode(RAW_PARAGRAPH_PREFIX);
+
+    private static final int BUFFER_SIZE = 8192;
+    /**
+     * Максимальное количество байтов, в которое кодируется один символ UTF-16
+     */
+    private static final int MAX_BYTES_PER_CHAR = 3;
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position;
+    private long written;
+
+    /**
+     * @param out поток, в который пишется страница
+     */
+    public HtmlTemplateRenderer(OutputStream out) {
+        this.out = out;
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    private static byte[] encode(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Пишет заголовок страницы вплоть до открывающего тега <code>body</code>
+     */
+    public void writeHead() throws IOException {
+        write(HEAD);
+    }
+
+    /**
+     * Пишет заголовок блока разделов
+     */
+    public void writeSectionsTitle() throws IOException {
+        write(SECTIONS_TITLE);
+    }
+
+    /**
+     * Пишет заголовок блока текста
+     */
+    public void writeTextTitle() throws IOException {
+        write(TEXT_TITLE);
+    }
+
+    /**
+     * Пишет окончание страницы
+     */
+    public void writeTail() throws IOException {
+        write(TAIL);
+    }
+
+    /**
+     * Пишет перевод строки, который разделяет блоки страницы и параграфы текста
+     */
+    public void writeNewLine() throws IOException {
+        ensureCapacity(1);
+        buffer[position++] = '\n';
+    }
+
+    /**
+     * Пишет пункт содержания, который ссылается на раздел
+     * @param section раздел
+     */
+    public void writeSection(OutlineSection section) throws IOException {
+        writeSectionStart(section.index(), section.lineHash(), section.depth());
+        writeText(section.title());
+        write(LINK_END);
+    }
+
+    /**
+     * Пишет пункт содержания для раздела, название которого уже лежит в UTF-8
+     * @param index номер строчки раздела
+     * @param lineHash модуль хэша строчки раздела
+     * @param depth вложенность раздела
+     * @param text массив с названием раздела
+     * @param from начало названия
+     * @param to конец названия
+     */
+    public void writeSection(int index, int lineHash, int depth, byte[] text, int from, int to) throws IOException {
+        writeSectionStart(index, lineHash, depth);
+        write(text, from, to - from);
+        write(LINK_END);
+    }
+
+    /**
+     * Пишет параграф раздела, на который ссылается содержание
+     * @param section раздел
+     */
+    public void writeSectionParagraph(OutlineSection section) throws IOException {
+        writeAnchorStart(section.index(), section.lineHash());
+        writeText(section.title());
+        write(LINK_END);
+    }
+
+    /**
+     * Пишет параграф раздела, название которого уже лежит в UTF-8
+     * @param index номер строчки раздела
+     * @param lineHash модуль хэша строчки раздела
+     * @param text массив с названием раздела
+     * @param from начало названия
+     * @param to конец названия
+     */
+    public void writeSectionParagraph(int index, int lineHash, byte[] text, int from, int to) throws IOException {
+        writeAnchorStart(index, lineHash);
+        write(text, from, to - from);
+        write(LINK_END);
+    }
+
+    /**
+     * Пишет параграф для строчки, которая не является разделом
+     * @param line строчка текста
+     */
+    public void writeParagraph(String line) throws IOException {
+        if (line.startsWith(RAW_PARAGRAPH_PREFIX)) {
+            writeText(line);
+            return;
+        }
+
+        write(PARAGRAPH_START);
+        writeText(line);
+        write(PARAGRAPH_END);
+    }
+
+    /**
+     * Пишет параграф для строчки, которая не является разделом и уже лежит в UTF-8
+     * @param text массив со строчкой
+     * @param from начало строчки
+     * @param to конец строчки
+     * @param raw true, если строчка начинается с <code>RAW_PARAGRAPH_PREFIX</code> и пишется как есть
+     */
+    public void writeParagraph(byte[] text, int from, int to, boolean raw) throws IOException {
+        if (raw) {
+            write(text, from, to - from);
+            return;
+        }
+
+        write(PARAGRAPH_START);
+        write(text, from, to - from);
+        write(PARAGRAPH_END);
+    }
+
+    /**
+     * Пишет уже готовый фрагмент страницы, например, отрисованный заранее в другом потоке
+     * @param fragment фрагмент страницы в UTF-8
+     */
+    public void writeBytes(byte[] fragment) throws IOException {
+        write(fragment);
+    }
+
+    /**
+     * Пишет часть уже готового фрагмента страницы
+     * @param fragment фрагмент страницы в UTF-8
+     * @param offset начало части
+     * @param length длина части
+     */
+    public void writeBytes(byte[] fragment, int offset, int length) throws IOException {
+        write(fragment, offset, length);
+    }
+
+    /**
+     * @return сколько байтов страницы уже написано, вместе с теми, что еще лежат в буфере
+     */
+    public long getOffset() {
+        return written + position;
+    }
+
+    /**
+     * Пишет все, что накопилось в буфере, в поток
+     */
+    @Override
+    public void flush() throws IOException {
+        if (position > 0) {
+            flushBuffer();
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Пишет начало пункта содержания вплоть до названия раздела
+     */
+    private void writeSectionStart(int index, int lineHash, int depth) throws IOException {
+        write(SECTION_START);
+        writeSectionId(index, lineHash);
+        write(SECTION_MIDDLE);
+
+        for (int i = 0; i < depth; i++) {
+            ensureCapacity(1);
+            buffer[position++] = '-';
+        }
+
+        ensureCapacity(1);
+        buffer[position++] = ' ';
+    }
+
+    /**
+     * Пишет начало параграфа раздела вплоть до названия раздела
+     */
+    private void writeAnchorStart(int index, int lineHash) throws IOException {
+        write(ANCHOR_START);
+        writeSectionId(index, lineHash);
+        write(ANCHOR_MIDDLE);
+    }
+
+    /**
+     * Пишет идентификатор раздела в виде "номер строчки_хэш строчки"
+     * @param index номер строчки раздела
+     * @param lineHash модуль хэша строчки раздела
+     */
+    private void writeSectionId(int index, int lineHash) throws IOException {
+        writeNumber(index);
+        ensureCapacity(1);
+        buffer[position++] = '_';
+        writeNumber(lineHash);
+    }
+
+    /**
+     * Пишет число десятичными цифрами
+     * @param number число
+     */
+    private void writeNumber(long number) throws IOException {
+        ensureCapacity(20);
+
+        if (number < 0) {
+            buffer[position++] = '-';
+            number = -number;
+        }
+
+        int start = position;
+
+        do {
+            buffer[position++] = (byte) ('0' + number % 10);
+            number /= 10;
+        } while (number != 0);
+
+        for (int i = start, j = position - 1; i < j; i++, j--) {
+            byte digit = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = digit;
+        }
+    }
+
+    /**
+     * Кодирует текст в UTF-8 прямо в буфер. Непарные суррогаты, как и в <code>String.getBytes</code>,
+     * заменяются на '?'
+     * @param text текст
+     */
+    private void writeText(String text) throws IOException {
+        int length = text.length();
+
+        for (int i = 0; i < length; i++) {
+            if (position + MAX_BYTES_PER_CHAR + 1 > buffer.length) {
+                flushBuffer();
+            }
+
+            char c = text.charAt(i);
+
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                    buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else {
+                    buffer[position++] = '?';
+                }
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        write(bytes, 0, bytes.length);
+    }
+
+    private void write(byte[] bytes, int offset, int length) throws IOException {
+        if (length > buffer.length) {
+            flushBuffer();
+            out.write(bytes, offset, length);
+            written += length;
+            return;
+        }
+
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buffer, position, length);
+        position += length;
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (position + length > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, position);
+        written += position;
+        position = 0;
+    }
+}
@@ -1,5 +1,12 @@
 package com.iffomko.apsofttesttask.services.parser;
 
+import com.iffomko.apsofttesttask.services.lines.LineSource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -14,4 +21,36 @@ public interface IFileParser {
      * @return переформатированный текст
      */
     String parse(List<String> splitText);
+
+    /**
+     * <p>Потоковый вариант <code>parse</code>, который берет строчки из источника
+     * и сразу пишет результат в поток в кодировке UTF-8.</p>
+     * <p>Реализация по умолчанию собирает все строчки в список, поэтому парсерам,
+     * которые могут обойтись без этого, стоит её переопределить.</p>
+     *
+     * @param source источник строчек, которые надо обработать
+     * @param outputStream поток, в который пишется переформатированный текст
+     * @throws IOException возникает тогда, когда не удалось прочитать строчки или записать результат
+     */
+    default void parse(LineSource source, OutputStream outputStream) throws IOException {
+        List<String> lines = new ArrayList<>();
+
+        source.forEachLine(lines::add);
+
+        outputStream.write(parse(lines).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * <p>Вариант потокового <code>parse</code> для больших файлов, в котором парсер может складывать
+     * промежуточные данные (например, содержание документа) во временный файл, а не в память.</p>
+     * <p>Реализация по умолчанию не использует временный файл.</p>
+     *
+     * @param source источник строчек, которые надо обработать
+     * @param outputStream поток, в который пишется переформатированный текст
+     * @param spoolFile временный файл, который парсер может перезаписать
+     * @throws IOException возникает тогда, когда не удалось прочитать строчки или записать результат
+     */
+    default void parse(LineSource source, OutputStream outputStream, Path spoolFile) throws IOException {
+        parse(source, outputStream);
+    }
 }
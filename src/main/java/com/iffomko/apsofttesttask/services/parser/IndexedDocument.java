@@ -0,0 +1,285 @@
+package com.iffomko.apsofttesttask.services.parser;
+
+import com.iffomko.apsofttesttask.services.lines.LineChunks;
+import com.iffomko.apsofttesttask.services.lines.LineConsumer;
+import com.iffomko.apsofttesttask.services.lines.LineSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * <p>Текст в UTF-8, разбитый на строчки без копирования.</p>
+ * <p>Текст остается в одном массиве байтов, а каждая строчка хранится как начало, конец, вложенность раздела
+ * и хэш в массивах <code>int</code>. Разделы определяются один раз при построении, поэтому парсер отрисовывает
+ * строчки прямо из массива байтов и не создает на каждую строчку <code>String</code>, подстроку названия
+ * раздела и новую строку параграфа.</p>
+ * <p>Строчки те же, что и у <code>LineSplitter</code>. Текст должен быть корректным UTF-8 (его проверяет
+ * <code>DecodedTextInputStream</code>): байты строчек пишутся в документ как есть.</p>
+ * <p>Документ можно обходить и как обычный <code>LineSource</code>, тогда строчки превращаются в <code>String</code>.</p>
+ */
+public final class IndexedDocument implements LineSource {
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    /**
+     * Сколько байтов в среднем приходится на строчку, чтобы сразу выделить массивы примерно нужного размера
+     */
+    private static final int EXPECTED_LINE_LENGTH = 48;
+    private static final byte[] EMPTY_PARAGRAPH = HtmlTemplateRenderer.EMPTY_PARAGRAPH.getBytes(StandardCharsets.UTF_8);
+
+    private final byte[] text;
+    private final Character sectionTag;
+    private final byte[] tagBytes;
+    private int[] starts;
+    private int[] ends;
+    private int[] depths;
+    private int[] hashes;
+    private int linesCount;
+    private int sectionsCount;
+    private int maxDepth;
+
+    private IndexedDocument(byte[] text, Character sectionTag, int expectedLines) {
+        this.text = text;
+        this.sectionTag = sectionTag;
+        this.tagBytes = sectionTag.toString().getBytes(StandardCharsets.UTF_8);
+        this.starts = new int[expectedLines];
+        this.ends = new int[expectedLines];
+        this.depths = new int[expectedLines];
+        this.hashes = new int[expectedLines];
+    }
+
+    /**
+     * Разбивает на строчки весь текст так же, как <code>LineSplitter</code>: пустые строчки в конце текста
+     * отбрасываются, а пустой текст превращается в одну пустую строчку
+     * @param text текст в UTF-8
+     * @param sectionTag определяющий признак раздела
+     * @return документ
+     */
+    public static IndexedDocument of(byte[] text, Character sectionTag) {
+        if (text.length == 0) {
+            IndexedDocument document = new IndexedDocument(text, sectionTag, 1);
+            document.addLine(0, 0);
+            return document;
+        }
+
+        return of(text, 0, LineChunks.trimTrailingLineBreaks(text, text.length), sectionTag);
+    }
+
+    /**
+     * Разбивает на строчки часть текста так же, как <code>LineChunks.forEachLine</code>
+     * @param text текст в UTF-8
+     * @param from начало части
+     * @param to конец части
+     * @param sectionTag определяющий признак раздела
+     * @return документ из строчек части
+     */
+    public static IndexedDocument of(byte[] text, int from, int to, Character sectionTag) {
+        IndexedDocument document = new IndexedDocument(text, sectionTag, Math.max(16, (to - from) / EXPECTED_LINE_LENGTH));
+        int start = from;
+
+        for (int i = from; i < to; i++) {
+            byte current = text[i];
+
+            if (current != CR && current != LF) {
+                continue;
+            }
+
+            document.addLine(start, i);
+
+            if (current == CR && i + 1 < to && text[i + 1] == LF) {
+                i++;
+            }
+
+            start = i + 1;
+        }
+
+        if (start < to) {
+            document.addLine(start, to);
+        }
+
+        return document;
+    }
+
+    /**
+     * Отдает строчки документа в виде <code>String</code>
+     * @param consumer получатель строчек
+     * @throws IOException возникает тогда, когда получатель не смог обработать строчку
+     */
+    @Override
+    public void forEachLine(LineConsumer consumer) throws IOException {
+        for (int i = 0; i < linesCount; i++) {
+            consumer.accept(new String(text, starts[i], ends[i] - starts[i], StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * @return массив, в котором лежит текст всех строчек
+     */
+    public byte[] getText() {
+        return text;
+    }
+
+    /**
+     * @return определяющий признак раздела, по которому найдены разделы
+     */
+    public Character getSectionTag() {
+        return sectionTag;
+    }
+
+    public int getLinesCount() {
+        return linesCount;
+    }
+
+    public int getSectionsCount() {
+        return sectionsCount;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @param line номер строчки
+     * @return начало строчки в массиве текста
+     */
+    public int getStart(int line) {
+        return starts[line];
+    }
+
+    /**
+     * @param line номер строчки
+     * @return конец строчки в массиве текста, без перевода строки
+     */
+    public int getEnd(int line) {
+        return ends[line];
+    }
+
+    /**
+     * @param line номер строчки
+     * @return 0, если строчка не раздел, или вложенность раздела
+     */
+    public int getDepth(int line) {
+        return depths[line];
+    }
+
+    /**
+     * @param line номер строчки
+     * @return начало названия раздела в массиве текста, то есть строчка без определяющих признаков
+     */
+    public int getTitleStart(int line) {
+        return starts[line] + depths[line] * tagBytes.length;
+    }
+
+    /**
+     * @param line номер строчки раздела
+     * @return модуль хэша строчки, такой же, как у <code>String.hashCode</code>
+     */
+    public int getLineHash(int line) {
+        return hashes[line];
+    }
+
+    /**
+     * @param line номер строчки раздела
+     * @return идентификатор раздела, тот же, что и в ссылках содержания HTML документа
+     */
+    public String getSectionId(int line) {
+        return line + "_" + hashes[line];
+    }
+
+    /**
+     * @return сколько байтов памяти примерно занимает документ вместе с текстом
+     */
+    public long getRetainedSize() {
+        return text.length + 4L * Integer.BYTES * starts.length;
+    }
+
+    /**
+     * @param line номер строчки
+     * @param prefix префикс в UTF-8
+     * @return true, если строчка начинается с префикса
+     */
+    public boolean startsWith(int line, byte[] prefix) {
+        return ends[line] - starts[line] >= prefix.length
+                && Arrays.equals(text, starts[line], starts[line] + prefix.length, prefix, 0, prefix.length);
+    }
+
+    /**
+     * @return true, если весь текст состоит из одного пустого параграфа
+     */
+    public boolean isEmptyText() {
+        if (linesCount != 1 || depths[0] != 0) {
+            return false;
+        }
+
+        return starts[0] == ends[0] || Arrays.equals(text, starts[0], ends[0], EMPTY_PARAGRAPH, 0, EMPTY_PARAGRAPH.length);
+    }
+
+    private void addLine(int start, int end) {
+        if (linesCount == starts.length) {
+            int capacity = linesCount * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            depths = Arrays.copyOf(depths, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+        }
+
+        int depth = 0;
+
+        while (isTagAt(start + depth * tagBytes.length, end)) {
+            depth++;
+        }
+
+        starts[linesCount] = start;
+        ends[linesCount] = end;
+        depths[linesCount] = depth;
+
+        if (depth != 0) {
+            hashes[linesCount] = Math.abs(hash(text, start, end));
+            sectionsCount++;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        linesCount++;
+    }
+
+    private boolean isTagAt(int position, int end) {
+        return position + tagBytes.length <= end
+                && Arrays.equals(text, position, position + tagBytes.length, tagBytes, 0, tagBytes.length);
+    }
+
+    /**
+     * Считает <code>String.hashCode</code> строчки, не создавая саму строчку: UTF-8 декодируется
+     * в символы UTF-16 прямо при подсчете
+     */
+    private static int hash(byte[] text, int from, int to) {
+        int hash = 0;
+        int i = from;
+
+        while (i < to) {
+            int b = text[i] & 0xff;
+
+            if (b < 0x80) {
+                hash = 31 * hash + b;
+                i++;
+            } else if (b < 0xe0 && i + 1 < to) {
+                hash = 31 * hash + (((b & 0x1f) << 6) | (text[i + 1] & 0x3f));
+                i += 2;
+            } else if (b < 0xf0 && i + 2 < to) {
+                hash = 31 * hash + (((b & 0x0f) << 12) | ((text[i + 1] & 0x3f) << 6) | (text[i + 2] & 0x3f));
+                i += 3;
+            } else if (i + 3 < to) {
+                int codePoint = ((b & 0x07) << 18) | ((text[i + 1] & 0x3f) << 12)
+                        | ((text[i + 2] & 0x3f) << 6) | (text[i + 3] & 0x3f);
+                hash = 31 * hash + Character.highSurrogate(codePoint);
+                hash = 31 * hash + Character.lowSurrogate(codePoint);
+                i += 4;
+            } else {
+                // обрезанная последовательность, new String заменил бы ее на U+FFFD
+                hash = 31 * hash + 0xfffd;
+                i++;
+            }
+        }
+
+        return hash;
+    }
+}
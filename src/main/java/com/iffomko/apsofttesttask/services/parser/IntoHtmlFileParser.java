@@ -1,11 +1,21 @@
 package com.iffomko.apsofttesttask.services.parser;
 
+import com.iffomko.apsofttesttask.services.lines.LineConsumer;
+import com.iffomko.apsofttesttask.services.lines.LineSource;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * <p>Парсер, который обрабатывает текст.</p>
@@ -20,123 +30,94 @@ import java.util.stream.Collectors;
 public class IntoHtmlFileParser implements IFileParser {
 
     /**
-     * Разделы, которые ссылаются на определенную позицию в тексте
-     * @param data содержание разделов
-     * @param id идентификатор раздела, на который надо ссылаться в исходном тексте
+     * Получатель разделов, которые находит первый обход строчек
      */
-    private record Section(String data, String id) {
-        public String parse() {
-            return String.format(
-                    "<div><a class=\"section_link\" href=\"#%s\">%s</a></div>",
-                    id, data);
-        }
+    @FunctionalInterface
+    private interface SectionConsumer {
+        void accept(OutlineSection section) throws IOException;
     }
 
     /**
-     * Запись, которая содержит в себе шаблон HTML страницы.
-     * В неё вкладываются разделы и сам текст
-     * @param sections разделы, которые ссылаются на определенную позицию в тексте
-     * @param text исходный текст
+     * Часть документа, которая пишется между заголовками блоков
      */
-    private record Html(List<Section> sections, String text) {
-        public String parse() {
-            String sectionsText = sections
-                    .stream()
-                    .map(Section::parse)
-                    .collect(Collectors.joining(""));
-
-            return String.format(
-                    """
-                            <!DOCTYPE html>
-                            <html lang="en">
-                            <head>
-                                <meta charset="UTF-8">
-                                <title>Title</title>
-                                <link rel="preconnect" href="https://fonts.googleapis.com">
-                                <link rel="preconnect" href="https://fonts.gstatic.com" crossorigin>
-                                <link href="https://fonts.googleapis.com/css2?family=Roboto:wght@400;700&display=swap" rel="stylesheet">
-                                <style>
-                                    * {
-                                        font-family: 'Roboto', sans-serif;
-                                        color: #333;
-                                        font-size: 15px;
-                                        font-weight: 400;
-                                    }
-                                    a {
-                                        font-family: 'Roboto', sans-serif;
-                                        color: #333;
-                                        font-size: 15px;
-                                        font-style: normal;
-                                        font-weight: 400;
-                                        text-decoration: none;
-                                    }
-                                    a:visited, a:focus, a:hover {
-                                        color: #333;
-                                    }
-                                    a.section_link {
-                                        font-style: italic;
-                                    }
-                                    a.section_link:hover {
-                                        text-decoration: underline;
-                                    }
-                                    h1 {
-                                        font-family: 'Roboto', sans-serif;
-                                        color: #333;
-                                        font-size: 22px;
-                                        font-weight: 400;
-                                                        
-                                        margin: 10px 0;
-                                    }
-                                </style>
-                            </head>
-                            <body>
-                            %s
-                            %s
-                            %s
-                            %s
-                            </body>
-                            </html>
-                            """,
-                    sectionsText.length() != 0 ? "<h1>Содержание:</h1>" : "",
-                    sectionsText,
-                    text != null && !text.equals("<div></div>") ? "<h1>Текст:</h1>" : "",
-                    text != null && !text.equals("<div></div>") ? text : ""
-            );
-        }
+    @FunctionalInterface
+    public interface DocumentPart {
+        void write() throws IOException;
     }
 
     /**
-     * Параграф для одного текста.
-     * Это обычный HTML-тег <code>div</code>, в который
-     * вкладываются данные. Если <code>id</code> не null,
-     * то внутрь <code>div</code> вкладывается ссылка, у которой
-     * имя равна этому id
-     * @param data данные, которые нужно вложить
-     * @param id имя для ссылки
+     * Первый обход строчек: находит разделы документа и запоминает то, что нужно знать
+     * о тексте до того, как начать его выводить
      */
-    private record Paragraph(String data, String id) {
-        public String parse() {
-            if (id == null) {
-                return String.format(
-                        "<div>%s</div>",
-                        data
-                );
+    private final class OutlineCollector implements LineConsumer {
+        private final SectionConsumer sectionConsumer;
+        private int index;
+        private int sectionsCount;
+        private boolean emptyFirstParagraph;
+
+        private OutlineCollector(SectionConsumer sectionConsumer, int firstIndex) {
+            this.sectionConsumer = sectionConsumer;
+            this.index = firstIndex;
+        }
+
+        @Override
+        public void accept(String line) throws IOException {
+            int depth = getDepth(line, sectionTag);
+
+            if (depth != 0) {
+                sectionConsumer.accept(toSection(index, line, depth));
+                sectionsCount++;
+            } else if (index == 0) {
+                emptyFirstParagraph = line.isEmpty() || line.equals(HtmlTemplateRenderer.EMPTY_PARAGRAPH);
             }
 
-            return String.format(
-                    "<div><a name=\"%s\">%s</a></div>",
-                    id,
-                    data
-            );
+            index++;
+        }
+
+        /**
+         * @return true, если весь текст состоит из одного пустого параграфа
+         */
+        public boolean isEmptyText() {
+            return index == 1 && emptyFirstParagraph;
         }
     }
 
     /**
-     * Запись для элемента в списке разделов
-     * @param index строка в исходном тексте
-     * @param sectionTitle название раздела
+     * Второй обход строчек: выводит параграфы. Разделы определяются заново по самой строчке,
+     * поэтому второму обходу не нужен список разделов из первого
      */
-    private record SectionItem(int index, String sectionTitle) {
+    private final class TextWriter implements LineConsumer {
+        private final HtmlTemplateRenderer renderer;
+        private final DocumentLayoutConsumer layoutConsumer;
+        private int index;
+
+        private TextWriter(HtmlTemplateRenderer renderer, int firstIndex, DocumentLayoutConsumer layoutConsumer) {
+            this.renderer = renderer;
+            this.layoutConsumer = layoutConsumer;
+            this.index = firstIndex;
+        }
+
+        @Override
+        public void accept(String line) throws IOException {
+            if (index != 0) {
+                renderer.writeNewLine();
+            }
+
+            int depth = getDepth(line, sectionTag);
+            OutlineSection section = depth != 0 ? toSection(index, line, depth) : null;
+
+            if (layoutConsumer != null) {
+                layoutConsumer.acceptParagraph(index, section, renderer.getOffset());
+            }
+
+            if (section != null) {
+                renderer.writeSectionParagraph(section);
+            } else {
+                renderer.writeParagraph(line);
+            }
+
+            index++;
+        }
     }
 
     private final Character sectionTag;
@@ -148,27 +129,6 @@ public class IntoHtmlFileParser implements IFileParser {
         this.sectionTag = sectionTag;
     }
 
-    /**
-     * Удаляет определяющий признак раздела, т. е. он удалит
-     * все подряд идущие с начала строки признаки раздела.
-     * @param line строка, в которой надо его удалить
-     * @param sectionTag определяющий признак раздела
-     * @return строка без этого признака
-     */
-    private static String removeSectionDesignator(String line, Character sectionTag) {
-        if (!line.startsWith(sectionTag.toString())) {
-            return line;
-        }
-
-        int index = 0;
-
-        for (; (index < line.length()) && (line.charAt(index) == sectionTag); index++) {
-            continue;
-        }
-
-        return line.substring(index);
-    }
-
     /**
      * Определяет вложенность размера.
      * Все зависит от количества символа определяющего начало секции в начале строки.
@@ -177,7 +137,7 @@ public class IntoHtmlFileParser implements IFileParser {
      * @return возвращает 0, если это не раздел, или число, которое соответствует вложенности раздела
      */
     private static int getDepth(String section, Character sectionTag) {
-        if (!section.startsWith(sectionTag.toString())) {
+        if (section.isEmpty() || section.charAt(0) != sectionTag) {
             return 0;
         }
 
@@ -191,16 +151,126 @@ public class IntoHtmlFileParser implements IFileParser {
     }
 
     /**
-     * Возвращает строку соответствующую вложенности раздела.
+     * Создает раздел по строчке текста
+     * @param index номер строчки
+     * @param line сама строчка
      * @param depth вложенность раздела
-     * @return строка, которую можно поставить в начало каждого раздела
+     * @return раздел
+     */
+    private static OutlineSection toSection(int index, String line, int depth) {
+        return new OutlineSection(index, depth, line.substring(depth), Math.abs(line.hashCode()));
+    }
+
+    /**
+     * Разбивает текст в UTF-8 на строчки так же, как <code>LineSplitter</code>, и находит в нем разделы,
+     * как это делает сам парсер
+     * @param text текст
+     * @return документ, который парсер отрисовывает без строчек
+     */
+    public IndexedDocument index(byte[] text) {
+        return IndexedDocument.of(text, sectionTag);
+    }
+
+    /**
+     * Делает то же самое, что и <code>index</code>, но для части текста, которая разбивается так же,
+     * как в <code>LineChunks.forEachLine</code>
+     * @param text текст
+     * @param from начало части текста
+     * @param to конец части текста
+     * @return документ, который парсер отрисовывает без строчек
+     */
+    public IndexedDocument index(byte[] text, int from, int to) {
+        return IndexedDocument.of(text, from, to, sectionTag);
+    }
+
+    /**
+     * Создает раздел по строчке документа
+     * @param document документ
+     * @param line номер строчки в документе
+     * @param firstIndex номер первой строчки документа в исходном тексте
+     * @return раздел
+     */
+    private static OutlineSection toSection(IndexedDocument document, int line, int firstIndex) {
+        int titleStart = document.getTitleStart(line);
+
+        return new OutlineSection(
+                firstIndex + line,
+                document.getDepth(line),
+                new String(document.getText(), titleStart, document.getEnd(line) - titleStart, StandardCharsets.UTF_8),
+                document.getLineHash(line)
+        );
+    }
+
+    /**
+     * @param source источник строчек
+     * @return документ, если источник - это документ, разделы в котором найдены по тому же признаку, иначе null
      */
-    private static String printDepth(int depth) {
-        return "-".repeat(Math.max(0, depth));
+    private IndexedDocument asIndexedDocument(LineSource source) {
+        return source instanceof IndexedDocument document && sectionTag.equals(document.getSectionTag())
+                ? document
+                : null;
     }
 
     /**
-     * Метод, который парсит текст файла в определенный формат
+     * Обходит строчки и собирает структуру документа, не формируя сам текст
+     * @param source источник строчек
+     * @return структура документа
+     * @throws IOException возникает тогда, когда не удалось прочитать строчки
+     */
+    public DocumentOutline getOutline(LineSource source) throws IOException {
+        List<OutlineSection> sections = new ArrayList<>();
+        OutlineCollector collector = new OutlineCollector(sections::add, 0);
+
+        source.forEachLine(collector);
+
+        return new DocumentOutline(sections, collector.index, collector.isEmptyText());
+    }
+
+    /**
+     * <p>Строит дерево разделов документа за один обход строчек, не формируя сам текст.</p>
+     * <p>Открытые разделы лежат в стеке: очередной раздел закрывает все открытые разделы
+     * такой же или меньшей вложенности и становится подразделом ближайшего оставшегося.
+     * Последняя строчка раздела - это строчка перед тем разделом, который его закрыл,
+     * или последняя строчка документа.</p>
+     * @param source источник строчек
+     * @return разделы верхнего уровня вместе с подразделами
+     * @throws IOException возникает тогда, когда не удалось прочитать строчки
+     */
+    public List<SectionNode> getSectionTree(LineSource source) throws IOException {
+        if (source == null) {
+            throw new IllegalArgumentException(FileParserEnum.ILLEGAL_STATE_EXCEPTION.getMessage());
+        }
+
+        List<SectionNode> roots = new ArrayList<>();
+        Deque<SectionNode> opened = new ArrayDeque<>();
+        OutlineCollector collector = new OutlineCollector(section -> {
+            while (!opened.isEmpty() && opened.peek().getDepth() >= section.depth()) {
+                opened.pop().close(section.index() - 1);
+            }
+
+            SectionNode node = new SectionNode(section);
+
+            if (opened.isEmpty()) {
+                roots.add(node);
+            } else {
+                opened.peek().addChild(node);
+            }
+
+            opened.push(node);
+        }, 0);
+
+        source.forEachLine(collector);
+
+        while (!opened.isEmpty()) {
+            opened.pop().close(collector.index - 1);
+        }
+
+        return roots;
+    }
+
+    /**
+     * Метод, который парсит текст файла в определенный формат.
+     * Работает так же, как и потоковый <code>parse</code>, только источником служит список
      *
      * @param splitText список строчек, которые надо обработать
      * @return переформатированный текст
@@ -212,47 +282,340 @@ public class IntoHtmlFileParser implements IFileParser {
             throw new IllegalArgumentException(FileParserEnum.ILLEGAL_STATE_EXCEPTION.getMessage());
         }
 
-        List<String> lines = new ArrayList<>();
-        List<SectionItem> notParsedSections = new ArrayList<>();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
 
-        int index = 0;
+        try {
+            parse(LineSource.of(splitText), outputStream);
+        } catch (IOException e) {
+            // список строчек и ByteArrayOutputStream не бросают IOException
+            throw new UncheckedIOException(e);
+        }
 
-        for (String line : splitText) {
-            lines.add(removeSectionDesignator(line, sectionTag));
+        return outputStream.toString(StandardCharsets.UTF_8);
+    }
 
-            if (line.startsWith(sectionTag.toString())) {
-                notParsedSections.add(new SectionItem(index, line));
+    /**
+     * <p>Потоковый вариант <code>parse</code>.</p>
+     * <p>Источник обходится дважды: сначала собираются только разделы, чтобы вывести содержание,
+     * а затем строчки по одной превращаются в параграфы и сразу пишутся в поток.
+     * Поэтому в памяти кроме разделов находится только текущая строчка.
+     * Оба обхода линейны, поэтому время работы не зависит от количества разделов.</p>
+     * <p>Если источник - это <code>IndexedDocument</code>, то разделы уже найдены при его построении,
+     * и оба блока пишутся прямо из байтов документа, без строчек.</p>
+     *
+     * @param source источник строчек, которые надо обработать
+     * @param outputStream поток, в который пишется переформатированный текст
+     * @throws IOException возникает тогда, когда не удалось прочитать строчки или записать результат
+     * @throws IllegalArgumentException возникает тогда, когда источник является null
+     */
+    @Override
+    public void parse(LineSource source, OutputStream outputStream) throws IOException {
+        if (source == null) {
+            throw new IllegalArgumentException(FileParserEnum.ILLEGAL_STATE_EXCEPTION.getMessage());
+        }
+
+        IndexedDocument document = asIndexedDocument(source);
+
+        if (document != null) {
+            HtmlTemplateRenderer renderer = new HtmlTemplateRenderer(outputStream);
+
+            writeDocument(
+                    renderer,
+                    document.getSectionsCount() != 0,
+                    document.isEmptyText(),
+                    () -> writeContents(document, 0, renderer, null),
+                    () -> writeText(document, 0, renderer, null)
+            );
+            return;
+        }
+
+        DocumentOutline outline = getOutline(source);
+        HtmlTemplateRenderer renderer = new HtmlTemplateRenderer(outputStream);
+
+        writeDocument(renderer, !outline.sections().isEmpty(), outline.emptyText(), () -> {
+            for (OutlineSection section : outline.sections()) {
+                renderer.writeSection(section);
             }
+        }, () -> writeText(source, 0, renderer));
+    }
 
-            index++;
+    /**
+     * <p>Вариант потокового <code>parse</code> для больших файлов.</p>
+     * <p>Содержание при первом обходе сразу пишется во временный файл, а затем копируется в поток,
+     * поэтому в памяти не остается даже списка разделов и расход памяти не зависит от размера файла.</p>
+     *
+     * @param source источник строчек, которые надо обработать
+     * @param outputStream поток, в который пишется переформатированный текст
+     * @param spoolFile временный файл, в который пишется содержание
+     * @throws IOException возникает тогда, когда не удалось прочитать строчки или записать результат
+     * @throws IllegalArgumentException возникает тогда, когда источник является null
+     */
+    @Override
+    public void parse(LineSource source, OutputStream outputStream, Path spoolFile) throws IOException {
+        if (source == null) {
+            throw new IllegalArgumentException(FileParserEnum.ILLEGAL_STATE_EXCEPTION.getMessage());
         }
 
-        List<Section> parsedSections = new ArrayList<>();
+        OutlineCollector collector;
 
-        for (SectionItem section : notParsedSections) {
-            String sectionTitle = section.sectionTitle();
-            int sectionIndex = section.index();
+        try (OutputStream contentsStream = Files.newOutputStream(spoolFile)) {
+            HtmlTemplateRenderer contentsRenderer = new HtmlTemplateRenderer(contentsStream);
 
-            int currentDepth = getDepth(sectionTitle, sectionTag);
+            collector = new OutlineCollector(contentsRenderer::writeSection, 0);
+            source.forEachLine(collector);
+            contentsRenderer.flush();
+        }
 
-            String sectionName = removeSectionDesignator(sectionTitle, sectionTag);
-            String depth = printDepth(currentDepth);
-            String sectionId = String.format("%d_%d", sectionIndex, Math.abs(sectionTitle.hashCode()));
+        HtmlTemplateRenderer renderer = new HtmlTemplateRenderer(outputStream);
 
-            parsedSections.add(new Section(String.format("%s %s", depth, sectionName), sectionId));
+        writeDocument(renderer, collector.sectionsCount != 0, collector.isEmptyText(), () -> {
+            renderer.flush();
+            Files.copy(spoolFile, outputStream);
+        }, () -> writeText(source, 0, renderer));
+    }
 
-            lines.add(sectionIndex, new Paragraph(lines.get(sectionIndex), sectionId).parse());
-            lines.remove(sectionIndex + 1);
+    /**
+     * <p>Вариант потокового <code>parse</code>, который кроме самого документа сообщает,
+     * с какого байта документа начинается каждый пункт содержания и каждый параграф текста.</p>
+     *
+     * @param source источник строчек, которые надо обработать
+     * @param outputStream поток, в который пишется переформатированный текст
+     * @param layoutConsumer получатель положений частей документа
+     * @throws IOException возникает тогда, когда не удалось прочитать строчки или записать результат
+     * @throws IllegalArgumentException возникает тогда, когда источник является null
+     */
+    public void parse(
+            LineSource source,
+            OutputStream outputStream,
+            DocumentLayoutConsumer layoutConsumer
+    ) throws IOException {
+        if (source == null) {
+            throw new IllegalArgumentException(FileParserEnum.ILLEGAL_STATE_EXCEPTION.getMessage());
         }
 
-        String text = lines.stream().map(item -> {
-            if (item.startsWith("<div")) {
-                return item;
+        DocumentOutline outline = getOutline(source);
+        HtmlTemplateRenderer renderer = new HtmlTemplateRenderer(outputStream);
+
+        writeDocument(renderer, !outline.sections().isEmpty(), outline.emptyText(), () -> {
+            for (OutlineSection section : outline.sections()) {
+                layoutConsumer.acceptContentsEntry(section, renderer.getOffset());
+                renderer.writeSection(section);
             }
 
-            return new Paragraph(item, null).parse();
-        }).collect(Collectors.joining("\n"));
+            layoutConsumer.acceptContentsEnd(renderer.getOffset());
+        }, () -> {
+            writeText(source, 0, renderer, layoutConsumer);
+            layoutConsumer.acceptTextEnd(renderer.getOffset());
+        });
+    }
+
+    /**
+     * Пишет пункты содержания для части документа
+     * @param lines строчки части документа
+     * @param firstIndex номер первой строчки части в документе
+     * @param renderer куда пишется содержание
+     * @return количество разделов в части документа
+     * @throws IOException возникает тогда, когда не удалось прочитать строчки или записать результат
+     */
+    int writeContents(LineSource lines, int firstIndex, HtmlTemplateRenderer renderer) throws IOException {
+        return writeContents(lines, firstIndex, renderer, null);
+    }
+
+    /**
+     * Пишет пункты содержания для части документа и сообщает их положения
+     * @param lines строчки части документа
+     * @param firstIndex номер первой строчки части в документе
+     * @param renderer куда пишется содержание
+     * @param layoutConsumer получатель положений пунктов содержания или null
+     * @return количество разделов в части документа
+     * @throws IOException возникает тогда, когда не удалось прочитать строчки или записать результат
+     */
+    public int writeContents(
+            LineSource lines,
+            int firstIndex,
+            HtmlTemplateRenderer renderer,
+            DocumentLayoutConsumer layoutConsumer
+    ) throws IOException {
+        IndexedDocument document = asIndexedDocument(lines);
+
+        if (document != null) {
+            return writeContents(document, firstIndex, renderer, layoutConsumer);
+        }
+
+        OutlineCollector collector = new OutlineCollector(section -> {
+            if (layoutConsumer != null) {
+                layoutConsumer.acceptContentsEntry(section, renderer.getOffset());
+            }
+
+            renderer.writeSection(section);
+        }, firstIndex);
+
+        lines.forEachLine(collector);
+
+        return collector.sectionsCount;
+    }
+
+    /**
+     * Пишет параграфы для части документа. Перед каждым параграфом, кроме самого первого в документе,
+     * пишется перевод строки
+     * @param lines строчки части документа
+     * @param firstIndex номер первой строчки части в документе
+     * @param renderer куда пишутся параграфы
+     * @throws IOException возникает тогда, когда не удалось прочитать строчки или записать результат
+     */
+    void writeText(LineSource lines, int firstIndex, HtmlTemplateRenderer renderer) throws IOException {
+        writeText(lines, firstIndex, renderer, null);
+    }
+
+    /**
+     * Пишет параграфы для части документа и сообщает их положения
+     * @param lines строчки части документа
+     * @param firstIndex номер первой строчки части в документе
+     * @param renderer куда пишутся параграфы
+     * @param layoutConsumer получатель положений параграфов или null
+     * @throws IOException возникает тогда, когда не удалось прочитать строчки или записать результат
+     */
+    public void writeText(
+            LineSource lines,
+            int firstIndex,
+            HtmlTemplateRenderer renderer,
+            DocumentLayoutConsumer layoutConsumer
+    ) throws IOException {
+        IndexedDocument document = asIndexedDocument(lines);
+
+        if (document != null) {
+            writeText(document, firstIndex, renderer, layoutConsumer);
+            return;
+        }
+
+        lines.forEachLine(new TextWriter(renderer, firstIndex, layoutConsumer));
+    }
+
+    /**
+     * Пишет пункты содержания прямо из байтов документа
+     * @param document документ
+     * @param firstIndex номер первой строчки документа в исходном тексте
+     * @param renderer куда пишется содержание
+     * @param layoutConsumer получатель положений пунктов содержания или null
+     * @return количество разделов в документе
+     * @throws IOException возникает тогда, когда не удалось записать результат
+     */
+    private int writeContents(
+            IndexedDocument document,
+            int firstIndex,
+            HtmlTemplateRenderer renderer,
+            DocumentLayoutConsumer layoutConsumer
+    ) throws IOException {
+        byte[] text = document.getText();
+
+        for (int line = 0; line < document.getLinesCount(); line++) {
+            int depth = document.getDepth(line);
+
+            if (depth == 0) {
+                continue;
+            }
+
+            if (layoutConsumer != null) {
+                layoutConsumer.acceptContentsEntry(toSection(document, line, firstIndex), renderer.getOffset());
+            }
+
+            renderer.writeSection(
+                    firstIndex + line,
+                    document.getLineHash(line),
+                    depth,
+                    text,
+                    document.getTitleStart(line),
+                    document.getEnd(line)
+            );
+        }
+
+        return document.getSectionsCount();
+    }
+
+    /**
+     * Пишет параграфы прямо из байтов документа
+     * @param document документ
+     * @param firstIndex номер первой строчки документа в исходном тексте
+     * @param renderer куда пишутся параграфы
+     * @param layoutConsumer получатель положений параграфов или null
+     * @throws IOException возникает тогда, когда не удалось записать результат
+     */
+    private void writeText(
+            IndexedDocument document,
+            int firstIndex,
+            HtmlTemplateRenderer renderer,
+            DocumentLayoutConsumer layoutConsumer
+    ) throws IOException {
+        byte[] text = document.getText();
+
+        for (int line = 0; line < document.getLinesCount(); line++) {
+            int index = firstIndex + line;
+            int depth = document.getDepth(line);
+
+            if (index != 0) {
+                renderer.writeNewLine();
+            }
+
+            if (layoutConsumer != null) {
+                OutlineSection section = depth != 0 ? toSection(document, line, firstIndex) : null;
+                layoutConsumer.acceptParagraph(index, section, renderer.getOffset());
+            }
+
+            if (depth != 0) {
+                renderer.writeSectionParagraph(
+                        index,
+                        document.getLineHash(line),
+                        text,
+                        document.getTitleStart(line),
+                        document.getEnd(line)
+                );
+            } else {
+                renderer.writeParagraph(
+                        text,
+                        document.getStart(line),
+                        document.getEnd(line),
+                        document.startsWith(line, HtmlTemplateRenderer.RAW_PARAGRAPH_PREFIX_BYTES)
+                );
+            }
+        }
+    }
+
+    /**
+     * Пишет весь документ: заголовок, содержание, текст и окончание
+     * @param renderer куда пишется документ
+     * @param hasSections true, если в документе есть разделы
+     * @param emptyText true, если блок текста не выводится
+     * @param contents пишет пункты содержания
+     * @param text пишет параграфы текста
+     * @throws IOException возникает тогда, когда не удалось прочитать строчки или записать результат
+     */
+    public void writeDocument(
+            HtmlTemplateRenderer renderer,
+            boolean hasSections,
+            boolean emptyText,
+            DocumentPart contents,
+            DocumentPart text
+    ) throws IOException {
+        renderer.writeHead();
+
+        if (hasSections) {
+            renderer.writeSectionsTitle();
+        }
+
+        renderer.writeNewLine();
+        contents.write();
+        renderer.writeNewLine();
+
+        if (!emptyText) {
+            renderer.writeTextTitle();
+            renderer.writeNewLine();
+            text.write();
+        } else {
+            renderer.writeNewLine();
+        }
 
-        return new Html(parsedSections, text).parse();
+        renderer.writeNewLine();
+        renderer.writeTail();
+        renderer.flush();
     }
 }
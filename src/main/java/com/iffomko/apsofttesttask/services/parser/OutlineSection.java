@@ -0,0 +1,17 @@
+package com.iffomko.apsofttesttask.services.parser;
+
+/**
+ * Раздел, найденный при обходе текста
+ * @param index номер строчки раздела в исходном тексте
+ * @param depth вложенность раздела
+ * @param title название раздела без определяющего признака
+ * @param lineHash модуль хэша строчки раздела вместе с определяющим признаком
+ */
+public record OutlineSection(int index, int depth, String title, int lineHash) {
+    /**
+     * @return идентификатор раздела, на который ссылается содержание
+     */
+    public String id() {
+        return index + "_" + lineHash;
+    }
+}
@@ -0,0 +1,207 @@
+package com.iffomko.apsofttesttask.services.parser;
+
+import com.iffomko.apsofttesttask.services.lines.LineChunks;
+import com.iffomko.apsofttesttask.services.lines.LineSource;
+import com.iffomko.apsofttesttask.services.lines.LineSplitter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Параллельный вариант <code>IntoHtmlFileParser</code> для одного большого документа.</p>
+ * <p>Текст делится на части по границам строчек, и части обрабатываются в <code>ForkJoinPool</code> в два прохода:</p>
+ * <p>&nbsp;&nbsp;1. В каждой части считаются строчки, а префиксные суммы дают номер первой строчки каждой части</p>
+ * <p>&nbsp;&nbsp;2. Каждая часть отрисовывает свои пункты содержания и свои параграфы, уже зная номера своих строчек,
+ * поэтому идентификаторы разделов (номер строчки и хэш) совпадают с последовательным парсером</p>
+ * <p>Затем готовые фрагменты склеиваются в том же порядке. Результат побайтово совпадает
+ * с <code>IntoHtmlFileParser</code>.</p>
+ * <p>Текст в UTF-8 каждая часть разбивает в <code>IndexedDocument</code> и отрисовывает прямо из байтов.</p>
+ */
+@Service
+public class ParallelIntoHtmlFileParser implements DisposableBean {
+    /**
+     * На сколько частей делится текст на каждый поток, чтобы потоки загружались равномерно
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * Отрисованная часть документа
+     */
+    private record RenderedChunk(byte[] contents, byte[] text, int sectionsCount) {
+    }
+
+    private final IntoHtmlFileParser fileParser;
+    private final boolean enabled;
+    private final ForkJoinPool pool;
+    private final long minChunkSize;
+
+    /**
+     * @param fileParser последовательный парсер, который отрисовывает части и разбирает маленькие документы
+     * @param enabled true, если большие документы надо разбирать параллельно
+     * @param threads количество потоков, 0 - по количеству ядер процессора
+     * @param minChunkSize минимальный размер одной части
+     */
+    public ParallelIntoHtmlFileParser(
+            IntoHtmlFileParser fileParser,
+            @Value("${parser.parallel.enabled}") boolean enabled,
+            @Value("${parser.parallel.threads}") int threads,
+            @Value("${parser.parallel.minChunkSize}") DataSize minChunkSize
+    ) {
+        this.fileParser = fileParser;
+        this.enabled = enabled;
+        this.pool = new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        this.minChunkSize = Math.max(1, minChunkSize.toBytes());
+    }
+
+    /**
+     * @param size размер документа в байтах
+     * @return true, если документ такого размера имеет смысл разбирать параллельно
+     */
+    public boolean supports(long size) {
+        return enabled && size >= 2 * minChunkSize;
+    }
+
+    /**
+     * Разбирает документ так же, как <code>IntoHtmlFileParser</code>, но параллельно
+     * @param content байты документа
+     * @param charset кодировка, в которой записан документ
+     * @param outputStream поток, в который пишется переформатированный текст
+     * @throws IOException возникает тогда, когда не удалось записать результат
+     */
+    public void parse(byte[] content, Charset charset, OutputStream outputStream) throws IOException {
+        int end = LineChunks.trimTrailingLineBreaks(content, content.length);
+        int chunksCount = (int) Math.min((long) pool.getParallelism() * CHUNKS_PER_THREAD, end / minChunkSize);
+        int[] bounds = LineChunks.split(content, end, Math.max(chunksCount, 1));
+        int chunks = bounds.length - 1;
+
+        if (chunks < 2) {
+            parseSequentially(content, charset, outputStream);
+            return;
+        }
+
+        List<Callable<Integer>> counting = new ArrayList<>(chunks);
+
+        for (int i = 0; i < chunks; i++) {
+            int from = bounds[i];
+            int to = bounds[i + 1];
+            counting.add(() -> LineChunks.countLines(content, from, to));
+        }
+
+        List<Integer> linesCounts = invokeAll(counting);
+        int[] firstIndexes = new int[chunks];
+
+        for (int i = 1; i < chunks; i++) {
+            firstIndexes[i] = firstIndexes[i - 1] + linesCounts.get(i - 1);
+        }
+
+        List<Callable<RenderedChunk>> rendering = new ArrayList<>(chunks);
+
+        for (int i = 0; i < chunks; i++) {
+            int from = bounds[i];
+            int to = bounds[i + 1];
+            int firstIndex = firstIndexes[i];
+            rendering.add(() -> render(content, from, to, firstIndex, charset));
+        }
+
+        List<RenderedChunk> renderedChunks = invokeAll(rendering);
+        int sectionsCount = 0;
+
+        for (RenderedChunk renderedChunk : renderedChunks) {
+            sectionsCount += renderedChunk.sectionsCount();
+        }
+
+        // документ из одного пустого параграфа сюда не попадает: в нем меньше двух частей
+        HtmlTemplateRenderer renderer = new HtmlTemplateRenderer(outputStream);
+
+        fileParser.writeDocument(renderer, sectionsCount != 0, false, () -> {
+            for (RenderedChunk renderedChunk : renderedChunks) {
+                renderer.writeBytes(renderedChunk.contents());
+            }
+        }, () -> {
+            for (RenderedChunk renderedChunk : renderedChunks) {
+                renderer.writeBytes(renderedChunk.text());
+            }
+        });
+    }
+
+    /**
+     * Отрисовывает пункты содержания и параграфы одной части
+     */
+    private RenderedChunk render(byte[] content, int from, int to, int firstIndex, Charset charset) throws IOException {
+        ByteArrayOutputStream contentsStream = new ByteArrayOutputStream();
+        ByteArrayOutputStream textStream = new ByteArrayOutputStream((to - from) * 2);
+        HtmlTemplateRenderer contentsRenderer = new HtmlTemplateRenderer(contentsStream);
+        HtmlTemplateRenderer textRenderer = new HtmlTemplateRenderer(textStream);
+
+        LineSource lines = StandardCharsets.UTF_8.equals(charset)
+                ? fileParser.index(content, from, to)
+                : consumer -> LineChunks.forEachLine(content, from, to, charset, consumer);
+        int sectionsCount = fileParser.writeContents(lines, firstIndex, contentsRenderer);
+        fileParser.writeText(lines, firstIndex, textRenderer);
+
+        contentsRenderer.flush();
+        textRenderer.flush();
+
+        return new RenderedChunk(contentsStream.toByteArray(), textStream.toByteArray(), sectionsCount);
+    }
+
+    private void parseSequentially(byte[] content, Charset charset, OutputStream outputStream) throws IOException {
+        if (StandardCharsets.UTF_8.equals(charset)) {
+            fileParser.parse(fileParser.index(content), outputStream);
+            return;
+        }
+
+        fileParser.parse(
+                consumer -> LineSplitter.split(new ByteArrayInputStream(content), charset, consumer),
+                outputStream
+        );
+    }
+
+    /**
+     * Выполняет задачи в пуле и возвращает их результаты в том же порядке
+     */
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<>(tasks.size());
+
+        try {
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing the document", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+
+            throw new UncheckedIOException(new IOException(e.getCause()));
+        }
+
+        return results;
+    }
+
+    @Override
+    public void destroy() {
+        pool.shutdownNow();
+    }
+}
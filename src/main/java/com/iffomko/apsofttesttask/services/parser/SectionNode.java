@@ -0,0 +1,69 @@
+package com.iffomko.apsofttesttask.services.parser;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Узел дерева разделов документа. В JSON пишется вместе с подразделами без рекурсии, см. <code>SectionNodeSerializer</code>
+ */
+@Getter
+@JsonSerialize(using = SectionNodeSerializer.class)
+public class SectionNode {
+    /**
+     * Вложенность раздела, то есть количество определяющих признаков в начале строчки
+     */
+    private final int depth;
+    /**
+     * Название раздела без определяющего признака
+     */
+    private final String title;
+    /**
+     * Модуль хэша строчки раздела, из которого вместе с номером строчки складывается идентификатор
+     */
+    @Getter(AccessLevel.NONE)
+    private final int lineHash;
+    /**
+     * Номер строчки раздела (с нуля)
+     */
+    private final int firstLine;
+    /**
+     * Номер последней строчки раздела вместе со всеми подразделами
+     */
+    private int lastLine;
+    /**
+     * Подразделы в порядке их следования. У большинства разделов подразделов нет,
+     * поэтому список создается только при добавлении первого подраздела
+     */
+    private List<SectionNode> children = List.of();
+
+    SectionNode(OutlineSection section) {
+        this.depth = section.depth();
+        this.title = section.title();
+        this.lineHash = section.lineHash();
+        this.firstLine = section.index();
+        this.lastLine = section.index();
+    }
+
+    /**
+     * @return идентификатор раздела, на который ссылается содержание HTML документа
+     */
+    public String getId() {
+        return firstLine + "_" + lineHash;
+    }
+
+    void addChild(SectionNode child) {
+        if (children.isEmpty()) {
+            children = new ArrayList<>();
+        }
+
+        children.add(child);
+    }
+
+    void close(int lastLine) {
+        this.lastLine = lastLine;
+    }
+}
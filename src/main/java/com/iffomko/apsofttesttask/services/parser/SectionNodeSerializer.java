@@ -0,0 +1,63 @@
+package com.iffomko.apsofttesttask.services.parser;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * <p>Пишет раздел в JSON вместе со всеми подразделами.</p>
+ * <p>Обычная сериализация спускается в <code>children</code> рекурсивно, и на документе с вложенностью разделов
+ * в несколько тысяч уровней (строчки с растущим числом определяющих признаков) переполняет стек. Здесь дерево
+ * обходится со своим стеком, поэтому глубина дерева ограничена только памятью.</p>
+ */
+public class SectionNodeSerializer extends StdSerializer<SectionNode> {
+    private static final long serialVersionUID = 1L;
+
+    public SectionNodeSerializer() {
+        super(SectionNode.class);
+    }
+
+    @Override
+    public void serialize(SectionNode root, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        Deque<Iterator<SectionNode>> opened = new ArrayDeque<>();
+
+        writeStart(root, generator);
+        opened.push(root.getChildren().iterator());
+
+        while (!opened.isEmpty()) {
+            Iterator<SectionNode> children = opened.peek();
+
+            if (children.hasNext()) {
+                SectionNode child = children.next();
+
+                writeStart(child, generator);
+                opened.push(child.getChildren().iterator());
+            } else {
+                opened.pop();
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+        }
+    }
+
+    /**
+     * Пишет поля раздела и открывает массив его подразделов
+     * @param node раздел
+     * @param generator генератор JSON
+     * @throws IOException возникает тогда, когда не удалось записать JSON
+     */
+    private static void writeStart(SectionNode node, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("id", node.getId());
+        generator.writeNumberField("depth", node.getDepth());
+        generator.writeStringField("title", node.getTitle());
+        generator.writeNumberField("firstLine", node.getFirstLine());
+        generator.writeNumberField("lastLine", node.getLastLine());
+        generator.writeArrayFieldStart("children");
+    }
+}
@@ -0,0 +1,33 @@
+package com.iffomko.apsofttesttask.services.render;
+
+import com.iffomko.apsofttesttask.services.parser.IndexedDocument;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <p>Отрисовка уже разобранного документа в один из форматов ответа.</p>
+ * <p>Документ строится один раз (см. <code>DocumentModelCache</code>), а отрисовки только читают его,
+ * поэтому одна и та же загрузка может быть отрисована в любом формате без повторного разбора.
+ * Формат выбирается параметром <code>format</code> или заголовком <code>Accept</code> (см. <code>DocumentRenderers</code>).</p>
+ */
+public interface DocumentRenderer {
+    /**
+     * @return название формата для параметра <code>format</code>
+     */
+    String getFormat();
+
+    /**
+     * @return тип ответа, по которому формат выбирается из <code>Accept</code>
+     */
+    MediaType getMediaType();
+
+    /**
+     * Пишет документ в поток в кодировке UTF-8
+     * @param document разобранный документ
+     * @param outputStream поток, в который пишется документ
+     * @throws IOException возникает тогда, когда не удалось записать документ
+     */
+    void render(IndexedDocument document, OutputStream outputStream) throws IOException;
+}
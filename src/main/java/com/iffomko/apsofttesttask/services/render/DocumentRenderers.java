@@ -0,0 +1,62 @@
+package com.iffomko.apsofttesttask.services.render;
+
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * <p>Все форматы, в которых можно отрисовать документ, и выбор формата для запроса.</p>
+ * <p>Параметр <code>format</code> важнее заголовка <code>Accept</code>. Из <code>Accept</code> берется тип
+ * с наибольшим <code>q</code>, для которого есть формат, а при равных <code>q</code> - тот, что раньше
+ * в заголовке. Если заголовка нет или в нем <code>*&#47;*</code>, то выбирается первый формат, то есть HTML.</p>
+ */
+@Component
+public class DocumentRenderers {
+    private final List<DocumentRenderer> renderers;
+
+    /**
+     * @param renderers форматы в порядке <code>@Order</code>, первый из них - формат по умолчанию
+     */
+    public DocumentRenderers(List<DocumentRenderer> renderers) {
+        this.renderers = List.copyOf(renderers);
+    }
+
+    /**
+     * @return названия всех форматов
+     */
+    public List<String> getFormats() {
+        return renderers.stream().map(DocumentRenderer::getFormat).toList();
+    }
+
+    /**
+     * Выбирает формат для запроса
+     * @param format значение параметра <code>format</code> или null
+     * @param accept значение заголовка <code>Accept</code> или null
+     * @return формат или пусто, если подходящего формата нет
+     */
+    public Optional<DocumentRenderer> select(String format, String accept) {
+        if (format != null) {
+            return renderers.stream()
+                    .filter(renderer -> renderer.getFormat().equalsIgnoreCase(format))
+                    .findFirst();
+        }
+
+        List<MediaType> acceptedTypes;
+
+        try {
+            acceptedTypes = accept == null || accept.isBlank() ? List.of(MediaType.ALL) : MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return Optional.empty();
+        }
+
+        return acceptedTypes.stream()
+                .filter(type -> type.getQualityValue() > 0)
+                .sorted(Comparator.comparingDouble(MediaType::getQualityValue).reversed())
+                .flatMap(type -> renderers.stream().filter(renderer -> type.isCompatibleWith(renderer.getMediaType())))
+                .findFirst();
+    }
+}
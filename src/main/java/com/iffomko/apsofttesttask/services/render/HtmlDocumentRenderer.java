@@ -0,0 +1,43 @@
+package com.iffomko.apsofttesttask.services.render;
+
+import com.iffomko.apsofttesttask.services.parser.IFileParser;
+import com.iffomko.apsofttesttask.services.parser.IndexedDocument;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HTML документ, тот же, что и у <code>POST /api/v1/files/parser</code>. Формат по умолчанию
+ */
+@Component
+@Order(1)
+public class HtmlDocumentRenderer implements DocumentRenderer {
+    private final IFileParser fileParser;
+
+    /**
+     * @param fileParser парсер, который отрисовывает HTML
+     */
+    public HtmlDocumentRenderer(@Qualifier("intoHtmlFileParser") IFileParser fileParser) {
+        this.fileParser = fileParser;
+    }
+
+    @Override
+    public String getFormat() {
+        return "html";
+    }
+
+    @Override
+    public MediaType getMediaType() {
+        return new MediaType(MediaType.TEXT_HTML, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void render(IndexedDocument document, OutputStream outputStream) throws IOException {
+        fileParser.parse(document, outputStream);
+    }
+}
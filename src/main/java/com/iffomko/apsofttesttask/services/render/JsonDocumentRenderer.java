@@ -0,0 +1,98 @@
+package com.iffomko.apsofttesttask.services.render;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iffomko.apsofttesttask.services.parser.IndexedDocument;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <p>Структура документа в JSON:</p>
+ * <p>&nbsp;&nbsp;1. <code>sections</code> - разделы по порядку: идентификатор (тот же, что и в HTML документе),
+ * номер строчки, вложенность и название</p>
+ * <p>&nbsp;&nbsp;2. <code>blocks</code> - все строчки по порядку: раздел (<code>type: section</code> и его идентификатор)
+ * или параграф (<code>type: paragraph</code>) вместе с текстом</p>
+ * <p>JSON пишется потоково, а текст строчек экранируется прямо из байтов документа, без <code>String</code>.</p>
+ */
+@Component
+@Order(3)
+public class JsonDocumentRenderer implements DocumentRenderer {
+    private final ObjectMapper objectMapper;
+
+    /**
+     * @param objectMapper сериализатор JSON
+     */
+    public JsonDocumentRenderer(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public String getFormat() {
+        return "json";
+    }
+
+    @Override
+    public MediaType getMediaType() {
+        return MediaType.APPLICATION_JSON;
+    }
+
+    @Override
+    public void render(IndexedDocument document, OutputStream outputStream) throws IOException {
+        byte[] text = document.getText();
+
+        try (JsonGenerator generator = objectMapper.getFactory()
+                .createGenerator(outputStream, JsonEncoding.UTF8)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("sections");
+
+            for (int line = 0; line < document.getLinesCount(); line++) {
+                if (document.getDepth(line) == 0) {
+                    continue;
+                }
+
+                generator.writeStartObject();
+                generator.writeStringField("id", document.getSectionId(line));
+                generator.writeNumberField("line", line);
+                generator.writeNumberField("depth", document.getDepth(line));
+                generator.writeFieldName("title");
+                writeText(generator, text, document.getTitleStart(line), document.getEnd(line));
+                generator.writeEndObject();
+            }
+
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("blocks");
+
+            for (int line = 0; line < document.getLinesCount(); line++) {
+                int depth = document.getDepth(line);
+
+                generator.writeStartObject();
+
+                if (depth != 0) {
+                    generator.writeStringField("type", "section");
+                    generator.writeStringField("id", document.getSectionId(line));
+                    generator.writeFieldName("text");
+                    writeText(generator, text, document.getTitleStart(line), document.getEnd(line));
+                } else {
+                    generator.writeStringField("type", "paragraph");
+                    generator.writeFieldName("text");
+                    writeText(generator, text, document.getStart(line), document.getEnd(line));
+                }
+
+                generator.writeEndObject();
+            }
+
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    private static void writeText(JsonGenerator generator, byte[] text, int from, int to) throws IOException {
+        generator.writeUTF8String(text, from, to - from);
+    }
+}
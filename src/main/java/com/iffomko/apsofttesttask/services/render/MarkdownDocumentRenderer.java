@@ -0,0 +1,108 @@
+package com.iffomko.apsofttesttask.services.render;
+
+import com.iffomko.apsofttesttask.services.parser.IndexedDocument;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>Документ в Markdown: сначала содержание в виде вложенного списка ссылок на разделы, затем текст,
+ * где разделы - это заголовки с якорем, а строчки - параграфы.</p>
+ * <p>Идентификаторы разделов те же, что и в HTML документе. Пустые строчки пропускаются, а текст строчек
+ * пишется как есть, так же как в HTML. Разделы с пустым названием не пропускаются, чтобы у ссылки из содержания
+ * был якорь, а в тексте ссылок содержания экранируются <code>[</code>, <code>]</code> и <code>\</code>.</p>
+ */
+@Component
+@Order(2)
+public class MarkdownDocumentRenderer implements DocumentRenderer {
+    /**
+     * Больше шести уровней заголовков в Markdown нет, более глубокие разделы пишутся заголовками шестого уровня
+     */
+    private static final int MAX_HEADING_DEPTH = 6;
+    private static final int BUFFER_SIZE = 8192;
+
+    @Override
+    public String getFormat() {
+        return "markdown";
+    }
+
+    @Override
+    public MediaType getMediaType() {
+        return new MediaType("text", "markdown", StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void render(IndexedDocument document, OutputStream outputStream) throws IOException {
+        BufferedOutputStream out = new BufferedOutputStream(outputStream, BUFFER_SIZE);
+        byte[] text = document.getText();
+
+        for (int line = 0; line < document.getLinesCount(); line++) {
+            int depth = document.getDepth(line);
+
+            if (depth == 0) {
+                continue;
+            }
+
+            write(out, "  ".repeat(depth - 1) + "- [");
+            writeLinkText(out, text, document.getTitleStart(line), document.getEnd(line));
+            write(out, "](#" + document.getSectionId(line) + ")\n");
+        }
+
+        for (int line = 0; line < document.getLinesCount(); line++) {
+            int depth = document.getDepth(line);
+            int start = depth == 0 ? document.getStart(line) : document.getTitleStart(line);
+
+            if (depth == 0 && start == document.getEnd(line)) {
+                continue;
+            }
+
+            write(out, "\n");
+
+            if (depth != 0) {
+                write(out, "<a name=\"" + document.getSectionId(line) + "\"></a>\n");
+                write(out, "#".repeat(Math.min(depth, MAX_HEADING_DEPTH)));
+
+                if (start != document.getEnd(line)) {
+                    write(out, " ");
+                }
+            }
+
+            out.write(text, start, document.getEnd(line) - start);
+            write(out, "\n");
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Пишет текст ссылки, экранируя символы, которые закончили бы ее раньше времени. Это однобайтовые символы,
+     * которые не встречаются внутри многобайтовых символов UTF-8, поэтому текст экранируется побайтово
+     * @param out поток документа
+     * @param text текст документа в UTF-8
+     * @param start начало текста ссылки
+     * @param end конец текста ссылки
+     * @throws IOException возникает тогда, когда не удалось записать в поток
+     */
+    private static void writeLinkText(OutputStream out, byte[] text, int start, int end) throws IOException {
+        int written = start;
+
+        for (int i = start; i < end; i++) {
+            if (text[i] == '[' || text[i] == ']' || text[i] == '\\') {
+                out.write(text, written, i - written);
+                out.write('\\');
+                written = i;
+            }
+        }
+
+        out.write(text, written, end - written);
+    }
+
+    private static void write(OutputStream out, String fragment) throws IOException {
+        out.write(fragment.getBytes(StandardCharsets.UTF_8));
+    }
+}
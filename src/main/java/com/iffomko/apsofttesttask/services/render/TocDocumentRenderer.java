@@ -0,0 +1,55 @@
+package com.iffomko.apsofttesttask.services.render;
+
+import com.iffomko.apsofttesttask.services.parser.IndexedDocument;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Только содержание документа простым текстом: по строчке на раздел, подразделы сдвинуты на два пробела
+ * за каждый уровень вложенности
+ */
+@Component
+@Order(4)
+public class TocDocumentRenderer implements DocumentRenderer {
+    private static final int BUFFER_SIZE = 8192;
+    private static final byte[] INDENT = "  ".getBytes(StandardCharsets.UTF_8);
+
+    @Override
+    public String getFormat() {
+        return "toc";
+    }
+
+    @Override
+    public MediaType getMediaType() {
+        return new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void render(IndexedDocument document, OutputStream outputStream) throws IOException {
+        BufferedOutputStream out = new BufferedOutputStream(outputStream, BUFFER_SIZE);
+        byte[] text = document.getText();
+
+        for (int line = 0; line < document.getLinesCount(); line++) {
+            int depth = document.getDepth(line);
+
+            if (depth == 0) {
+                continue;
+            }
+
+            for (int level = 1; level < depth; level++) {
+                out.write(INDENT);
+            }
+
+            out.write(text, document.getTitleStart(line), document.getEnd(line) - document.getTitleStart(line));
+            out.write('\n');
+        }
+
+        out.flush();
+    }
+}
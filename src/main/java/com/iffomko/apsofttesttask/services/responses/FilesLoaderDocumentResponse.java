@@ -0,0 +1,13 @@
+package com.iffomko.apsofttesttask.services.responses;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class FilesLoaderDocumentResponse {
+    private String code;
+    private String documentId;
+}
@@ -0,0 +1,14 @@
+package com.iffomko.apsofttesttask.services.responses;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class FilesLoaderJobResponse {
+    private String code;
+    private String jobId;
+    private String status;
+}
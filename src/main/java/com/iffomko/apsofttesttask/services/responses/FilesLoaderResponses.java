@@ -0,0 +1,244 @@
+package com.iffomko.apsofttesttask.services.responses;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iffomko.apsofttesttask.services.compression.ContentCoding;
+import com.iffomko.apsofttesttask.services.compression.ResponseCompression;
+import com.iffomko.apsofttesttask.services.concurrency.ParserOverloadedException;
+import com.iffomko.apsofttesttask.services.metrics.ParserMetrics;
+import com.iffomko.apsofttesttask.services.responses.utils.FileLoaderResponseCodes;
+import com.iffomko.apsofttesttask.services.responses.utils.FileLoaderResponseMessages;
+import com.iffomko.apsofttesttask.services.spool.UploadSizeLimitException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * <p>Общие для всех сервисов проверки загрузок и ответы: ошибки, 304 и начало ответа с HTML документом.</p>
+ * <p>Ошибки всегда возвращаются в виде JSON, даже если клиент запрашивал HTML, и каждый ответ с кодом
+ * попадает в метрику <code>parser.responses</code>.</p>
+ */
+@Slf4j
+@Component
+public class FilesLoaderResponses {
+    private final ObjectMapper objectMapper;
+    private final ParserMetrics parserMetrics;
+    private final ResponseCompression responseCompression;
+
+    /**
+     * @param objectMapper сериализатор JSON для ошибок, которые возвращаются вместо HTML
+     * @param parserMetrics метрики разбора файлов
+     * @param responseCompression сжатие HTML документов в ответах
+     */
+    public FilesLoaderResponses(
+            ObjectMapper objectMapper,
+            ParserMetrics parserMetrics,
+            ResponseCompression responseCompression
+    ) {
+        this.objectMapper = objectMapper;
+        this.parserMetrics = parserMetrics;
+        this.responseCompression = responseCompression;
+    }
+
+    /**
+     * Проверяет, что загруженный файл текстовый и не больше лимита endpoint'а
+     * @param multipartFile файл полученный из сети
+     * @param limit максимальный размер файла в байтах
+     * @return ответ с ошибкой или пустое значение, если файл можно разбирать
+     */
+    public Optional<ResponseEntity<?>> checkUpload(MultipartFile multipartFile, long limit) {
+        if (!Objects.equals(multipartFile.getContentType(), MediaType.TEXT_PLAIN_VALUE)) {
+            log.error(String.format(
+                    "Invalid content-type in the request: %s",
+                    multipartFile.getContentType()
+            ));
+
+            return Optional.of(getErrorResponse(
+                    HttpStatus.BAD_REQUEST,
+                    FileLoaderResponseMessages.INCORRECT_REQUEST_TYPE,
+                    FileLoaderResponseCodes.INCORRECT_REQUEST_TYPE
+            ));
+        }
+
+        return checkSize(multipartFile.getSize(), limit);
+    }
+
+    /**
+     * Проверяет, что размер загрузки не больше лимита endpoint'а
+     * @param size размер загрузки в байтах
+     * @param limit максимальный размер файла в байтах
+     * @return ответ с ошибкой или пустое значение, если размер не превышает лимит
+     */
+    public Optional<ResponseEntity<?>> checkSize(long size, long limit) {
+        if (size <= limit) {
+            return Optional.empty();
+        }
+
+        log.error(String.format(
+                "File size limit exceeded, actual size: %d, permitted size: %d",
+                size,
+                limit
+        ));
+
+        return Optional.of(getErrorResponse(
+                HttpStatus.BAD_REQUEST,
+                FileLoaderResponseMessages.SIZE_LIMIT_EXCEEDED_EXCEPTION,
+                FileLoaderResponseCodes.SIZE_LIMIT_EXCEEDED_EXCEPTION
+        ));
+    }
+
+    /**
+     * Формирует ответ с ошибкой
+     * @param status HTTP статус ответа
+     * @param message сообщение об ошибке
+     * @param code код ошибки
+     * @return ответ с ошибкой
+     */
+    public ResponseEntity<?> getErrorResponse(
+            HttpStatus status,
+            FileLoaderResponseMessages message,
+            FileLoaderResponseCodes code
+    ) {
+        parserMetrics.recordResponse(code);
+
+        return ResponseEntity
+                .status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(new FilesLoaderErrorResponse(message.getMessage(), code.name()));
+    }
+
+    /**
+     * Формирует ответ с ошибкой по перехваченному исключению
+     * @param e перехваченное исключение
+     * @return ответ с ошибкой
+     */
+    public ResponseEntity<?> getErrorResponse(Exception e) {
+        if (e instanceof ParserOverloadedException overloaded) {
+            log.error(String.format("Parser overloaded: %s", e.getMessage()));
+            parserMetrics.recordResponse(FileLoaderResponseCodes.SERVICE_OVERLOADED);
+
+            return ResponseEntity
+                    .status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(overloaded.getRetryAfterSeconds()))
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(new FilesLoaderErrorResponse(
+                            FileLoaderResponseMessages.SERVICE_OVERLOADED.getMessage(),
+                            FileLoaderResponseCodes.SERVICE_OVERLOADED.name()
+                    ));
+        }
+
+        if (e instanceof UploadSizeLimitException) {
+            log.error(String.format("File size limit exceeded: %s", e.getMessage()));
+            return getErrorResponse(
+                    HttpStatus.BAD_REQUEST,
+                    FileLoaderResponseMessages.SIZE_LIMIT_EXCEEDED_EXCEPTION,
+                    FileLoaderResponseCodes.SIZE_LIMIT_EXCEEDED_EXCEPTION
+            );
+        }
+
+        if (e instanceof UnsupportedEncodingException) {
+            log.error(String.format("Unsupported encoding exception: %s", e.getMessage()));
+            return getErrorResponse(
+                    HttpStatus.BAD_REQUEST,
+                    FileLoaderResponseMessages.INCORRECT_ENCODING,
+                    FileLoaderResponseCodes.INCORRECT_ENCODING
+            );
+        }
+
+        log.error(String.format(
+                "Internal server error:\r\nmessage: %s\r\nstack trace: %s",
+                e.getMessage(),
+                stackTraceElementsToString(e.getStackTrace())
+        ));
+        return getErrorResponse(
+                HttpStatus.INTERNAL_SERVER_ERROR,
+                FileLoaderResponseMessages.INTERNAL_SERVER_ERROR,
+                FileLoaderResponseCodes.INTERNAL_SERVER_ERROR
+        );
+    }
+
+    /**
+     * Переводит стек вызовов в строковое представление
+     * @param stackTraceElements сам стек вызовов
+     * @return строковое представление
+     */
+    private String stackTraceElementsToString(StackTraceElement[] stackTraceElements) {
+        StringBuilder stringView = new StringBuilder();
+
+        for (StackTraceElement stackTraceElement : stackTraceElements) {
+            stringView.append(stackTraceElement);
+            stringView.append("\r\n");
+        }
+
+        return stringView.toString();
+    }
+
+    /**
+     * Переделывает ответ с ошибкой в потоковый ответ, чтобы его можно было вернуть
+     * из endpoint'а, который отдает HTML. Тело ответа все равно остается JSON
+     * @param errorResponse ответ с ошибкой
+     * @return потоковый ответ с той же ошибкой
+     */
+    public ResponseEntity<StreamingResponseBody> toStreamingResponse(ResponseEntity<?> errorResponse) {
+        return ResponseEntity
+                .status(errorResponse.getStatusCode())
+                .headers(errorResponse.getHeaders())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(outputStream -> outputStream.write(objectMapper.writeValueAsBytes(errorResponse.getBody())));
+    }
+
+    /**
+     * Формирует ответ 304: у клиента уже есть этот вариант документа, поэтому файл не разбирается
+     * @param entityTag ETag документа
+     * @return ответ без тела
+     */
+    public <T> ResponseEntity<T> getNotModifiedResponse(String entityTag) {
+        parserMetrics.recordResponse(FileLoaderResponseCodes.NOT_MODIFIED);
+
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(entityTag);
+
+        if (responseCompression.isEnabled()) {
+            builder.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * @param coding кодирование ответа
+     * @param entityTag ETag документа
+     * @return начало успешного ответа с HTML документом в этом кодировании
+     */
+    public ResponseEntity.BodyBuilder getHtmlResponse(ContentCoding coding, String entityTag) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .contentType(new MediaType(MediaType.TEXT_HTML, StandardCharsets.UTF_8))
+                .eTag(entityTag);
+
+        if (responseCompression.isEnabled()) {
+            builder.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+
+        if (coding.isCompressed()) {
+            builder.header(HttpHeaders.CONTENT_ENCODING, coding.getToken());
+        }
+
+        return builder;
+    }
+
+    /**
+     * @param coding кодирование ответа
+     * @return вариант HTML документа для ETag
+     */
+    public static String getHtmlVariant(ContentCoding coding) {
+        return coding.isCompressed() ? "html-" + coding.getToken() : "html";
+    }
+}
@@ -0,0 +1,16 @@
+package com.iffomko.apsofttesttask.services.responses;
+
+import com.iffomko.apsofttesttask.services.parser.SectionNode;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class FilesLoaderSectionsResponse {
+    private String code;
+    private List<SectionNode> sections;
+}
@@ -6,6 +6,15 @@ package com.iffomko.apsofttesttask.services.responses.utils;
 public enum FileLoaderResponseCodes {
     INCORRECT_ENCODING,
     INCORRECT_REQUEST_TYPE,
+    SIZE_LIMIT_EXCEEDED_EXCEPTION,
+    NOT_FOUND,
+    INCORRECT_PATCH,
+    SERVICE_OVERLOADED,
+    RATE_LIMIT_EXCEEDED,
+    UNSUPPORTED_FORMAT,
+    JOB_NOT_FOUND,
+    JOB_NOT_FINISHED,
     SUCCESS,
+    NOT_MODIFIED,
     INTERNAL_SERVER_ERROR;
 }
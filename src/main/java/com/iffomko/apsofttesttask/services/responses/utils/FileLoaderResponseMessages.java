@@ -12,6 +12,38 @@ public enum FileLoaderResponseMessages {
             "You sent an incorrect content-type. " +
             "Read the documentation to understand what type of data you need to send."
     ),
+    SIZE_LIMIT_EXCEEDED_EXCEPTION(
+            "You have exceeded the maximum size of the uploaded file for this endpoint. " +
+            "Read the documentation to find out which endpoint accepts large files."
+    ),
+    NOT_FOUND(
+            "The requested document or section does not exist. " +
+            "Upload the file to the document store first and use the returned document id."
+    ),
+    INCORRECT_PATCH(
+            "You have sent an incorrect patch: the line range must be inside the document " +
+            "and the new lines must not contain line breaks."
+    ),
+    SERVICE_OVERLOADED(
+            "The server is parsing too many files right now and cannot accept another one. " +
+            "Retry the request after the number of seconds from the Retry-After header."
+    ),
+    RATE_LIMIT_EXCEEDED(
+            "You have sent too many files in a short period of time. " +
+            "Retry the request after the number of seconds from the Retry-After header."
+    ),
+    UNSUPPORTED_FORMAT(
+            "The requested format is not supported. " +
+            "Use one of html, markdown, json or toc in the format parameter or the Accept header."
+    ),
+    JOB_NOT_FOUND(
+            "The requested parse job does not exist or its result has already expired. " +
+            "Submit the file again to start a new job."
+    ),
+    JOB_NOT_FINISHED(
+            "The parse job has not finished yet. " +
+            "Poll the job status and fetch the result after the job is done."
+    ),
     INTERNAL_SERVER_ERROR(
             "An internal error occurred on the server, " +
             "which is why it cannot process the request correctly. Try again later."
@@ -0,0 +1,71 @@
+package com.iffomko.apsofttesttask.services.spool;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Поток, который считает прочитанные байты и прерывает чтение <code>UploadSizeLimitException</code>,
+ * как только их стало больше лимита. Так тело запроса без <code>Content-Length</code> не может занять
+ * больше места на диске, чем разрешено
+ */
+public class LimitedInputStream extends FilterInputStream {
+    private final long limit;
+    private long count;
+
+    /**
+     * @param inputStream поток, который читается
+     * @param limit максимальное количество байт
+     */
+    public LimitedInputStream(InputStream inputStream, long limit) {
+        super(inputStream);
+        this.limit = limit;
+    }
+
+    /**
+     * @return количество уже прочитанных байт
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int result = super.read();
+
+        if (result != -1) {
+            count(1);
+        }
+
+        return result;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        // читается на байт больше лимита, чтобы отличить файл ровно по лимиту от файла больше него
+        int result = super.read(b, off, (int) Math.min(len, limit - count + 1));
+
+        if (result > 0) {
+            count(result);
+        }
+
+        return result;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long result = super.skip(n);
+
+        count(result);
+
+        return result;
+    }
+
+    private void count(long read) throws UploadSizeLimitException {
+        count += read;
+
+        if (count > limit) {
+            throw new UploadSizeLimitException(limit);
+        }
+    }
+}
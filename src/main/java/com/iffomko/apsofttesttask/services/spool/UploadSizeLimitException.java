@@ -0,0 +1,18 @@
+package com.iffomko.apsofttesttask.services.spool;
+
+import java.io.IOException;
+
+/**
+ * Исключение, которое возникает тогда, когда тело запроса оказалось больше лимита уже во время чтения,
+ * например, если клиент не передал <code>Content-Length</code>
+ */
+public class UploadSizeLimitException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param limit максимальный размер тела запроса в байтах
+     */
+    public UploadSizeLimitException(long limit) {
+        super(String.format("The request body is larger than %d bytes", limit));
+    }
+}
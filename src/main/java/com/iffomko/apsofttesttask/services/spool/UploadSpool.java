@@ -0,0 +1,101 @@
+package com.iffomko.apsofttesttask.services.spool;
+
+import com.iffomko.apsofttesttask.services.lines.DecodedTextInputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * <p>Директория для временных файлов, в которые складываются большие загруженные файлы
+ * и промежуточные данные их разбора.</p>
+ * <p>Временные файлы удаляет тот, кто их создал, сразу после того, как ответ записан.</p>
+ */
+@Slf4j
+@Component
+public class UploadSpool {
+    private final Path directory;
+
+    /**
+     * @param directory директория для временных файлов
+     */
+    public UploadSpool(@Value("${parser.largeFile.spoolDirectory}") Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Создает пустой временный файл
+     * @param prefix начало имени файла
+     * @return путь к созданному файлу
+     * @throws IOException возникает тогда, когда не удалось создать файл
+     */
+    public Path createFile(String prefix) throws IOException {
+        Files.createDirectories(directory);
+        return Files.createTempFile(directory, prefix, ".tmp");
+    }
+
+    /**
+     * Переносит загруженный файл во временный файл. Если загрузка уже лежит на диске,
+     * то она не копируется, а перемещается
+     * @param multipartFile файл полученный из сети
+     * @return путь к временному файлу
+     * @throws IOException возникает тогда, когда не удалось записать файл
+     */
+    public Path spool(MultipartFile multipartFile) throws IOException {
+        Path file = createFile("upload-");
+
+        try {
+            multipartFile.transferTo(file.toFile());
+        } catch (IOException | RuntimeException e) {
+            delete(file);
+            throw e;
+        }
+
+        return file;
+    }
+
+    /**
+     * Перекодирует временный файл в UTF-8 без BOM (см. <code>DecodedTextInputStream</code>) и удаляет исходный файл
+     * @param file временный файл с загрузкой
+     * @return путь к новому временному файлу
+     * @throws IOException возникает тогда, когда не удалось записать файл или в нем некорректная кодировка
+     */
+    public Path spoolText(Path file) throws IOException {
+        Path textFile = createFile("text-");
+
+        try (InputStream inputStream = new DecodedTextInputStream(Files.newInputStream(file))) {
+            Files.copy(inputStream, textFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            delete(textFile);
+            throw e;
+        }
+
+        delete(file);
+
+        return textFile;
+    }
+
+    /**
+     * Удаляет временные файлы. Ошибки удаления только логируются
+     * @param files пути к временным файлам
+     */
+    public void delete(Path... files) {
+        for (Path file : files) {
+            if (file == null) {
+                continue;
+            }
+
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn(String.format("Failed to delete the spool file %s: %s", file, e.getMessage()));
+            }
+        }
+    }
+}
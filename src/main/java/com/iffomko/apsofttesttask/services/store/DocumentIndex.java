@@ -0,0 +1,169 @@
+package com.iffomko.apsofttesttask.services.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * <p>Индекс документа в хранилище.</p>
+ * <p>Файл индекса состоит из заголовка: количество строчек (int), количество разделов (int),
+ * количество контрольных точек (int), конец содержания (long) и конец текста (long, -1, если блок
+ * текста не выводится), затем идут записи разделов в порядке следования: номер строчки (int),
+ * хэш строчки (int), вложенность (int), начало (long) и конец (long) раздела и начало пункта содержания (long),
+ * а затем контрольные точки: номер строчки (int) и начало ее параграфа (long).</p>
+ * <p>Контрольные точки стоят не реже чем через <code>CHECKPOINT_INTERVAL</code> строчек,
+ * поэтому начало параграфа любой строчки находится просмотром не больше чем нескольких тысяч параграфов.</p>
+ */
+final class DocumentIndex {
+    static final int HEADER_SIZE = 3 * Integer.BYTES + 2 * Long.BYTES;
+    static final int SECTION_SIZE = 3 * Integer.BYTES + 3 * Long.BYTES;
+    static final int CHECKPOINT_SIZE = Integer.BYTES + Long.BYTES;
+    static final int CHECKPOINT_INTERVAL = 1024;
+    private static final int INITIAL_CAPACITY = 16;
+
+    int linesCount;
+    long contentsEnd;
+    long textEnd = -1;
+
+    int sectionsCount;
+    int[] sectionLines = new int[INITIAL_CAPACITY];
+    int[] sectionHashes = new int[INITIAL_CAPACITY];
+    int[] sectionDepths = new int[INITIAL_CAPACITY];
+    long[] sectionStarts = new long[INITIAL_CAPACITY];
+    long[] sectionEnds = new long[INITIAL_CAPACITY];
+    long[] entryStarts = new long[INITIAL_CAPACITY];
+
+    int checkpointsCount;
+    int[] checkpointLines = new int[INITIAL_CAPACITY];
+    long[] checkpointOffsets = new long[INITIAL_CAPACITY];
+
+    /**
+     * @return true, если блок текста не выводится, то есть документ состоит из одного пустого параграфа
+     */
+    boolean isEmptyText() {
+        return textEnd < 0;
+    }
+
+    /**
+     * Добавляет раздел по его пункту содержания, начало и конец раздела заполняются позже
+     * @return номер раздела в индексе
+     */
+    int addSection(int line, int lineHash, int depth, long entryStart) {
+        if (sectionsCount == sectionLines.length) {
+            int capacity = sectionsCount * 2;
+
+            sectionLines = Arrays.copyOf(sectionLines, capacity);
+            sectionHashes = Arrays.copyOf(sectionHashes, capacity);
+            sectionDepths = Arrays.copyOf(sectionDepths, capacity);
+            sectionStarts = Arrays.copyOf(sectionStarts, capacity);
+            sectionEnds = Arrays.copyOf(sectionEnds, capacity);
+            entryStarts = Arrays.copyOf(entryStarts, capacity);
+        }
+
+        sectionLines[sectionsCount] = line;
+        sectionHashes[sectionsCount] = lineHash;
+        sectionDepths[sectionsCount] = depth;
+        entryStarts[sectionsCount] = entryStart;
+
+        return sectionsCount++;
+    }
+
+    void addCheckpoint(int line, long offset) {
+        if (checkpointsCount == checkpointLines.length) {
+            checkpointLines = Arrays.copyOf(checkpointLines, checkpointsCount * 2);
+            checkpointOffsets = Arrays.copyOf(checkpointOffsets, checkpointsCount * 2);
+        }
+
+        checkpointLines[checkpointsCount] = line;
+        checkpointOffsets[checkpointsCount] = offset;
+        checkpointsCount++;
+    }
+
+    /**
+     * @return номер первого раздела, строчка которого не меньше <code>line</code>
+     */
+    int firstSectionFrom(int line) {
+        int low = 0;
+        int high = sectionsCount;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (sectionLines[middle] < line) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * @return номер последней контрольной точки, строчка которой не больше <code>line</code>
+     */
+    int lastCheckpointTo(int line) {
+        int low = 0;
+        int high = checkpointsCount;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (checkpointLines[middle] <= line) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low - 1;
+    }
+
+    void write(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(
+                HEADER_SIZE + (long) sectionsCount * SECTION_SIZE + (long) checkpointsCount * CHECKPOINT_SIZE
+        ));
+
+        buffer.putInt(linesCount).putInt(sectionsCount).putInt(checkpointsCount).putLong(contentsEnd).putLong(textEnd);
+
+        for (int i = 0; i < sectionsCount; i++) {
+            buffer.putInt(sectionLines[i]).putInt(sectionHashes[i]).putInt(sectionDepths[i]);
+            buffer.putLong(sectionStarts[i]).putLong(sectionEnds[i]).putLong(entryStarts[i]);
+        }
+
+        for (int i = 0; i < checkpointsCount; i++) {
+            buffer.putInt(checkpointLines[i]).putLong(checkpointOffsets[i]);
+        }
+
+        Files.write(file, buffer.array());
+    }
+
+    static DocumentIndex read(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        DocumentIndex index = new DocumentIndex();
+
+        index.linesCount = buffer.getInt();
+
+        int sectionsCount = buffer.getInt();
+        int checkpointsCount = buffer.getInt();
+
+        index.contentsEnd = buffer.getLong();
+        index.textEnd = buffer.getLong();
+
+        for (int i = 0; i < sectionsCount; i++) {
+            int section = index.addSection(buffer.getInt(), buffer.getInt(), buffer.getInt(), 0);
+
+            index.sectionStarts[section] = buffer.getLong();
+            index.sectionEnds[section] = buffer.getLong();
+            index.entryStarts[section] = buffer.getLong();
+        }
+
+        for (int i = 0; i < checkpointsCount; i++) {
+            index.addCheckpoint(buffer.getInt(), buffer.getLong());
+        }
+
+        return index;
+    }
+}
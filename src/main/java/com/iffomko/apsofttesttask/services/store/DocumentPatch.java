@@ -0,0 +1,13 @@
+package com.iffomko.apsofttesttask.services.store;
+
+import java.util.List;
+
+/**
+ * Правка документа: строчки с <code>fromLine</code> включительно до <code>toLine</code> не включительно
+ * заменяются на <code>lines</code>. Если <code>fromLine</code> и <code>toLine</code> совпадают, то строчки вставляются
+ * @param fromLine номер первой заменяемой строчки
+ * @param toLine номер строчки сразу после заменяемых
+ * @param lines новые строчки, без переводов строк
+ */
+public record DocumentPatch(int fromLine, int toLine, List<String> lines) {
+}
@@ -0,0 +1,440 @@
+package com.iffomko.apsofttesttask.services.store;
+
+import com.iffomko.apsofttesttask.services.lines.LineSource;
+import com.iffomko.apsofttesttask.services.parser.DocumentLayoutConsumer;
+import com.iffomko.apsofttesttask.services.parser.DocumentOutline;
+import com.iffomko.apsofttesttask.services.parser.HtmlTemplateRenderer;
+import com.iffomko.apsofttesttask.services.parser.IntoHtmlFileParser;
+import com.iffomko.apsofttesttask.services.parser.OutlineSection;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * <p>Применяет правку строчек к документу из хранилища и сохраняет результат как новый документ.</p>
+ * <p>Результат совпадает байт в байт с тем, что получилось бы при разборе всех строчек после правки,
+ * но заново разбираются и отрисовываются только новые строчки. Все остальное копируется из старого документа
+ * диапазонами байтов (<code>FileChannel.transferTo</code> из файла в файл) без декодирования:</p>
+ * <p>&nbsp;&nbsp;1. пункты содержания и параграфы до правки копируются как есть;</p>
+ * <p>&nbsp;&nbsp;2. после правки тоже, если правка не изменила количество строчек. Иначе часть после правки
+ * читается один раз последовательно, и в пунктах содержания и параграфах разделов, положения которых известны
+ * из индекса, заменяется номер строчки в идентификаторе раздела.</p>
+ * <p>Где начинается параграф нужной строчки, находится по контрольным точкам индекса, поэтому работа
+ * зависит от размера правки и количества разделов после нее, а не от количества строчек документа.</p>
+ */
+@Component
+public class DocumentPatcher {
+    private static final int WINDOW_SIZE = 64 * 1024;
+    private static final byte LF = '\n';
+    private static final byte ID_SEPARATOR = '_';
+    private static final byte[] EMPTY_PARAGRAPH = HtmlTemplateRenderer.EMPTY_PARAGRAPH.getBytes(StandardCharsets.UTF_8);
+
+    private final DocumentStore store;
+    private final IntoHtmlFileParser fileParser;
+
+    /**
+     * @param store хранилище документов
+     * @param fileParser парсер, которым отрисовываются новые строчки
+     */
+    public DocumentPatcher(DocumentStore store, IntoHtmlFileParser fileParser) {
+        this.store = store;
+        this.fileParser = fileParser;
+    }
+
+    /**
+     * Применяет правку к документу. Старый документ не меняется
+     * @param documentId идентификатор документа
+     * @param patch правка
+     * @return идентификатор нового документа или пусто, если такого документа нет
+     * @throws IOException возникает тогда, когда не удалось прочитать или записать хранилище
+     * @throws IllegalArgumentException возникает тогда, когда правка выходит за пределы документа
+     */
+    public Optional<String> patch(String documentId, DocumentPatch patch) throws IOException {
+        Optional<DocumentIndex> index = store.findIndex(documentId);
+        Optional<StoredRange> document = store.findDocument(documentId);
+
+        if (index.isEmpty() || document.isEmpty()) {
+            return Optional.empty();
+        }
+
+        if (patch.fromLine() < 0 || patch.fromLine() > patch.toLine() || patch.toLine() > index.get().linesCount) {
+            throw new IllegalArgumentException(String.format(
+                    "The line range [%d, %d) is out of the document with %d lines",
+                    patch.fromLine(),
+                    patch.toLine(),
+                    index.get().linesCount
+            ));
+        }
+
+        try (
+                FileChannel source = FileChannel.open(document.get().document(), StandardOpenOption.READ);
+                StoredDocumentWriter writer = store.create()
+        ) {
+            if (index.get().isEmptyText()) {
+                // документ из одной пустой строчки: все строчки после правки известны, проще разобрать их заново
+                List<String> lines = new ArrayList<>(List.of(""));
+
+                lines.subList(patch.fromLine(), patch.toLine()).clear();
+                lines.addAll(patch.fromLine(), patch.lines());
+                fileParser.parse(LineSource.of(lines), writer.getOutputStream(), writer);
+            } else {
+                new Assembly(index.get(), source, writer, patch).write();
+            }
+
+            return Optional.of(writer.commit());
+        }
+    }
+
+    /**
+     * Сборка одного нового документа. Положения частей, которые отрисовывает парсер, считаются от начала
+     * его рендерера, поэтому к ним прибавляется количество скопированных в обход рендерера байтов
+     */
+    private final class Assembly implements DocumentLayoutConsumer {
+        private final DocumentIndex index;
+        private final FileChannel source;
+        private final StoredDocumentWriter writer;
+        private final int fromLine;
+        private final int toLine;
+        private final LineSource inserted;
+        private final int insertedCount;
+        private final int lineShift;
+        private final HtmlTemplateRenderer renderer;
+        private final byte[] window = new byte[WINDOW_SIZE];
+        private final byte[] digits = new byte[Integer.toString(Integer.MAX_VALUE).length()];
+        private long windowStart;
+        private int windowLength;
+        private long copied;
+
+        private Assembly(DocumentIndex index, FileChannel source, StoredDocumentWriter writer, DocumentPatch patch) {
+            this.index = index;
+            this.source = source;
+            this.writer = writer;
+            this.fromLine = patch.fromLine();
+            this.toLine = patch.toLine();
+            this.inserted = LineSource.of(patch.lines());
+            this.insertedCount = patch.lines().size();
+            this.lineShift = insertedCount - (toLine - fromLine);
+            this.renderer = new HtmlTemplateRenderer(Channels.newOutputStream(writer.getChannel()));
+        }
+
+        private void write() throws IOException {
+            DocumentOutline outline = fileParser.getOutline(inserted);
+            int before = index.firstSectionFrom(fromLine);
+            int after = index.firstSectionFrom(toLine);
+            boolean hasSections = before + outline.sections().size() + index.sectionsCount - after > 0;
+
+            fileParser.writeDocument(
+                    renderer,
+                    hasSections,
+                    isEmptyText(outline),
+                    () -> writeContents(before, after),
+                    () -> writeText(before, after)
+            );
+            writer.setLinesCount(index.linesCount + lineShift);
+        }
+
+        /**
+         * @return true, если после правки документ состоит из одного пустого параграфа
+         */
+        private boolean isEmptyText(DocumentOutline outline) throws IOException {
+            if (index.linesCount + lineShift != 1) {
+                return false;
+            }
+
+            if (insertedCount == 1) {
+                return outline.emptyText();
+            }
+
+            int line = fromLine > 0 ? 0 : toLine;
+            int section = index.firstSectionFrom(line);
+
+            if (section < index.sectionsCount && index.sectionLines[section] == line) {
+                return false;
+            }
+
+            long start = paragraphStart(line);
+
+            return Arrays.equals(read(start, paragraphStart(line + 1) - 1), EMPTY_PARAGRAPH);
+        }
+
+        private void writeContents(int before, int after) throws IOException {
+            if (before > 0) {
+                long start = index.entryStarts[0];
+                long shift = offset() - start;
+
+                for (int i = 0; i < before; i++) {
+                    writer.addContentsEntry(index.sectionLines[i], index.sectionHashes[i], index.sectionDepths[i], index.entryStarts[i] + shift);
+                }
+
+                copy(start, before < index.sectionsCount ? index.entryStarts[before] : index.contentsEnd);
+            }
+
+            fileParser.writeContents(inserted, fromLine, renderer, this);
+
+            if (after < index.sectionsCount && lineShift == 0) {
+                long start = index.entryStarts[after];
+                long shift = offset() - start;
+
+                for (int i = after; i < index.sectionsCount; i++) {
+                    writer.addContentsEntry(index.sectionLines[i], index.sectionHashes[i], index.sectionDepths[i], index.entryStarts[i] + shift);
+                }
+
+                copy(start, index.contentsEnd);
+            } else if (after < index.sectionsCount) {
+                long cursor = index.entryStarts[after];
+
+                for (int i = after; i < index.sectionsCount; i++) {
+                    rewrite(cursor, index.entryStarts[i]);
+                    writer.addContentsEntry(index.sectionLines[i] + lineShift, index.sectionHashes[i], index.sectionDepths[i], offset());
+                    cursor = rewriteSectionId(index.entryStarts[i], i);
+                }
+
+                rewrite(cursor, index.contentsEnd);
+            }
+
+            writer.acceptContentsEnd(offset());
+        }
+
+        private void writeText(int before, int after) throws IOException {
+            if (fromLine > 0) {
+                long start = index.checkpointOffsets[0];
+                long shift = offset() - start;
+                int checkpoints = index.lastCheckpointTo(fromLine - 1) + 1;
+
+                for (int section = 0, checkpoint = 0; section < before || checkpoint < checkpoints; ) {
+                    if (section == before || (checkpoint < checkpoints && index.checkpointLines[checkpoint] <= index.sectionLines[section])) {
+                        writer.addCheckpoint(index.checkpointLines[checkpoint], index.checkpointOffsets[checkpoint] + shift);
+                        checkpoint++;
+                    } else {
+                        writer.addParagraph(index.sectionLines[section], index.sectionDepths[section], index.sectionStarts[section] + shift);
+                        section++;
+                    }
+                }
+
+                // перевод строки перед первой замененной строчкой пишет уже следующая часть
+                copy(start, paragraphStart(fromLine) - 1);
+            }
+
+            fileParser.writeText(inserted, fromLine, renderer, this);
+
+            if (toLine < index.linesCount) {
+                writeTail(after);
+            }
+
+            writer.acceptTextEnd(offset());
+        }
+
+        /**
+         * Пишет параграфы строчек после правки
+         */
+        private void writeTail(int after) throws IOException {
+            if (fromLine + insertedCount != 0) {
+                renderer.writeNewLine();
+            }
+
+            long start = paragraphStart(toLine);
+            long shift = offset() - start;
+            long cursor = start;
+            int checkpoints = index.checkpointsCount;
+
+            writer.addCheckpoint(toLine + lineShift, offset());
+
+            for (int section = after, checkpoint = index.lastCheckpointTo(toLine - 1) + 1; section < index.sectionsCount || checkpoint < checkpoints; ) {
+                boolean isCheckpoint = section == index.sectionsCount
+                        || (checkpoint < checkpoints && index.checkpointLines[checkpoint] <= index.sectionLines[section]);
+
+                if (lineShift == 0) {
+                    if (isCheckpoint) {
+                        writer.addCheckpoint(index.checkpointLines[checkpoint], index.checkpointOffsets[checkpoint] + shift);
+                        checkpoint++;
+                    } else {
+                        writer.addParagraph(index.sectionLines[section], index.sectionDepths[section], index.sectionStarts[section] + shift);
+                        section++;
+                    }
+                } else if (isCheckpoint) {
+                    rewrite(cursor, index.checkpointOffsets[checkpoint]);
+                    cursor = index.checkpointOffsets[checkpoint];
+                    writer.addCheckpoint(index.checkpointLines[checkpoint] + lineShift, offset());
+                    checkpoint++;
+                } else {
+                    rewrite(cursor, index.sectionStarts[section]);
+                    writer.addParagraph(index.sectionLines[section] + lineShift, index.sectionDepths[section], offset());
+                    cursor = rewriteSectionId(index.sectionStarts[section], section);
+                    section++;
+                }
+            }
+
+            if (lineShift == 0) {
+                copy(start, index.textEnd);
+            } else {
+                rewrite(cursor, index.textEnd);
+            }
+        }
+
+        @Override
+        public void acceptContentsEntry(OutlineSection section, long offset) {
+            writer.acceptContentsEntry(section, offset + copied);
+        }
+
+        @Override
+        public void acceptContentsEnd(long offset) {
+            writer.acceptContentsEnd(offset + copied);
+        }
+
+        @Override
+        public void acceptParagraph(int line, OutlineSection section, long offset) {
+            writer.acceptParagraph(line, section, offset + copied);
+        }
+
+        @Override
+        public void acceptTextEnd(long offset) {
+            writer.acceptTextEnd(offset + copied);
+        }
+
+        /**
+         * @return сколько байтов нового документа уже написано
+         */
+        private long offset() {
+            return renderer.getOffset() + copied;
+        }
+
+        /**
+         * Копирует диапазон старого документа в новый, не читая его в память
+         */
+        private void copy(long start, long end) throws IOException {
+            renderer.flush();
+
+            for (long position = start; position < end; ) {
+                long transferred = source.transferTo(position, end - position, writer.getChannel());
+
+                if (transferred <= 0) {
+                    throw new IOException("Unexpected end of the stored document");
+                }
+
+                position += transferred;
+            }
+
+            copied += Math.max(0, end - start);
+        }
+
+        /**
+         * Переписывает диапазон старого документа в новый через рендерер, читая его окном
+         */
+        private void rewrite(long start, long end) throws IOException {
+            for (long position = start; position < end; ) {
+                int from = moveWindow(position);
+                int length = (int) Math.min(end - position, windowLength - from);
+
+                renderer.writeBytes(window, from, length);
+                position += length;
+            }
+        }
+
+        /**
+         * Переписывает начало пункта содержания или параграфа раздела до хэша в идентификаторе раздела,
+         * заменяя номер строчки в идентификаторе. До идентификатора в них нет цифр, поэтому идентификатор
+         * начинается с первой цифры, а номер строчки заканчивается на '_'
+         * @param start начало пункта содержания или параграфа
+         * @param section номер раздела в индексе
+         * @return положение в старом документе, с которого дальше переписывается как есть
+         */
+        private long rewriteSectionId(long start, int section) throws IOException {
+            long idStart = find(start, (byte) '0', (byte) '9');
+            long separator = find(idStart, ID_SEPARATOR, ID_SEPARATOR);
+            int position = digits.length;
+
+            rewrite(start, idStart);
+
+            for (int line = index.sectionLines[section] + lineShift; position == digits.length || line != 0; line /= 10) {
+                digits[--position] = (byte) ('0' + line % 10);
+            }
+
+            renderer.writeBytes(digits, position, digits.length - position);
+
+            return separator;
+        }
+
+        /**
+         * @return положение первого байта не раньше <code>from</code>, который лежит между <code>low</code> и <code>high</code>
+         */
+        private long find(long from, byte low, byte high) throws IOException {
+            for (long position = from; ; ) {
+                int i = moveWindow(position);
+
+                while (i < windowLength && (window[i] < low || window[i] > high)) {
+                    i++;
+                }
+
+                position = windowStart + i;
+
+                if (i < windowLength) {
+                    return position;
+                }
+            }
+        }
+
+        private byte[] read(long start, long end) throws IOException {
+            byte[] bytes = new byte[Math.toIntExact(end - start)];
+
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = byteAt(start + i);
+            }
+
+            return bytes;
+        }
+
+        private byte byteAt(long position) throws IOException {
+            return window[moveWindow(position)];
+        }
+
+        /**
+         * Сдвигает окно чтения старого документа так, чтобы в нем был байт <code>position</code>
+         * @return положение байта в окне
+         */
+        private int moveWindow(long position) throws IOException {
+            if (position < windowStart || position >= windowStart + windowLength) {
+                int read = source.read(ByteBuffer.wrap(window), position);
+
+                if (read <= 0) {
+                    throw new IOException("Unexpected end of the stored document");
+                }
+
+                windowStart = position;
+                windowLength = read;
+            }
+
+            return (int) (position - windowStart);
+        }
+
+        /**
+         * Находит начало параграфа строчки: от ближайшей контрольной точки до нее пропускаются переводы строк
+         * @param line номер строчки
+         * @return начало параграфа или байт сразу после конца текста плюс один, если строчки нет
+         */
+        private long paragraphStart(int line) throws IOException {
+            if (line >= index.linesCount) {
+                return index.textEnd + 1;
+            }
+
+            int checkpoint = index.lastCheckpointTo(line);
+            long position = index.checkpointOffsets[checkpoint];
+
+            for (int remaining = line - index.checkpointLines[checkpoint]; remaining > 0; position++) {
+                if (byteAt(position) == LF) {
+                    remaining--;
+                }
+            }
+
+            return position;
+        }
+    }
+}
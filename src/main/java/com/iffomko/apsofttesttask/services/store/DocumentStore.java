@@ -0,0 +1,340 @@
+package com.iffomko.apsofttesttask.services.store;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Хранилище разобранных документов на диске.</p>
+ * <p>Каждый документ хранится в двух файлах в директории хранилища:</p>
+ * <p>&nbsp;&nbsp;1. <code>&lt;id&gt;.html</code> - сам HTML документ</p>
+ * <p>&nbsp;&nbsp;2. <code>&lt;id&gt;.idx</code> - индекс документа (см. <code>DocumentIndex</code>):
+ * для каждого раздела в порядке следования запись фиксированного размера с номером строчки раздела
+ * и диапазоном раздела в документе</p>
+ * <p>Поэтому, чтобы отдать один раздел, индекс читается двоичным поиском по номеру строчки,
+ * а из документа читается только диапазон байтов этого раздела.</p>
+ * <p>Документ хранится <code>parser.store.ttl</code> с момента сохранения, после чего удаляется вместе с индексом,
+ * если его раньше не удалили через <code>delete</code>. Правка создает новый документ, поэтому старые версии
+ * тоже удаляются по истечении этого времени. Время сохранения берется из даты изменения файла документа,
+ * так что документы, которые остались от прошлого запуска, тоже удаляются вовремя.</p>
+ */
+@Slf4j
+@Component
+public class DocumentStore implements InitializingBean, DisposableBean {
+    static final String DOCUMENT_SUFFIX = ".html";
+    static final String INDEX_SUFFIX = ".idx";
+    static final String TEMP_SUFFIX = ".tmp";
+    private static final Duration CLEANUP_INTERVAL = Duration.ofMinutes(1);
+
+    private final Path directory;
+    private final Duration ttl;
+    private final Clock clock;
+    private final ScheduledThreadPoolExecutor cleaner;
+
+    /**
+     * @param directory директория хранилища
+     * @param ttl сколько хранится документ после сохранения, 0 - документы хранятся, пока их не удалят
+     */
+    @Autowired
+    public DocumentStore(
+            @Value("${parser.store.directory}") Path directory,
+            @Value("${parser.store.ttl}") Duration ttl
+    ) {
+        this(directory, ttl, Clock.systemUTC());
+    }
+
+    /**
+     * @param directory директория хранилища
+     * @param ttl сколько хранится документ после сохранения, 0 - документы хранятся, пока их не удалят
+     * @param clock источник времени, с которым сравниваются даты изменения файлов
+     */
+    public DocumentStore(Path directory, Duration ttl, Clock clock) {
+        this.directory = directory;
+        this.ttl = ttl;
+        this.clock = clock;
+        this.cleaner = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "document-store-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Запускает удаление устаревших документов, если время хранения задано
+     */
+    @Override
+    public void afterPropertiesSet() {
+        if (ttl.isZero() || ttl.isNegative()) {
+            return;
+        }
+
+        long interval = Math.min(CLEANUP_INTERVAL.toNanos(), ttl.toNanos());
+        cleaner.scheduleWithFixedDelay(this::removeExpired, 0, interval, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        cleaner.shutdownNow();
+    }
+
+    /**
+     * Начинает запись нового документа
+     * @return запись документа, которую надо завершить <code>commit</code> или закрыть
+     * @throws IOException возникает тогда, когда не удалось создать временный файл
+     */
+    public StoredDocumentWriter create() throws IOException {
+        Files.createDirectories(directory);
+        return new StoredDocumentWriter(this, Files.createTempFile(directory, "document-", TEMP_SUFFIX));
+    }
+
+    Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Проверяет идентификатор документа и возвращает путь к файлу документа.
+     * Принимаются только UUID, поэтому идентификатор не может указать на файл вне хранилища
+     * @param documentId идентификатор документа
+     * @param suffix расширение файла
+     * @return путь к файлу или null, если идентификатор некорректный
+     */
+    private Path resolve(String documentId, String suffix) {
+        try {
+            return directory.resolve(UUID.fromString(documentId) + suffix);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Ищет весь документ
+     * @param documentId идентификатор документа
+     * @return диапазон, который занимает весь документ, или пусто, если такого документа нет
+     * @throws IOException возникает тогда, когда не удалось прочитать хранилище
+     */
+    public Optional<StoredRange> findDocument(String documentId) throws IOException {
+        Path document = resolve(documentId, DOCUMENT_SUFFIX);
+
+        if (document == null || !Files.isRegularFile(document)) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new StoredRange(document, 0, Files.size(document)));
+    }
+
+    /**
+     * Ищет раздел документа по его идентификатору из HTML документа ("номер строчки_хэш строчки")
+     * @param documentId идентификатор документа
+     * @param sectionId идентификатор раздела
+     * @return диапазон, который занимает раздел вместе с подразделами, или пусто, если такого раздела нет
+     * @throws IOException возникает тогда, когда не удалось прочитать хранилище
+     */
+    public Optional<StoredRange> findSection(String documentId, String sectionId) throws IOException {
+        Path index = resolve(documentId, INDEX_SUFFIX);
+        int separator = sectionId.indexOf('_');
+
+        if (index == null || separator < 0) {
+            return Optional.empty();
+        }
+
+        int line;
+        int lineHash;
+
+        try {
+            line = Integer.parseInt(sectionId, 0, separator, 10);
+            lineHash = Integer.parseInt(sectionId, separator + 1, sectionId.length(), 10);
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+
+        try (FileChannel channel = FileChannel.open(index, StandardOpenOption.READ)) {
+            ByteBuffer record = ByteBuffer.allocate(DocumentIndex.SECTION_SIZE);
+            int low = 0;
+            int high = readSectionsCount(channel) - 1;
+
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+
+                record.clear();
+                readFully(channel, record, DocumentIndex.HEADER_SIZE + (long) middle * DocumentIndex.SECTION_SIZE);
+
+                int middleLine = record.getInt(0);
+
+                if (middleLine < line) {
+                    low = middle + 1;
+                } else if (middleLine > line) {
+                    high = middle - 1;
+                } else if (record.getInt(Integer.BYTES) == lineHash) {
+                    return Optional.of(new StoredRange(
+                            resolve(documentId, DOCUMENT_SUFFIX),
+                            record.getLong(3 * Integer.BYTES),
+                            record.getLong(3 * Integer.BYTES + Long.BYTES)
+                    ));
+                } else {
+                    return Optional.empty();
+                }
+            }
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+
+        return Optional.empty();
+    }
+
+    private static int readSectionsCount(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(DocumentIndex.HEADER_SIZE);
+        readFully(channel, header, 0);
+        return header.getInt(Integer.BYTES);
+    }
+
+    /**
+     * Читает индекс документа целиком
+     * @param documentId идентификатор документа
+     * @return индекс или пусто, если такого документа нет
+     * @throws IOException возникает тогда, когда не удалось прочитать хранилище
+     */
+    Optional<DocumentIndex> findIndex(String documentId) throws IOException {
+        Path index = resolve(documentId, INDEX_SUFFIX);
+
+        if (index == null) {
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.of(DocumentIndex.read(index));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of the document index");
+            }
+        }
+    }
+
+    /**
+     * Пишет в поток диапазон байтов документа, читая с диска только этот диапазон
+     * @param range диапазон документа
+     * @param outputStream поток, в который пишется диапазон
+     * @throws IOException возникает тогда, когда не удалось прочитать документ или записать его в поток
+     */
+    public void copy(StoredRange range, OutputStream outputStream) throws IOException {
+        try (FileChannel channel = FileChannel.open(range.document(), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(outputStream);
+            long position = range.start();
+
+            while (position < range.end()) {
+                long transferred = channel.transferTo(position, range.end() - position, target);
+
+                if (transferred <= 0) {
+                    throw new IOException("Unexpected end of the stored document");
+                }
+
+                position += transferred;
+            }
+        }
+    }
+
+    /**
+     * Удаляет документ вместе с индексом. Индекс удаляется первым, поэтому раздел удаляемого документа
+     * уже не находится, а запросы, которые уже читают документ, дочитывают его до конца
+     * @param documentId идентификатор документа
+     * @return true, если такой документ был и его удалили
+     * @throws IOException возникает тогда, когда не удалось удалить файлы документа
+     */
+    public boolean delete(String documentId) throws IOException {
+        Path document = resolve(documentId, DOCUMENT_SUFFIX);
+
+        if (document == null) {
+            return false;
+        }
+
+        Files.deleteIfExists(resolve(documentId, INDEX_SUFFIX));
+
+        return Files.deleteIfExists(document);
+    }
+
+    /**
+     * <p>Удаляет документы, которые сохранены больше <code>parser.store.ttl</code> назад, вместе с их индексами.</p>
+     * <p>Также удаляются временные файлы недописанных документов и индексы без документа,
+     * которые могли остаться после остановки сервера посреди записи.</p>
+     */
+    public void removeExpired() {
+        Instant expiredBefore = clock.instant().minus(ttl);
+
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(
+                directory,
+                "*{" + DOCUMENT_SUFFIX + "," + INDEX_SUFFIX + "," + TEMP_SUFFIX + "}"
+        )) {
+            for (Path file : files) {
+                if (!isModifiedBefore(file, expiredBefore)) {
+                    continue;
+                }
+
+                String name = file.getFileName().toString();
+                String baseName = name.substring(0, name.lastIndexOf('.'));
+
+                if (name.endsWith(DOCUMENT_SUFFIX)) {
+                    // индекс удаляется первым, как и в delete
+                    delete(directory.resolve(baseName + INDEX_SUFFIX), file);
+                } else if (!name.endsWith(INDEX_SUFFIX) || !Files.exists(directory.resolve(baseName + DOCUMENT_SUFFIX))) {
+                    delete(file);
+                }
+            }
+        } catch (IOException e) {
+            log.warn(String.format("Failed to remove the expired documents from %s: %s", directory, e.getMessage()));
+        }
+    }
+
+    private static boolean isModifiedBefore(Path file, Instant instant) {
+        try {
+            return Files.getLastModifiedTime(file).toInstant().isBefore(instant);
+        } catch (IOException e) {
+            // файл уже удалили
+            return false;
+        }
+    }
+
+    /**
+     * Удаляет файлы, ошибки удаления только логируются
+     * @param files пути к файлам
+     */
+    void delete(Path... files) {
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn(String.format("Failed to delete the store file %s: %s", file, e.getMessage()));
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.iffomko.apsofttesttask.services.store;
+
+import com.iffomko.apsofttesttask.services.parser.DocumentLayoutConsumer;
+import com.iffomko.apsofttesttask.services.parser.OutlineSection;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * <p>Запись одного документа в <code>DocumentStore</code>.</p>
+ * <p>Парсер пишет документ в <code>getOutputStream</code> и сообщает положения пунктов содержания и параграфов.
+ * Раздел заканчивается там, где начинается следующий раздел такой же или меньшей вложенности,
+ * или там, где заканчивается текст, поэтому в диапазон раздела входят и его подразделы.</p>
+ * <p>Документ и индекс пишутся во временные файлы и переименовываются только в <code>commit</code>,
+ * поэтому недописанный документ никогда не виден читателям. Если <code>commit</code> не был вызван,
+ * то <code>close</code> удаляет временные файлы.</p>
+ */
+public class StoredDocumentWriter implements DocumentLayoutConsumer, Closeable {
+    private final DocumentStore store;
+    private final Path documentFile;
+    private final FileChannel channel;
+    private final OutputStream outputStream;
+    private final DocumentIndex index = new DocumentIndex();
+    private int[] opened = new int[16];
+    private int openedCount;
+    private int nextSection;
+    private int lastCheckpointLine = -DocumentIndex.CHECKPOINT_INTERVAL;
+    private boolean committed;
+
+    StoredDocumentWriter(DocumentStore store, Path documentFile) throws IOException {
+        this.store = store;
+        this.documentFile = documentFile;
+        this.channel = FileChannel.open(documentFile, StandardOpenOption.WRITE);
+        this.outputStream = Channels.newOutputStream(channel);
+    }
+
+    /**
+     * @return поток, в который пишется документ
+     */
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    /**
+     * @return канал, в который пишется документ. Пишет в тот же файл и с той же позиции, что и <code>getOutputStream</code>
+     */
+    FileChannel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public void acceptContentsEntry(OutlineSection section, long offset) {
+        addContentsEntry(section.index(), section.lineHash(), section.depth(), offset);
+    }
+
+    @Override
+    public void acceptContentsEnd(long offset) {
+        index.contentsEnd = offset;
+    }
+
+    @Override
+    public void acceptParagraph(int line, OutlineSection section, long offset) {
+        addParagraph(line, section != null ? section.depth() : 0, offset);
+    }
+
+    @Override
+    public void acceptTextEnd(long offset) {
+        closeSections(0, offset);
+        index.textEnd = offset;
+    }
+
+    /**
+     * Добавляет раздел по его пункту содержания. Пункты содержания добавляются в порядке следования разделов
+     */
+    void addContentsEntry(int line, int lineHash, int depth, long offset) {
+        index.addSection(line, lineHash, depth, offset);
+    }
+
+    /**
+     * Добавляет параграф. Параграфы добавляются по порядку, но не обязательно все:
+     * обязательны только параграфы разделов
+     * @param line номер строчки параграфа
+     * @param depth вложенность раздела или 0, если строчка не является разделом
+     * @param offset начало параграфа
+     */
+    void addParagraph(int line, int depth, long offset) {
+        if (depth != 0) {
+            if (nextSection >= index.sectionsCount || index.sectionLines[nextSection] != line) {
+                throw new IllegalStateException(String.format("The paragraph %d has no contents entry", line));
+            }
+
+            // перед параграфом раздела стоит перевод строки, который в предыдущие разделы не входит
+            closeSections(depth, offset - 1);
+            index.sectionStarts[nextSection] = offset;
+            open(nextSection++);
+        }
+
+        if (line - lastCheckpointLine >= DocumentIndex.CHECKPOINT_INTERVAL) {
+            addCheckpoint(line, offset);
+        }
+
+        index.linesCount = Math.max(index.linesCount, line + 1);
+    }
+
+    /**
+     * Добавляет контрольную точку. Контрольные точки добавляются по порядку
+     * @param line номер строчки параграфа
+     * @param offset начало параграфа
+     */
+    void addCheckpoint(int line, long offset) {
+        if (line > lastCheckpointLine) {
+            index.addCheckpoint(line, offset);
+            lastCheckpointLine = line;
+        }
+    }
+
+    /**
+     * Задает количество строчек тогда, когда параграфы добавлялись не все
+     * @param linesCount количество строчек документа
+     */
+    void setLinesCount(int linesCount) {
+        index.linesCount = linesCount;
+    }
+
+    private void open(int section) {
+        if (openedCount == opened.length) {
+            opened = Arrays.copyOf(opened, openedCount * 2);
+        }
+
+        opened[openedCount++] = section;
+    }
+
+    private void closeSections(int depth, long end) {
+        while (openedCount > 0 && index.sectionDepths[opened[openedCount - 1]] >= depth) {
+            index.sectionEnds[opened[--openedCount]] = end;
+        }
+    }
+
+    /**
+     * Сохраняет документ и его индекс в хранилище
+     * @return идентификатор документа
+     * @throws IOException возникает тогда, когда не удалось записать файлы
+     */
+    public String commit() throws IOException {
+        outputStream.close();
+
+        if (index.isEmptyText()) {
+            index.linesCount = 1;
+        }
+
+        String documentId = UUID.randomUUID().toString();
+        Path directory = store.getDirectory();
+        Path indexFile = Files.createTempFile(directory, "index-", DocumentStore.TEMP_SUFFIX);
+
+        try {
+            index.write(indexFile);
+
+            // сначала документ, потому что читатели сначала ищут индекс
+            Files.move(documentFile, directory.resolve(documentId + DocumentStore.DOCUMENT_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+            Files.move(indexFile, directory.resolve(documentId + DocumentStore.INDEX_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            store.delete(indexFile, directory.resolve(documentId + DocumentStore.DOCUMENT_SUFFIX));
+            throw e;
+        }
+
+        committed = true;
+
+        return documentId;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (committed) {
+            return;
+        }
+
+        try {
+            outputStream.close();
+        } finally {
+            store.delete(documentFile);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.iffomko.apsofttesttask.services.store;
+
+import java.nio.file.Path;
+
+/**
+ * Диапазон байтов документа в хранилище
+ * @param document путь к файлу документа
+ * @param start номер первого байта
+ * @param end номер байта сразу после диапазона
+ */
+public record StoredRange(Path document, long start, long end) {
+}
@@ -0,0 +1,146 @@
+package com.iffomko.apsofttesttask.services.uploads;
+
+import com.iffomko.apsofttesttask.services.cache.DocumentModelCache;
+import com.iffomko.apsofttesttask.services.cache.HashedUpload;
+import com.iffomko.apsofttesttask.services.cache.ParsedDocumentCache;
+import com.iffomko.apsofttesttask.services.concurrency.MemoryBudget;
+import com.iffomko.apsofttesttask.services.lines.DecodedTextInputStream;
+import com.iffomko.apsofttesttask.services.lines.LineSource;
+import com.iffomko.apsofttesttask.services.lines.LineSplitter;
+import com.iffomko.apsofttesttask.services.metrics.ParseObservation;
+import com.iffomko.apsofttesttask.services.parser.IndexedDocument;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>Чтение загрузок <code>multipart/form-data</code>, которые разбираются в памяти: строчки файла, текст с ключом
+ * документа, разобранный документ из кэша и резервирование памяти под разбор.</p>
+ * <p>Кодировка загрузки проверяется при любом чтении (см. <code>DecodedTextInputStream</code>), а текст
+ * перекодируется в UTF-8.</p>
+ */
+@Component
+public class UploadReader {
+    /**
+     * Во сколько раз пиковый расход памяти на JSON ответ больше файла: сам файл, индекс строчек,
+     * HTML документ в <code>ByteArrayOutputStream</code> с запасом на рост, его копия и строка для JSON
+     */
+    public static final int JSON_FOOTPRINT = 6;
+    /**
+     * Во сколько раз пиковый расход памяти на HTML ответ больше файла: сам файл, индекс строчек
+     * и сжатая копия документа для кэша. Документ пишется в ответ по мере разбора и целиком в памяти не собирается
+     */
+    public static final int HTML_FOOTPRINT = 2;
+
+    private final ParsedDocumentCache documentCache;
+    private final DocumentModelCache documentModelCache;
+    private final MemoryBudget memoryBudget;
+    private final long maxFileSize;
+    private final Charset charset;
+
+    /**
+     * @param documentCache кэш уже разобранных документов, по ключу которого читается загрузка
+     * @param documentModelCache кэш разобранных документов, которые еще не отрисованы
+     * @param memoryBudget бюджет памяти для файлов, которые разбираются в памяти
+     * @param maxFileSize максимальный размер файла для обычного режима
+     */
+    public UploadReader(
+            ParsedDocumentCache documentCache,
+            DocumentModelCache documentModelCache,
+            MemoryBudget memoryBudget,
+            @Value("${parser.maxFileSize}") DataSize maxFileSize
+    ) {
+        this.documentCache = documentCache;
+        this.documentModelCache = documentModelCache;
+        this.memoryBudget = memoryBudget;
+        this.maxFileSize = maxFileSize.toBytes();
+        this.charset = StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Возвращает источник строчек файла, разбитых по CRLF (либо CR, либо LF).
+     * При каждом обходе файл заново читается порциями, поэтому весь текст в памяти не держится.
+     * Кодировка проверяется при обходе (см. <code>DecodedTextInputStream</code>), а парсер при первом обходе
+     * только собирает разделы, так что некорректный файл отклоняется раньше, чем что-то записано в ответ.
+     * @param multipartFile файл полученный из сети
+     * @param observation замер разбора, в который попадает время чтения и обхода строчек
+     * @return источник строчек
+     */
+    public LineSource getLines(MultipartFile multipartFile, ParseObservation observation) {
+        return observation.timeLines(consumer -> {
+            try (InputStream inputStream = new DecodedTextInputStream(observation.timeReads(multipartFile.getInputStream()))) {
+                LineSplitter.split(inputStream, charset, consumer);
+            }
+        });
+    }
+
+    /**
+     * Делает то же самое, что и <code>getLines</code> с замером, но без замера
+     * @param multipartFile файл полученный из сети
+     * @return источник строчек
+     */
+    public LineSource getLines(MultipartFile multipartFile) {
+        return consumer -> {
+            try (InputStream inputStream = new DecodedTextInputStream(multipartFile.getInputStream())) {
+                LineSplitter.split(inputStream, charset, consumer);
+            }
+        };
+    }
+
+    /**
+     * <p>Читает загруженный файл в память и по ходу чтения вычисляет его ключ, который служит и ключом кэша,
+     * и основой ETag. Файл читается один раз, дальше разбор идет из памяти.</p>
+     * <p>В том же проходе проверяется кодировка, а текст перекодируется в UTF-8, поэтому некорректный файл отклоняется
+     * на первом же плохом байте, еще до разбора. Ключ считается от текста в UTF-8: один и тот же текст в разных кодировках
+     * дает один и тот же документ.</p>
+     * @param multipartFile файл полученный из сети
+     * @param observation замер разбора, в который попадает время чтения
+     * @return текст файла в UTF-8 и ключ документа
+     * @throws IOException возникает тогда, когда не удалось прочитать файл или в нем некорректная кодировка
+     */
+    public HashedUpload read(MultipartFile multipartFile, ParseObservation observation) throws IOException {
+        return observation.timeRead(() -> {
+            try (InputStream inputStream = new DecodedTextInputStream(multipartFile.getInputStream())) {
+                return documentCache.read(inputStream, multipartFile.getSize());
+            }
+        });
+    }
+
+    /**
+     * Возвращает разобранный документ загрузки: из кэша, если эту загрузку уже разбирали, или разбивает ее
+     * на строчки и кладет в кэш, чтобы другой формат той же загрузки стоил только отрисовки
+     * @param upload текст файла в UTF-8 и ключ документа
+     * @param observation замер разбора
+     * @return документ
+     */
+    public IndexedDocument getDocumentModel(HashedUpload upload, ParseObservation observation) {
+        IndexedDocument document = documentModelCache.get(upload.key());
+
+        if (document != null) {
+            return observation.reuse(document);
+        }
+
+        document = observation.index(upload.content());
+        documentModelCache.put(upload.key(), document);
+
+        return document;
+    }
+
+    /**
+     * Резервирует в бюджете памяти оценку пикового расхода памяти на разбор файла. Размер файла известен
+     * до чтения: Tomcat уже принял всю часть <code>multipart/form-data</code> во временный файл
+     * @param multipartFile файл полученный из сети
+     * @param footprint во сколько раз пиковый расход памяти больше файла
+     * @return резервирование, которое надо закрыть после записи ответа
+     * @throws InterruptedException возникает тогда, когда поток прервали во время ожидания памяти
+     */
+    public MemoryBudget.Reservation reserveMemory(MultipartFile multipartFile, int footprint) throws InterruptedException {
+        return memoryBudget.reserve(Math.min(multipartFile.getSize(), maxFileSize) * footprint);
+    }
+}
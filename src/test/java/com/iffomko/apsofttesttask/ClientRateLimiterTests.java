@@ -0,0 +1,31 @@
+package com.iffomko.apsofttesttask;
+
+import com.iffomko.apsofttesttask.services.concurrency.ClientRateLimiter;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ClientRateLimiterTests {
+    @Test
+    @DisplayName("Тестирование ограничения частоты запросов клиента: всплеск, пополнение и независимые клиенты")
+    void testClientRateLimiter() {
+        AtomicLong now = new AtomicLong();
+        ClientRateLimiter rateLimiter = new ClientRateLimiter(2, 0.5, 100, now::get);
+
+        assertEquals(0, rateLimiter.tryAcquire("first"));
+        assertEquals(0, rateLimiter.tryAcquire("first"));
+        assertEquals(2, rateLimiter.tryAcquire("first"));
+        assertEquals(0, rateLimiter.tryAcquire("second"));
+
+        now.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertEquals(1, rateLimiter.tryAcquire("first"));
+
+        now.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertEquals(0, rateLimiter.tryAcquire("first"));
+        assertEquals(2, rateLimiter.tryAcquire("first"));
+    }
+}
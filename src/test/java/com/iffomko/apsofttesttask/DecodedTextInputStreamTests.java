@@ -0,0 +1,121 @@
+package com.iffomko.apsofttesttask;
+
+import com.iffomko.apsofttesttask.services.lines.DecodedTextInputStream;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DecodedTextInputStreamTests {
+    private static final String TEXT = "#Глава\r\nтекст 😀\n##Раздел";
+
+    private static byte[] decode(InputStream inputStream) throws IOException {
+        try (DecodedTextInputStream text = new DecodedTextInputStream(inputStream)) {
+            return text.readAllBytes();
+        }
+    }
+
+    private static byte[] decode(byte[] bytes) throws IOException {
+        return decode(new ByteArrayInputStream(bytes));
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        result.writeBytes(first);
+        result.writeBytes(second);
+        return result.toByteArray();
+    }
+
+    @Test
+    @DisplayName("Тестирование того, что UTF-8 без BOM отдается теми же байтами")
+    void testUtf8IsPassedThrough() throws IOException {
+        byte[] bytes = TEXT.getBytes(StandardCharsets.UTF_8);
+
+        try (DecodedTextInputStream text = new DecodedTextInputStream(new ByteArrayInputStream(bytes))) {
+            assertArrayEquals(bytes, text.readAllBytes());
+            assertEquals(StandardCharsets.UTF_8, text.getCharset());
+            assertTrue(text.isIdentity());
+        }
+
+        assertArrayEquals(new byte[0], decode(new byte[0]));
+        assertArrayEquals(new byte[] {'a'}, decode(new byte[] {'a'}));
+    }
+
+    @Test
+    @DisplayName("Тестирование определения кодировки по BOM и по нулевым байтам")
+    void testCharsetDetection() throws IOException {
+        byte[] expected = TEXT.getBytes(StandardCharsets.UTF_8);
+
+        for (Charset charset : new Charset[] {
+                StandardCharsets.UTF_8,
+                StandardCharsets.UTF_16BE,
+                StandardCharsets.UTF_16LE,
+                Charset.forName("UTF-32BE"),
+                Charset.forName("UTF-32LE")
+        }) {
+            byte[] bytes = ("\uFEFF" + TEXT).getBytes(charset);
+
+            try (DecodedTextInputStream text = new DecodedTextInputStream(new ByteArrayInputStream(bytes))) {
+                assertArrayEquals(expected, text.readAllBytes(), charset.name());
+                assertEquals(charset, text.getCharset());
+                assertFalse(text.isIdentity());
+            }
+        }
+
+        assertArrayEquals(expected, decode(TEXT.getBytes(StandardCharsets.UTF_16BE)));
+        assertArrayEquals(expected, decode(TEXT.getBytes(StandardCharsets.UTF_16LE)));
+    }
+
+    @Test
+    @DisplayName("Тестирование того, что некорректный байт отклоняется с его номером")
+    void testMalformedInputIsRejected() {
+        byte[] prefix = "#Глава\n".getBytes(StandardCharsets.UTF_8);
+
+        UnsupportedEncodingException exception = assertThrows(
+                UnsupportedEncodingException.class,
+                () -> decode(concat(prefix, new byte[] {(byte) 0xc3, '(', '\n'}))
+        );
+        assertEquals("Malformed UTF-8 input at byte " + prefix.length, exception.getMessage());
+
+        assertThrows(UnsupportedEncodingException.class, () -> decode(concat(prefix, new byte[] {(byte) 0xe2, (byte) 0x82})));
+        assertThrows(UnsupportedEncodingException.class, () -> decode(new byte[] {(byte) 0xff, (byte) 0xfe, 0x00, (byte) 0xdc}));
+    }
+
+    @Test
+    @DisplayName("Тестирование символов, которые попадают на границу порций чтения")
+    void testCharactersOnChunkBoundaries() throws IOException {
+        StringBuilder builder = new StringBuilder("\uFEFF");
+
+        while (builder.length() < 200_000) {
+            builder.append("строка 😀 line\n");
+        }
+
+        String text = builder.toString();
+        byte[] expected = text.substring(1).getBytes(StandardCharsets.UTF_8);
+
+        for (Charset charset : new Charset[] {StandardCharsets.UTF_8, StandardCharsets.UTF_16LE}) {
+            byte[] bytes = text.getBytes(charset);
+            InputStream smallReads = new ByteArrayInputStream(bytes) {
+                @Override
+                public synchronized int read(byte[] b, int off, int len) {
+                    return super.read(b, off, Math.min(len, 3));
+                }
+            };
+
+            assertArrayEquals(expected, decode(bytes), charset.name());
+            assertArrayEquals(expected, decode(smallReads), charset.name());
+        }
+    }
+}
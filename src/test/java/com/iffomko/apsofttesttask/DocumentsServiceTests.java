@@ -0,0 +1,190 @@
+package com.iffomko.apsofttesttask;
+
+import com.iffomko.apsofttesttask.services.DocumentsService;
+import com.iffomko.apsofttesttask.services.lines.LineSource;
+import com.iffomko.apsofttesttask.services.parser.IntoHtmlFileParser;
+import com.iffomko.apsofttesttask.services.responses.FilesLoaderDocumentResponse;
+import com.iffomko.apsofttesttask.services.store.DocumentPatch;
+import com.iffomko.apsofttesttask.services.store.DocumentStore;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static com.iffomko.apsofttesttask.FilesLoaderFixture.readBody;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DocumentsServiceTests {
+    @Test
+    @DisplayName("Тестирование хранилища документов: документ целиком и отдельные разделы по идентификатору")
+    void testDocumentStore(@TempDir Path directory) throws IOException {
+        FilesLoaderFixture fixture = new FilesLoaderFixture(directory);
+        DocumentsService storeService = fixture.documentsService();
+        MockMultipartFile textFile = new MockMultipartFile(
+                "file",
+                "file.txt",
+                MediaType.TEXT_PLAIN_VALUE,
+                "preface\n#Chapter one\ntext\n##Details\nmore\n#Chapter two\nend\n".getBytes(StandardCharsets.UTF_8)
+        );
+        String chapterOne = String.format("%d_%d", 1, Math.abs("#Chapter one".hashCode()));
+        String details = String.format("%d_%d", 3, Math.abs("##Details".hashCode()));
+        String chapterTwo = String.format("%d_%d", 5, Math.abs("#Chapter two".hashCode()));
+
+        ResponseEntity<?> storeResult = storeService.storeDocument(textFile);
+        String documentId = ((FilesLoaderDocumentResponse) storeResult.getBody()).getDocumentId();
+
+        assertEquals(HttpStatus.CREATED, storeResult.getStatusCode());
+        assertEquals(
+                readBody(fixture.filesLoaderService().parseFileToHtml(textFile)),
+                readBody(storeService.getDocument(documentId))
+        );
+        assertEquals(
+                "<div><a name=\"" + chapterOne + "\">Chapter one</a></div>\n<div>text</div>\n"
+                        + "<div><a name=\"" + details + "\">Details</a></div>\n<div>more</div>",
+                readBody(storeService.getDocumentSection(documentId, chapterOne))
+        );
+        assertEquals(
+                "<div><a name=\"" + details + "\">Details</a></div>\n<div>more</div>",
+                readBody(storeService.getDocumentSection(documentId, details))
+        );
+        assertEquals(
+                "<div><a name=\"" + chapterTwo + "\">Chapter two</a></div>\n<div>end</div>",
+                readBody(storeService.getDocumentSection(documentId, chapterTwo))
+        );
+
+        assertEquals(HttpStatus.NOT_FOUND, storeService.getDocumentSection(documentId, "1_1").getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, storeService.getDocumentSection(documentId, "chapter").getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, storeService.getDocument("../" + documentId).getStatusCode());
+
+        try (var files = Files.list(fixture.getStoreDirectory())) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    @Test
+    @DisplayName("Тестирование правки сохраненного документа: результат такой же, как при разборе всего текста после правки")
+    void testDocumentPatch(@TempDir Path directory) throws IOException {
+        IntoHtmlFileParser fileParser = new IntoHtmlFileParser('#');
+        DocumentsService storeService = new FilesLoaderFixture(directory)
+                .fileParser(fileParser)
+                .documentsService();
+        String[] variants = {"", "<div></div>", "text", "<div>raw</div>", "#Chapter", "##Details", "###Deep", "#Chapter"};
+        Random random = new Random(7);
+        List<String> lines = new ArrayList<>();
+
+        // больше строчек, чем между двумя контрольными точками индекса
+        for (int i = 0; i < 3000; i++) {
+            lines.add(variants[random.nextInt(variants.length)] + (random.nextBoolean() ? " " + i : ""));
+        }
+
+        lines.add("end");
+
+        ResponseEntity<?> storeResult = storeService.storeDocument(new MockMultipartFile(
+                "file", "file.txt", MediaType.TEXT_PLAIN_VALUE, String.join("\n", lines).getBytes(StandardCharsets.UTF_8)
+        ));
+        String documentId = ((FilesLoaderDocumentResponse) storeResult.getBody()).getDocumentId();
+
+        for (int step = 0; step < 60; step++) {
+            int fromLine = step == 40 ? 0 : random.nextInt(lines.size() + 1);
+            int toLine = step == 40 ? lines.size() : Math.min(lines.size(), fromLine + random.nextInt(4));
+            List<String> inserted = new ArrayList<>();
+            int insertedCount = step == 40 ? 1 : random.nextInt(4);
+
+            for (int i = 0; i < insertedCount; i++) {
+                inserted.add(step == 40 ? "" : variants[random.nextInt(variants.length)] + " v" + step);
+            }
+
+            ResponseEntity<?> patchResult = storeService.patchDocument(documentId, new DocumentPatch(fromLine, toLine, inserted));
+            String patchedId = ((FilesLoaderDocumentResponse) patchResult.getBody()).getDocumentId();
+            String previous = readBody(storeService.getDocument(documentId));
+
+            lines.subList(fromLine, toLine).clear();
+            lines.addAll(fromLine, inserted);
+
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            fileParser.parse(LineSource.of(lines), expected);
+
+            assertEquals(HttpStatus.CREATED, patchResult.getStatusCode());
+            assertEquals(expected.toString(StandardCharsets.UTF_8), readBody(storeService.getDocument(patchedId)));
+            assertEquals(previous, readBody(storeService.getDocument(documentId)));
+
+            for (int line = 0; line < lines.size(); line++) {
+                if (lines.get(line).startsWith("#")) {
+                    String sectionId = line + "_" + Math.abs(lines.get(line).hashCode());
+
+                    assertEquals(HttpStatus.OK, storeService.getDocumentSection(patchedId, sectionId).getStatusCode());
+                }
+            }
+
+            documentId = patchedId;
+        }
+
+        assertEquals(
+                HttpStatus.BAD_REQUEST,
+                storeService.patchDocument(documentId, new DocumentPatch(0, lines.size() + 1, List.of())).getStatusCode()
+        );
+        assertEquals(
+                HttpStatus.BAD_REQUEST,
+                storeService.patchDocument(documentId, new DocumentPatch(0, 0, List.of("two\nlines"))).getStatusCode()
+        );
+        assertEquals(
+                HttpStatus.NOT_FOUND,
+                storeService.patchDocument(UUID.randomUUID().toString(), new DocumentPatch(0, 0, List.of())).getStatusCode()
+        );
+    }
+
+    @Test
+    @DisplayName("Тестирование удаления документов: по запросу и по истечении parser.store.ttl")
+    void testDocumentRetention(@TempDir Path directory) throws IOException {
+        FilesLoaderFixture fixture = new FilesLoaderFixture(directory);
+        DocumentsService storeService = fixture.documentsService();
+        MockMultipartFile textFile = new MockMultipartFile(
+                "file", "file.txt", MediaType.TEXT_PLAIN_VALUE, "#Chapter\ntext\n".getBytes(StandardCharsets.UTF_8)
+        );
+
+        String deletedId = ((FilesLoaderDocumentResponse) storeService.storeDocument(textFile).getBody()).getDocumentId();
+        String sourceId = ((FilesLoaderDocumentResponse) storeService.storeDocument(textFile).getBody()).getDocumentId();
+        String patchedId = ((FilesLoaderDocumentResponse) storeService
+                .patchDocument(sourceId, new DocumentPatch(1, 2, List.of("patched")))
+                .getBody()).getDocumentId();
+
+        assertEquals(HttpStatus.NO_CONTENT, storeService.deleteDocument(deletedId).getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, storeService.getDocument(deletedId).getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, storeService.deleteDocument(deletedId).getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, storeService.deleteDocument("../" + sourceId).getStatusCode());
+        assertEquals(HttpStatus.OK, storeService.getDocument(sourceId).getStatusCode());
+
+        // недописанный документ, который остался после остановки сервера
+        Files.createFile(fixture.getStoreDirectory().resolve("document-1.tmp"));
+
+        new DocumentStore(fixture.getStoreDirectory(), Duration.ofDays(7), Clock.systemUTC()).removeExpired();
+
+        assertEquals(HttpStatus.OK, storeService.getDocument(sourceId).getStatusCode());
+        assertEquals(HttpStatus.OK, storeService.getDocument(patchedId).getStatusCode());
+
+        Clock later = Clock.offset(Clock.systemUTC(), Duration.ofDays(7).plusMinutes(1));
+        new DocumentStore(fixture.getStoreDirectory(), Duration.ofDays(7), later).removeExpired();
+
+        assertEquals(HttpStatus.NOT_FOUND, storeService.getDocument(sourceId).getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, storeService.getDocument(patchedId).getStatusCode());
+
+        try (var files = Files.list(fixture.getStoreDirectory())) {
+            assertEquals(0, files.count());
+        }
+    }
+}
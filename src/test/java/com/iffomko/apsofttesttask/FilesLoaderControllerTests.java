@@ -1,38 +1,77 @@
 package com.iffomko.apsofttesttask;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.iffomko.apsofttesttask.controllers.FilesLoaderController;
-import com.iffomko.apsofttesttask.services.FilesLoaderService;
-import com.iffomko.apsofttesttask.services.parser.IFileParser;
+import com.iffomko.apsofttesttask.services.lines.LineSource;
 import com.iffomko.apsofttesttask.services.parser.IntoHtmlFileParser;
 import com.iffomko.apsofttesttask.services.responses.FilesLoaderErrorResponse;
 import com.iffomko.apsofttesttask.services.responses.FilesLoaderResponse;
 import com.iffomko.apsofttesttask.services.responses.utils.FileLoaderResponseCodes;
 import com.iffomko.apsofttesttask.services.responses.utils.FileLoaderResponseMessages;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 public class FilesLoaderControllerTests {
     @Mock
     private MultipartFile multipartFile;
-    private final IFileParser parser = Mockito.mock(IntoHtmlFileParser.class);
-    private final FilesLoaderService service = new FilesLoaderService(parser);
-    private final FilesLoaderController filesLoaderController = new FilesLoaderController(service);
+    private final IntoHtmlFileParser parser = Mockito.mock(IntoHtmlFileParser.class);
+    @TempDir
+    private Path directory;
+    private FilesLoaderController filesLoaderController;
+
+    @BeforeEach
+    void createController() {
+        filesLoaderController = new FilesLoaderController(new FilesLoaderFixture(directory)
+                .fileParser(parser)
+                .documentCache(DataSize.ofMegabytes(1))
+                .filesLoaderService());
+    }
+
+    /**
+     * Заставляет мок парсера прочитать все строчки из источника и записать заданный результат
+     * @param result результат, который вернет парсер
+     */
+    private void stubParser(String result) throws IOException {
+        doAnswer(invocation -> {
+            LineSource source = invocation.getArgument(0);
+            OutputStream outputStream = invocation.getArgument(1);
+
+            source.forEachLine(line -> {});
+            outputStream.write(result.getBytes(StandardCharsets.UTF_8));
+
+            return null;
+        }).when(parser).parse(any(LineSource.class), any(OutputStream.class));
+    }
 
     @Test
     @DisplayName(
@@ -42,7 +81,7 @@ public class FilesLoaderControllerTests {
     void handlePostFileParser_returnsBadRequestOfIncorrectRequestType() {
         when(multipartFile.getContentType()).thenReturn(MediaType.MULTIPART_FORM_DATA_VALUE);
 
-        ResponseEntity<?> actualResult = filesLoaderController.handlePostFileParser(multipartFile);
+        ResponseEntity<?> actualResult = filesLoaderController.handlePostFileParser(multipartFile, null);
         FilesLoaderErrorResponse body = (FilesLoaderErrorResponse)actualResult.getBody();
 
         assertEquals(HttpStatus.BAD_REQUEST, actualResult.getStatusCode());
@@ -54,18 +93,20 @@ public class FilesLoaderControllerTests {
     @Test
     @DisplayName(
             "POST /api/v1/files/parser тестирует случай, " +
-            "когда HTTP статус INTERNAL SERVER ERROR и при попытке получить байты с MultipartFile возникает ошибка"
+            "когда HTTP статус INTERNAL SERVER ERROR и при попытке прочитать поток MultipartFile возникает ошибка"
     )
-    void handlePostFileParser_returnsInternalServerError() {
+    void handlePostFileParser_returnsInternalServerError() throws IOException {
         when(multipartFile.getContentType()).thenReturn(MediaType.TEXT_PLAIN_VALUE);
 
+        stubParser("");
+
         try {
-            when(multipartFile.getBytes()).thenThrow(new IOException("Failed get bytes"));
+            when(multipartFile.getInputStream()).thenThrow(new IOException("Failed get bytes"));
         } catch (IOException e) {
             // just ignore
         }
 
-        ResponseEntity<?> actualResult = filesLoaderController.handlePostFileParser(multipartFile);
+        ResponseEntity<?> actualResult = filesLoaderController.handlePostFileParser(multipartFile, null);
         FilesLoaderErrorResponse body = (FilesLoaderErrorResponse)actualResult.getBody();
 
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, actualResult.getStatusCode());
@@ -79,16 +120,18 @@ public class FilesLoaderControllerTests {
             "POST /api/v1/files/parser тестирует случай, " +
             "когда HTTP статус BAD REQUEST и возвращается ошибка с кодом IncorrectEncoding"
     )
-    void handlePostFileParser_returnsIncorrectEncoding() {
+    void handlePostFileParser_returnsIncorrectEncoding() throws IOException {
         when(multipartFile.getContentType()).thenReturn(MediaType.TEXT_PLAIN_VALUE);
 
+        stubParser("");
+
         try {
-            when(multipartFile.getBytes()).thenThrow(new UnsupportedEncodingException("Incorrect encoding"));
+            when(multipartFile.getInputStream()).thenThrow(new UnsupportedEncodingException("Incorrect encoding"));
         } catch (IOException e) {
             // just ignore
         }
 
-        ResponseEntity<?> actualResult = filesLoaderController.handlePostFileParser(multipartFile);
+        ResponseEntity<?> actualResult = filesLoaderController.handlePostFileParser(multipartFile, null);
         FilesLoaderErrorResponse body = (FilesLoaderErrorResponse)actualResult.getBody();
 
         assertEquals(HttpStatus.BAD_REQUEST, actualResult.getStatusCode());
@@ -102,18 +145,18 @@ public class FilesLoaderControllerTests {
             "POST /api/v1/files/parser тестирует случай, " +
             "когда HTTP статус OK и возвращаемые данные с сервиса совпадают"
     )
-    void handlePostFileParser_returnsOk() {
+    void handlePostFileParser_returnsOk() throws IOException {
         when(multipartFile.getContentType()).thenReturn(MediaType.TEXT_PLAIN_VALUE);
 
         try {
-            when(multipartFile.getBytes()).thenReturn("test".getBytes());
+            when(multipartFile.getInputStream()).thenReturn(new ByteArrayInputStream("test".getBytes()));
         } catch (IOException e) {
             // just ignore
         }
 
-        when(parser.parse(anyList())).thenReturn("test");
+        stubParser("test");
 
-        ResponseEntity<?> actualResult = filesLoaderController.handlePostFileParser(multipartFile);
+        ResponseEntity<?> actualResult = filesLoaderController.handlePostFileParser(multipartFile, null);
         FilesLoaderResponse body = (FilesLoaderResponse) actualResult.getBody();
 
         assertEquals(HttpStatus.OK, actualResult.getStatusCode());
@@ -121,4 +164,99 @@ public class FilesLoaderControllerTests {
         assertEquals(FileLoaderResponseCodes.SUCCESS.name(), body.getCode());
         assertEquals("test", body.getData());
     }
+
+    @Test
+    @DisplayName(
+            "POST /api/v1/files/parser с Accept: text/html тестирует случай, " +
+            "когда HTTP статус OK и HTML документ пишется в тело ответа без JSON обертки"
+    )
+    void handlePostFileParserToHtml_returnsOk() throws IOException {
+        when(multipartFile.getContentType()).thenReturn(MediaType.TEXT_PLAIN_VALUE);
+        when(multipartFile.getInputStream()).thenReturn(new ByteArrayInputStream("test".getBytes()));
+
+        stubParser("<html>тест</html>");
+
+        ResponseEntity<StreamingResponseBody> actualResult = filesLoaderController.handlePostFileParserToHtml(multipartFile, null, null);
+        StreamingResponseBody body = actualResult.getBody();
+
+        assertEquals(HttpStatus.OK, actualResult.getStatusCode());
+        assertEquals(
+                new MediaType(MediaType.TEXT_HTML, StandardCharsets.UTF_8),
+                actualResult.getHeaders().getContentType()
+        );
+        assert body != null;
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        body.writeTo(outputStream);
+
+        assertEquals("<html>тест</html>", outputStream.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName(
+            "POST /api/v1/files/parser с Accept: text/html тестирует случай, " +
+            "когда тип у MultipartFile не совпадает с ожидаемым и ошибка возвращается в виде JSON"
+    )
+    void handlePostFileParserToHtml_returnsBadRequestOfIncorrectRequestType() throws IOException {
+        when(multipartFile.getContentType()).thenReturn(MediaType.MULTIPART_FORM_DATA_VALUE);
+
+        ResponseEntity<StreamingResponseBody> actualResult = filesLoaderController.handlePostFileParserToHtml(multipartFile, null, null);
+        StreamingResponseBody streamingBody = actualResult.getBody();
+
+        assertEquals(HttpStatus.BAD_REQUEST, actualResult.getStatusCode());
+        assertEquals(MediaType.APPLICATION_JSON, actualResult.getHeaders().getContentType());
+        assert streamingBody != null;
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        streamingBody.writeTo(outputStream);
+        FilesLoaderErrorResponse body = new ObjectMapper().readValue(
+                outputStream.toByteArray(),
+                FilesLoaderErrorResponse.class
+        );
+
+        assertEquals(FileLoaderResponseCodes.INCORRECT_REQUEST_TYPE.name(), body.getCode());
+    }
+
+    @Test
+    @DisplayName(
+            "POST /api/v1/files/parser/batch тестирует случай, " +
+            "когда результатов столько же, сколько файлов, и они идут в том же порядке"
+    )
+    void handlePostFilesParserBatch_returnsResultsInOrder() throws IOException {
+        List<MultipartFile> textFiles = new ArrayList<>();
+
+        for (int i = 0; i < 20; i++) {
+            textFiles.add(new MockMultipartFile(
+                    "file",
+                    "file" + i + ".txt",
+                    MediaType.TEXT_PLAIN_VALUE,
+                    ("file " + i).getBytes(StandardCharsets.UTF_8)
+            ));
+        }
+
+        doAnswer(invocation -> {
+            LineSource source = invocation.getArgument(0);
+            OutputStream outputStream = invocation.getArgument(1);
+
+            source.forEachLine(line -> outputStream.write(line.getBytes(StandardCharsets.UTF_8)));
+
+            return null;
+        }).when(parser).parse(any(LineSource.class), any(OutputStream.class));
+
+        ResponseEntity<StreamingResponseBody> actualResult = filesLoaderController.handlePostFilesParserBatch(textFiles);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        assertNotNull(actualResult.getBody());
+        actualResult.getBody().writeTo(outputStream);
+
+        JsonNode results = new ObjectMapper().readTree(outputStream.toByteArray());
+
+        assertEquals(HttpStatus.OK, actualResult.getStatusCode());
+        assertEquals(textFiles.size(), results.size());
+
+        for (int i = 0; i < textFiles.size(); i++) {
+            assertEquals(FileLoaderResponseCodes.SUCCESS.name(), results.get(i).get("code").asText());
+            assertEquals("file " + i, results.get(i).get("data").asText());
+        }
+    }
 }
@@ -0,0 +1,235 @@
+package com.iffomko.apsofttesttask;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iffomko.apsofttesttask.services.DocumentsService;
+import com.iffomko.apsofttesttask.services.FilesLoaderService;
+import com.iffomko.apsofttesttask.services.ParseJobsService;
+import com.iffomko.apsofttesttask.services.RenderService;
+import com.iffomko.apsofttesttask.services.cache.DocumentModelCache;
+import com.iffomko.apsofttesttask.services.cache.ParsedDocumentCache;
+import com.iffomko.apsofttesttask.services.compression.ResponseCompression;
+import com.iffomko.apsofttesttask.services.concurrency.MemoryBudget;
+import com.iffomko.apsofttesttask.services.concurrency.ParserExecutor;
+import com.iffomko.apsofttesttask.services.jobs.ParseJobs;
+import com.iffomko.apsofttesttask.services.metrics.ParserMetrics;
+import com.iffomko.apsofttesttask.services.parser.IntoHtmlFileParser;
+import com.iffomko.apsofttesttask.services.parser.ParallelIntoHtmlFileParser;
+import com.iffomko.apsofttesttask.services.render.DocumentRenderer;
+import com.iffomko.apsofttesttask.services.render.DocumentRenderers;
+import com.iffomko.apsofttesttask.services.responses.FilesLoaderResponses;
+import com.iffomko.apsofttesttask.services.spool.UploadSpool;
+import com.iffomko.apsofttesttask.services.store.DocumentPatcher;
+import com.iffomko.apsofttesttask.services.store.DocumentStore;
+import com.iffomko.apsofttesttask.services.uploads.UploadReader;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * <p>Сервисы с теми же зависимостями, что и в приложении, для тестов и бенчмарков.</p>
+ * <p>Все файлы (временные файлы загрузок, хранилище документов и результаты задач) лежат в своей директории
+ * фикстуры, обычно из <code>@TempDir</code>, так что тесты не видят файлов друг друга. По умолчанию кэши выключены,
+ * пул и бюджет памяти без ограничений, которые могли бы помешать тесту, а сжатие включено.</p>
+ */
+public class FilesLoaderFixture {
+    private final Path directory;
+    private IntoHtmlFileParser fileParser = new IntoHtmlFileParser('#');
+    private ParsedDocumentCache documentCache = new ParsedDocumentCache('#', DataSize.ofBytes(0));
+    private DocumentModelCache documentModelCache = new DocumentModelCache(DataSize.ofBytes(0));
+    private ObjectMapper objectMapper = new ObjectMapper();
+    private ParserExecutor parserExecutor = new ParserExecutor(1, -1, Duration.ofSeconds(1));
+    private MemoryBudget memoryBudget = new MemoryBudget(DataSize.ofMegabytes(256), Duration.ofSeconds(1), Duration.ofSeconds(1));
+    private ParserMetrics parserMetrics = new ParserMetrics(new SimpleMeterRegistry(), '#');
+    private ResponseCompression responseCompression = new ResponseCompression(true, 6);
+    private List<DocumentRenderer> renderers = List.of();
+    private ParseJobs parseJobs;
+    private DataSize maxFileSize = DataSize.ofMegabytes(8);
+    private DataSize maxLargeFileSize = DataSize.ofGigabytes(1);
+
+    /**
+     * @param directory директория для всех файлов сервисов
+     */
+    public FilesLoaderFixture(Path directory) {
+        this.directory = directory;
+    }
+
+    public FilesLoaderFixture fileParser(IntoHtmlFileParser fileParser) {
+        this.fileParser = fileParser;
+        return this;
+    }
+
+    public FilesLoaderFixture documentCache(DataSize maxSize) {
+        this.documentCache = new ParsedDocumentCache('#', maxSize);
+        return this;
+    }
+
+    public FilesLoaderFixture documentModelCache(DocumentModelCache documentModelCache) {
+        this.documentModelCache = documentModelCache;
+        return this;
+    }
+
+    public FilesLoaderFixture objectMapper(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        return this;
+    }
+
+    public FilesLoaderFixture parserExecutor(ParserExecutor parserExecutor) {
+        this.parserExecutor = parserExecutor;
+        return this;
+    }
+
+    public FilesLoaderFixture memoryBudget(MemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        return this;
+    }
+
+    public FilesLoaderFixture meterRegistry(MeterRegistry registry) {
+        this.parserMetrics = new ParserMetrics(registry, '#');
+        return this;
+    }
+
+    public FilesLoaderFixture responseCompression(ResponseCompression responseCompression) {
+        this.responseCompression = responseCompression;
+        return this;
+    }
+
+    public FilesLoaderFixture renderers(DocumentRenderer... renderers) {
+        this.renderers = List.of(renderers);
+        return this;
+    }
+
+    public FilesLoaderFixture parseJobs(ParseJobs parseJobs) {
+        this.parseJobs = parseJobs;
+        return this;
+    }
+
+    public FilesLoaderFixture maxFileSize(DataSize maxFileSize) {
+        this.maxFileSize = maxFileSize;
+        return this;
+    }
+
+    /**
+     * @return директория временных файлов загрузок
+     */
+    public Path getSpoolDirectory() {
+        return directory.resolve("spool");
+    }
+
+    /**
+     * @return директория хранилища документов
+     */
+    public Path getStoreDirectory() {
+        return directory.resolve("documents");
+    }
+
+    /**
+     * @return директория результатов фоновых задач
+     */
+    public Path getJobsDirectory() {
+        return directory.resolve("jobs");
+    }
+
+    public FilesLoaderService filesLoaderService() {
+        return new FilesLoaderService(
+                fileParser,
+                documentCache,
+                objectMapper,
+                new UploadSpool(getSpoolDirectory()),
+                parserExecutor,
+                new ParallelIntoHtmlFileParser(new IntoHtmlFileParser('#'), false, 0, DataSize.ofKilobytes(64)),
+                parserMetrics,
+                responseCompression,
+                uploadReader(),
+                responses(),
+                maxFileSize,
+                maxLargeFileSize
+        );
+    }
+
+    public DocumentsService documentsService() {
+        DocumentStore documentStore = new DocumentStore(getStoreDirectory(), Duration.ZERO);
+
+        return new DocumentsService(
+                fileParser,
+                uploadReader(),
+                responses(),
+                parserExecutor,
+                parserMetrics,
+                documentStore,
+                new DocumentPatcher(documentStore, fileParser),
+                maxFileSize
+        );
+    }
+
+    public RenderService renderService() {
+        return new RenderService(
+                uploadReader(),
+                responses(),
+                parserExecutor,
+                parserMetrics,
+                responseCompression,
+                new DocumentRenderers(renderers),
+                maxFileSize
+        );
+    }
+
+    /**
+     * Задачи по умолчанию не запущены: тест, которому они нужны, передает свои через <code>parseJobs</code>
+     * и сам вызывает <code>afterPropertiesSet</code> и <code>destroy</code>
+     */
+    public ParseJobsService parseJobsService() {
+        if (parseJobs == null) {
+            parseJobs = new ParseJobs(getJobsDirectory(), 1, 16, Duration.ofHours(1), Duration.ofSeconds(20), Duration.ofSeconds(1));
+        }
+
+        return new ParseJobsService(
+                fileParser,
+                responses(),
+                new UploadSpool(getSpoolDirectory()),
+                parserMetrics,
+                responseCompression,
+                parseJobs,
+                maxLargeFileSize
+        );
+    }
+
+    private UploadReader uploadReader() {
+        return new UploadReader(documentCache, documentModelCache, memoryBudget, maxFileSize);
+    }
+
+    private FilesLoaderResponses responses() {
+        return new FilesLoaderResponses(objectMapper, parserMetrics, responseCompression);
+    }
+
+    /**
+     * Записывает тело потокового ответа и возвращает его как текст в UTF-8
+     * @param response ответ сервиса
+     * @return тело ответа
+     */
+    public static String readBody(ResponseEntity<StreamingResponseBody> response) throws IOException {
+        return new String(readBytes(response), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Записывает тело потокового ответа в память
+     * @param response ответ сервиса
+     * @return байты тела ответа
+     */
+    public static byte[] readBytes(ResponseEntity<StreamingResponseBody> response) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        assert response.getBody() != null;
+        response.getBody().writeTo(outputStream);
+
+        return outputStream.toByteArray();
+    }
+}
@@ -1,40 +1,123 @@
 package com.iffomko.apsofttesttask;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadConstraints;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.iffomko.apsofttesttask.services.FilesLoaderService;
-import com.iffomko.apsofttesttask.services.parser.IFileParser;
+import com.iffomko.apsofttesttask.services.RenderService;
+import com.iffomko.apsofttesttask.services.compression.ResponseCompression;
+import com.iffomko.apsofttesttask.services.concurrency.MemoryBudget;
+import com.iffomko.apsofttesttask.services.concurrency.ParserExecutor;
+import com.iffomko.apsofttesttask.services.concurrency.ParserOverloadedException;
+import com.iffomko.apsofttesttask.services.lines.LineSource;
+import com.iffomko.apsofttesttask.services.metrics.ParseObservation;
+import com.iffomko.apsofttesttask.services.metrics.ParserMetrics;
 import com.iffomko.apsofttesttask.services.parser.IntoHtmlFileParser;
+import com.iffomko.apsofttesttask.services.render.HtmlDocumentRenderer;
 import com.iffomko.apsofttesttask.services.responses.FilesLoaderErrorResponse;
 import com.iffomko.apsofttesttask.services.responses.FilesLoaderResponse;
 import com.iffomko.apsofttesttask.services.responses.utils.FileLoaderResponseCodes;
 import com.iffomko.apsofttesttask.services.responses.utils.FileLoaderResponseMessages;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.mockito.ArgumentMatchers.anyList;
-import static org.mockito.Mockito.when;
-
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.StandardServletAsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncManager;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
-import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static com.iffomko.apsofttesttask.FilesLoaderFixture.readBody;
+import static com.iffomko.apsofttesttask.FilesLoaderFixture.readBytes;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 public class FilesLoaderServiceTests {
-    private final IFileParser parser = Mockito.mock(IntoHtmlFileParser.class);
+    private final IntoHtmlFileParser parser = Mockito.mock(IntoHtmlFileParser.class);
     private final MultipartFile multipartFile = Mockito.mock(MultipartFile.class);
-    private final FilesLoaderService service = new FilesLoaderService(parser);
+    private final ResponseCompression compression = Mockito.spy(new ResponseCompression(true, 6));
+    @TempDir
+    private Path directory;
+    private FilesLoaderService service;
+
+    @BeforeEach
+    void createService() {
+        service = new FilesLoaderFixture(directory)
+                .fileParser(parser)
+                .documentCache(DataSize.ofMegabytes(1))
+                .responseCompression(compression)
+                .filesLoaderService();
+    }
+
+    /**
+     * Заставляет мок парсера прочитать все строчки из источника и записать заданный результат
+     * @param result результат, который вернет парсер
+     */
+    private void stubParser(String result) throws IOException {
+        doAnswer(invocation -> {
+            LineSource source = invocation.getArgument(0);
+            OutputStream outputStream = invocation.getArgument(1);
+
+            source.forEachLine(line -> {});
+            outputStream.write(result.getBytes(StandardCharsets.UTF_8));
+
+            return null;
+        }).when(parser).parse(any(LineSource.class), any(OutputStream.class));
+    }
 
     @Test
     @DisplayName("Тестирование позитивного сценария")
-    void testPositiveCase() {
+    void testPositiveCase() throws IOException {
         String inputText = """
                 GREATEST MAN IN ALIVE
                 #Chapter one
@@ -107,12 +190,12 @@ public class FilesLoaderServiceTests {
         when(multipartFile.getContentType()).thenReturn(MediaType.TEXT_PLAIN_VALUE);
 
         try {
-            when(multipartFile.getBytes()).thenReturn(inputText.getBytes());
+            when(multipartFile.getInputStream()).thenReturn(new ByteArrayInputStream(inputText.getBytes()));
         } catch (IOException e) {
             // just ignore
         }
 
-        when(parser.parse(anyList())).thenReturn(outputText);
+        stubParser(outputText);
 
         ResponseEntity<?> actualResult = service.parseFile(multipartFile);
         FilesLoaderResponse body = (FilesLoaderResponse) actualResult.getBody();
@@ -139,10 +222,11 @@ public class FilesLoaderServiceTests {
 
     @Test
     @DisplayName("Тестирование непредвиденного исключения")
-    void testForInternalServerError() {
+    void testForInternalServerError() throws IOException {
         try {
+            stubParser("");
             when(multipartFile.getContentType()).thenReturn(MediaType.TEXT_PLAIN_VALUE);
-            when(multipartFile.getBytes()).thenThrow(new IOException("Failed to get bytes"));
+            when(multipartFile.getInputStream()).thenThrow(new IOException("Failed to get bytes"));
         } catch (IOException e) {
             // just ignore
         }
@@ -170,11 +254,13 @@ public class FilesLoaderServiceTests {
 
     @Test
     @DisplayName("Тестирование случая, когда у входящего файла неверная кодировка")
-    void testForInputMultipartFileIncorrectEncoding() {
+    void testForInputMultipartFileIncorrectEncoding() throws IOException {
         when(multipartFile.getContentType()).thenReturn(MediaType.TEXT_PLAIN_VALUE);
 
+        stubParser("");
+
         try {
-            when(multipartFile.getBytes()).thenThrow(new UnsupportedEncodingException("Incorrect exception"));
+            when(multipartFile.getInputStream()).thenThrow(new UnsupportedEncodingException("Incorrect exception"));
         } catch (IOException e) {
             // just ignore
         }
@@ -187,4 +273,661 @@ public class FilesLoaderServiceTests {
         assertEquals(FileLoaderResponseMessages.INCORRECT_ENCODING.getMessage(), body.getMessage());
         assertEquals(FileLoaderResponseCodes.INCORRECT_ENCODING.name(), body.getCode());
     }
+
+    @Test
+    @DisplayName("Тестирование того, что повторно загруженный файл берется из кэша без разбора")
+    void testRepeatedFileIsServedFromCache() throws IOException {
+        byte[] inputBytes = "#Chapter one\ntext".getBytes(StandardCharsets.UTF_8);
+
+        when(multipartFile.getContentType()).thenReturn(MediaType.TEXT_PLAIN_VALUE);
+        when(multipartFile.getInputStream()).thenAnswer(invocation -> new ByteArrayInputStream(inputBytes));
+
+        stubParser("<html>parsed</html>");
+
+        FilesLoaderResponse firstBody = (FilesLoaderResponse) service.parseFile(multipartFile).getBody();
+        FilesLoaderResponse secondBody = (FilesLoaderResponse) service.parseFile(multipartFile).getBody();
+
+        assert firstBody != null && secondBody != null;
+        assertEquals("<html>parsed</html>", firstBody.getData());
+        assertEquals("<html>parsed</html>", secondBody.getData());
+        verify(parser, times(1)).parse(any(LineSource.class), any(OutputStream.class));
+        // документ вставляется в JSON строкой, поэтому в кэше он лежит несжатым
+        verify(compression, never()).compress(any());
+    }
+
+    @Test
+    @DisplayName("Тестирование сжатия HTML документа: повторный файл отдается из кэша уже сжатым в любом кодировании")
+    void testCompressedDocumentIsServedFromCache() throws IOException {
+        byte[] inputBytes = "#Chapter one\ntext".getBytes(StandardCharsets.UTF_8);
+        String document = "<html>" + "parsed ".repeat(100) + "</html>";
+
+        when(multipartFile.getContentType()).thenReturn(MediaType.TEXT_PLAIN_VALUE);
+        when(multipartFile.getInputStream()).thenAnswer(invocation -> new ByteArrayInputStream(inputBytes));
+
+        stubParser(document);
+
+        ResponseEntity<StreamingResponseBody> gzipResult = service.parseFileToHtml(multipartFile, "gzip, deflate", null);
+        byte[] gzipBody = readBytes(gzipResult);
+
+        assertEquals("gzip", gzipResult.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, gzipResult.getHeaders().getFirst(HttpHeaders.VARY));
+        assertTrue(gzipBody.length < document.length());
+        assertEquals(document, decode(new GZIPInputStream(new ByteArrayInputStream(gzipBody))));
+
+        ResponseEntity<StreamingResponseBody> deflateResult = service.parseFileToHtml(multipartFile, "deflate;q=1, gzip;q=0.5", null);
+        byte[] deflateBody = readBytes(deflateResult);
+
+        assertEquals("deflate", deflateResult.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(deflateBody.length, deflateResult.getHeaders().getContentLength());
+        assertEquals(document, decode(new InflaterInputStream(new ByteArrayInputStream(deflateBody))));
+
+        ResponseEntity<StreamingResponseBody> identityResult = service.parseFileToHtml(multipartFile, null, null);
+
+        assertNull(identityResult.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(document.length(), identityResult.getHeaders().getContentLength());
+        assertEquals(document, readBody(identityResult));
+        verify(parser, times(1)).parse(any(LineSource.class), any(OutputStream.class));
+    }
+
+    @Test
+    @DisplayName("Тестирование файла, который больше лимита обычного режима")
+    void testForFileSizeLimitExceeded() {
+        when(multipartFile.getContentType()).thenReturn(MediaType.TEXT_PLAIN_VALUE);
+        when(multipartFile.getSize()).thenReturn(DataSize.ofMegabytes(8).toBytes() + 1);
+
+        ResponseEntity<?> actualResult = service.parseFile(multipartFile);
+        FilesLoaderErrorResponse body = (FilesLoaderErrorResponse) actualResult.getBody();
+
+        assertEquals(HttpStatus.BAD_REQUEST, actualResult.getStatusCode());
+        assert body != null;
+        assertEquals(FileLoaderResponseMessages.SIZE_LIMIT_EXCEEDED_EXCEPTION.getMessage(), body.getMessage());
+        assertEquals(FileLoaderResponseCodes.SIZE_LIMIT_EXCEEDED_EXCEPTION.name(), body.getCode());
+    }
+
+    @Test
+    @DisplayName("Тестирование режима больших документов: результат как у обычного режима, временные файлы удалены")
+    void testLargeFileModeMatchesRegularMode() throws IOException {
+        FilesLoaderFixture fixture = new FilesLoaderFixture(directory);
+        FilesLoaderService largeFileService = fixture.filesLoaderService();
+        MockMultipartFile textFile = new MockMultipartFile(
+                "file",
+                "file.txt",
+                MediaType.TEXT_PLAIN_VALUE,
+                "GREATEST MAN IN ALIVE\r\n#Chapter one\rthis story\n##Jack's characteristics\n".getBytes(StandardCharsets.UTF_8)
+        );
+
+        ResponseEntity<StreamingResponseBody> regularResult = largeFileService.parseFileToHtml(textFile);
+        ResponseEntity<StreamingResponseBody> largeResult = largeFileService.parseLargeFileToHtml(textFile);
+
+        ByteArrayOutputStream regularOutput = new ByteArrayOutputStream();
+        ByteArrayOutputStream largeOutput = new ByteArrayOutputStream();
+
+        assert regularResult.getBody() != null && largeResult.getBody() != null;
+        regularResult.getBody().writeTo(regularOutput);
+        largeResult.getBody().writeTo(largeOutput);
+
+        assertEquals(HttpStatus.OK, largeResult.getStatusCode());
+        assertEquals(regularOutput.toString(StandardCharsets.UTF_8), largeOutput.toString(StandardCharsets.UTF_8));
+
+        try (var files = Files.list(fixture.getSpoolDirectory())) {
+            assertTrue(files.findAny().isEmpty());
+        }
+    }
+
+    @Test
+    @DisplayName("Тестирование файла в теле запроса: результат как у multipart, проверка размера и кодировки, кэш")
+    void testRawBodyMatchesMultipart() throws IOException {
+        FilesLoaderFixture fixture = new FilesLoaderFixture(directory).maxFileSize(DataSize.ofKilobytes(1));
+        byte[] text = "GREATEST MAN IN ALIVE\r\n#Chapter one\rthis story\n##Jack's characteristics\n"
+                .getBytes(StandardCharsets.UTF_8);
+        ResponseEntity<StreamingResponseBody> multipartResult = fixture.filesLoaderService()
+                .parseFileToHtml(new MockMultipartFile("file", "file.txt", MediaType.TEXT_PLAIN_VALUE, text));
+        IntoHtmlFileParser fileParser = Mockito.spy(new IntoHtmlFileParser('#'));
+        FilesLoaderService rawService = fixture
+                .fileParser(fileParser)
+                .documentCache(DataSize.ofMegabytes(1))
+                .filesLoaderService();
+
+        ResponseEntity<StreamingResponseBody> rawResult = rawService.parseBodyToHtml(
+                new ByteArrayInputStream(text), text.length, null, null
+        );
+
+        assertEquals(HttpStatus.OK, rawResult.getStatusCode());
+        assertEquals(multipartResult.getHeaders().getETag(), rawResult.getHeaders().getETag());
+        assertEquals(readBody(multipartResult), readBody(rawResult));
+
+        // без Content-Length тело то же самое, и документ уже берется из кэша
+        assertEquals(readBody(multipartResult), readBody(rawService.parseBodyToHtml(
+                new ByteArrayInputStream(text), -1, null, null
+        )));
+        verify(fileParser, times(1)).parse(any(LineSource.class), any(OutputStream.class), any(Path.class));
+
+        byte[] largeText = new byte[(int) DataSize.ofKilobytes(1).toBytes() + 1];
+
+        Arrays.fill(largeText, (byte) 'a');
+
+        for (ResponseEntity<StreamingResponseBody> sizeResult : List.of(
+                rawService.parseBodyToHtml(new ByteArrayInputStream(largeText), largeText.length, null, null),
+                rawService.parseBodyToHtml(new ByteArrayInputStream(largeText), -1, null, null)
+        )) {
+            assertEquals(HttpStatus.BAD_REQUEST, sizeResult.getStatusCode());
+            assertTrue(readBody(sizeResult).contains(FileLoaderResponseCodes.SIZE_LIMIT_EXCEEDED_EXCEPTION.name()));
+        }
+
+        ResponseEntity<StreamingResponseBody> encodingResult = rawService.parseBodyToHtml(
+                new ByteArrayInputStream(new byte[] {'#', 'a', '\n', (byte) 0xc3, '(', '\n'}), 6, null, null
+        );
+
+        assertEquals(HttpStatus.BAD_REQUEST, encodingResult.getStatusCode());
+        assertTrue(readBody(encodingResult).contains(FileLoaderResponseCodes.INCORRECT_ENCODING.name()));
+
+        try (var files = Files.list(fixture.getSpoolDirectory())) {
+            assertTrue(files.findAny().isEmpty());
+        }
+    }
+
+    @Test
+    @DisplayName("Тестирование проверки кодировки: некорректный UTF-8 отклоняется до разбора, UTF-16 разбирается как UTF-8")
+    void testUploadEncodingIsValidatedBeforeParsing() throws IOException {
+        FilesLoaderFixture fixture = new FilesLoaderFixture(directory)
+                .fileParser(parser)
+                .responseCompression(new ResponseCompression(false, 6));
+        FilesLoaderService encodingService = fixture.filesLoaderService();
+        MockMultipartFile invalidFile = new MockMultipartFile(
+                "file",
+                "file.txt",
+                MediaType.TEXT_PLAIN_VALUE,
+                new byte[] {'#', 'a', '\n', (byte) 0xc3, '(', '\n'}
+        );
+
+        ResponseEntity<?> jsonResult = encodingService.parseFile(invalidFile);
+        FilesLoaderErrorResponse jsonBody = (FilesLoaderErrorResponse) jsonResult.getBody();
+
+        assertEquals(HttpStatus.BAD_REQUEST, jsonResult.getStatusCode());
+        assert jsonBody != null;
+        assertEquals(FileLoaderResponseCodes.INCORRECT_ENCODING.name(), jsonBody.getCode());
+
+        for (ResponseEntity<StreamingResponseBody> htmlResult : List.of(
+                encodingService.parseFileToHtml(invalidFile),
+                encodingService.parseLargeFileToHtml(invalidFile)
+        )) {
+            assertEquals(HttpStatus.BAD_REQUEST, htmlResult.getStatusCode());
+            assertTrue(readBody(htmlResult).contains(FileLoaderResponseCodes.INCORRECT_ENCODING.name()));
+        }
+
+        verify(parser, never()).parse(any(LineSource.class), any(OutputStream.class));
+
+        Answer<Void> writeLines = invocation -> {
+            LineSource source = invocation.getArgument(0);
+            OutputStream outputStream = invocation.getArgument(1);
+
+            source.forEachLine(line -> outputStream.write((line + "|").getBytes(StandardCharsets.UTF_8)));
+
+            return null;
+        };
+
+        doAnswer(writeLines).when(parser).parse(any(LineSource.class), any(OutputStream.class));
+        doAnswer(writeLines).when(parser).parse(any(LineSource.class), any(OutputStream.class), any(Path.class));
+
+        String text = "\uFEFF#Глава\nтекст \uD83D\uDE00\n";
+        MockMultipartFile utf8File = new MockMultipartFile(
+                "file", "file.txt", MediaType.TEXT_PLAIN_VALUE, text.substring(1).getBytes(StandardCharsets.UTF_8)
+        );
+        MockMultipartFile utf16File = new MockMultipartFile(
+                "file", "file.txt", MediaType.TEXT_PLAIN_VALUE, text.getBytes(StandardCharsets.UTF_16LE)
+        );
+
+        assertEquals("#Глава|текст \uD83D\uDE00|", readBody(encodingService.parseLargeFileToHtml(utf8File)));
+        assertEquals("#Глава|текст \uD83D\uDE00|", readBody(encodingService.parseLargeFileToHtml(utf16File)));
+        assertEquals("#Глава|текст \uD83D\uDE00|", readBody(encodingService.parseFileToHtml(utf16File)));
+        assertEquals(
+                encodingService.parseFileToHtml(utf8File).getHeaders().getETag(),
+                encodingService.parseFileToHtml(utf16File).getHeaders().getETag()
+        );
+
+        try (var files = Files.list(fixture.getSpoolDirectory())) {
+            assertTrue(files.findAny().isEmpty());
+        }
+    }
+
+    @Test
+    @DisplayName("Тестирование If-None-Match: файл с тем же ETag не разбирается и возвращается 304")
+    void testIfNoneMatchReturnsNotModified() throws IOException {
+        IntoHtmlFileParser fileParser = Mockito.spy(new IntoHtmlFileParser('#'));
+        FilesLoaderFixture fixture = new FilesLoaderFixture(directory).fileParser(fileParser);
+        FilesLoaderService etagService = fixture.filesLoaderService();
+        MockMultipartFile textFile = new MockMultipartFile(
+                "file",
+                "file.txt",
+                MediaType.TEXT_PLAIN_VALUE,
+                "#Chapter one\ntext".getBytes(StandardCharsets.UTF_8)
+        );
+        MockMultipartFile otherFile = new MockMultipartFile(
+                "file",
+                "file.txt",
+                MediaType.TEXT_PLAIN_VALUE,
+                "#Chapter two\ntext".getBytes(StandardCharsets.UTF_8)
+        );
+
+        String jsonTag = etagService.parseFile(textFile).getHeaders().getETag();
+        ResponseEntity<?> jsonResult = etagService.parseFile(textFile, jsonTag);
+
+        assertTrue(jsonTag != null && jsonTag.startsWith("W/\""));
+        assertEquals(HttpStatus.NOT_MODIFIED, jsonResult.getStatusCode());
+        assertEquals(jsonTag, jsonResult.getHeaders().getETag());
+        assertNull(jsonResult.getBody());
+        assertEquals(HttpStatus.OK, etagService.parseFile(otherFile, jsonTag).getStatusCode());
+
+        ResponseEntity<StreamingResponseBody> gzipResult = etagService.parseFileToHtml(textFile, "gzip", null);
+        String gzipTag = gzipResult.getHeaders().getETag();
+        ResponseEntity<StreamingResponseBody> identityResult = etagService.parseFileToHtml(textFile, null, gzipTag);
+
+        readBytes(gzipResult);
+        readBytes(identityResult);
+
+        assertNotEquals(jsonTag, gzipTag);
+        assertEquals(HttpStatus.OK, identityResult.getStatusCode());
+        assertEquals(HttpStatus.NOT_MODIFIED, etagService.parseFileToHtml(textFile, "gzip", "W/" + gzipTag).getStatusCode());
+        assertEquals(
+                HttpStatus.NOT_MODIFIED,
+                etagService.parseLargeFileToHtml(textFile, "gzip", "\"other\", " + gzipTag).getStatusCode()
+        );
+
+        verify(fileParser, times(4)).parse(any(LineSource.class), any(OutputStream.class));
+        verify(fileParser, times(0)).parse(any(LineSource.class), any(OutputStream.class), any(Path.class));
+
+        try (var files = Files.list(fixture.getSpoolDirectory())) {
+            assertTrue(files.findAny().isEmpty());
+        }
+    }
+
+    @Test
+    @DisplayName("Тестирование пакетного разбора: результаты в том же порядке, ошибка в одном файле не ломает остальные")
+    void testBatchKeepsOrderAndPerFileCodes() throws IOException {
+        FilesLoaderService batchService = new FilesLoaderFixture(directory)
+                .documentCache(DataSize.ofMegabytes(1))
+                .parserExecutor(new ParserExecutor(3, -1, Duration.ofSeconds(1)))
+                .filesLoaderService();
+        List<MultipartFile> files = List.of(
+                new MockMultipartFile("file", "a.txt", MediaType.TEXT_PLAIN_VALUE, "#Chapter one".getBytes()),
+                new MockMultipartFile("file", "b.bin", MediaType.APPLICATION_OCTET_STREAM_VALUE, new byte[] {1, 2}),
+                new MockMultipartFile("file", "c.txt", MediaType.TEXT_PLAIN_VALUE, "text".getBytes())
+        );
+
+        ResponseEntity<StreamingResponseBody> actualResult = batchService.parseFiles(files);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        assert actualResult.getBody() != null;
+        actualResult.getBody().writeTo(outputStream);
+
+        JsonNode results = new ObjectMapper().readTree(outputStream.toByteArray());
+
+        assertEquals(HttpStatus.OK, actualResult.getStatusCode());
+        assertEquals(MediaType.APPLICATION_JSON, actualResult.getHeaders().getContentType());
+        assertEquals(3, results.size());
+        assertEquals(FileLoaderResponseCodes.SUCCESS.name(), results.get(0).get("code").asText());
+        assertTrue(results.get(0).get("data").asText().contains("Chapter one"));
+        assertEquals(FileLoaderResponseCodes.INCORRECT_REQUEST_TYPE.name(), results.get(1).get("code").asText());
+        assertEquals(FileLoaderResponseCodes.SUCCESS.name(), results.get(2).get("code").asText());
+        assertTrue(results.get(2).get("data").asText().contains("<div>text</div>"));
+    }
+
+    @Test
+    @DisplayName("Тестирование отмены пакета посреди записи: память файлов, которые так и не начали разбираться, освобождается")
+    void testCancelledBatchReleasesMemory() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ParserExecutor parserExecutor = new ParserExecutor(1, -1, Duration.ofSeconds(1));
+        MemoryBudget memoryBudget = new MemoryBudget(DataSize.ofMegabytes(256), Duration.ofSeconds(1), Duration.ofSeconds(1));
+        FilesLoaderService batchService = new FilesLoaderFixture(directory)
+                .parserExecutor(parserExecutor)
+                .memoryBudget(memoryBudget)
+                .meterRegistry(registry)
+                .filesLoaderService();
+        MockMultipartFile textFile = new MockMultipartFile(
+                "file",
+                "file.txt",
+                MediaType.TEXT_PLAIN_VALUE,
+                "#Chapter\ntext".getBytes(StandardCharsets.UTF_8)
+        );
+        CountDownLatch blocker = new CountDownLatch(1);
+        ParserExecutor.Admission blockerAdmission = parserExecutor.admit();
+
+        memoryBudget.bindTo(registry);
+
+        try {
+            // единственный поток пула занят, поэтому разбор файлов пакета ждет в очереди и не начинается
+            blockerAdmission.submit(() -> {
+                blocker.await();
+                return null;
+            });
+
+            StreamingResponseBody body = batchService.parseFiles(List.of(textFile, textFile, textFile)).getBody();
+            Thread writer = new Thread(() -> {
+                try {
+                    body.writeTo(OutputStream.nullOutputStream());
+                } catch (IOException e) {
+                    // клиент отвалился, запись пакета прервана
+                }
+            });
+
+            writer.start();
+
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+
+            // вперед отправляются два файла на поток пула, и под каждый зарезервирован килобайт
+            while (registry.get("parser.memory.reserved").gauge().value() < 2 * 1024 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(2 * 1024, registry.get("parser.memory.reserved").gauge().value());
+
+            writer.interrupt();
+            writer.join(Duration.ofSeconds(10).toMillis());
+
+            assertFalse(writer.isAlive());
+            assertEquals(0, registry.get("parser.memory.reserved").gauge().value());
+        } finally {
+            blocker.countDown();
+            blockerAdmission.close();
+            parserExecutor.destroy();
+        }
+    }
+
+    @Test
+    @DisplayName("Тестирование метрик: этапы разбора, статистика документа и коды ответов")
+    void testParserMetrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        FilesLoaderService metricsService = new FilesLoaderFixture(directory)
+                .meterRegistry(registry)
+                .filesLoaderService();
+        byte[] text = "GREATEST MAN IN ALIVE\r\n#Chapter one\rthis story\n##Jack's characteristics\n"
+                .getBytes(StandardCharsets.UTF_8);
+
+        metricsService.parseFile(new MockMultipartFile("file", "file.txt", MediaType.TEXT_PLAIN_VALUE, text));
+        metricsService.parseFile(new MockMultipartFile("file", "file.bin", MediaType.APPLICATION_OCTET_STREAM_VALUE, text));
+
+        for (String stage : new String[] {"read", "decode", "render", "parse"}) {
+            assertEquals(1, registry.get("parser.stage").tag("stage", stage).timer().count());
+        }
+
+        // файл прочитан в память целиком до разбиения на строчки, и чтение не вычитается из декодирования
+        assertTrue(registry.get("parser.stage").tag("stage", "decode").timer().totalTime(TimeUnit.NANOSECONDS) > 0);
+
+        assertEquals(text.length, registry.get("parser.document.size").tag("direction", "in").summary().totalAmount());
+        assertTrue(registry.get("parser.document.size").tag("direction", "out").summary().totalAmount() > text.length);
+        assertEquals(4, registry.get("parser.document.lines").summary().totalAmount());
+        assertEquals(2, registry.get("parser.document.sections").summary().totalAmount());
+        assertEquals(2, registry.get("parser.document.depth").summary().max());
+        assertEquals(1, registry.get("parser.responses").tag("code", "SUCCESS").counter().count());
+        assertEquals(1, registry.get("parser.responses").tag("code", "INCORRECT_REQUEST_TYPE").counter().count());
+        assertEquals(0, registry.get("parser.responses").tag("code", "INTERNAL_SERVER_ERROR").counter().count());
+
+        // исход потокового ответа известен, только когда тело ответа записано
+        ResponseEntity<StreamingResponseBody> htmlResult = metricsService.parseFileToHtml(
+                new MockMultipartFile("file", "file.txt", MediaType.TEXT_PLAIN_VALUE, text)
+        );
+
+        assertEquals(1, registry.get("parser.responses").tag("code", "SUCCESS").counter().count());
+        assert htmlResult.getBody() != null;
+        assertThrows(IOException.class, () -> htmlResult.getBody().writeTo(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Connection reset");
+            }
+        }));
+        assertEquals(1, registry.get("parser.responses").tag("code", "SUCCESS").counter().count());
+        assertEquals(1, registry.get("parser.responses").tag("code", "INTERNAL_SERVER_ERROR").counter().count());
+    }
+
+    @Test
+    @DisplayName("Тестирование замера строчек пачками: парсер получает все строчки по порядку при каждом обходе")
+    void testTimedLinesAreChunked() throws IOException {
+        ParseObservation observation = new ParserMetrics(new SimpleMeterRegistry(), '#').observe(0);
+        List<String> lines = new ArrayList<>();
+
+        for (int i = 0; i < 1000; i++) {
+            lines.add(i % 300 == 0 ? "x".repeat(100 * 1024) : "#".repeat(i % 3) + "line " + i);
+        }
+
+        LineSource timedLines = observation.timeLines(LineSource.of(lines));
+
+        for (int pass = 0; pass < 2; pass++) {
+            List<String> received = new ArrayList<>();
+
+            timedLines.forEachLine(received::add);
+
+            assertEquals(lines, received);
+        }
+    }
+
+    @Test
+    @DisplayName("Тестирование того, что при перегрузке парсера возвращается 503 с Retry-After")
+    void testOverloadedParserIsRejected() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ParserExecutor parserExecutor = new ParserExecutor(1, 0, Duration.ofSeconds(2));
+        FilesLoaderService overloadedService = new FilesLoaderFixture(directory)
+                .parserExecutor(parserExecutor)
+                .meterRegistry(registry)
+                .filesLoaderService();
+        MockMultipartFile textFile = new MockMultipartFile(
+                "file",
+                "file.txt",
+                MediaType.TEXT_PLAIN_VALUE,
+                "#Chapter\ntext".getBytes(StandardCharsets.UTF_8)
+        );
+
+        try {
+            try (ParserExecutor.Admission ignored = parserExecutor.admit()) {
+                ResponseEntity<?> jsonResult = overloadedService.parseFile(textFile);
+                assertEquals(HttpStatus.SERVICE_UNAVAILABLE, jsonResult.getStatusCode());
+                assertEquals("2", jsonResult.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+                assertEquals(
+                        FileLoaderResponseCodes.SERVICE_OVERLOADED.name(),
+                        ((FilesLoaderErrorResponse) jsonResult.getBody()).getCode()
+                );
+
+                ResponseEntity<StreamingResponseBody> htmlResult = overloadedService.parseFileToHtml(textFile);
+                assertEquals(HttpStatus.SERVICE_UNAVAILABLE, htmlResult.getStatusCode());
+                assertEquals("2", htmlResult.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+                assertTrue(readBody(htmlResult).contains(FileLoaderResponseCodes.SERVICE_OVERLOADED.name()));
+            }
+
+            assertEquals(0, registry.get("parser.responses").tag("code", "SUCCESS").counter().count());
+            assertEquals(2, registry.get("parser.responses").tag("code", "SERVICE_OVERLOADED").counter().count());
+
+            ResponseEntity<StreamingResponseBody> htmlResult = overloadedService.parseFileToHtml(textFile);
+            assertEquals(HttpStatus.OK, htmlResult.getStatusCode());
+            assertTrue(readBody(htmlResult).contains("Chapter"));
+            assertEquals(1, registry.get("parser.responses").tag("code", "SUCCESS").counter().count());
+        } finally {
+            parserExecutor.destroy();
+        }
+    }
+
+    @Test
+    @DisplayName("Тестирование того, что допуск в пул, память и временные файлы освобождаются, даже если тело ответа так и не запустилось")
+    void testAbandonedResponseReleasesResources() throws Exception {
+        ParserExecutor parserExecutor = new ParserExecutor(1, 0, Duration.ofSeconds(1));
+        MemoryBudget memoryBudget = new MemoryBudget(DataSize.ofMegabytes(256), Duration.ofMillis(10), Duration.ofSeconds(1));
+        FilesLoaderFixture fixture = new FilesLoaderFixture(directory)
+                .parserExecutor(parserExecutor)
+                .memoryBudget(memoryBudget)
+                .renderers(new HtmlDocumentRenderer(new IntoHtmlFileParser('#')));
+        FilesLoaderService abandonedService = fixture.filesLoaderService();
+        RenderService renderService = fixture.renderService();
+        byte[] text = "#Chapter\ntext".getBytes(StandardCharsets.UTF_8);
+        MockMultipartFile textFile = new MockMultipartFile("file", "file.txt", MediaType.TEXT_PLAIN_VALUE, text);
+        List<Supplier<ResponseEntity<StreamingResponseBody>>> calls = List.of(
+                () -> abandonedService.parseFileToHtml(textFile),
+                () -> renderService.renderFile(textFile, "html", null, null, null),
+                () -> abandonedService.parseLargeFileToHtml(textFile),
+                () -> abandonedService.parseBodyToHtml(new ByteArrayInputStream(text), text.length, null, null),
+                () -> abandonedService.parseFiles(List.of(textFile))
+        );
+
+        try {
+            for (Supplier<ResponseEntity<StreamingResponseBody>> call : calls) {
+                MockHttpServletRequest request = startAbandonedResponse(call);
+
+                assertThrows(ParserOverloadedException.class, parserExecutor::admit);
+
+                // клиент отвалился или истек таймаут: асинхронный запрос завершается без тела ответа
+                request.getAsyncContext().complete();
+                parserExecutor.admit().close();
+                memoryBudget.reserve(memoryBudget.getBudget()).close();
+            }
+
+            try (var files = Files.list(fixture.getSpoolDirectory())) {
+                assertTrue(files.findAny().isEmpty());
+            }
+        } finally {
+            parserExecutor.destroy();
+        }
+    }
+
+    @Test
+    @DisplayName("Тестирование того, что без свободного бюджета памяти файл не читается и возвращается 503")
+    void testMemoryBudgetIsReservedBeforeReading() throws Exception {
+        MemoryBudget memoryBudget = new MemoryBudget(DataSize.ofKilobytes(64), Duration.ofMillis(10), Duration.ofSeconds(1));
+        FilesLoaderService budgetService = new FilesLoaderFixture(directory)
+                .fileParser(parser)
+                .memoryBudget(memoryBudget)
+                .filesLoaderService();
+        MockMultipartFile textFile = new MockMultipartFile(
+                "file",
+                "file.txt",
+                MediaType.TEXT_PLAIN_VALUE,
+                "#Chapter\ntext".getBytes(StandardCharsets.UTF_8)
+        );
+
+        stubParser("html");
+
+        try (MemoryBudget.Reservation ignored = memoryBudget.reserve(memoryBudget.getBudget())) {
+            ResponseEntity<?> jsonResult = budgetService.parseFile(textFile);
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, jsonResult.getStatusCode());
+            assertEquals("1", jsonResult.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+
+            ResponseEntity<StreamingResponseBody> htmlResult = budgetService.parseFileToHtml(textFile);
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, htmlResult.getStatusCode());
+            assertTrue(readBody(htmlResult).contains(FileLoaderResponseCodes.SERVICE_OVERLOADED.name()));
+
+            String batch = readBody(budgetService.parseFiles(List.of(textFile, textFile)));
+            assertEquals(2, new ObjectMapper().readTree(batch).findValuesAsText("code").stream()
+                    .filter(FileLoaderResponseCodes.SERVICE_OVERLOADED.name()::equals)
+                    .count());
+        }
+
+        ResponseEntity<StreamingResponseBody> htmlResult = budgetService.parseFileToHtml(textFile);
+        assertEquals(HttpStatus.OK, htmlResult.getStatusCode());
+        assertThrows(ParserOverloadedException.class, () -> memoryBudget.reserve(memoryBudget.getBudget()).close());
+        assertEquals("html", readBody(htmlResult));
+        memoryBudget.reserve(memoryBudget.getBudget()).close();
+    }
+
+    @Test
+    @DisplayName("Тестирование дерева разделов файла в JSON")
+    void testParseSections() throws IOException {
+        FilesLoaderService sectionsService = new FilesLoaderFixture(directory).filesLoaderService();
+        MockMultipartFile textFile = new MockMultipartFile(
+                "file",
+                "file.txt",
+                MediaType.TEXT_PLAIN_VALUE,
+                "GREATEST MAN IN ALIVE\r\n#Chapter one\rthis story\n##Jack's characteristics\n".getBytes(StandardCharsets.UTF_8)
+        );
+
+        ResponseEntity<?> actualResult = sectionsService.parseSections(textFile);
+        JsonNode body = new ObjectMapper().valueToTree(actualResult.getBody());
+        JsonNode chapterOne = body.get("sections").get(0);
+
+        assertEquals(HttpStatus.OK, actualResult.getStatusCode());
+        assertEquals(FileLoaderResponseCodes.SUCCESS.name(), body.get("code").asText());
+        assertEquals(1, body.get("sections").size());
+        assertEquals("Chapter one", chapterOne.get("title").asText());
+        assertEquals(String.format("%d_%d", 1, Math.abs("#Chapter one".hashCode())), chapterOne.get("id").asText());
+        assertEquals(1, chapterOne.get("firstLine").asInt());
+        assertEquals(3, chapterOne.get("lastLine").asInt());
+        assertEquals("Jack's characteristics", chapterOne.get("children").get(0).get("title").asText());
+        assertEquals(2, chapterOne.get("children").get(0).get("depth").asInt());
+
+        ResponseEntity<?> wrongTypeResult = sectionsService.parseSections(new MockMultipartFile(
+                "file", "file.bin", MediaType.APPLICATION_OCTET_STREAM_VALUE, new byte[] {1}
+        ));
+
+        assertEquals(HttpStatus.BAD_REQUEST, wrongTypeResult.getStatusCode());
+    }
+
+    @Test
+    @DisplayName("Тестирование дерева разделов с вложенностью в несколько тысяч уровней: JSON пишется без переполнения стека")
+    void testDeepSectionTreeIsSerialized() throws IOException {
+        int depth = 3000;
+        StringBuilder text = new StringBuilder();
+
+        for (int i = 1; i <= depth; i++) {
+            text.append("#".repeat(i)).append("section ").append(i).append('\n');
+        }
+
+        ResponseEntity<?> actualResult = new FilesLoaderFixture(directory).filesLoaderService().parseSections(
+                new MockMultipartFile("file", "file.txt", MediaType.TEXT_PLAIN_VALUE, text.toString().getBytes(StandardCharsets.UTF_8))
+        );
+        String json = new ObjectMapper().writeValueAsString(actualResult.getBody());
+        JsonFactory factory = JsonFactory.builder()
+                .streamReadConstraints(StreamReadConstraints.builder().maxNestingDepth(Integer.MAX_VALUE).build())
+                .build();
+        int sections = 0;
+        String deepestTitle = null;
+
+        try (JsonParser parser = factory.createParser(json)) {
+            while (parser.nextToken() != null) {
+                if (parser.currentToken() == JsonToken.FIELD_NAME && "title".equals(parser.currentName())) {
+                    sections++;
+                    deepestTitle = parser.nextTextValue();
+                }
+            }
+        }
+
+        assertEquals(HttpStatus.OK, actualResult.getStatusCode());
+        assertEquals(depth, sections);
+        assertEquals("section " + depth, deepestTitle);
+        assertTrue(json.endsWith("[]" + "}]".repeat(depth) + "}"));
+    }
+
+    /**
+     * Вызывает сервис в потоке запроса и начинает асинхронную обработку ответа так же, как Spring MVC
+     * для <code>StreamingResponseBody</code>, но задача с телом ответа так и не получает поток
+     * @param call вызов сервиса
+     * @return запрос, асинхронную обработку которого осталось завершить
+     */
+    private static MockHttpServletRequest startAbandonedResponse(
+            Supplier<ResponseEntity<StreamingResponseBody>> call
+    ) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ResponseEntity<StreamingResponseBody> result;
+
+        request.setAsyncSupported(true);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+
+        try {
+            result = call.get();
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+
+        WebAsyncManager asyncManager = WebAsyncUtils.getAsyncManager(request);
+
+        asyncManager.setAsyncWebRequest(new StandardServletAsyncWebRequest(request, response));
+        asyncManager.setTaskExecutor(new TaskExecutorAdapter(task -> {}));
+        asyncManager.startCallableProcessing(() -> {
+            result.getBody().writeTo(OutputStream.nullOutputStream());
+            return null;
+        });
+
+        return request;
+    }
+
+    private static String decode(InputStream inputStream) throws IOException {
+        return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+    }
 }
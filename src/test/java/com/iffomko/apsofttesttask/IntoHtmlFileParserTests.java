@@ -1,17 +1,31 @@
 package com.iffomko.apsofttesttask;
 
+import com.iffomko.apsofttesttask.services.lines.LineSource;
+import com.iffomko.apsofttesttask.services.lines.LineSplitter;
 import com.iffomko.apsofttesttask.services.parser.FileParserEnum;
 import com.iffomko.apsofttesttask.services.parser.IFileParser;
 import com.iffomko.apsofttesttask.services.parser.IntoHtmlFileParser;
+import com.iffomko.apsofttesttask.services.parser.ParallelIntoHtmlFileParser;
+import com.iffomko.apsofttesttask.services.parser.SectionNode;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 public class IntoHtmlFileParserTests {
-    private final IFileParser fileParser;
+    private final IntoHtmlFileParser fileParser;
 
     public IntoHtmlFileParserTests() {
         this.fileParser = new IntoHtmlFileParser('#');
@@ -189,4 +203,229 @@ public class IntoHtmlFileParserTests {
             assertEquals(FileParserEnum.ILLEGAL_STATE_EXCEPTION.getMessage(), ex.getMessage());
         }
     }
+
+    /**
+     * Создает документ, в котором каждая вторая строчка - раздел случайной вложенности
+     * @param headingsCount количество разделов
+     * @return строчки документа
+     */
+    private static List<String> sectionHeavyDocument(int headingsCount) {
+        Random random = new Random(headingsCount);
+        List<String> lines = new ArrayList<>(headingsCount * 2);
+
+        for (int i = 0; i < headingsCount; i++) {
+            lines.add("#".repeat(1 + random.nextInt(4)) + "Section " + i);
+            lines.add("text of the section " + i);
+        }
+
+        return lines;
+    }
+
+    @Test
+    @DisplayName("Сравнение вывода с прежней реализацией парсера на случайных документах")
+    void testSameOutputAsLegacyParser() {
+        IFileParser legacyParser = new LegacyIntoHtmlFileParser('#');
+        String[] samples = {
+                "", "#", "###", "<div>raw", "<div></div>", "plain text", "# spaced", "a#b", "%s %d", "Глава 😀"
+        };
+        Random random = new Random(13);
+
+        for (int i = 0; i < 500; i++) {
+            List<String> lines = new ArrayList<>();
+            int linesCount = random.nextInt(12);
+
+            for (int j = 0; j < linesCount; j++) {
+                String line = samples[random.nextInt(samples.length)];
+                lines.add(random.nextBoolean() ? line : "#".repeat(random.nextInt(4)) + line + j);
+            }
+
+            assertEquals(legacyParser.parse(new ArrayList<>(lines)), fileParser.parse(lines));
+        }
+    }
+
+    @Test
+    @DisplayName("Сравнение потокового парсинга с парсингом списка строчек")
+    void testStreamingOutputSameAsListOutput() throws IOException {
+        String[] samples = {"", "#", "<div></div>", "text", "## Заголовок", "<div>raw"};
+        Random random = new Random(17);
+
+        for (int i = 0; i < 500; i++) {
+            List<String> lines = new ArrayList<>();
+            int linesCount = random.nextInt(6);
+
+            for (int j = 0; j < linesCount; j++) {
+                lines.add(samples[random.nextInt(samples.length)]);
+            }
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            fileParser.parse(LineSource.of(lines), outputStream);
+
+            assertEquals(fileParser.parse(lines), outputStream.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    @DisplayName("Сравнение парсинга с содержанием во временном файле с обычным потоковым парсингом")
+    void testSpooledContentsOutputSameAsStreamingOutput(@TempDir Path spoolDirectory) throws IOException {
+        String[] samples = {"", "#", "<div></div>", "text", "## Заголовок", "<div>raw"};
+        Path spoolFile = spoolDirectory.resolve("contents.tmp");
+        Random random = new Random(19);
+
+        for (int i = 0; i < 500; i++) {
+            List<String> lines = new ArrayList<>();
+            int linesCount = random.nextInt(6);
+
+            for (int j = 0; j < linesCount; j++) {
+                lines.add(samples[random.nextInt(samples.length)]);
+            }
+
+            ByteArrayOutputStream expectedStream = new ByteArrayOutputStream();
+            ByteArrayOutputStream actualStream = new ByteArrayOutputStream();
+            fileParser.parse(LineSource.of(lines), expectedStream);
+            fileParser.parse(LineSource.of(lines), actualStream, spoolFile);
+
+            assertArrayEquals(expectedStream.toByteArray(), actualStream.toByteArray());
+        }
+    }
+
+    @Test
+    @DisplayName("Сравнение отрисовки из IndexedDocument с отрисовкой строчек на случайных документах")
+    void testIndexedDocumentOutputSameAsLinesOutput() throws IOException {
+        String[] separators = {"\r", "\n", "\r\n"};
+        Random random = new Random(29);
+
+        for (char tag : new char[] {'#', '§'}) {
+            IntoHtmlFileParser tagParser = new IntoHtmlFileParser(tag);
+            String[] samples = {"", "<div></div>", "text", "<div>raw", "Глава 😀", tag + "", tag + "" + tag + " Заголовок 😀"};
+
+            for (int i = 0; i < 500; i++) {
+                StringBuilder text = new StringBuilder();
+                int linesCount = random.nextInt(8);
+
+                for (int j = 0; j < linesCount; j++) {
+                    text.append(samples[random.nextInt(samples.length)]);
+
+                    if (j + 1 < linesCount || random.nextBoolean()) {
+                        text.append(separators[random.nextInt(separators.length)]);
+                    }
+                }
+
+                byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+                ByteArrayOutputStream expectedStream = new ByteArrayOutputStream();
+                ByteArrayOutputStream actualStream = new ByteArrayOutputStream();
+                tagParser.parse(
+                        consumer -> LineSplitter.split(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8, consumer),
+                        expectedStream
+                );
+                tagParser.parse(tagParser.index(bytes), actualStream);
+
+                assertEquals(expectedStream.toString(StandardCharsets.UTF_8), actualStream.toString(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Сравнение параллельного парсинга с последовательным на случайных документах с CR, LF и CRLF")
+    void testParallelOutputSameAsSequentialOutput() throws IOException {
+        String[] samples = {"", "#", "<div></div>", "text", "## Заголовок", "<div>raw", "Глава 😀"};
+        String[] separators = {"\r", "\n", "\r\n"};
+        Random random = new Random(23);
+
+        for (int minChunkSize : new int[] {1, 16}) {
+            ParallelIntoHtmlFileParser parallelParser = new ParallelIntoHtmlFileParser(
+                    new IntoHtmlFileParser('#'),
+                    true,
+                    4,
+                    DataSize.ofBytes(minChunkSize)
+            );
+
+            try {
+                for (int i = 0; i < 500; i++) {
+                    StringBuilder text = new StringBuilder();
+                    int linesCount = random.nextInt(30);
+
+                    for (int j = 0; j < linesCount; j++) {
+                        text.append(samples[random.nextInt(samples.length)]);
+                        text.append(separators[random.nextInt(separators.length)]);
+                    }
+
+                    byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+                    ByteArrayOutputStream expectedStream = new ByteArrayOutputStream();
+                    ByteArrayOutputStream actualStream = new ByteArrayOutputStream();
+                    fileParser.parse(
+                            consumer -> LineSplitter.split(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8, consumer),
+                            expectedStream
+                    );
+                    parallelParser.parse(bytes, StandardCharsets.UTF_8, actualStream);
+
+                    assertArrayEquals(expectedStream.toByteArray(), actualStream.toByteArray());
+                }
+            } finally {
+                parallelParser.destroy();
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Тестирование дерева разделов: вложенность, диапазоны строчек и идентификаторы как в HTML")
+    void testSectionTree() throws IOException {
+        List<String> lines = List.of(
+                "preface",
+                "#Chapter one",
+                "text",
+                "###Deep section",
+                "##Section",
+                "#Chapter two",
+                "##Last section",
+                "tail"
+        );
+
+        List<SectionNode> tree = fileParser.getSectionTree(LineSource.of(lines));
+        String html = fileParser.parse(lines);
+
+        assertEquals(2, tree.size());
+
+        SectionNode chapterOne = tree.get(0);
+        assertEquals("Chapter one", chapterOne.getTitle());
+        assertEquals(1, chapterOne.getDepth());
+        assertEquals(1, chapterOne.getFirstLine());
+        assertEquals(4, chapterOne.getLastLine());
+        assertEquals(2, chapterOne.getChildren().size());
+        assertEquals(3, chapterOne.getChildren().get(0).getDepth());
+        assertEquals(3, chapterOne.getChildren().get(0).getLastLine());
+        assertEquals("Section", chapterOne.getChildren().get(1).getTitle());
+        assertEquals(4, chapterOne.getChildren().get(1).getLastLine());
+
+        SectionNode chapterTwo = tree.get(1);
+        assertEquals(5, chapterTwo.getFirstLine());
+        assertEquals(7, chapterTwo.getLastLine());
+        assertEquals(7, chapterTwo.getChildren().get(0).getLastLine());
+        assertTrue(html.contains("href=\"#" + chapterTwo.getChildren().get(0).getId() + "\""));
+
+        assertTrue(fileParser.getSectionTree(LineSource.of(List.of("text", "more text"))).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Тестирование кодирования в UTF-8 непарных суррогатов так же, как в String.getBytes")
+    void testUnpairedSurrogatesEncoding() throws IOException {
+        IFileParser legacyParser = new LegacyIntoHtmlFileParser('#');
+        List<String> lines = List.of("#\uD83D title", "text \uDE00", "😀 \uD83D\uDE00");
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        fileParser.parse(LineSource.of(lines), outputStream);
+
+        assertArrayEquals(
+                legacyParser.parse(new ArrayList<>(lines)).getBytes(StandardCharsets.UTF_8),
+                outputStream.toByteArray()
+        );
+    }
+
+    @Test
+    @DisplayName("Тестирование документа со 100 000 разделов: в содержании есть ссылка на каждый раздел")
+    void testSectionHeavyDocument() {
+        String result = fileParser.parse(sectionHeavyDocument(100_000));
+        int sectionLinks = result.split("class=\"section_link\"", -1).length - 1;
+
+        assertEquals(100_000, sectionLinks);
+    }
 }
@@ -0,0 +1,158 @@
+package com.iffomko.apsofttesttask;
+
+import com.iffomko.apsofttesttask.services.lines.LineChunks;
+import com.iffomko.apsofttesttask.services.lines.LineSplitter;
+import com.iffomko.apsofttesttask.services.lines.MappedFileLineSource;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LineSplitterTests {
+    /**
+     * Прежняя реализация разбиения на строчки, с которой сравнивается <code>LineSplitter</code>
+     */
+    private static List<String> legacySplit(byte[] bytes) {
+        return new ArrayList<>(Arrays.asList(new String(bytes, StandardCharsets.UTF_8).split("\r|\n|\r\n")));
+    }
+
+    private static List<String> split(byte[] bytes) throws IOException {
+        List<String> lines = new ArrayList<>();
+        LineSplitter.split(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8, lines::add);
+        return lines;
+    }
+
+    /**
+     * Поток, который отдает данные по одному байту, чтобы переводы строк попадали на границы порций
+     */
+    private static InputStream byteByByte(byte[] bytes) {
+        return new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+    }
+
+    private static String randomText(Random random, int linesCount, String separator) {
+        StringBuilder text = new StringBuilder();
+
+        for (int i = 0; i < linesCount; i++) {
+            int length = random.nextInt(5) == 0 ? 0 : random.nextInt(80);
+
+            for (int j = 0; j < length; j++) {
+                text.append(random.nextInt(10) == 0 ? 'ж' : (char) ('a' + random.nextInt(26)));
+            }
+
+            text.append(separator);
+        }
+
+        return text.toString();
+    }
+
+    @Test
+    @DisplayName("Тестирование разных переводов строк")
+    void testLineSeparators() throws IOException {
+        assertEquals(List.of("a", "b", "c", "d"), split("a\nb\rc\r\nd".getBytes()));
+        assertEquals(List.of("a", "", "b"), split("a\r\rb".getBytes()));
+        assertEquals(List.of("a", "", "b"), split("a\n\r\nb".getBytes()));
+        assertEquals(List.of("", "a"), split("\r\na\r\n\r\n".getBytes()));
+    }
+
+    @Test
+    @DisplayName("Тестирование пустого текста и текста только из переводов строк")
+    void testEmptyText() throws IOException {
+        assertEquals(List.of(""), split(new byte[0]));
+        assertEquals(List.of(), split("\n\r\n".getBytes()));
+    }
+
+    @Test
+    @DisplayName("Тестирование CRLF и многобайтовых символов на границах порций")
+    void testChunkBoundaries() throws IOException {
+        byte[] bytes = "первая\r\nвторая\r\rтретья\n".getBytes(StandardCharsets.UTF_8);
+        List<String> lines = new ArrayList<>();
+
+        LineSplitter.split(byteByByte(bytes), StandardCharsets.UTF_8, lines::add);
+
+        assertEquals(List.of("первая", "вторая", "", "третья"), lines);
+    }
+
+    @Test
+    @DisplayName("Сравнение с прежним разбиением для текстов с переводами строк CR или LF")
+    void testSameLinesAsLegacySplit() throws IOException {
+        Random random = new Random(42);
+
+        for (int i = 0; i < 200; i++) {
+            String separator = random.nextBoolean() ? "\n" : "\r";
+            byte[] bytes = randomText(random, random.nextInt(50), separator).getBytes(StandardCharsets.UTF_8);
+
+            assertEquals(legacySplit(bytes), split(bytes));
+        }
+    }
+
+    @Test
+    @DisplayName("Тестирование чтения файла через FileChannel.map окнами, границы которых режут строчки")
+    void testMappedFileLineSource(@TempDir Path directory) throws IOException {
+        Random random = new Random(11);
+        Path file = directory.resolve("text.txt");
+        byte[] bytes = (randomText(random, 300, "\r\n") + "последняя").getBytes(StandardCharsets.UTF_8);
+
+        Files.write(file, bytes);
+
+        for (int windowSize : new int[] {1, 7, 4096, MappedFileLineSource.DEFAULT_WINDOW_SIZE}) {
+            List<String> lines = new ArrayList<>();
+            new MappedFileLineSource(file, StandardCharsets.UTF_8, windowSize).forEachLine(lines::add);
+
+            assertEquals(split(bytes), lines);
+        }
+
+        Path emptyFile = Files.createFile(directory.resolve("empty.txt"));
+        List<String> emptyLines = new ArrayList<>();
+        new MappedFileLineSource(emptyFile, StandardCharsets.UTF_8).forEachLine(emptyLines::add);
+
+        assertEquals(List.of(""), emptyLines);
+    }
+
+    @Test
+    @DisplayName("Тестирование деления текста на части по границам строчек")
+    void testLineChunks() throws IOException {
+        Random random = new Random(13);
+        String[] separators = {"\r", "\n", "\r\n"};
+
+        for (int i = 0; i < 200; i++) {
+            StringBuilder text = new StringBuilder();
+
+            for (int j = random.nextInt(20); j > 0; j--) {
+                text.append(randomText(random, 1, separators[random.nextInt(separators.length)]));
+            }
+
+            byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+            int end = LineChunks.trimTrailingLineBreaks(bytes, bytes.length);
+            int[] bounds = LineChunks.split(bytes, end, 1 + random.nextInt(8));
+            List<String> lines = new ArrayList<>();
+            int linesCount = 0;
+
+            for (int j = 0; j + 1 < bounds.length; j++) {
+                LineChunks.forEachLine(bytes, bounds[j], bounds[j + 1], StandardCharsets.UTF_8, lines::add);
+                linesCount += LineChunks.countLines(bytes, bounds[j], bounds[j + 1]);
+            }
+
+            List<String> expected = end == 0 ? List.of() : split(bytes);
+
+            assertEquals(expected, lines);
+            assertEquals(expected.size(), linesCount);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.iffomko.apsofttesttask;
+
+import com.iffomko.apsofttesttask.services.concurrency.MemoryBudget;
+import com.iffomko.apsofttesttask.services.concurrency.ParserOverloadedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MemoryBudgetTests {
+    @Test
+    @DisplayName("Тестирование бюджета памяти: ожидание освобождения, отказ по таймауту и резервирование больше бюджета")
+    void testMemoryBudget() throws Exception {
+        MemoryBudget memoryBudget = new MemoryBudget(DataSize.ofKilobytes(100), Duration.ofMillis(50), Duration.ofSeconds(1));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        memoryBudget.bindTo(registry);
+
+        MemoryBudget.Reservation first = memoryBudget.reserve(60 * 1024);
+        assertEquals(60 * 1024, registry.get("parser.memory.reserved").gauge().value());
+        assertThrows(ParserOverloadedException.class, () -> memoryBudget.reserve(60 * 1024));
+        assertEquals(1, registry.get("parser.memory.rejected").functionCounter().count());
+
+        try (ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor()) {
+            MemoryBudget waiting = new MemoryBudget(DataSize.ofKilobytes(100), Duration.ofSeconds(10), Duration.ofSeconds(1));
+            MemoryBudget.Reservation held = waiting.reserve(60 * 1024);
+            CompletableFuture<MemoryBudget.Reservation> next = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return waiting.reserve(60 * 1024);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }, requests);
+
+            Thread.sleep(20);
+            assertFalse(next.isDone());
+            held.close();
+            next.join().close();
+        }
+
+        first.close();
+        first.close();
+        assertEquals(0, registry.get("parser.memory.reserved").gauge().value());
+
+        try (MemoryBudget.Reservation whole = memoryBudget.reserve(DataSize.ofMegabytes(1).toBytes())) {
+            assertEquals(memoryBudget.getBudget(), whole.getBytes());
+        }
+    }
+}
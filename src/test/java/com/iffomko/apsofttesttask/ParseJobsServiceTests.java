@@ -0,0 +1,123 @@
+package com.iffomko.apsofttesttask;
+
+import com.iffomko.apsofttesttask.services.FilesLoaderService;
+import com.iffomko.apsofttesttask.services.ParseJobsService;
+import com.iffomko.apsofttesttask.services.jobs.ParseJob;
+import com.iffomko.apsofttesttask.services.jobs.ParseJobs;
+import com.iffomko.apsofttesttask.services.responses.FilesLoaderJobResponse;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.iffomko.apsofttesttask.FilesLoaderFixture.readBody;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParseJobsServiceTests {
+    @Test
+    @DisplayName("Тестирование фоновых задач: очередь, ожидание завершения, результат, ошибка и удаление по истечении срока")
+    void testParseJobs(@TempDir Path directory) throws Exception {
+        AtomicLong clock = new AtomicLong();
+        FilesLoaderFixture fixture = new FilesLoaderFixture(directory);
+        ParseJobs parseJobs = new ParseJobs(
+                fixture.getJobsDirectory(),
+                1,
+                1,
+                Duration.ofHours(1),
+                Duration.ofSeconds(20),
+                Duration.ofSeconds(1),
+                clock::get
+        );
+        ParseJobsService jobService = fixture.parseJobs(parseJobs).parseJobsService();
+        FilesLoaderService filesLoaderService = fixture.filesLoaderService();
+        MockMultipartFile textFile = new MockMultipartFile(
+                "file",
+                "file.txt",
+                MediaType.TEXT_PLAIN_VALUE,
+                "GREATEST MAN IN ALIVE\r\n#Chapter one\rthis story\n##Jack's characteristics\n".getBytes(StandardCharsets.UTF_8)
+        );
+        MockMultipartFile incorrectFile = new MockMultipartFile(
+                "file",
+                "file.txt",
+                MediaType.TEXT_PLAIN_VALUE,
+                new byte[] {'#', (byte) 0xc3, '('}
+        );
+
+        try {
+            parseJobs.afterPropertiesSet();
+
+            // единственный поток занят, поэтому задача ждет в очереди, а следующей задаче места уже нет
+            CountDownLatch blocker = new CountDownLatch(1);
+            parseJobs.submit(result -> blocker.await());
+
+            ResponseEntity<?> submitted = jobService.submitJob(textFile);
+            FilesLoaderJobResponse job = (FilesLoaderJobResponse) submitted.getBody();
+
+            assertEquals(HttpStatus.ACCEPTED, submitted.getStatusCode());
+            assert job != null;
+            assertEquals("jobs/" + job.getJobId(), String.valueOf(submitted.getHeaders().getLocation()));
+            assertEquals(ParseJob.Status.PENDING.name(), job.getStatus());
+            assertEquals(HttpStatus.CONFLICT, jobService.getJobResult(job.getJobId(), null).getStatusCode());
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, jobService.submitJob(textFile).getStatusCode());
+
+            // wait больше parser.jobs.maxWait ограничивается им, даже если в миллисекундах не помещается в long
+            CompletableFuture<ResponseEntity<?>> status = jobService.getJob(job.getJobId(), Duration.ofSeconds(Long.MAX_VALUE));
+
+            assertFalse(status.isDone());
+            blocker.countDown();
+            assertEquals(
+                    ParseJob.Status.DONE.name(),
+                    ((FilesLoaderJobResponse) status.get(10, TimeUnit.SECONDS).getBody()).getStatus()
+            );
+            assertEquals(
+                    readBody(filesLoaderService.parseFileToHtml(textFile)),
+                    readBody(jobService.getJobResult(job.getJobId(), null))
+            );
+
+            ResponseEntity<?> failedSubmit = jobService.submitJob(incorrectFile);
+            String failedId = ((FilesLoaderJobResponse) failedSubmit.getBody()).getJobId();
+
+            assertEquals(
+                    ParseJob.Status.FAILED.name(),
+                    ((FilesLoaderJobResponse) jobService.getJob(failedId, Duration.ofSeconds(10))
+                            .get(10, TimeUnit.SECONDS)
+                            .getBody()).getStatus()
+            );
+            assertEquals(HttpStatus.BAD_REQUEST, jobService.getJobResult(failedId, null).getStatusCode());
+
+            try (var files = Files.list(fixture.getSpoolDirectory())) {
+                assertTrue(files.findAny().isEmpty());
+            }
+
+            clock.addAndGet(Duration.ofHours(1).toNanos());
+            parseJobs.removeExpired();
+
+            assertEquals(HttpStatus.NOT_FOUND, jobService.getJobResult(job.getJobId(), null).getStatusCode());
+            assertEquals(
+                    HttpStatus.NOT_FOUND,
+                    jobService.getJob(UUID.randomUUID().toString(), null).get().getStatusCode()
+            );
+
+            try (var files = Files.list(fixture.getJobsDirectory())) {
+                assertTrue(files.findAny().isEmpty());
+            }
+        } finally {
+            parseJobs.destroy();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.iffomko.apsofttesttask;
+
+import com.iffomko.apsofttesttask.services.cache.HashedUpload;
+import com.iffomko.apsofttesttask.services.cache.ParsedDocumentCache;
+import com.iffomko.apsofttesttask.services.compression.CompressedDocument;
+import com.iffomko.apsofttesttask.services.compression.ResponseCompression;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParsedDocumentCacheTests {
+    private static final ResponseCompression compression = new ResponseCompression(true, 6);
+
+    private static CompressedDocument compress(byte[] document) {
+        return compression.compress(document);
+    }
+
+    /**
+     * Случайные байты почти не сжимаются, поэтому сжатый документ занимает столько же, сколько и исходный
+     */
+    private static CompressedDocument incompressible(Random random, int size) {
+        byte[] document = new byte[size];
+
+        random.nextBytes(document);
+
+        return compress(document);
+    }
+
+    private static String getKey(ParsedDocumentCache cache, String text) throws IOException {
+        return cache.getKey(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    @DisplayName("Тестирование того, что ключ зависит от содержимого файла и признака раздела")
+    void testKeyDependsOnContentAndSectionTag() throws IOException {
+        ParsedDocumentCache hashCache = new ParsedDocumentCache('#', DataSize.ofMegabytes(1));
+        ParsedDocumentCache starCache = new ParsedDocumentCache('*', DataSize.ofMegabytes(1));
+
+        assertEquals(getKey(hashCache, "#title\ntext"), getKey(hashCache, "#title\ntext"));
+        assertNotEquals(getKey(hashCache, "#title\ntext"), getKey(hashCache, "#title\ntext2"));
+        assertNotEquals(getKey(hashCache, "#title\ntext"), getKey(starCache, "#title\ntext"));
+    }
+
+    @Test
+    @DisplayName("Тестирование того, что файл читается в память за один проход с тем же ключом")
+    void testReadComputesKeyWhileReading() throws IOException {
+        ParsedDocumentCache cache = new ParsedDocumentCache('#', DataSize.ofMegabytes(1));
+        byte[] content = new byte[200_000];
+
+        new Random(42).nextBytes(content);
+
+        // размер известен точно, меньше настоящего и больше настоящего
+        for (long size : new long[] {content.length, 10, 300_000, 0}) {
+            HashedUpload upload = cache.read(new ByteArrayInputStream(content), size);
+
+            assertArrayEquals(content, upload.content());
+            assertEquals(cache.getKey(new ByteArrayInputStream(content)), upload.key());
+        }
+
+        assertEquals(0, cache.read(new ByteArrayInputStream(new byte[0]), 0).content().length);
+    }
+
+    @Test
+    @DisplayName("Тестирование счетчиков попаданий и промахов")
+    void testHitAndMissCounters() throws IOException {
+        ParsedDocumentCache cache = new ParsedDocumentCache('#', DataSize.ofMegabytes(1));
+        String key = getKey(cache, "text");
+
+        assertNull(cache.get(key));
+
+        cache.put(key, compress("<div>text</div>".getBytes(StandardCharsets.UTF_8)));
+
+        assertArrayEquals("<div>text</div>".getBytes(StandardCharsets.UTF_8), cache.get(key).toByteArray());
+        assertEquals(1, cache.getStats().hitCount());
+        assertEquals(1, cache.getStats().missCount());
+    }
+
+    @Test
+    @DisplayName("Тестирование того, что несжатый и сжатый документ с одним ключом хранятся отдельно")
+    void testTextDocumentIsStoredSeparately() throws IOException {
+        ParsedDocumentCache cache = new ParsedDocumentCache('#', DataSize.ofMegabytes(1));
+        String key = getKey(cache, "text");
+
+        cache.putText(key, "{\"data\":1}".getBytes(StandardCharsets.UTF_8));
+
+        assertNull(cache.get(key));
+        assertArrayEquals("{\"data\":1}".getBytes(StandardCharsets.UTF_8), cache.getText(key));
+
+        cache.put(key, compress("<div>text</div>".getBytes(StandardCharsets.UTF_8)));
+
+        assertArrayEquals("<div>text</div>".getBytes(StandardCharsets.UTF_8), cache.get(key).toByteArray());
+        assertArrayEquals("{\"data\":1}".getBytes(StandardCharsets.UTF_8), cache.getText(key));
+    }
+
+    @Test
+    @DisplayName("Тестирование ограничения суммарного размера документов")
+    void testMemoryCap() throws IOException {
+        ParsedDocumentCache cache = new ParsedDocumentCache('#', DataSize.ofKilobytes(64));
+        Random random = new Random(42);
+
+        for (int i = 0; i < 64; i++) {
+            cache.put(getKey(cache, "document " + i), incompressible(random, 4096));
+        }
+
+        cache.put(getKey(cache, "too large"), incompressible(random, 128 * 1024));
+
+        assertNull(cache.get(getKey(cache, "too large")));
+        assertTrue(cache.getSize() * 4096 <= 64 * 1024);
+    }
+
+    @Test
+    @DisplayName("Тестирование выключенного кэша")
+    void testDisabledCache() throws IOException {
+        ParsedDocumentCache cache = new ParsedDocumentCache('#', DataSize.ofBytes(0));
+        String key = getKey(cache, "text");
+
+        cache.put(key, compress(new byte[1]));
+        cache.putText(key, new byte[1]);
+
+        assertFalse(cache.isEnabled());
+        assertNull(cache.get(key));
+        assertNull(cache.getText(key));
+    }
+}
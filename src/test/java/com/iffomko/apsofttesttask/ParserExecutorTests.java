@@ -0,0 +1,100 @@
+package com.iffomko.apsofttesttask;
+
+import com.iffomko.apsofttesttask.services.concurrency.ParserExecutor;
+import com.iffomko.apsofttesttask.services.concurrency.ParserOverloadedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.UnsupportedEncodingException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParserExecutorTests {
+    @Test
+    @DisplayName("Тестирование того, что задача выполняется в потоке пула, а ее исключение пробрасывается как есть")
+    void testTaskRunsInPoolAndExceptionIsUnwrapped() throws Exception {
+        ParserExecutor parserExecutor = new ParserExecutor(1, -1, Duration.ofSeconds(1));
+
+        try {
+            assertTrue(parserExecutor.execute(() -> Thread.currentThread().getName()).startsWith("parser-"));
+            assertThrows(UnsupportedEncodingException.class, () -> parserExecutor.execute(() -> {
+                throw new UnsupportedEncodingException("Incorrect encoding");
+            }));
+        } finally {
+            parserExecutor.destroy();
+        }
+    }
+
+    @Test
+    @DisplayName("Тестирование того, что одновременно выполняется не больше задач, чем потоков в пуле")
+    void testConcurrencyIsBounded() throws Exception {
+        ParserExecutor parserExecutor = new ParserExecutor(2, -1, Duration.ofSeconds(1));
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        try (ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+            for (int i = 0; i < 32; i++) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        parserExecutor.execute(() -> {
+                            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                            Thread.sleep(5);
+                            running.decrementAndGet();
+                            return null;
+                        });
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }, requests));
+            }
+
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        } finally {
+            parserExecutor.destroy();
+        }
+
+        assertEquals(2, parserExecutor.getThreads());
+        assertTrue(maxRunning.get() <= 2);
+    }
+
+    @Test
+    @DisplayName("Тестирование того, что при заполненной очереди запрос получает отказ, а закрытый допуск освобождает место")
+    void testAdmissionIsRejectedWhenSaturated() throws Exception {
+        ParserExecutor parserExecutor = new ParserExecutor(1, 1, Duration.ofMillis(1500));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        parserExecutor.bindTo(registry);
+
+        try {
+            ParserExecutor.Admission first = parserExecutor.admit();
+            ParserExecutor.Admission second = parserExecutor.admit();
+
+            ParserOverloadedException exception = assertThrows(ParserOverloadedException.class, parserExecutor::admit);
+            assertEquals(2, exception.getRetryAfterSeconds());
+            assertThrows(ParserOverloadedException.class, () -> parserExecutor.execute(() -> null));
+            assertEquals(2, registry.get("parser.executor.admitted").gauge().value());
+            assertEquals(2, registry.get("parser.executor.rejected").functionCounter().count());
+
+            first.close();
+            first.close();
+            assertEquals("done", parserExecutor.execute(() -> "done"));
+            assertEquals(1, registry.get("parser.executor.admitted").gauge().value());
+
+            second.close();
+            assertEquals(0, registry.get("parser.executor.admitted").gauge().value());
+        } finally {
+            parserExecutor.destroy();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.iffomko.apsofttesttask;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iffomko.apsofttesttask.config.ReactiveServerConfiguration;
+import com.iffomko.apsofttesttask.controllers.reactive.OutputStreamPublisher;
+import com.iffomko.apsofttesttask.controllers.reactive.ReactiveFilesLoaderHandler;
+import com.iffomko.apsofttesttask.controllers.reactive.ReactiveParserServer;
+import com.iffomko.apsofttesttask.services.concurrency.ClientRateLimiter;
+import com.iffomko.apsofttesttask.services.concurrency.MemoryBudget;
+import com.iffomko.apsofttesttask.services.concurrency.ParserExecutor;
+import com.iffomko.apsofttesttask.services.metrics.ParserMetrics;
+import com.iffomko.apsofttesttask.services.parser.IntoHtmlFileParser;
+import com.iffomko.apsofttesttask.services.responses.utils.FileLoaderResponseCodes;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.test.web.reactive.server.EntityExchangeResult;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.BodyInserters;
+import reactor.core.publisher.BaseSubscriber;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReactiveFilesLoaderHandlerTests {
+    private static final String TEXT = "GREATEST MAN IN ALIVE\r\n#Chapter one\rthis story\n##Jack's characteristics\n";
+
+    private final ReactiveServerConfiguration configuration = new ReactiveServerConfiguration();
+    private final ParserExecutor parserExecutor = new ParserExecutor(1, 0, Duration.ofSeconds(2));
+    private ReactiveParserServer server;
+    private WebTestClient client;
+
+    @BeforeEach
+    void setUp() {
+        startServer(Optional.empty());
+    }
+
+    /**
+     * Запускает реактивный сервер на свободном порту и клиент к нему
+     * @param rateLimiter ограничение частоты запросов клиента, если нужно
+     */
+    private void startServer(Optional<ClientRateLimiter> rateLimiter) {
+        ParserMetrics parserMetrics = new ParserMetrics(new SimpleMeterRegistry(), '#');
+        ReactiveFilesLoaderHandler handler = configuration.reactiveFilesLoaderHandler(
+                new IntoHtmlFileParser('#'),
+                parserExecutor,
+                new MemoryBudget(DataSize.ofMegabytes(16), Duration.ofSeconds(1), Duration.ofSeconds(1)),
+                parserMetrics,
+                DataSize.ofKilobytes(64)
+        );
+
+        server = configuration.reactiveParserServer(
+                configuration.reactiveParserRoutes(handler),
+                rateLimiter,
+                new ObjectMapper(),
+                parserMetrics,
+                0,
+                DataSize.ofKilobytes(64)
+        );
+        server.start();
+        client = WebTestClient.bindToServer()
+                .baseUrl("http://localhost:" + server.getPort())
+                .responseTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+        parserExecutor.destroy();
+    }
+
+    private WebTestClient.ResponseSpec upload(byte[] content, MediaType contentType) {
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+
+        builder.part("file", new ByteArrayResource(content) {
+            @Override
+            public String getFilename() {
+                return "file.txt";
+            }
+        }).contentType(contentType);
+
+        return client.post()
+                .uri("/api/v1/files/parser")
+                .accept(MediaType.TEXT_HTML)
+                .body(BodyInserters.fromMultipartData(builder.build()))
+                .exchange();
+    }
+
+    @Test
+    @DisplayName("Тестирование того, что реактивный endpoint возвращает тот же документ, что и парсер")
+    void testDocumentSameAsParser() {
+        byte[] text = TEXT.getBytes(StandardCharsets.UTF_8);
+        EntityExchangeResult<byte[]> result = upload(text, MediaType.TEXT_PLAIN)
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.TEXT_HTML)
+                .expectBody().returnResult();
+
+        assertNotNull(result.getResponseBody());
+        assertEquals(
+                new IntoHtmlFileParser('#').parse(List.of(TEXT.split("\r\n|\r|\n"))),
+                new String(result.getResponseBody(), StandardCharsets.UTF_8)
+        );
+    }
+
+    @Test
+    @DisplayName("Тестирование ошибок реактивного endpoint'а: тип файла, размер, кодировка и перегрузка")
+    void testErrors() {
+        upload(TEXT.getBytes(StandardCharsets.UTF_8), MediaType.IMAGE_PNG)
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.code").isEqualTo(FileLoaderResponseCodes.INCORRECT_REQUEST_TYPE.name());
+
+        upload(new byte[(int) DataSize.ofKilobytes(65).toBytes()], MediaType.TEXT_PLAIN)
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.code").isEqualTo(FileLoaderResponseCodes.SIZE_LIMIT_EXCEEDED_EXCEPTION.name());
+
+        upload(new byte[] {'#', (byte) 0xc3, '('}, MediaType.TEXT_PLAIN)
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.code").isEqualTo(FileLoaderResponseCodes.INCORRECT_ENCODING.name());
+
+        try (ParserExecutor.Admission ignored = parserExecutor.admit()) {
+            upload(TEXT.getBytes(StandardCharsets.UTF_8), MediaType.TEXT_PLAIN)
+                    .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+                    .expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "2")
+                    .expectBody().jsonPath("$.code").isEqualTo(FileLoaderResponseCodes.SERVICE_OVERLOADED.name());
+        }
+
+        upload(TEXT.getBytes(StandardCharsets.UTF_8), MediaType.TEXT_PLAIN).expectStatus().isOk();
+    }
+
+    @Test
+    @DisplayName("Тестирование того, что реактивный endpoint отклоняет запросы сверх лимита клиента с 429 и Retry-After")
+    void testRateLimit() {
+        ClientRateLimiter rateLimiter = new ClientRateLimiter(2, 0.1, 16);
+
+        server.stop();
+        startServer(Optional.of(rateLimiter));
+
+        upload(TEXT.getBytes(StandardCharsets.UTF_8), MediaType.TEXT_PLAIN).expectStatus().isOk();
+        upload(TEXT.getBytes(StandardCharsets.UTF_8), MediaType.TEXT_PLAIN).expectStatus().isOk();
+        upload(TEXT.getBytes(StandardCharsets.UTF_8), MediaType.TEXT_PLAIN)
+                .expectStatus().isEqualTo(HttpStatus.TOO_MANY_REQUESTS)
+                .expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "10")
+                .expectBody().jsonPath("$.code").isEqualTo(FileLoaderResponseCodes.RATE_LIMIT_EXCEEDED.name());
+
+        // тот же лимит, что и у сервлетных endpoint'ов
+        assertTrue(rateLimiter.tryAcquire("127.0.0.1") > 0);
+    }
+
+    @Test
+    @DisplayName("Тестирование того, что запись ждет запроса подписчика и прекращается при отмене")
+    void testOutputStreamPublisherBackpressure() throws Exception {
+        AtomicInteger written = new AtomicInteger();
+        CountDownLatch finished = new CountDownLatch(1);
+        List<Throwable> errors = new ArrayList<>();
+        List<byte[]> received = new ArrayList<>();
+
+        try (ExecutorService executor = Executors.newSingleThreadExecutor()) {
+            OutputStreamPublisher.publish(outputStream -> {
+                try {
+                    for (int i = 0; i < 100; i++) {
+                        outputStream.write(new byte[16]);
+                        written.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    errors.add(e);
+                    throw e;
+                } finally {
+                    finished.countDown();
+                }
+            }, DefaultDataBufferFactory.sharedInstance, executor, 16).subscribe(new BaseSubscriber<DataBuffer>() {
+                @Override
+                protected void hookOnSubscribe(Subscription subscription) {
+                    request(2);
+                }
+
+                @Override
+                protected void hookOnNext(DataBuffer value) {
+                    byte[] bytes = new byte[value.readableByteCount()];
+                    value.read(bytes);
+                    DataBufferUtils.release(value);
+                    received.add(bytes);
+
+                    if (received.size() == 2) {
+                        cancel();
+                    }
+                }
+            });
+
+            assertTrue(finished.await(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(2, received.size());
+        assertTrue(written.get() <= 3);
+        assertEquals(1, errors.size());
+    }
+}
@@ -0,0 +1,143 @@
+package com.iffomko.apsofttesttask;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iffomko.apsofttesttask.services.FilesLoaderService;
+import com.iffomko.apsofttesttask.services.RenderService;
+import com.iffomko.apsofttesttask.services.cache.DocumentModelCache;
+import com.iffomko.apsofttesttask.services.parser.IndexedDocument;
+import com.iffomko.apsofttesttask.services.parser.IntoHtmlFileParser;
+import com.iffomko.apsofttesttask.services.render.HtmlDocumentRenderer;
+import com.iffomko.apsofttesttask.services.render.JsonDocumentRenderer;
+import com.iffomko.apsofttesttask.services.render.MarkdownDocumentRenderer;
+import com.iffomko.apsofttesttask.services.render.TocDocumentRenderer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static com.iffomko.apsofttesttask.FilesLoaderFixture.readBody;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class RenderServiceTests {
+    @Test
+    @DisplayName("Тестирование форматов документа: файл разбирается один раз, а каждый следующий формат только отрисовывается")
+    void testRenderFormatsShareOneParse(@TempDir Path directory) throws IOException {
+        IntoHtmlFileParser fileParser = new IntoHtmlFileParser('#');
+        ObjectMapper objectMapper = new ObjectMapper();
+        DocumentModelCache modelCache = new DocumentModelCache(DataSize.ofMegabytes(1));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        FilesLoaderFixture fixture = new FilesLoaderFixture(directory)
+                .meterRegistry(registry)
+                .fileParser(fileParser)
+                .objectMapper(objectMapper)
+                .documentModelCache(modelCache)
+                .renderers(
+                        new HtmlDocumentRenderer(fileParser),
+                        new MarkdownDocumentRenderer(),
+                        new JsonDocumentRenderer(objectMapper),
+                        new TocDocumentRenderer()
+                );
+        FilesLoaderService filesLoaderService = fixture.filesLoaderService();
+        RenderService renderService = fixture.renderService();
+        MockMultipartFile textFile = new MockMultipartFile(
+                "file",
+                "file.txt",
+                MediaType.TEXT_PLAIN_VALUE,
+                "GREATEST MAN IN ALIVE\r\n#Chapter one\rthis story\n##Jack's characteristics\n".getBytes(StandardCharsets.UTF_8)
+        );
+        String chapterId = "1_" + Math.abs("#Chapter one".hashCode());
+        String characteristicsId = "3_" + Math.abs("##Jack's characteristics".hashCode());
+
+        String html = readBody(filesLoaderService.parseFileToHtml(textFile));
+
+        assertEquals(html, readBody(renderService.renderFile(textFile, "html", null, null, null)));
+        assertEquals(html, readBody(renderService.renderFile(textFile, null, "*/*", null, null)));
+
+        ResponseEntity<StreamingResponseBody> markdownResult = renderService.renderFile(
+                textFile, null, "text/markdown", null, null
+        );
+
+        assertEquals("text/markdown;charset=UTF-8", String.valueOf(markdownResult.getHeaders().getContentType()));
+        assertEquals(
+                "- [Chapter one](#" + chapterId + ")\n"
+                        + "  - [Jack's characteristics](#" + characteristicsId + ")\n"
+                        + "\nGREATEST MAN IN ALIVE\n"
+                        + "\n<a name=\"" + chapterId + "\"></a>\n# Chapter one\n"
+                        + "\nthis story\n"
+                        + "\n<a name=\"" + characteristicsId + "\"></a>\n## Jack's characteristics\n",
+                readBody(markdownResult)
+        );
+
+        ResponseEntity<StreamingResponseBody> jsonResult = renderService.renderFile(
+                textFile, null, "text/plain;q=0.5, application/json", null, null
+        );
+        JsonNode json = objectMapper.readTree(readBody(jsonResult));
+
+        assertEquals(MediaType.APPLICATION_JSON, jsonResult.getHeaders().getContentType());
+        assertEquals(2, json.get("sections").size());
+        assertEquals(chapterId, json.get("sections").get(0).get("id").asText());
+        assertEquals(2, json.get("sections").get(1).get("depth").asInt());
+        assertEquals(4, json.get("blocks").size());
+        assertEquals("paragraph", json.get("blocks").get(2).get("type").asText());
+        assertEquals("this story", json.get("blocks").get(2).get("text").asText());
+
+        assertEquals(
+                "Chapter one\n  Jack's characteristics\n",
+                readBody(renderService.renderFile(textFile, "TOC", null, null, null))
+        );
+        assertNotEquals(markdownResult.getHeaders().getETag(), jsonResult.getHeaders().getETag());
+
+        // текст разбит на строчки только при первой загрузке, все остальные форматы взяли документ из кэша
+        assertEquals(1, modelCache.getStats().missCount());
+        assertEquals(5, modelCache.getStats().hitCount());
+        // и для документа из кэша время отрисовки и статистика документа попадают в метрики
+        assertEquals(6, registry.get("parser.stage").tag("stage", "render").timer().count());
+        assertEquals(6, registry.get("parser.document.lines").summary().count());
+        assertEquals(6 * 4, registry.get("parser.document.lines").summary().totalAmount());
+
+        assertEquals(
+                HttpStatus.BAD_REQUEST,
+                renderService.renderFile(textFile, "pdf", null, null, null).getStatusCode()
+        );
+        assertEquals(
+                HttpStatus.NOT_ACCEPTABLE,
+                renderService.renderFile(textFile, null, "application/xml", null, null).getStatusCode()
+        );
+    }
+
+    @Test
+    @DisplayName("Тестирование Markdown: якорь у раздела без названия и экранирование текста ссылок содержания")
+    void testMarkdownEmptyAndBracketTitles() throws IOException {
+        String text = "#\n##a]b [c](d) \\x\n\ntext";
+        String emptyId = "0_" + Math.abs("#".hashCode());
+        String bracketsId = "1_" + Math.abs("##a]b [c](d) \\x".hashCode());
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        new MarkdownDocumentRenderer().render(
+                IndexedDocument.of(text.getBytes(StandardCharsets.UTF_8), '#'),
+                outputStream
+        );
+
+        assertEquals(
+                "- [](#" + emptyId + ")\n"
+                        + "  - [a\\]b \\[c\\](d) \\\\x](#" + bracketsId + ")\n"
+                        + "\n<a name=\"" + emptyId + "\"></a>\n#\n"
+                        + "\n<a name=\"" + bracketsId + "\"></a>\n## a]b [c](d) \\x\n"
+                        + "\ntext\n",
+                outputStream.toString(StandardCharsets.UTF_8)
+        );
+    }
+}
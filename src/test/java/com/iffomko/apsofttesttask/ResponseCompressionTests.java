@@ -0,0 +1,120 @@
+package com.iffomko.apsofttesttask;
+
+import com.iffomko.apsofttesttask.services.compression.CompressedDocument;
+import com.iffomko.apsofttesttask.services.compression.ContentCoding;
+import com.iffomko.apsofttesttask.services.compression.DocumentEncoder;
+import com.iffomko.apsofttesttask.services.compression.ResponseCompression;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResponseCompressionTests {
+    private final ResponseCompression compression = new ResponseCompression(true, 6);
+
+    private static byte[] getDocument() {
+        StringBuilder document = new StringBuilder();
+
+        for (int i = 0; i < 2000; i++) {
+            document.append("<div><a name=\"").append(i).append("\">раздел ").append(i).append("</a></div>\n");
+        }
+
+        return document.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] decode(ContentCoding coding, byte[] body) throws IOException {
+        InputStream inputStream = switch (coding) {
+            case GZIP -> new GZIPInputStream(new ByteArrayInputStream(body));
+            case DEFLATE -> new InflaterInputStream(new ByteArrayInputStream(body));
+            case IDENTITY -> new ByteArrayInputStream(body);
+        };
+
+        return inputStream.readAllBytes();
+    }
+
+    @Test
+    @DisplayName("Тестирование выбора кодирования по заголовку Accept-Encoding")
+    void testNegotiate() {
+        assertEquals(ContentCoding.IDENTITY, ContentCoding.negotiate(null));
+        assertEquals(ContentCoding.IDENTITY, ContentCoding.negotiate(""));
+        assertEquals(ContentCoding.IDENTITY, ContentCoding.negotiate("br, identity"));
+        assertEquals(ContentCoding.GZIP, ContentCoding.negotiate("gzip, deflate, br"));
+        assertEquals(ContentCoding.GZIP, ContentCoding.negotiate("deflate, GZIP"));
+        assertEquals(ContentCoding.DEFLATE, ContentCoding.negotiate("gzip;q=0.5, deflate"));
+        assertEquals(ContentCoding.DEFLATE, ContentCoding.negotiate("gzip;q=0, *"));
+        assertEquals(ContentCoding.GZIP, ContentCoding.negotiate("*;q=0.1"));
+        assertEquals(ContentCoding.IDENTITY, ContentCoding.negotiate("gzip;q=0, deflate;q=0"));
+        assertEquals(ContentCoding.IDENTITY, new ResponseCompression(false, 6).negotiate("gzip"));
+    }
+
+    @Test
+    @DisplayName("Тестирование того, что документ сжимается во время записи и распаковывается обратно в каждом кодировании")
+    void testEncoderRoundTrip() throws IOException {
+        byte[] document = getDocument();
+
+        for (ContentCoding coding : ContentCoding.values()) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+            try (DocumentEncoder encoder = compression.encode(outputStream, coding, Long.MAX_VALUE)) {
+                // пишем порциями разного размера, как это делает парсер
+                for (int offset = 0; offset < document.length; offset += 777) {
+                    encoder.write(document, offset, Math.min(777, document.length - offset));
+                }
+
+                encoder.flush();
+                encoder.finish();
+
+                CompressedDocument compressed = encoder.getDocument().orElseThrow();
+
+                assertArrayEquals(document, compressed.toByteArray());
+                assertEquals(outputStream.size(), compressed.getEncodedLength(coding));
+            }
+
+            assertArrayEquals(document, decode(coding, outputStream.toByteArray()));
+            assertEquals(coding.isCompressed(), outputStream.size() < document.length / 4);
+        }
+    }
+
+    @Test
+    @DisplayName("Тестирование того, что сжатый документ отдается в любом кодировании без повторного сжатия")
+    void testCompressedDocumentWriteTo() throws IOException {
+        byte[] document = getDocument();
+        CompressedDocument compressed = compression.compress(document);
+
+        for (ContentCoding coding : ContentCoding.values()) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+            compressed.writeTo(outputStream, coding);
+
+            assertEquals(compressed.getEncodedLength(coding), outputStream.size());
+            assertArrayEquals(document, decode(coding, outputStream.toByteArray()));
+        }
+    }
+
+    @Test
+    @DisplayName("Тестирование того, что копия для кэша больше лимита отбрасывается, а ответ при этом полный")
+    void testCaptureLimit() throws IOException {
+        byte[] document = new byte[64 * 1024];
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        new Random(42).nextBytes(document);
+
+        try (DocumentEncoder encoder = compression.encode(outputStream, ContentCoding.GZIP, 1024)) {
+            encoder.write(document);
+            encoder.finish();
+
+            assertTrue(encoder.getDocument().isEmpty());
+        }
+
+        assertArrayEquals(document, decode(ContentCoding.GZIP, outputStream.toByteArray()));
+    }
+}